@@ -0,0 +1,62 @@
+package com.file.benchmark;
+
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
+import com.file.service.ChangeMessageFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning change events into the texts shown in logs and notifications.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventFormattingBenchmark {
+
+    private FileChangeEvent created;
+    private FileChangeEvent modified;
+    private FileChangeEvent moved;
+
+    @Setup
+    public void setUp() {
+        Path folder = Paths.get("share", "核心系統盤點共用資料夾");
+        Path file = folder.resolve(FixtureTree.FILE_PREFIX + "_0000001.xlsx");
+        FileSnapshot before = new FileSnapshot(48_213, 1_700_000_000_000L, 1_699_000_000_000L, null, true);
+        FileSnapshot after = new FileSnapshot(51_877, 1_700_000_360_000L, 1_699_000_000_000L, null, true);
+
+        created = FileChangeEvent.created(file, after, 1_700_000_400_000L);
+        modified = FileChangeEvent.modified(file, before, after, "變更內容: 工作表 sheet2、共用字串", 1_700_000_400_000L);
+        moved = FileChangeEvent.moved(folder.resolve("舊檔名.xlsx"), file, after, 1_700_000_400_000L);
+    }
+
+    @Benchmark
+    public String formatCreated() {
+        return ChangeMessageFormatter.message(created);
+    }
+
+    @Benchmark
+    public String formatModified() {
+        return ChangeMessageFormatter.message(modified);
+    }
+
+    @Benchmark
+    public String formatMoved() {
+        return ChangeMessageFormatter.message(moved);
+    }
+}
@@ -0,0 +1,78 @@
+package com.file.benchmark;
+
+import com.file.object.MonitorDataObject;
+import com.file.service.FileNameFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of matching one file name as the number of rules grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final String[] EXTENSIONS = {"xlsx", "xlsm", "csv", "docx", "pdf", "txt", "tmp", "pptx"};
+
+    @Param({"1", "10", "100"})
+    public int rules;
+
+    private FileNameFilter filter;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        // 每類規則各 rules 條：副檔名、檔名開頭、包含樣式、排除樣式
+        StringBuilder extensions = new StringBuilder("*.xlsx");
+        StringBuilder prefixes = new StringBuilder(FixtureTree.FILE_PREFIX);
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        excludes.add("~$*");
+        for (int i = 1; i < rules; i++) {
+            extensions.append(";*.ext").append(i);
+            prefixes.append(";報表").append(i);
+            includes.add("*_" + i + "_*");
+            excludes.add("re:.*備份" + i + ".*");
+        }
+        includes.add("*");
+
+        MonitorDataObject dto = new MonitorDataObject("share", extensions.toString(), prefixes.toString());
+        dto.setIncludePatterns(includes);
+        dto.setExcludePatterns(excludes);
+        filter = FileNameFilter.compile(dto);
+
+        names = new String[1024];
+        for (int i = 0; i < names.length; i++) {
+            String prefix = random.nextInt(4) == 0 ? "~$" : "";
+            String base = random.nextBoolean() ? FixtureTree.FILE_PREFIX : "報表" + random.nextInt(rules + 1);
+            names[i] = prefix + base + "_" + random.nextInt(100_000) + "." + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+        }
+    }
+
+    @Benchmark
+    public boolean matches() {
+        String name = names[next++ & (names.length - 1)];
+        return filter.matches(name);
+    }
+}
@@ -0,0 +1,127 @@
+package com.file.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reproducible directory tree used by the scan benchmarks.
+ * File names, sizes and modification times only depend on the entry count and a fixed seed,
+ * so results of different releases are measured against identical trees. Trees are kept under
+ * {@code filewatch.benchmark.dir} (default: the temp directory) and reused by later runs.
+ */
+public final class FixtureTree {
+
+    // 固定亂數種子，確保每次產生相同的樹
+    private static final long SEED = 20240601L;
+
+    // 每個子目錄的檔案數
+    private static final int FILES_PER_DIRECTORY = 1000;
+
+    // 固定的修改時間基準
+    private static final long BASE_TIME = 1_700_000_000_000L;
+
+    // 變動集合的間隔（每 100 個項目修改一個）
+    private static final int CHANGE_STEP = 100;
+
+    // 完成標記，不完整的樹會重新產生
+    private static final String COMPLETE_MARKER = ".complete";
+
+    public static final String FILE_PREFIX = "差異分析訪談時間表";
+
+    private final Path root;
+    private final int entries;
+
+    private FixtureTree(Path root, int entries) {
+        this.root = root;
+        this.entries = entries;
+    }
+
+    /**
+     * 取得（必要時產生）指定項目數的測試樹，約 10% 的項目不符合監控條件
+     */
+    public static FixtureTree prepare(int entries) throws IOException {
+        Path base = Paths.get(System.getProperty("filewatch.benchmark.dir", System.getProperty("java.io.tmpdir")));
+        Path root = base.resolve("filewatch-fixture-" + entries);
+        FixtureTree tree = new FixtureTree(root, entries);
+        if (!Files.exists(root.resolve(COMPLETE_MARKER))) {
+            tree.generate();
+        }
+        return tree;
+    }
+
+    private void generate() throws IOException {
+        Random random = new Random(SEED);
+        Files.createDirectories(root);
+        for (int i = 0; i < entries; i++) {
+            Path file = fileAt(i);
+            Files.createDirectories(file.getParent());
+            byte[] content = new byte[random.nextInt(256)];
+            random.nextBytes(content);
+            Files.write(file, content);
+            Files.setLastModifiedTime(file, originalTime(i));
+        }
+        Files.write(root.resolve(COMPLETE_MARKER), String.valueOf(entries).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 第 index 個項目的路徑，每十個項目有一個不符合監控條件的檔案
+     */
+    public Path fileAt(int index) {
+        Path directory = root.resolve(String.format("d%04d", index / FILES_PER_DIRECTORY));
+        if (index % 10 == 9) {
+            return directory.resolve(String.format("other_%07d.txt", index));
+        }
+        return directory.resolve(String.format("%s_%07d.xlsx", FILE_PREFIX, index));
+    }
+
+    /**
+     * 第 index 個項目產生時的修改時間
+     */
+    private static FileTime originalTime(int index) {
+        return FileTime.fromMillis(BASE_TIME + (index * 7919L) % 86_400_000L);
+    }
+
+    /**
+     * 每次變動時修改的固定檔案集合（約 1% 的項目）
+     */
+    public List<Path> changeSet() {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < entries; i += CHANGE_STEP) {
+            files.add(fileAt(i));
+        }
+        return files;
+    }
+
+    /**
+     * 將變動集合還原為產生時的修改時間
+     */
+    public void restoreChangeSet() throws IOException {
+        for (int i = 0; i < entries; i += CHANGE_STEP) {
+            Files.setLastModifiedTime(fileAt(i), originalTime(i));
+        }
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * 關閉逐檔的 INFO 日誌，避免量測到日誌輸出
+     */
+    public static void quietLogging() {
+        Logger.getLogger("com.file").setLevel(Level.WARNING);
+    }
+}
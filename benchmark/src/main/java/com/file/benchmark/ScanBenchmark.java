@@ -0,0 +1,124 @@
+package com.file.benchmark;
+
+import com.file.object.DetectionMode;
+import com.file.object.MonitorDataObject;
+import com.file.service.FileWatchService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scans and snapshot diffs of a local tree with 1k to 1M entries.
+ * Run with {@code -prof gc} (the default in {@link BenchmarkRunner}) to see the allocation rate
+ * per scan next to the scan time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int entries;
+
+    private FixtureTree tree;
+    private MonitorDataObject dto;
+    private FileWatchService service;
+    private List<Path> changeSet;
+    private boolean toggled;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        FixtureTree.quietLogging();
+        tree = FixtureTree.prepare(entries);
+        changeSet = tree.changeSet();
+
+        dto = new MonitorDataObject(tree.getRoot().toString(), "*.xlsx", FixtureTree.FILE_PREFIX);
+        dto.setRecursive(true);
+        dto.setDetectionMode(DetectionMode.POLL);
+        dto.setSettleQuietSeconds(0);
+        dto.setWorkbookAnalysis(false);
+
+        service = new FileWatchService(dto);
+        service.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.close();
+        // 還原修改過的檔案，讓下次執行從相同的狀態開始
+        tree.restoreChangeSet();
+    }
+
+    /**
+     * 建立完整快照（初始化）
+     */
+    @Benchmark
+    public int fullScan() throws IOException {
+        FileWatchService fresh = new FileWatchService(dto);
+        try {
+            fresh.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+            return fresh.getLastScanChangeCount();
+        } finally {
+            fresh.close();
+        }
+    }
+
+    /**
+     * 沒有任何變動時的比對
+     */
+    @Benchmark
+    public int diffUnchanged() throws IOException {
+        service.checkForChanges(dto.getDirectoryMonitorPath());
+        return service.getLastScanChangeCount();
+    }
+
+    /**
+     * 約 1% 檔案修改時的比對
+     */
+    @Benchmark
+    public int diffWithChanges(ChangeState state) throws IOException {
+        service.checkForChanges(dto.getDirectoryMonitorPath());
+        return service.getLastScanChangeCount();
+    }
+
+    /**
+     * 每次呼叫前修改固定的檔案集合
+     */
+    @State(Scope.Benchmark)
+    public static class ChangeState {
+
+        @Setup(Level.Invocation)
+        public void change(ScanBenchmark benchmark) throws IOException {
+            benchmark.touchChangeSet();
+        }
+    }
+
+    void touchChangeSet() throws IOException {
+        // 在兩個固定時間之間切換，結果與執行次數無關
+        toggled = !toggled;
+        FileTime time = FileTime.fromMillis(toggled ? 1_800_000_000_000L : 1_800_000_060_000L);
+        for (Path file : changeSet) {
+            Files.setLastModifiedTime(file, time);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.file.logging;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Logging handler that never does file I/O on the calling thread.
+ * Records are put into a bounded buffer and a single writer thread formats and writes them in
+ * batches, flushing once per batch. When the buffer is full records are dropped and counted
+ * instead of blocking a scan; the number of dropped records is written to the log once there is
+ * room again.
+ */
+public class AsyncLogHandler extends Handler {
+
+    // 預設緩衝筆數
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    // 每批最多寫入的筆數
+    private static final int MAX_BATCH = 512;
+
+    private final BlockingQueue<LogRecord> buffer;
+
+    private final RollingLogWriter writer;
+
+    private final Thread writerThread;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public AsyncLogHandler(RollingLogWriter writer, Formatter formatter) {
+        this(writer, formatter, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param writer the rolling file the records are written to
+     * @param formatter formats each record into one line
+     * @param capacity the number of records buffered before new records are dropped
+     */
+    public AsyncLogHandler(RollingLogWriter writer, Formatter formatter, int capacity) {
+        this.writer = writer;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        setFormatter(formatter);
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        if (!buffer.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * 因緩衝已滿而捨棄的筆數
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void writeLoop() {
+        List<LogRecord> batch = new ArrayList<>(MAX_BATCH);
+        long reportedDrops = 0;
+        while (!closed || !buffer.isEmpty()) {
+            try {
+                LogRecord first = buffer.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, MAX_BATCH - 1);
+
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    LogRecord notice = new LogRecord(Level.WARNING, "日誌緩衝已滿，已捨棄 " + (drops - reportedDrops) + " 筆");
+                    notice.setLoggerName(AsyncLogHandler.class.getName());
+                    batch.add(notice);
+                    reportedDrops = drops;
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (closed) {
+                    continue;
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<LogRecord> batch) {
+        try {
+            for (LogRecord record : batch) {
+                String line;
+                try {
+                    line = getFormatter().format(record);
+                } catch (RuntimeException e) {
+                    reportError("無法格式化日誌", e, ErrorManager.FORMAT_FAILURE);
+                    continue;
+                }
+                writer.writeLine(line);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            reportError("無法寫入日誌檔", e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    /**
+     * 等待緩衝中的記錄寫入
+     */
+    @Override
+    public void flush() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!buffer.isEmpty() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 寫完緩衝中的記錄後關閉檔案
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            reportError("無法關閉日誌檔", e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+}
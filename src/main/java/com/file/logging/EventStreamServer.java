@@ -0,0 +1,451 @@
+package com.file.logging;
+
+import com.file.object.FileChangeEvent;
+import com.file.service.ChangeJournal;
+import com.file.service.FileChangeListener;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams change events to local consumers as Server-Sent Events, so a single scan feeds every
+ * consumer instead of each of them polling the share.
+ *
+ * <p>Clients send {@code GET /events} and receive one message per change: the id is the event's
+ * sequence number and the data is the event as a JSON object, the same as written by
+ * {@link JsonEventWriter}. A client that reconnects with {@code Last-Event-ID} (or asks for
+ * {@code /events?from=sequence}) first gets the events it missed, from the recent events kept in
+ * memory or, when the server is fed by a {@link ChangeJournal}, from the journal. Without a
+ * journal, missed events older than the memory are announced with a {@code gap} message.</p>
+ *
+ * <p>Each event is formatted once and the same bytes are written to every client. Every client
+ * has its own bounded queue and writer thread; a client that falls so far behind that its queue
+ * is full is disconnected instead of delaying the others, and can resume from its last id.</p>
+ */
+public class EventStreamServer implements FileChangeListener, ChangeJournal.AppendListener, Closeable {
+
+    private static final Logger logger = Logger.getLogger(EventStreamServer.class.getName());
+
+    // 預設每個客戶端的佇列容量
+    public static final int DEFAULT_CLIENT_QUEUE = 1024;
+
+    // 預設保留在記憶體中供重新連線補送的事件數
+    public static final int DEFAULT_HISTORY = 4096;
+
+    // 預設同時連線上限
+    public static final int DEFAULT_MAX_CLIENTS = 32;
+
+    // 閒置時送出註解，及早發現已斷線的客戶端
+    private static final long KEEPALIVE_MILLIS = 15_000;
+
+    // 讀取請求標頭的逾時
+    private static final int REQUEST_TIMEOUT_MILLIS = 5_000;
+
+    // 自變更紀錄補送時每次讀取的筆數
+    private static final int REPLAY_PAGE = 256;
+
+    private static final byte[] KEEPALIVE = ": keepalive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 已格式化的一筆事件
+     */
+    private static final class Frame {
+        final long sequence;
+        final byte[] bytes;
+
+        Frame(long sequence, byte[] bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final ChangeJournal journal;
+    private final int clientQueueCapacity;
+    private final int historySize;
+    private final int maxClients;
+    private final AtomicInteger clientCounter = new AtomicInteger();
+
+    // 以下欄位以 this 同步
+    private final ArrayDeque<Frame> history = new ArrayDeque<>();
+    private final List<Client> clients = new ArrayList<>();
+    private long nextSequence;
+    private boolean closed;
+
+    /**
+     * 以預設容量建立並開始接受連線
+     *
+     * @param address the address to listen on, usually the loopback address; port 0 picks a free port
+     * @param journal the journal that numbers the events and serves older ones, or null to number them here
+     * @throws IOException if the address cannot be bound
+     */
+    public EventStreamServer(InetSocketAddress address, ChangeJournal journal) throws IOException {
+        this(address, journal, DEFAULT_CLIENT_QUEUE, DEFAULT_HISTORY, DEFAULT_MAX_CLIENTS);
+    }
+
+    /**
+     * 建立並開始接受連線；有變更紀錄時由紀錄通知事件，否則需訂閱事件匯流排
+     *
+     * @param address the address to listen on, usually the loopback address; port 0 picks a free port
+     * @param journal the journal that numbers the events and serves older ones, or null to number them here
+     * @param clientQueueCapacity the events a client may fall behind before it is disconnected
+     * @param historySize the recent events kept in memory for reconnecting clients
+     * @param maxClients the maximum number of connected clients
+     * @throws IOException if the address cannot be bound
+     */
+    public EventStreamServer(InetSocketAddress address, ChangeJournal journal, int clientQueueCapacity,
+                             int historySize, int maxClients) throws IOException {
+        if (clientQueueCapacity < 1 || historySize < 0 || maxClients < 1) {
+            throw new IllegalArgumentException("Queue capacity and client limit must be positive");
+        }
+        this.journal = journal;
+        this.clientQueueCapacity = clientQueueCapacity;
+        this.historySize = historySize;
+        this.maxClients = maxClients;
+        this.nextSequence = journal != null ? journal.getNextSequence() : 1;
+
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        if (journal != null) {
+            journal.setAppendListener(this);
+        }
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "event-stream-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("事件串流位置: http://" + serverSocket.getInetAddress().getHostAddress() + ":" + getPort() + "/events");
+    }
+
+    /**
+     * 實際監聽的連接埠
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 目前連線中的客戶端數
+     */
+    public synchronized int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * 沒有變更紀錄時由事件匯流排呼叫，依收到的順序編號
+     */
+    @Override
+    public void onChange(FileChangeEvent event) {
+        synchronized (this) {
+            appended(nextSequence, event);
+        }
+    }
+
+    /**
+     * 送出一筆已編號的事件給所有客戶端，佇列已滿的客戶端中斷連線
+     */
+    @Override
+    public void appended(long sequence, FileChangeEvent event) {
+        Frame frame = format(sequence, event);
+        List<Client> slow = null;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            nextSequence = sequence + 1;
+            if (historySize > 0) {
+                if (history.size() >= historySize) {
+                    history.removeFirst();
+                }
+                history.addLast(frame);
+            }
+            for (Client client : clients) {
+                if (!client.queue.offer(frame)) {
+                    if (slow == null) {
+                        slow = new ArrayList<>();
+                    }
+                    slow.add(client);
+                }
+            }
+            if (slow != null) {
+                clients.removeAll(slow);
+            }
+        }
+        if (slow != null) {
+            for (Client client : slow) {
+                logger.warning("事件串流客戶端處理過慢，已中斷連線: " + client.name + "，最後送出序號 " + client.lastSent);
+                client.disconnect();
+            }
+        }
+    }
+
+    /**
+     * 格式化為一則 SSE 訊息，JSON 不含換行，可直接放在單一 data 欄位
+     */
+    private static Frame format(long sequence, FileChangeEvent event) {
+        StringBuilder message = new StringBuilder(256);
+        message.append("id: ").append(sequence).append("\ndata: ");
+        JsonLineFormatter.appendEvent(message, event);
+        return new Frame(sequence, message.append("\n\n").toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void acceptLoop() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.log(Level.WARNING, "事件串流無法接受連線", e);
+                }
+                return;
+            }
+            final Client client = new Client(socket, "event-stream-client-" + clientCounter.incrementAndGet());
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    client.serve();
+                }
+            }, client.name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 停止接受連線並中斷所有客戶端
+     */
+    @Override
+    public void close() {
+        List<Client> connected;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connected = new ArrayList<>(clients);
+            clients.clear();
+            history.clear();
+        }
+        if (journal != null) {
+            journal.setAppendListener(null);
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "關閉事件串流失敗", e);
+        }
+        for (Client client : connected) {
+            client.disconnect();
+        }
+    }
+
+    /**
+     * 一個連線中的客戶端與其寫入執行緒
+     */
+    private final class Client {
+
+        final Socket socket;
+        final String name;
+        final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(clientQueueCapacity);
+        volatile boolean disconnected;
+        volatile long lastSent = -1;
+
+        Client(Socket socket, String name) {
+            this.socket = socket;
+            this.name = name;
+        }
+
+        void serve() {
+            try {
+                socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                long from = readRequest(out);
+                if (from == Long.MIN_VALUE) {
+                    return;
+                }
+
+                // 登記後的事件進入佇列，之前的事件由記憶體或變更紀錄補送
+                long liveFrom;
+                long historyStart;
+                List<Frame> backlog = new ArrayList<>();
+                synchronized (EventStreamServer.this) {
+                    if (closed || clients.size() >= maxClients) {
+                        writeStatus(out, "503 Service Unavailable");
+                        return;
+                    }
+                    liveFrom = nextSequence;
+                    historyStart = history.isEmpty() ? liveFrom : history.peekFirst().sequence;
+                    if (from >= 0) {
+                        for (Frame frame : history) {
+                            if (frame.sequence >= from) {
+                                backlog.add(frame);
+                            }
+                        }
+                    }
+                    clients.add(this);
+                }
+                logger.info("事件串流客戶端連線: " + socket.getRemoteSocketAddress()
+                        + (from >= 0 ? "，自序號 " + from + " 補送" : ""));
+
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream; charset=utf-8\r\n"
+                        + "Cache-Control: no-cache\r\nConnection: close\r\n\r\nretry: 3000\n\n").getBytes(StandardCharsets.UTF_8));
+                if (from >= 0 && from < historyStart) {
+                    catchUp(out, from, historyStart);
+                }
+                for (Frame frame : backlog) {
+                    write(out, frame);
+                }
+                out.flush();
+                streamLive(out);
+            } catch (IOException e) {
+                if (!disconnected) {
+                    logger.log(Level.FINE, "事件串流客戶端已斷線: " + name, e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (EventStreamServer.this) {
+                    clients.remove(this);
+                }
+                disconnect();
+            }
+        }
+
+        /**
+         * 讀取請求並回傳起始序號；-1 表示只接收新事件，{@link Long#MIN_VALUE} 表示已回應錯誤
+         */
+        private long readRequest(OutputStream out) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return Long.MIN_VALUE;
+            }
+            String[] parts = requestLine.split(" ");
+            String target = parts.length >= 2 ? parts[1] : "";
+            long from = -1;
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Last-Event-ID")) {
+                    from = parseSequence(line.substring(colon + 1).trim(), 1);
+                }
+            }
+            if (!parts[0].equals("GET") || !(target.equals("/events") || target.startsWith("/events?"))) {
+                writeStatus(out, "404 Not Found");
+                return Long.MIN_VALUE;
+            }
+            int query = target.indexOf("from=");
+            if (query > 0) {
+                int end = target.indexOf('&', query);
+                from = parseSequence(target.substring(query + 5, end < 0 ? target.length() : end), 0);
+            }
+            if (from == Long.MIN_VALUE) {
+                writeStatus(out, "400 Bad Request");
+            }
+            return from;
+        }
+
+        /**
+         * 補送記憶體中已沒有的事件
+         */
+        private void catchUp(OutputStream out, long from, long until) throws IOException {
+            if (journal == null) {
+                out.write(("event: gap\ndata: {\"from\":" + from + ",\"to\":" + (until - 1) + "}\n\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            // 已過保存期限或被壓縮的記錄直接略過
+            long cursor = from;
+            while (cursor < until && !disconnected) {
+                List<ChangeJournal.Entry> page = journal.replay(cursor, REPLAY_PAGE);
+                for (ChangeJournal.Entry entry : page) {
+                    if (entry.getSequence() >= until) {
+                        return;
+                    }
+                    write(out, format(entry.getSequence(), entry.getEvent()));
+                    cursor = entry.getSequence() + 1;
+                }
+                if (page.size() < REPLAY_PAGE) {
+                    return;
+                }
+            }
+        }
+
+        private void streamLive(OutputStream out) throws IOException, InterruptedException {
+            while (!disconnected) {
+                Frame frame = queue.poll(KEEPALIVE_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    out.write(KEEPALIVE);
+                    out.flush();
+                    continue;
+                }
+                // 一次寫出佇列中所有事件後才送出
+                do {
+                    write(out, frame);
+                } while ((frame = queue.poll()) != null);
+                out.flush();
+            }
+        }
+
+        private void write(OutputStream out, Frame frame) throws IOException {
+            if (frame.sequence <= lastSent) {
+                return;
+            }
+            out.write(frame.bytes);
+            lastSent = frame.sequence;
+        }
+
+        private void writeStatus(OutputStream out, String status) throws IOException {
+            out.write(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        /**
+         * 關閉連線，寫入中的執行緒因此結束
+         */
+        void disconnect() {
+            disconnected = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "關閉事件串流連線失敗: " + name, e);
+            }
+        }
+    }
+
+    /**
+     * 解析序號，格式錯誤時回傳 {@link Long#MIN_VALUE}
+     *
+     * @param offset added to the value, 1 for a Last-Event-ID (the next event is wanted)
+     */
+    private static long parseSequence(String value, int offset) {
+        try {
+            long sequence = Long.parseLong(value);
+            return sequence < 0 ? Long.MIN_VALUE : sequence + offset;
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.file.logging;
+
+import com.file.object.FileChangeEvent;
+import com.file.service.FileChangeListener;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes every change event as one JSON object per line, for other programs to consume.
+ * The object has the same fields as the "event" object of the monitor log. Each line is
+ * flushed as soon as it is written, so a reader of a pipe sees the change immediately.
+ */
+public class JsonEventWriter implements FileChangeListener, Closeable {
+
+    private static final Logger logger = Logger.getLogger(JsonEventWriter.class.getName());
+
+    private final Writer out;
+
+    private final boolean closeOut;
+
+    // 寫入失敗後只記錄一次，避免每筆事件都記錄警告
+    private boolean failed;
+
+    /**
+     * @param out the stream to write to, usually {@code System.out}; it is flushed but not closed
+     */
+    public JsonEventWriter(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        this.closeOut = false;
+    }
+
+    /**
+     * 附加寫入檔案，檔案不存在時建立
+     *
+     * @param file the file the events are appended to
+     * @throws IOException if the file cannot be opened
+     */
+    public JsonEventWriter(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.closeOut = true;
+    }
+
+    @Override
+    public synchronized void onChange(FileChangeEvent event) {
+        StringBuilder json = new StringBuilder(256);
+        JsonLineFormatter.appendEvent(json, event);
+        try {
+            out.write(json.append('\n').toString());
+            out.flush();
+            failed = false;
+        } catch (IOException e) {
+            if (!failed) {
+                logger.log(Level.WARNING, "無法輸出變更事件", e);
+                failed = true;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (closeOut) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "關閉事件輸出失敗", e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.file.logging;
+
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Formats each log record as one JSON object on a single line.
+ * A record whose first parameter is a {@link FileChangeEvent} gets an additional "event" object
+ * with the change type, paths, size and timestamps, so change logs can be filtered by tools
+ * instead of parsed from the message text.
+ */
+public class JsonLineFormatter extends Formatter {
+
+    // ISO-8601 時間格式（含時區）
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(ZoneId.systemDefault());
+
+    @Override
+    public String format(LogRecord record) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"time\":");
+        appendString(json, TIME_FORMAT.format(Instant.ofEpochMilli(record.getMillis())));
+        json.append(",\"level\":");
+        appendString(json, record.getLevel().getName());
+        json.append(",\"logger\":");
+        appendString(json, record.getLoggerName());
+        json.append(",\"message\":");
+        appendString(json, formatMessage(record));
+
+        Object[] parameters = record.getParameters();
+        if (parameters != null && parameters.length > 0 && parameters[0] instanceof FileChangeEvent) {
+            json.append(",\"event\":");
+            appendEvent(json, (FileChangeEvent) parameters[0]);
+        }
+        if (record.getThrown() != null) {
+            StringWriter trace = new StringWriter();
+            record.getThrown().printStackTrace(new PrintWriter(trace));
+            json.append(",\"error\":");
+            appendString(json, trace.toString());
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * 以 JSON 物件附加變更事件（類型、路徑、大小與時間）
+     */
+    static void appendEvent(StringBuilder json, FileChangeEvent event) {
+        json.append("{\"type\":");
+        appendString(json, event.getType().name());
+        json.append(",\"path\":");
+        appendString(json, String.valueOf(event.getPath()));
+        if (event.getPreviousPath() != null) {
+            json.append(",\"previousPath\":");
+            appendString(json, event.getPreviousPath().toString());
+        }
+        json.append(",\"detectedAt\":");
+        appendString(json, TIME_FORMAT.format(Instant.ofEpochMilli(event.getDetectedAt())));
+        FileSnapshot current = event.getSnapshot();
+        if (current != null) {
+            json.append(",\"size\":").append(current.getSize());
+            json.append(",\"lastModified\":");
+            appendString(json, TIME_FORMAT.format(Instant.ofEpochMilli(current.getLastModified())));
+        }
+        if (event.getPreviousSnapshot() != null) {
+            json.append(",\"previousLastModified\":");
+            appendString(json, TIME_FORMAT.format(Instant.ofEpochMilli(event.getPreviousSnapshot().getLastModified())));
+        }
+        if (event.getDetail() != null) {
+            json.append(",\"detail\":");
+            appendString(json, event.getDetail());
+        }
+        json.append('}');
+    }
+
+    /**
+     * 以 JSON 字串格式附加，處理引號、反斜線與控制字元
+     */
+    static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,40 @@
+package com.file.logging;
+
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Installs the asynchronous JSON-lines log file for all loggers under {@code com.file}.
+ * Console output through the root logger is left unchanged.
+ */
+public final class MonitorLogging {
+
+    // 預設單一日誌檔上限
+    public static final long DEFAULT_MAX_FILE_BYTES = 20L * 1024 * 1024;
+
+    // 預設保留天數
+    public static final int DEFAULT_RETENTION_DAYS = 30;
+
+    // 保留強參考，避免 LogManager 回收 logger 後設定失效
+    private static final Logger ROOT = Logger.getLogger("com.file");
+
+    private static AsyncLogHandler handler;
+
+    private MonitorLogging() {
+    }
+
+    /**
+     * 設置 logs/monitor_yyyy-MM-dd.log，重複呼叫時回傳已安裝的處理器
+     */
+    public static synchronized AsyncLogHandler install(Path directory) {
+        if (handler == null) {
+            RollingLogWriter writer = new RollingLogWriter(directory, "monitor", DEFAULT_MAX_FILE_BYTES, DEFAULT_RETENTION_DAYS);
+            handler = new AsyncLogHandler(writer, new JsonLineFormatter());
+            ROOT.addHandler(handler);
+            ROOT.setLevel(Level.INFO);
+            ROOT.setUseParentHandlers(true);
+        }
+        return handler;
+    }
+}
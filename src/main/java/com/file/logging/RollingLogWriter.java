@@ -0,0 +1,144 @@
+package com.file.logging;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Appends log lines to {@code <name>_yyyy-MM-dd[.n].log}.
+ * A new file is started when the date changes or the current file reaches its size limit,
+ * files older than the retention period are deleted. Only used from the single writer thread
+ * of {@link AsyncLogHandler}, so it is not thread-safe.
+ */
+public class RollingLogWriter {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final Path directory;
+    private final String baseName;
+    private final long maxFileBytes;
+    private final int retentionDays;
+
+    private LocalDate currentDate;
+    private int currentIndex;
+    private long currentBytes;
+    private Path currentFile;
+    private BufferedWriter writer;
+
+    /**
+     * @param directory the log directory, created if missing
+     * @param baseName the file name prefix, e.g. "monitor"
+     * @param maxFileBytes the size after which a new file is started
+     * @param retentionDays how many days of log files are kept, 0 keeps all
+     */
+    public RollingLogWriter(Path directory, String baseName, long maxFileBytes, int retentionDays) {
+        if (maxFileBytes <= 0 || retentionDays < 0) {
+            throw new IllegalArgumentException("Log file size must be positive and retention cannot be negative");
+        }
+        this.directory = directory;
+        this.baseName = baseName;
+        this.maxFileBytes = maxFileBytes;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * 寫入一行（不含換行），需要時先換檔
+     */
+    public void writeLine(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        LocalDate today = LocalDate.now();
+        if (writer == null || !today.equals(currentDate)) {
+            open(today);
+        } else if (currentBytes > 0 && currentBytes + bytes.length + 1 > maxFileBytes) {
+            roll();
+        }
+        writer.write(line);
+        writer.write('\n');
+        currentBytes += bytes.length + 1;
+    }
+
+    /**
+     * 將緩衝寫入檔案（每批寫入後呼叫一次）
+     */
+    public void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * 目前寫入的檔案
+     */
+    public Path getCurrentFile() {
+        return currentFile;
+    }
+
+    private void open(LocalDate date) throws IOException {
+        close();
+        Files.createDirectories(directory);
+        currentDate = date;
+        // 同一天重新啟動時接續最後一個檔案
+        currentIndex = 0;
+        while (Files.exists(fileFor(date, currentIndex + 1))) {
+            currentIndex++;
+        }
+        openCurrent();
+        if (currentBytes >= maxFileBytes) {
+            roll();
+        }
+        deleteExpired(date);
+    }
+
+    private void roll() throws IOException {
+        close();
+        currentIndex++;
+        openCurrent();
+    }
+
+    private void openCurrent() throws IOException {
+        currentFile = fileFor(currentDate, currentIndex);
+        currentBytes = Files.exists(currentFile) ? Files.size(currentFile) : 0;
+        writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(currentFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private Path fileFor(LocalDate date, int index) {
+        String name = baseName + "_" + DATE_FORMAT.format(date) + (index == 0 ? "" : "." + index) + ".log";
+        return directory.resolve(name);
+    }
+
+    /**
+     * 刪除超過保存天數的日誌檔
+     */
+    private void deleteExpired(LocalDate today) {
+        if (retentionDays == 0) {
+            return;
+        }
+        String oldest = baseName + "_" + DATE_FORMAT.format(today.minusDays(retentionDays));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, baseName + "_*.log")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                // 檔名中的日期可直接以字串比較
+                if (name.length() >= oldest.length() && name.substring(0, oldest.length()).compareTo(oldest) < 0) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            // 清理失敗不影響寫入
+        }
+    }
+}
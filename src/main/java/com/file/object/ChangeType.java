@@ -0,0 +1,27 @@
+package com.file.object;
+
+/**
+ * Kind of change detected on a monitored file.
+ */
+public enum ChangeType {
+
+    CREATED("新檔案"),
+    MODIFIED("檔案已修改"),
+    DELETED("檔案已刪除"),
+    MOVED("檔案已移動");
+
+    private final String label;
+
+    ChangeType(String label) {
+        this.label = label;
+    }
+
+    /**
+     * 顯示於通知標題的名稱
+     *
+     * @return the label shown to users
+     */
+    public String getLabel() {
+        return label;
+    }
+}
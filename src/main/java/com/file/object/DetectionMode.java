@@ -0,0 +1,23 @@
+package com.file.object;
+
+/**
+ * Strategy used to detect changes in the monitored directory.
+ */
+public enum DetectionMode {
+
+    /**
+     * 優先使用 java.nio WatchService，無法註冊時自動退回輪詢；
+     * 網路磁碟（UNC 路徑或 SMB/NFS 掛載）的事件可能遺失，每次排程仍完整比對
+     */
+    AUTO,
+
+    /**
+     * 僅使用 java.nio WatchService 事件，網路磁碟也只做定期的完整比對；無法註冊時啟動失敗，不退回輪詢
+     */
+    WATCH,
+
+    /**
+     * 每次排程都列舉整個目錄並比對快照
+     */
+    POLL
+}
@@ -0,0 +1,95 @@
+package com.file.object;
+
+import java.nio.file.Path;
+
+/**
+ * Immutable description of one change detected on a monitored file.
+ * Events are created by the scan thread and handed to listeners as is, so they only carry
+ * data that was already read during the scan.
+ */
+public final class FileChangeEvent {
+
+    private final ChangeType type;
+    private final Path path;
+    private final Path previousPath;
+    private final FileSnapshot snapshot;
+    private final FileSnapshot previousSnapshot;
+    private final String detail;
+    private final long detectedAt;
+
+    /**
+     * Constructor with all parameters
+     *
+     * @param type the kind of change
+     * @param path the file, for {@link ChangeType#MOVED} the new location
+     * @param previousPath the old location of a moved file, null otherwise
+     * @param snapshot the current attributes, for deleted files the last known attributes
+     * @param previousSnapshot the attributes before a modification, null otherwise
+     * @param detail an additional description such as the changed workbook parts, may be null
+     * @param detectedAt when the change was detected, in milliseconds
+     */
+    public FileChangeEvent(ChangeType type, Path path, Path previousPath, FileSnapshot snapshot,
+                           FileSnapshot previousSnapshot, String detail, long detectedAt) {
+        if (type == null || path == null) {
+            throw new IllegalArgumentException("Change type and path cannot be null");
+        }
+        this.type = type;
+        this.path = path;
+        this.previousPath = previousPath;
+        this.snapshot = snapshot;
+        this.previousSnapshot = previousSnapshot;
+        this.detail = detail;
+        this.detectedAt = detectedAt;
+    }
+
+    public static FileChangeEvent created(Path path, FileSnapshot snapshot, long detectedAt) {
+        return new FileChangeEvent(ChangeType.CREATED, path, null, snapshot, null, null, detectedAt);
+    }
+
+    public static FileChangeEvent modified(Path path, FileSnapshot previous, FileSnapshot current,
+                                           String detail, long detectedAt) {
+        return new FileChangeEvent(ChangeType.MODIFIED, path, null, current, previous, detail, detectedAt);
+    }
+
+    public static FileChangeEvent deleted(Path path, FileSnapshot last, long detectedAt) {
+        return new FileChangeEvent(ChangeType.DELETED, path, null, last, null, null, detectedAt);
+    }
+
+    public static FileChangeEvent moved(Path from, Path to, FileSnapshot snapshot, long detectedAt) {
+        return new FileChangeEvent(ChangeType.MOVED, to, from, snapshot, null, null, detectedAt);
+    }
+
+    public ChangeType getType() {
+        return type;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public Path getPreviousPath() {
+        return previousPath;
+    }
+
+    public FileSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public FileSnapshot getPreviousSnapshot() {
+        return previousSnapshot;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public long getDetectedAt() {
+        return detectedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "FileChangeEvent{type=" + type + ", path=" + path
+                + (previousPath != null ? ", previousPath=" + previousPath : "") + "}";
+    }
+}
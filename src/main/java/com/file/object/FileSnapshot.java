@@ -0,0 +1,206 @@
+package com.file.object;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of a file's metadata.
+ * Filled from a single attribute read so that diffing, logging and notifications
+ * do not have to go back to the (network) file system.
+ */
+public final class FileSnapshot {
+
+    private final long size;
+    private final long lastModified;
+    private final long creationTime;
+    private final Object fileKey;
+    private final boolean archive;
+
+    /**
+     * Constructor with all parameters
+     *
+     * @param size the file size in bytes
+     * @param lastModified the last modified time in milliseconds
+     * @param creationTime the creation time in milliseconds
+     * @param fileKey the file system key, may be null when not supported (e.g. on Windows)
+     * @param archive the DOS archive flag, false when not available
+     */
+    public FileSnapshot(long size, long lastModified, long creationTime, Object fileKey, boolean archive) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.creationTime = creationTime;
+        this.fileKey = fileKey;
+        this.archive = archive;
+    }
+
+    /**
+     * Create a snapshot from attributes read from the file system
+     *
+     * @param attributes the attributes, DOS attributes also record the archive flag
+     * @return the snapshot
+     */
+    public static FileSnapshot of(BasicFileAttributes attributes) {
+        boolean archive = attributes instanceof DosFileAttributes && ((DosFileAttributes) attributes).isArchive();
+        return new FileSnapshot(attributes.size(),
+                attributes.lastModifiedTime().toMillis(),
+                attributes.creationTime().toMillis(),
+                attributes.fileKey(),
+                archive);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    public boolean isArchive() {
+        return archive;
+    }
+
+    /**
+     * Restore a file key written to a snapshot file
+     *
+     * @param text the text of the file system key, null or empty when the file had none
+     * @return a key that equals the stored form of the same file system key, or null
+     */
+    public static Object storedFileKey(String text) {
+        return text == null || text.isEmpty() ? null : new StoredFileKey(text);
+    }
+
+    /**
+     * 是否為從快照檔還原的檔案鍵（尚未由檔案系統重新讀取）
+     */
+    public static boolean isStoredFileKey(Object fileKey) {
+        return fileKey instanceof StoredFileKey;
+    }
+
+    /**
+     * 兩個檔案鍵是否指向同一個檔案；從快照檔還原的檔案鍵以文字比對
+     */
+    public static boolean sameFileKey(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.equals(b) || ((a instanceof StoredFileKey || b instanceof StoredFileKey) && a.toString().equals(b.toString()));
+    }
+
+    /**
+     * 檔案鍵寫入快照檔再還原後的形式，用於與載入後尚未重新掃描的檔案比對
+     *
+     * @return the stored form of the file key, null when there is no file key
+     */
+    public Object getStoredFileKey() {
+        return fileKey == null || fileKey instanceof StoredFileKey ? fileKey : new StoredFileKey(fileKey.toString());
+    }
+
+    /**
+     * 用於辨識移動或更名的檔案：有 fileKey 時直接使用，否則以大小、修改時間與建立時間組合
+     *
+     * @return a key that stays the same when the file is renamed
+     */
+    public Object getIdentity() {
+        return fileKey != null ? fileKey : new Identity(size, lastModified, creationTime);
+    }
+
+    /**
+     * 判斷檔案內容是否可能已變更（修改時間或大小不同）
+     *
+     * @param previous the snapshot recorded by the previous scan
+     * @return true if the file counts as modified
+     */
+    public boolean isModifiedSince(FileSnapshot previous) {
+        return lastModified != previous.lastModified || size != previous.size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileSnapshot)) {
+            return false;
+        }
+        FileSnapshot that = (FileSnapshot) o;
+        return size == that.size && lastModified == that.lastModified
+                && creationTime == that.creationTime && archive == that.archive
+                && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, lastModified, creationTime, fileKey, archive);
+    }
+
+    @Override
+    public String toString() {
+        return "FileSnapshot{size=" + size + ", lastModified=" + lastModified + ", creationTime=" + creationTime
+                + ", fileKey=" + fileKey + ", archive=" + archive + "}";
+    }
+
+    /**
+     * 從快照檔還原的檔案鍵，只保留檔案系統檔案鍵的文字（例如 "(dev=803,ino=1234)"）
+     */
+    private static final class StoredFileKey {
+        private final String text;
+
+        StoredFileKey(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StoredFileKey && text.equals(((StoredFileKey) o).text);
+        }
+
+        @Override
+        public int hashCode() {
+            return text.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * 檔案系統不提供 fileKey 時（例如 Windows 共用資料夾）的替代識別
+     */
+    private static final class Identity {
+        private final long size;
+        private final long lastModified;
+        private final long creationTime;
+
+        Identity(long size, long lastModified, long creationTime) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.creationTime = creationTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Identity)) {
+                return false;
+            }
+            Identity that = (Identity) o;
+            return size == that.size && lastModified == that.lastModified && creationTime == that.creationTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, creationTime);
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.file.object;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Data object for file monitoring configuration.
  * Contains the directory path, file extension, and file name pattern to monitor.
@@ -9,6 +14,22 @@ public class MonitorDataObject {
     private String directoryMonitorPath;
     private String fileExtension;
     private String monitorFileName;
+    private DetectionMode detectionMode = DetectionMode.AUTO;
+    private boolean recursive;
+    private String stateDirectory;
+    private int monitorIntervalSeconds = 10;
+    private int minIntervalSeconds = 2;
+    private int maxIntervalSeconds = 120;
+    private int settleQuietSeconds = 3;
+    private int notificationDebounceMillis = 2000;
+    private int scanTimeoutSeconds = 60;
+    private boolean contentVerification;
+    private int hashBudgetMegabytes = 256;
+    private boolean workbookAnalysis;
+    private int attributeFetchConcurrency = 16;
+    private boolean trayMetrics;
+    private List<String> includePatterns = Collections.emptyList();
+    private List<String> excludePatterns = Collections.unmodifiableList(Arrays.asList("~$*", "*.tmp"));
 
     /**
      * Default constructor
@@ -16,6 +37,34 @@ public class MonitorDataObject {
     public MonitorDataObject() {
     }
 
+    /**
+     * Copy constructor, used to prepare a new configuration without touching the one in use
+     *
+     * @param other the configuration to copy
+     */
+    public MonitorDataObject(MonitorDataObject other) {
+        this.directoryMonitorPath = other.directoryMonitorPath;
+        this.fileExtension = other.fileExtension;
+        this.monitorFileName = other.monitorFileName;
+        this.detectionMode = other.detectionMode;
+        this.recursive = other.recursive;
+        this.stateDirectory = other.stateDirectory;
+        this.monitorIntervalSeconds = other.monitorIntervalSeconds;
+        this.minIntervalSeconds = other.minIntervalSeconds;
+        this.maxIntervalSeconds = other.maxIntervalSeconds;
+        this.settleQuietSeconds = other.settleQuietSeconds;
+        this.notificationDebounceMillis = other.notificationDebounceMillis;
+        this.scanTimeoutSeconds = other.scanTimeoutSeconds;
+        this.contentVerification = other.contentVerification;
+        this.hashBudgetMegabytes = other.hashBudgetMegabytes;
+        this.workbookAnalysis = other.workbookAnalysis;
+        this.attributeFetchConcurrency = other.attributeFetchConcurrency;
+        this.trayMetrics = other.trayMetrics;
+        // 清單本身不可修改，可直接共用
+        this.includePatterns = other.includePatterns;
+        this.excludePatterns = other.excludePatterns;
+    }
+
     /**
      * Constructor with all parameters
      * 
@@ -63,7 +112,7 @@ public class MonitorDataObject {
     /**
      * Set the file extension
      * 
-     * @param fileExtension the file extension to set
+     * @param fileExtension the file extension to set, several extensions are separated by ';' (e.g. "*.xlsx;*.xlsm")
      * @throws IllegalArgumentException if the file extension is null or empty
      */
     public void setFileExtension(String fileExtension) {
@@ -85,7 +134,7 @@ public class MonitorDataObject {
     /**
      * Set the monitor file name
      * 
-     * @param monitorFileName the monitor file name to set
+     * @param monitorFileName the monitor file name to set, several name prefixes are separated by ';'
      * @throws IllegalArgumentException if the monitor file name is null or empty
      */
     public void setMonitorFileName(String monitorFileName) {
@@ -94,4 +143,344 @@ public class MonitorDataObject {
         }
         this.monitorFileName = monitorFileName;
     }
+
+    /**
+     * Get the change detection mode
+     *
+     * @return the change detection mode
+     */
+    public DetectionMode getDetectionMode() {
+        return detectionMode;
+    }
+
+    /**
+     * Set the change detection mode
+     *
+     * @param detectionMode the change detection mode to set
+     * @throws IllegalArgumentException if the detection mode is null
+     */
+    public void setDetectionMode(DetectionMode detectionMode) {
+        if (detectionMode == null) {
+            throw new IllegalArgumentException("Detection mode cannot be null");
+        }
+        this.detectionMode = detectionMode;
+    }
+
+    /**
+     * Whether sub directories are monitored as well
+     *
+     * @return true if the whole directory tree is monitored
+     */
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    /**
+     * Set whether sub directories are monitored as well
+     *
+     * @param recursive true to monitor the whole directory tree
+     */
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    /**
+     * Get the directory where the file snapshot is persisted
+     *
+     * @return the state directory, or null if the snapshot is not persisted
+     */
+    public String getStateDirectory() {
+        return stateDirectory;
+    }
+
+    /**
+     * Set the directory where the file snapshot is persisted
+     *
+     * @param stateDirectory the state directory, or null to disable persistence
+     * @throws IllegalArgumentException if the state directory is empty
+     */
+    public void setStateDirectory(String stateDirectory) {
+        if (stateDirectory != null && stateDirectory.trim().isEmpty()) {
+            throw new IllegalArgumentException("State directory cannot be empty");
+        }
+        this.stateDirectory = stateDirectory;
+    }
+
+    /**
+     * Get the scan interval in seconds
+     *
+     * @return the scan interval in seconds
+     */
+    public int getMonitorIntervalSeconds() {
+        return monitorIntervalSeconds;
+    }
+
+    /**
+     * Set the scan interval in seconds
+     *
+     * @param monitorIntervalSeconds the scan interval in seconds
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public void setMonitorIntervalSeconds(int monitorIntervalSeconds) {
+        if (monitorIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("Monitor interval must be positive");
+        }
+        this.monitorIntervalSeconds = monitorIntervalSeconds;
+    }
+
+    /**
+     * Get the shortest scan interval used right after changes were seen
+     *
+     * @return the minimum scan interval in seconds
+     */
+    public int getMinIntervalSeconds() {
+        return minIntervalSeconds;
+    }
+
+    /**
+     * Set the shortest scan interval used right after changes were seen
+     *
+     * @param minIntervalSeconds the minimum scan interval in seconds
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public void setMinIntervalSeconds(int minIntervalSeconds) {
+        if (minIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("Minimum interval must be positive");
+        }
+        this.minIntervalSeconds = minIntervalSeconds;
+    }
+
+    /**
+     * Get the longest scan interval a quiet target backs off to
+     *
+     * @return the maximum scan interval in seconds
+     */
+    public int getMaxIntervalSeconds() {
+        return maxIntervalSeconds;
+    }
+
+    /**
+     * Set the longest scan interval a quiet target backs off to
+     *
+     * @param maxIntervalSeconds the maximum scan interval in seconds
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public void setMaxIntervalSeconds(int maxIntervalSeconds) {
+        if (maxIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("Maximum interval must be positive");
+        }
+        this.maxIntervalSeconds = maxIntervalSeconds;
+    }
+
+    /**
+     * Get how long a changed file has to stay unchanged before it is reported
+     *
+     * @return the quiet period in seconds, 0 reports changes immediately
+     */
+    public int getSettleQuietSeconds() {
+        return settleQuietSeconds;
+    }
+
+    /**
+     * Set how long a changed file has to stay unchanged before it is reported
+     *
+     * @param settleQuietSeconds the quiet period in seconds, 0 reports changes immediately
+     * @throws IllegalArgumentException if the quiet period is negative
+     */
+    public void setSettleQuietSeconds(int settleQuietSeconds) {
+        if (settleQuietSeconds < 0) {
+            throw new IllegalArgumentException("Settle quiet period cannot be negative");
+        }
+        this.settleQuietSeconds = settleQuietSeconds;
+    }
+
+    /**
+     * Get how long change notifications are collected before one summary is shown
+     *
+     * @return the debounce window in milliseconds, 0 shows every scan's changes immediately
+     */
+    public int getNotificationDebounceMillis() {
+        return notificationDebounceMillis;
+    }
+
+    /**
+     * Set how long change notifications are collected before one summary is shown
+     *
+     * @param notificationDebounceMillis the debounce window in milliseconds
+     * @throws IllegalArgumentException if the window is negative
+     */
+    public void setNotificationDebounceMillis(int notificationDebounceMillis) {
+        if (notificationDebounceMillis < 0) {
+            throw new IllegalArgumentException("Notification debounce window cannot be negative");
+        }
+        this.notificationDebounceMillis = notificationDebounceMillis;
+    }
+
+    /**
+     * Get how long one scan may run before it is cancelled and reported as an overrun
+     *
+     * @return the scan deadline in seconds, 0 if scans have no deadline
+     */
+    public int getScanTimeoutSeconds() {
+        return scanTimeoutSeconds;
+    }
+
+    /**
+     * Set how long one scan may run before it is cancelled and reported as an overrun
+     *
+     * @param scanTimeoutSeconds the scan deadline in seconds, 0 if scans have no deadline
+     * @throws IllegalArgumentException if the deadline is negative
+     */
+    public void setScanTimeoutSeconds(int scanTimeoutSeconds) {
+        if (scanTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("Scan timeout cannot be negative");
+        }
+        this.scanTimeoutSeconds = scanTimeoutSeconds;
+    }
+
+    /**
+     * Whether metadata changes are confirmed by comparing content hashes.
+     * Only files whose size or modification time changed are read, up to the hash budget
+     * per scan; unchanged files are never hashed.
+     *
+     * @return true if touch-only modifications are suppressed
+     */
+    public boolean isContentVerification() {
+        return contentVerification;
+    }
+
+    /**
+     * Set whether metadata changes are confirmed by comparing content hashes
+     *
+     * @param contentVerification true to suppress touch-only modifications
+     */
+    public void setContentVerification(boolean contentVerification) {
+        this.contentVerification = contentVerification;
+    }
+
+    /**
+     * Get the maximum amount of data read for hashing during one scan
+     *
+     * @return the hash budget in megabytes
+     */
+    public int getHashBudgetMegabytes() {
+        return hashBudgetMegabytes;
+    }
+
+    /**
+     * Set the maximum amount of data read for hashing during one scan
+     *
+     * @param hashBudgetMegabytes the hash budget in megabytes
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public void setHashBudgetMegabytes(int hashBudgetMegabytes) {
+        if (hashBudgetMegabytes <= 0) {
+            throw new IllegalArgumentException("Hash budget must be positive");
+        }
+        this.hashBudgetMegabytes = hashBudgetMegabytes;
+    }
+
+    /**
+     * Whether modified workbooks are summarized by the parts that changed.
+     * Off by default; when enabled the ZIP central directory of a workbook is read
+     * when it is created or modified, never for unchanged files.
+     *
+     * @return true if worksheet level change summaries are reported
+     */
+    public boolean isWorkbookAnalysis() {
+        return workbookAnalysis;
+    }
+
+    /**
+     * Set whether modified workbooks are summarized by the parts that changed
+     *
+     * @param workbookAnalysis true to report worksheet level change summaries
+     */
+    public void setWorkbookAnalysis(boolean workbookAnalysis) {
+        this.workbookAnalysis = workbookAnalysis;
+    }
+
+    /**
+     * Get how many file attributes are read concurrently from the share host
+     *
+     * @return the maximum number of attribute reads in flight per host
+     */
+    public int getAttributeFetchConcurrency() {
+        return attributeFetchConcurrency;
+    }
+
+    /**
+     * Set how many file attributes are read concurrently from the share host
+     *
+     * @param attributeFetchConcurrency the maximum number of attribute reads in flight per host
+     * @throws IllegalArgumentException if the concurrency is less than 1
+     */
+    public void setAttributeFetchConcurrency(int attributeFetchConcurrency) {
+        if (attributeFetchConcurrency < 1) {
+            throw new IllegalArgumentException("Attribute fetch concurrency must be at least 1");
+        }
+        this.attributeFetchConcurrency = attributeFetchConcurrency;
+    }
+
+    /**
+     * Get the additional patterns a file name has to match (globs, or regular expressions prefixed with "re:")
+     *
+     * @return the include patterns, empty if only extension and name prefix apply
+     */
+    public List<String> getIncludePatterns() {
+        return includePatterns;
+    }
+
+    /**
+     * Set the additional patterns a file name has to match (globs, or regular expressions prefixed with "re:")
+     *
+     * @param includePatterns the include patterns
+     * @throws IllegalArgumentException if the list is null
+     */
+    public void setIncludePatterns(List<String> includePatterns) {
+        if (includePatterns == null) {
+            throw new IllegalArgumentException("Include patterns cannot be null");
+        }
+        this.includePatterns = Collections.unmodifiableList(new ArrayList<>(includePatterns));
+    }
+
+    /**
+     * Get the patterns of file names that are never monitored, such as Office lock files
+     *
+     * @return the exclude patterns
+     */
+    public List<String> getExcludePatterns() {
+        return excludePatterns;
+    }
+
+    /**
+     * Set the patterns of file names that are never monitored, such as Office lock files
+     *
+     * @param excludePatterns the exclude patterns
+     * @throws IllegalArgumentException if the list is null
+     */
+    public void setExcludePatterns(List<String> excludePatterns) {
+        if (excludePatterns == null) {
+            throw new IllegalArgumentException("Exclude patterns cannot be null");
+        }
+        this.excludePatterns = Collections.unmodifiableList(new ArrayList<>(excludePatterns));
+    }
+
+    /**
+     * Whether the tray tooltip shows the latest scan metrics
+     *
+     * @return true if key scan figures are shown in the tray tooltip
+     */
+    public boolean isTrayMetrics() {
+        return trayMetrics;
+    }
+
+    /**
+     * Set whether the tray tooltip shows the latest scan metrics
+     *
+     * @param trayMetrics true to show key scan figures in the tray tooltip
+     */
+    public void setTrayMetrics(boolean trayMetrics) {
+        this.trayMetrics = trayMetrics;
+    }
 }
@@ -0,0 +1,204 @@
+package com.file.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the attributes of many files concurrently.
+ * On a network share every stat is a round-trip, so a folder listing is fetched by several
+ * workers at once and the scan time depends on the latency instead of the number of files.
+ * One fetcher is shared by all targets on the same share host and its permits cap the stats in
+ * flight against that host. Virtual threads are used when the JDK has them, a bounded daemon
+ * pool otherwise. Results are returned in the order of the listing, so the diff stays deterministic.
+ */
+public class AttributeFetcher implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(AttributeFetcher.class.getName());
+
+    // 檔案數少於此值時直接在掃描執行緒讀取，不值得切換執行緒
+    private static final int MIN_PARALLEL_FILES = 8;
+
+    private final int concurrency;
+
+    private final String name;
+
+    // 同一主機同時進行中的讀取上限
+    private final Semaphore permits;
+
+    private ExecutorService executor;
+
+    private boolean virtualThreads;
+
+    /**
+     * @param concurrency the maximum number of attribute reads in flight
+     * @param name the name used for the worker threads, usually the share host
+     */
+    public AttributeFetcher(int concurrency, String name) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1");
+        }
+        this.concurrency = concurrency;
+        this.name = name;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    /**
+     * 依序讀取所有檔案的屬性，檔案已不存在時對應位置為 null
+     *
+     * @param files the files, usually one directory listing
+     * @return the attributes in the same order as the files
+     * @throws IOException the first failure in listing order, other than a missing file
+     */
+    public BasicFileAttributes[] fetch(List<Path> files) throws IOException {
+        return fetch(files, null);
+    }
+
+    /**
+     * 同 {@link #fetch(List)}，結果寫入呼叫端重複使用的陣列，避免每次列舉都配置新陣列
+     *
+     * @param files the files, usually one directory listing
+     * @param buffer the array to fill, a new one is allocated if it is null or too small
+     * @return the filled array, only the first {@code files.size()} elements are valid
+     * @throws IOException the first failure in listing order, other than a missing file
+     */
+    public BasicFileAttributes[] fetch(List<Path> files, BasicFileAttributes[] buffer) throws IOException {
+        int count = files.size();
+        BasicFileAttributes[] results = buffer != null && buffer.length >= count ? buffer : new BasicFileAttributes[count];
+        if (count < MIN_PARALLEL_FILES || concurrency == 1) {
+            for (int i = 0; i < count; i++) {
+                results[i] = readOrNull(files.get(i));
+            }
+            return results;
+        }
+
+        IOException[] errors = new IOException[count];
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        int workers = Math.min(concurrency, count);
+        CountDownLatch done = new CountDownLatch(workers);
+
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int index;
+                    while (!cancelled.get() && (index = nextIndex.getAndIncrement()) < count) {
+                        permits.acquireUninterruptibly();
+                        try {
+                            results[index] = readOrNull(files.get(index));
+                        } catch (IOException e) {
+                            errors[index] = e;
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        // 掃描執行緒本身也是其中一個工作者
+        ExecutorService pool = executor();
+        for (int i = 1; i < workers; i++) {
+            try {
+                pool.execute(worker);
+            } catch (RejectedExecutionException e) {
+                done.countDown();
+            }
+        }
+        worker.run();
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Attribute fetch interrupted");
+        }
+        for (IOException error : errors) {
+            if (error != null) {
+                throw error;
+            }
+        }
+        return results;
+    }
+
+    private static BasicFileAttributes readOrNull(Path file) throws IOException {
+        try {
+            return FileAttributeReader.readAttributes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * 是否使用虛擬執行緒
+     */
+    public synchronized boolean isUsingVirtualThreads() {
+        executor();
+        return virtualThreads;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = createVirtualThreadExecutor();
+            virtualThreads = executor != null;
+            if (executor == null) {
+                executor = Executors.newFixedThreadPool(concurrency, daemonThreadFactory("attribute-fetch-" + name));
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * JDK 21 以上以反射取得虛擬執行緒的執行器，避免提高編譯目標版本
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.log(Level.FINE, "虛擬執行緒不可用，改用固定大小的執行緒池", e);
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
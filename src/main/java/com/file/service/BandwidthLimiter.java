@@ -0,0 +1,48 @@
+package com.file.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the combined throughput of several copying threads.
+ * Every caller reserves the bytes it is about to transfer and sleeps until the reservation is
+ * due, so the bytes per second stay at the limit however many threads copy at once.
+ */
+final class BandwidthLimiter {
+
+    private final long bytesPerSecond;
+
+    // 下一筆保留可開始的時間（System.nanoTime）
+    private long nextFreeNanos;
+
+    /**
+     * @param bytesPerSecond the limit, 0 or less for no limit
+     */
+    BandwidthLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * 保留指定位元組數，超過限制時等待
+     */
+    void acquire(long bytes) throws InterruptedException {
+        if (bytesPerSecond <= 0 || bytes <= 0) {
+            return;
+        }
+        long wait = reserve(bytes, System.nanoTime());
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * 登記傳輸並回傳需要等待的時間；閒置期間不累積額度，避免之後瞬間爆量
+     */
+    synchronized long reserve(long bytes, long now) {
+        if (nextFreeNanos < now) {
+            nextFreeNanos = now;
+        }
+        long wait = nextFreeNanos - now;
+        nextFreeNanos += (long) (bytes * 1_000_000_000.0 / bytesPerSecond);
+        return wait;
+    }
+}
@@ -0,0 +1,322 @@
+package com.file.service;
+
+import com.file.object.ChangeType;
+import com.file.object.FileChangeEvent;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers file change events from the scan threads to any number of listeners.
+ * Every subscription has its own bounded lock-free ring buffer and dispatcher thread, so a
+ * slow listener never stretches a scan: depending on the subscription's {@link OverflowPolicy}
+ * a full queue drops the oldest event or merges events per path. Only listeners that ask for
+ * {@link OverflowPolicy#BLOCK} can make the publisher wait. Queue depth and drop counters are
+ * exposed per subscription.
+ */
+public class ChangeEventBus implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ChangeEventBus.class.getName());
+
+    // 預設每個監聽者的佇列容量
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // 分派執行緒閒置時的最長等待時間（防止錯過喚醒）
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // BLOCK 政策下佇列已滿時的重試間隔
+    private static final long BLOCK_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * 以預設容量訂閱
+     */
+    public Subscription subscribe(FileChangeListener listener, OverflowPolicy policy) {
+        return subscribe(listener, policy, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 訂閱變更事件，每個訂閱有自己的佇列與分派執行緒
+     *
+     * @param listener receives the events
+     * @param policy what happens when the listener falls behind
+     * @param capacity the queue capacity, rounded up to a power of two
+     * @return the subscription, close it to unsubscribe
+     */
+    public Subscription subscribe(FileChangeListener listener, OverflowPolicy policy, int capacity) {
+        if (listener == null || policy == null) {
+            throw new IllegalArgumentException("Listener and overflow policy cannot be null");
+        }
+        Subscription subscription = new Subscription(listener, policy, capacity);
+        subscriptions.add(subscription);
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * 發布一筆事件給所有訂閱者
+     */
+    public void publish(FileChangeEvent event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * 發布一次掃描的所有事件
+     */
+    public void publishAll(List<FileChangeEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            publish(events.get(i));
+        }
+    }
+
+    /**
+     * 目前的訂閱
+     */
+    public List<Subscription> getSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+
+    /**
+     * 結束所有訂閱，已排入佇列的事件仍會送達
+     */
+    @Override
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * One listener with its queue, dispatcher thread and counters.
+     */
+    public final class Subscription implements Closeable {
+
+        private final FileChangeListener listener;
+        private final OverflowPolicy policy;
+
+        // MERGE_PER_PATH 時佇列只保存路徑，事件內容存放在 pendingByPath
+        private final EventRingBuffer<Object> queue;
+        private final ConcurrentHashMap<Path, FileChangeEvent> pendingByPath;
+
+        private final Thread thread;
+
+        private final AtomicLong published = new AtomicLong();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong merged = new AtomicLong();
+
+        private volatile boolean running = true;
+
+        // 分派執行緒準備休眠時設定，發布者據此決定是否喚醒
+        private volatile boolean waiting;
+
+        private Subscription(FileChangeListener listener, OverflowPolicy policy, int capacity) {
+            this.listener = listener;
+            this.policy = policy;
+            this.queue = new EventRingBuffer<>(capacity);
+            this.pendingByPath = policy == OverflowPolicy.MERGE_PER_PATH ? new ConcurrentHashMap<>() : null;
+            this.thread = new Thread(this::dispatchLoop, "change-listener-" + THREAD_COUNTER.incrementAndGet());
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void offer(FileChangeEvent event) {
+            if (!running) {
+                return;
+            }
+            published.incrementAndGet();
+            switch (policy) {
+                case BLOCK:
+                    while (!queue.offer(event)) {
+                        if (!running) {
+                            dropped.incrementAndGet();
+                            return;
+                        }
+                        wakeUp();
+                        LockSupport.parkNanos(this, BLOCK_RETRY_NANOS);
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while (!queue.offer(event)) {
+                        if (queue.poll() != null) {
+                            dropped.incrementAndGet();
+                        }
+                    }
+                    break;
+                case MERGE_PER_PATH:
+                    offerMerged(event);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown overflow policy: " + policy);
+            }
+            wakeUp();
+        }
+
+        /**
+         * 同一路徑已在佇列中時只合併內容，否則將路徑排入佇列
+         */
+        private void offerMerged(FileChangeEvent event) {
+            boolean[] queued = new boolean[1];
+            pendingByPath.compute(event.getPath(), (path, previous) -> {
+                if (previous == null) {
+                    return event;
+                }
+                queued[0] = true;
+                merged.incrementAndGet();
+                return merge(previous, event);
+            });
+            if (queued[0]) {
+                return;
+            }
+            while (!queue.offer(event.getPath())) {
+                Object oldest = queue.poll();
+                if (oldest != null && !oldest.equals(event.getPath()) && pendingByPath.remove(oldest) != null) {
+                    dropped.incrementAndGet();
+                }
+            }
+        }
+
+        private void dispatchLoop() {
+            while (running || !queue.isEmpty()) {
+                Object item = queue.poll();
+                if (item == null) {
+                    waiting = true;
+                    if (queue.isEmpty() && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    waiting = false;
+                    continue;
+                }
+                FileChangeEvent event = pendingByPath != null ? pendingByPath.remove(item) : (FileChangeEvent) item;
+                if (event == null) {
+                    // 事件已相互抵銷（例如建立後又刪除）
+                    continue;
+                }
+                try {
+                    listener.onChange(event);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "變更事件監聽者發生錯誤: " + listener, e);
+                }
+                delivered.incrementAndGet();
+            }
+        }
+
+        private void wakeUp() {
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        public OverflowPolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * 尚未送達的事件數
+         */
+        public int getQueueDepth() {
+            return queue.size();
+        }
+
+        public int getCapacity() {
+            return queue.capacity();
+        }
+
+        public long getPublishedCount() {
+            return published.get();
+        }
+
+        public long getDeliveredCount() {
+            return delivered.get();
+        }
+
+        /**
+         * 因佇列已滿而捨棄的事件數
+         */
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        /**
+         * 與同一路徑尚未送達的事件合併的次數
+         */
+        public long getMergedCount() {
+            return merged.get();
+        }
+
+        /**
+         * 取消訂閱，已排入佇列的事件仍會送達
+         */
+        @Override
+        public void close() {
+            if (!running) {
+                return;
+            }
+            running = false;
+            subscriptions.remove(this);
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * 等待分派執行緒結束
+         */
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            thread.join(unit.toMillis(timeout));
+            return !thread.isAlive();
+        }
+    }
+
+    /**
+     * 合併同一路徑尚未送達的兩筆事件，結果為 null 表示兩者相互抵銷
+     */
+    static FileChangeEvent merge(FileChangeEvent previous, FileChangeEvent next) {
+        ChangeType before = previous.getType();
+        switch (next.getType()) {
+            case MODIFIED:
+                if (before == ChangeType.CREATED || before == ChangeType.MOVED) {
+                    // 仍是新檔案（或移動後的檔案），只更新屬性
+                    return new FileChangeEvent(before, next.getPath(), previous.getPreviousPath(),
+                            next.getSnapshot(), null, next.getDetail(), next.getDetectedAt());
+                }
+                if (before == ChangeType.MODIFIED) {
+                    return FileChangeEvent.modified(next.getPath(), previous.getPreviousSnapshot(),
+                            next.getSnapshot(), next.getDetail(), next.getDetectedAt());
+                }
+                return next;
+            case DELETED:
+                if (before == ChangeType.CREATED) {
+                    return null;
+                }
+                if (before == ChangeType.MOVED) {
+                    return FileChangeEvent.deleted(previous.getPreviousPath(), next.getSnapshot(), next.getDetectedAt());
+                }
+                return next;
+            case CREATED:
+                if (before == ChangeType.DELETED) {
+                    return FileChangeEvent.modified(next.getPath(), previous.getSnapshot(),
+                            next.getSnapshot(), null, next.getDetectedAt());
+                }
+                return next;
+            default:
+                return next;
+        }
+    }
+}
@@ -0,0 +1,872 @@
+package com.file.service;
+
+import com.file.object.ChangeType;
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only journal of every detected change.
+ *
+ * <p>Events are numbered with a sequence number and written to segment files named after the
+ * first sequence number they contain. Each record is length prefixed and protected by a CRC32,
+ * like the records of {@link SnapshotStore}. Every {@value #INDEX_INTERVAL} records a segment
+ * starts a new index block that remembers its file offset, first sequence number and the
+ * smallest and largest detection time it contains, so time range queries and replays only read
+ * the blocks that can match. The index of a full segment is written next to it; the segment that
+ * is still being appended to is re-indexed when the journal is opened and a torn tail is cut off.</p>
+ *
+ * <p>The journal is a {@link FileChangeListener}: events are encoded into a memory buffer on the
+ * listener thread and written in batches, either when the buffer is large enough or by the
+ * background flush every second. Segments older than the retention period are deleted, and older
+ * segments are compacted by collapsing consecutive modifications of the same file into one.</p>
+ */
+public class ChangeJournal implements FileChangeListener, Closeable {
+
+    private static final Logger logger = Logger.getLogger(ChangeJournal.class.getName());
+
+    // 區段檔識別碼 "FWJL"
+    static final int MAGIC = 0x46574A4C;
+
+    // 索引檔識別碼 "FWJI"
+    static final int INDEX_MAGIC = 0x46574A49;
+
+    // 格式版本，欄位變動時需遞增
+    static final int VERSION = 1;
+
+    // 區段檔標頭：識別碼、版本、起始序號、是否已壓縮
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES + 1;
+
+    // 每個索引區塊的記錄數
+    static final int INDEX_INTERVAL = 256;
+
+    // 預設單一區段檔上限
+    public static final long DEFAULT_SEGMENT_BYTES = 16L * 1024 * 1024;
+
+    // 預設保留天數
+    public static final int DEFAULT_RETENTION_DAYS = 90;
+
+    // 緩衝超過此大小時立即寫入
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    // 背景寫入間隔
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    // 壓縮檢查間隔
+    private static final long COMPACT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    // 超過此時間的區段才壓縮，近期的變化保留完整細節
+    private static final long COMPACT_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // 說明文字上限，writeUTF 最多 65535 位元組
+    private static final int MAX_DETAIL_LENGTH = 8000;
+
+    private static final byte FLAG_PREVIOUS_PATH = 1;
+    private static final byte FLAG_SNAPSHOT = 2;
+    private static final byte FLAG_PREVIOUS_SNAPSHOT = 4;
+    private static final byte FLAG_DETAIL = 8;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long retentionMillis;
+
+    // 依起始序號排序的區段
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    // 尚未寫入檔案的記錄
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private final CRC32 crc = new CRC32();
+
+    private final ScheduledExecutorService executor;
+
+    private Segment active;
+    private FileChannel activeChannel;
+    private long nextSequence = 1;
+    private volatile boolean closed;
+
+    // 每筆記錄加入後通知（例如事件串流），可為 null
+    private volatile AppendListener appendListener;
+
+    public ChangeJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_RETENTION_DAYS, true);
+    }
+
+    /**
+     * @param directory where the segment files are stored, created if missing
+     * @param segmentBytes the size after which a new segment is started
+     * @param retentionDays how many days of changes are kept, 0 keeps everything
+     * @param background true to flush and compact on a background thread, false if the caller
+     *                   calls {@link #flush()} and {@link #compact()} itself
+     */
+    public ChangeJournal(Path directory, long segmentBytes, int retentionDays, boolean background) throws IOException {
+        if (segmentBytes <= HEADER_SIZE || retentionDays < 0) {
+            throw new IllegalArgumentException("Segment size must be positive and retention cannot be negative");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(retentionDays);
+
+        Files.createDirectories(directory);
+        loadSegments();
+
+        if (background) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "change-journal");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "寫入變更紀錄失敗: " + directory, e);
+                    }
+                }
+            }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "壓縮變更紀錄失敗: " + directory, e);
+                    }
+                }
+            }, TimeUnit.MINUTES.toMillis(1), COMPACT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 下一筆記錄的序號，可作為之後重播的起點
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    @Override
+    public void onChange(FileChangeEvent event) {
+        if (closed) {
+            return;
+        }
+        try {
+            append(event);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "寫入變更紀錄失敗: " + event.getPath(), e);
+        }
+    }
+
+    /**
+     * 加入一筆變更，先寫入記憶體緩衝，累積足夠後才寫入檔案
+     *
+     * @return the sequence number of the event
+     */
+    public synchronized long append(FileChangeEvent event) throws IOException {
+        ensureOpen();
+        encode(nextSequence, event);
+        int recordLength = recordBuffer.size() + 2 * Integer.BYTES;
+        if (active.count > 0 && active.size + pending.size() + recordLength > segmentBytes) {
+            roll();
+        }
+        long sequence = nextSequence++;
+        active.add(active.size + pending.size(), sequence, event.getDetectedAt());
+        writeRecord(pendingOut);
+        AppendListener listener = appendListener;
+        if (listener != null) {
+            listener.appended(sequence, event);
+        }
+        if (pending.size() >= FLUSH_THRESHOLD) {
+            flushPending();
+        }
+        return sequence;
+    }
+
+    /**
+     * 設定記錄加入後的通知，同一時間只有一個；監聽者在紀錄的鎖內依序號順序被呼叫，必須立即返回
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public void setAppendListener(AppendListener listener) {
+        this.appendListener = listener;
+    }
+
+    /**
+     * 將緩衝中的記錄寫入檔案
+     */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            flushPending();
+        }
+    }
+
+    /**
+     * 查詢指定路徑（含子目錄）在時間範圍內的變更，依序號排序
+     *
+     * @param under the file or directory, null for every path; moves match on either location
+     * @param fromMillis the start of the range, inclusive
+     * @param toMillis the end of the range, inclusive
+     */
+    public synchronized List<Entry> query(Path under, long fromMillis, long toMillis) throws IOException {
+        ensureOpen();
+        flushPending();
+        List<Entry> result = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment.count == 0 || segment.maxTime < fromMillis || segment.minTime > toMillis) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+                for (int i = 0; i < segment.blocks.size(); i++) {
+                    IndexBlock block = segment.blocks.get(i);
+                    if (block.maxTime < fromMillis || block.minTime > toMillis) {
+                        continue;
+                    }
+                    for (Entry entry : readBlock(channel, segment, i)) {
+                        long time = entry.event.getDetectedAt();
+                        if (time >= fromMillis && time <= toMillis && isUnder(entry.event, under)) {
+                            result.add(entry);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 從指定序號開始重播，最多回傳 limit 筆；下一次的起點為最後一筆的序號加一
+     *
+     * @param fromSequence the first sequence number to return, compacted or expired records are skipped
+     */
+    public synchronized List<Entry> replay(long fromSequence, int limit) throws IOException {
+        ensureOpen();
+        flushPending();
+        List<Entry> result = new ArrayList<>();
+        Long first = segments.floorKey(fromSequence);
+        for (Segment segment : segments.tailMap(first == null ? Long.MIN_VALUE : first).values()) {
+            if (segment.count == 0 || segment.lastSequence < fromSequence) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+                for (int i = segment.findBlock(fromSequence); i < segment.blocks.size(); i++) {
+                    for (Entry entry : readBlock(channel, segment, i)) {
+                        if (entry.sequence >= fromSequence) {
+                            result.add(entry);
+                            if (result.size() >= limit) {
+                                return result;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 刪除超過保存期限的區段，並壓縮較舊的區段（同一檔案連續的修改只保留一筆）
+     */
+    public synchronized void compact() throws IOException {
+        if (closed) {
+            return;
+        }
+        flushPending();
+        long now = System.currentTimeMillis();
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment == active) {
+                continue;
+            }
+            if (retentionMillis > 0 && segment.maxTime < now - retentionMillis) {
+                Files.deleteIfExists(segment.file);
+                Files.deleteIfExists(indexFile(segment.file));
+                segments.remove(segment.base);
+                logger.info("已刪除過期的變更紀錄: " + segment.file.getFileName());
+            } else if (!segment.compacted && segment.maxTime < now - COMPACT_AGE_MILLIS) {
+                rewriteCompacted(segment);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        try {
+            flushPending();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "寫入變更紀錄失敗: " + directory, e);
+        }
+        closeActiveChannel();
+        closed = true;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Change journal is closed");
+        }
+    }
+
+    private static boolean isUnder(FileChangeEvent event, Path under) {
+        if (under == null) {
+            return true;
+        }
+        return event.getPath().startsWith(under)
+                || (event.getPreviousPath() != null && event.getPreviousPath().startsWith(under));
+    }
+
+    // ---- 寫入 ----
+
+    private void flushPending() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        while (buffer.hasRemaining()) {
+            activeChannel.write(buffer);
+        }
+        activeChannel.force(false);
+        active.size += pending.size();
+        pending.reset();
+    }
+
+    /**
+     * 目前的區段已滿，寫入索引檔後開始新的區段
+     */
+    private void roll() throws IOException {
+        flushPending();
+        closeActiveChannel();
+        writeIndex(active);
+        startSegment(nextSequence);
+    }
+
+    private void startSegment(long base) throws IOException {
+        Path file = directory.resolve(String.format("%020d.seg", base));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = header(base, false);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+        active = new Segment(file, base, false);
+        active.size = HEADER_SIZE;
+        segments.put(base, active);
+        activeChannel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeActiveChannel() {
+        if (activeChannel != null) {
+            try {
+                activeChannel.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "關閉變更紀錄時發生錯誤", e);
+            }
+            activeChannel = null;
+        }
+    }
+
+    private void encode(long sequence, FileChangeEvent event) throws IOException {
+        recordBuffer.reset();
+        recordOut.writeLong(sequence);
+        recordOut.writeLong(event.getDetectedAt());
+        recordOut.writeByte(event.getType().ordinal());
+        recordOut.writeUTF(event.getPath().toString());
+        byte flags = 0;
+        if (event.getPreviousPath() != null) {
+            flags |= FLAG_PREVIOUS_PATH;
+        }
+        if (event.getSnapshot() != null) {
+            flags |= FLAG_SNAPSHOT;
+        }
+        if (event.getPreviousSnapshot() != null) {
+            flags |= FLAG_PREVIOUS_SNAPSHOT;
+        }
+        if (event.getDetail() != null) {
+            flags |= FLAG_DETAIL;
+        }
+        recordOut.writeByte(flags);
+        if (event.getPreviousPath() != null) {
+            recordOut.writeUTF(event.getPreviousPath().toString());
+        }
+        if (event.getSnapshot() != null) {
+            writeSnapshot(event.getSnapshot());
+        }
+        if (event.getPreviousSnapshot() != null) {
+            writeSnapshot(event.getPreviousSnapshot());
+        }
+        if (event.getDetail() != null) {
+            String detail = event.getDetail();
+            recordOut.writeUTF(detail.length() > MAX_DETAIL_LENGTH ? detail.substring(0, MAX_DETAIL_LENGTH) : detail);
+        }
+    }
+
+    private void writeSnapshot(FileSnapshot snapshot) throws IOException {
+        recordOut.writeLong(snapshot.getSize());
+        recordOut.writeLong(snapshot.getLastModified());
+        recordOut.writeLong(snapshot.getCreationTime());
+        recordOut.writeBoolean(snapshot.isArchive());
+    }
+
+    /**
+     * 將 recordBuffer 中已編碼的記錄加上長度與校驗碼寫出
+     */
+    private void writeRecord(DataOutputStream out) throws IOException {
+        byte[] body = recordBuffer.toByteArray();
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeInt(checksum(body, 0, body.length));
+    }
+
+    private static ByteBuffer header(long base, boolean compacted) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(base).put((byte) (compacted ? 1 : 0));
+        header.flip();
+        return header;
+    }
+
+    // ---- 讀取 ----
+
+    /**
+     * 讀取一個索引區塊內的所有記錄
+     */
+    private List<Entry> readBlock(FileChannel channel, Segment segment, int blockIndex) throws IOException {
+        IndexBlock block = segment.blocks.get(blockIndex);
+        long end = blockIndex + 1 < segment.blocks.size() ? segment.blocks.get(blockIndex + 1).offset : segment.size;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - block.offset));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, block.offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+
+        List<Entry> entries = new ArrayList<>(block.count);
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            if (length <= 0 || buffer.remaining() < length + Integer.BYTES) {
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get(body);
+            if (checksum(body, 0, length) != buffer.getInt()) {
+                logger.warning("變更紀錄校驗失敗，已略過區塊其餘記錄: " + segment.file.getFileName());
+                break;
+            }
+            entries.add(decode(body));
+        }
+        return entries;
+    }
+
+    private static Entry decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        long sequence = in.readLong();
+        long detectedAt = in.readLong();
+        ChangeType type = ChangeType.values()[in.readByte()];
+        Path path = Paths.get(in.readUTF());
+        byte flags = in.readByte();
+        Path previousPath = (flags & FLAG_PREVIOUS_PATH) != 0 ? Paths.get(in.readUTF()) : null;
+        FileSnapshot snapshot = (flags & FLAG_SNAPSHOT) != 0 ? readSnapshot(in) : null;
+        FileSnapshot previousSnapshot = (flags & FLAG_PREVIOUS_SNAPSHOT) != 0 ? readSnapshot(in) : null;
+        String detail = (flags & FLAG_DETAIL) != 0 ? in.readUTF() : null;
+        return new Entry(sequence,
+                new FileChangeEvent(type, path, previousPath, snapshot, previousSnapshot, detail, detectedAt));
+    }
+
+    private static FileSnapshot readSnapshot(DataInputStream in) throws IOException {
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        long creationTime = in.readLong();
+        boolean archive = in.readBoolean();
+        return new FileSnapshot(size, lastModified, creationTime, null, archive);
+    }
+
+    // ---- 開啟與索引 ----
+
+    private void loadSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.seg")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            boolean last = i == files.size() - 1;
+            Segment segment = last ? null : readIndex(file);
+            if (segment == null) {
+                segment = scanSegment(file, last);
+                if (segment == null) {
+                    logger.warning("變更紀錄區段標頭損毀，已略過: " + file);
+                    continue;
+                }
+                if (!last) {
+                    writeIndex(segment);
+                }
+            }
+            segments.put(segment.base, segment);
+            if (segment.count > 0) {
+                nextSequence = Math.max(nextSequence, segment.lastSequence + 1);
+            } else {
+                nextSequence = Math.max(nextSequence, segment.base);
+            }
+        }
+
+        Map.Entry<Long, Segment> lastEntry = segments.lastEntry();
+        if (lastEntry != null && !lastEntry.getValue().compacted) {
+            active = lastEntry.getValue();
+            activeChannel = FileChannel.open(active.file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } else {
+            startSegment(nextSequence);
+        }
+    }
+
+    /**
+     * 逐筆讀取區段並重建索引，結尾不完整時截斷到最後一筆完整的記錄
+     */
+    private Segment scanSegment(Path file, boolean truncateTail) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // 讀滿標頭
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            long base = header.getLong();
+            Segment segment = new Segment(file, base, header.get() != 0);
+
+            long fileSize = channel.size();
+            long position = HEADER_SIZE;
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+            while (position + Integer.BYTES <= fileSize) {
+                lengthBuffer.clear();
+                channel.read(lengthBuffer, position);
+                lengthBuffer.flip();
+                int length = lengthBuffer.getInt();
+                if (length <= 0 || position + Integer.BYTES + length + Integer.BYTES > fileSize) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.allocate(length + Integer.BYTES);
+                while (record.hasRemaining() && channel.read(record, position + Integer.BYTES + record.position()) > 0) {
+                    // 讀滿整筆記錄
+                }
+                byte[] body = new byte[length];
+                record.flip();
+                record.get(body);
+                if (checksum(body, 0, length) != record.getInt()) {
+                    break;
+                }
+                ByteBuffer fields = ByteBuffer.wrap(body);
+                segment.add(position, fields.getLong(), fields.getLong());
+                position += Integer.BYTES + length + Integer.BYTES;
+            }
+            if (position < fileSize) {
+                logger.warning("變更紀錄結尾不完整，已截斷: " + file);
+                if (truncateTail) {
+                    channel.truncate(position);
+                }
+            }
+            segment.size = position;
+            return segment;
+        }
+    }
+
+    private static Path indexFile(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return segmentFile.resolveSibling(name.substring(0, name.length() - ".seg".length()) + ".idx");
+    }
+
+    /**
+     * 寫入區段的索引檔，讓下次開啟時不需要讀取整個區段
+     */
+    private void writeIndex(Segment segment) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(INDEX_MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(segment.base);
+        out.writeBoolean(segment.compacted);
+        out.writeLong(segment.size);
+        out.writeLong(segment.lastSequence);
+        out.writeInt(segment.blocks.size());
+        for (IndexBlock block : segment.blocks) {
+            out.writeLong(block.offset);
+            out.writeLong(block.firstSequence);
+            out.writeLong(block.minTime);
+            out.writeLong(block.maxTime);
+            out.writeInt(block.count);
+        }
+        byte[] body = bytes.toByteArray();
+        out.writeInt(checksum(body, 0, body.length));
+
+        Path file = indexFile(segment.file);
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tempFile, bytes.toByteArray());
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 讀取索引檔，檔案不存在、損毀或與區段大小不符時回傳 null
+     */
+    private Segment readIndex(Path segmentFile) {
+        Path file = indexFile(segmentFile);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length < Integer.BYTES || checksum(bytes, 0, bytes.length - Integer.BYTES)
+                    != ByteBuffer.wrap(bytes, bytes.length - Integer.BYTES, Integer.BYTES).getInt()) {
+                return null;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            Segment segment = new Segment(segmentFile, in.readLong(), in.readBoolean());
+            segment.size = in.readLong();
+            if (segment.size != Files.size(segmentFile)) {
+                return null;
+            }
+            segment.lastSequence = in.readLong();
+            int blockCount = in.readInt();
+            for (int i = 0; i < blockCount; i++) {
+                IndexBlock block = new IndexBlock(in.readLong(), in.readLong(), in.readLong());
+                block.maxTime = in.readLong();
+                block.count = in.readInt();
+                segment.addBlock(block);
+            }
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.FINE, "讀取變更紀錄索引失敗，將重新建立: " + file, e);
+            return null;
+        }
+    }
+
+    // ---- 壓縮 ----
+
+    /**
+     * 重寫區段：同一檔案連續的修改合併為最後一筆，保留第一筆修改前的狀態
+     */
+    private void rewriteCompacted(Segment segment) throws IOException {
+        List<Entry> entries = new ArrayList<>(segment.count);
+        try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+            for (int i = 0; i < segment.blocks.size(); i++) {
+                entries.addAll(readBlock(channel, segment, i));
+            }
+        }
+
+        // 由後往前，若同一檔案的下一筆也是修改則併入下一筆
+        Entry[] kept = entries.toArray(new Entry[0]);
+        Map<Path, Integer> nextByPath = new HashMap<>();
+        for (int i = kept.length - 1; i >= 0; i--) {
+            FileChangeEvent event = kept[i].event;
+            Integer next = nextByPath.get(event.getPath());
+            if (event.getType() == ChangeType.MODIFIED && next != null
+                    && kept[next].event.getType() == ChangeType.MODIFIED) {
+                FileChangeEvent later = kept[next].event;
+                kept[next] = new Entry(kept[next].sequence, FileChangeEvent.modified(later.getPath(),
+                        event.getPreviousSnapshot(), later.getSnapshot(), later.getDetail(), later.getDetectedAt()));
+                kept[i] = null;
+                continue;
+            }
+            nextByPath.put(event.getPath(), i);
+            if (event.getPreviousPath() != null) {
+                nextByPath.put(event.getPreviousPath(), i);
+            }
+        }
+
+        Path tempFile = segment.file.resolveSibling(segment.file.getFileName() + ".tmp");
+        Segment compacted = new Segment(segment.file, segment.base, true);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteBuffer header = header(segment.base, true);
+        out.write(header.array(), 0, header.remaining());
+        for (Entry entry : kept) {
+            if (entry == null) {
+                continue;
+            }
+            encode(entry.sequence, entry.event);
+            compacted.add(bytes.size(), entry.sequence, entry.event.getDetectedAt());
+            writeRecord(out);
+        }
+        compacted.size = bytes.size();
+        Files.write(tempFile, bytes.toByteArray());
+        Files.move(tempFile, segment.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writeIndex(compacted);
+        segments.put(compacted.base, compacted);
+        if (compacted.count < segment.count) {
+            logger.info("已壓縮變更紀錄 " + segment.file.getFileName() + ": " + segment.count + " → " + compacted.count + " 筆");
+        }
+    }
+
+    private int checksum(byte[] bytes, int offset, int length) {
+        crc.reset();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 收到已編號的變更，序號與 {@link #replay} 使用的相同
+     */
+    public interface AppendListener {
+
+        void appended(long sequence, FileChangeEvent event);
+    }
+
+    /**
+     * 一筆已記錄的變更
+     */
+    public static final class Entry {
+
+        private final long sequence;
+        private final FileChangeEvent event;
+
+        Entry(long sequence, FileChangeEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public FileChangeEvent getEvent() {
+            return event;
+        }
+
+        @Override
+        public String toString() {
+            return sequence + ": " + event;
+        }
+    }
+
+    /**
+     * 一個區段檔與其稀疏索引
+     */
+    private static final class Segment {
+
+        final Path file;
+        final long base;
+        final boolean compacted;
+        final List<IndexBlock> blocks = new ArrayList<>();
+        long size;
+        long lastSequence;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        int count;
+
+        Segment(Path file, long base, boolean compacted) {
+            this.file = file;
+            this.base = base;
+            this.compacted = compacted;
+        }
+
+        /**
+         * 登記一筆位於 offset 的記錄，每 INDEX_INTERVAL 筆開始新的索引區塊
+         */
+        void add(long offset, long sequence, long time) {
+            IndexBlock block;
+            if (blocks.isEmpty() || blocks.get(blocks.size() - 1).count >= INDEX_INTERVAL) {
+                block = new IndexBlock(offset, sequence, time);
+                blocks.add(block);
+            } else {
+                block = blocks.get(blocks.size() - 1);
+            }
+            block.count++;
+            block.minTime = Math.min(block.minTime, time);
+            block.maxTime = Math.max(block.maxTime, time);
+            count++;
+            lastSequence = sequence;
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+
+        void addBlock(IndexBlock block) {
+            blocks.add(block);
+            count += block.count;
+            minTime = Math.min(minTime, block.minTime);
+            maxTime = Math.max(maxTime, block.maxTime);
+        }
+
+        /**
+         * 可能包含指定序號的第一個區塊
+         */
+        int findBlock(long sequence) {
+            int low = 0;
+            int high = blocks.size() - 1;
+            int found = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (blocks.get(mid).firstSequence <= sequence) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * 稀疏索引的一個區塊
+     */
+    private static final class IndexBlock {
+
+        final long offset;
+        final long firstSequence;
+        long minTime;
+        long maxTime;
+        int count;
+
+        IndexBlock(long offset, long firstSequence, long time) {
+            this.offset = offset;
+            this.firstSequence = firstSequence;
+            this.minTime = time;
+            this.maxTime = time;
+        }
+    }
+}
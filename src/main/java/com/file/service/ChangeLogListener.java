@@ -0,0 +1,34 @@
+package com.file.service;
+
+import com.file.object.FileChangeEvent;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Writes every change event to the monitor log as a single record.
+ * The event itself is attached as the record parameter so structured formatters can write its fields.
+ */
+public class ChangeLogListener implements FileChangeListener {
+
+    private static final Logger logger = Logger.getLogger(FileWatchService.class.getName());
+
+    @Override
+    public void onChange(FileChangeEvent event) {
+        if (!logger.isLoggable(Level.INFO)) {
+            return;
+        }
+        // 摘要之後的各項資訊合併成同一行，括號內以逗號分隔
+        List<String> lines = ChangeMessageFormatter.lines(event);
+        StringBuilder message = new StringBuilder(lines.get(0));
+        if (lines.size() > 1) {
+            message.append(" (").append(String.join(", ", lines.subList(1, lines.size()))).append(')');
+        }
+        LogRecord record = new LogRecord(Level.INFO, message.toString());
+        record.setLoggerName(logger.getName());
+        record.setParameters(new Object[]{event});
+        logger.log(record);
+    }
+}
@@ -0,0 +1,109 @@
+package com.file.service;
+
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Formats change events into the titles, messages and log lines shown to users.
+ */
+public final class ChangeMessageFormatter {
+
+    // 日期時間格式（SimpleDateFormat 非執行緒安全，每個執行緒各自一份）
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+
+    private ChangeMessageFormatter() {
+    }
+
+    /**
+     * 通知標題
+     */
+    public static String title(FileChangeEvent event) {
+        return "檔案監控 - " + event.getType().getLabel();
+    }
+
+    /**
+     * 通知內容
+     */
+    public static String message(FileChangeEvent event) {
+        return String.join("\n", lines(event));
+    }
+
+    /**
+     * 依變更類型列出各項資訊，第一行為摘要
+     */
+    public static List<String> lines(FileChangeEvent event) {
+        List<String> lines = new ArrayList<>();
+        String fileName = String.valueOf(event.getPath().getFileName());
+        FileSnapshot current = event.getSnapshot();
+        switch (event.getType()) {
+            case CREATED:
+                lines.add("發現新檔案: " + fileName);
+                if (current != null) {
+                    lines.add("建立時間: " + formatTime(current.getCreationTime()));
+                    lines.add("檔案大小: " + formatFileSize(current.getSize()));
+                }
+                break;
+            case MODIFIED:
+                lines.add("檔案已修改: " + fileName);
+                if (event.getPreviousSnapshot() != null) {
+                    lines.add("上次修改時間: " + formatTime(event.getPreviousSnapshot().getLastModified()));
+                }
+                if (current != null) {
+                    lines.add("目前修改時間: " + formatTime(current.getLastModified()));
+                    lines.add("檔案大小: " + formatFileSize(current.getSize()));
+                }
+                break;
+            case DELETED:
+                lines.add("檔案已刪除: " + fileName);
+                break;
+            case MOVED:
+                lines.add("檔案已移動: " + fileName);
+                lines.add("原位置: " + event.getPreviousPath());
+                lines.add("新位置: " + event.getPath());
+                break;
+            default:
+                lines.add(event.getType().getLabel() + ": " + fileName);
+        }
+        if (event.getDetail() != null) {
+            for (String line : event.getDetail().split("\n")) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * 獲取當前時間的格式化字串
+     */
+    public static String getCurrentTime() {
+        return DATE_FORMAT.get().format(new Date());
+    }
+
+    /**
+     * 格式化時間（毫秒）
+     */
+    public static String formatTime(long millis) {
+        return DATE_FORMAT.get().format(new Date(millis));
+    }
+
+    /**
+     * 格式化檔案大小
+     */
+    public static String formatFileSize(long size) {
+        if (size < 1024) {
+            return size + " B";
+        } else if (size < 1024 * 1024) {
+            return String.format("%.2f KB", size / 1024.0);
+        } else if (size < 1024 * 1024 * 1024) {
+            return String.format("%.2f MB", size / (1024.0 * 1024));
+        } else {
+            return String.format("%.2f GB", size / (1024.0 * 1024 * 1024));
+        }
+    }
+}
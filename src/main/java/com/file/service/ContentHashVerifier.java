@@ -0,0 +1,188 @@
+package com.file.service;
+
+import com.file.object.FileSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Confirms metadata changes by comparing content hashes.
+ * Some NAS shares reset modification times during sync, so a file can look modified while its
+ * content is unchanged. Files are only read when their size or modification time changed, and
+ * every hash is cached together with the (fileKey, size, mtime) it was computed for, so an
+ * unchanged file is never read twice. A byte budget bounds the hashing I/O of a single scan.
+ * Unchanged files are never hashed ahead of time, so the first modification of a file only
+ * records its baseline and is reported; later touch-only changes are recognised.
+ */
+public class ContentHashVerifier {
+
+    private static final Logger logger = Logger.getLogger(ContentHashVerifier.class.getName());
+
+    private static final String ALGORITHM = "SHA-256";
+
+    // 每次讀取的區塊大小
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * 比對結果
+     */
+    public enum Verification {
+        // 內容與上次相同，只有屬性改變
+        SAME_CONTENT,
+        // 內容確實改變
+        CHANGED,
+        // 缺少上次的雜湊或超出預算，無法確認
+        UNKNOWN
+    }
+
+    /**
+     * 雜湊快取，記錄計算當時的檔案屬性
+     */
+    private static final class CachedHash {
+        final Object fileKey;
+        final long size;
+        final long lastModified;
+        final byte[] hash;
+
+        CachedHash(FileSnapshot snapshot, byte[] hash) {
+            this.fileKey = snapshot.getFileKey();
+            this.size = snapshot.getSize();
+            this.lastModified = snapshot.getLastModified();
+            this.hash = hash;
+        }
+
+        boolean matches(FileSnapshot snapshot) {
+            // 沒有 fileKey 時只比對大小與時間；從快照檔還原的 fileKey 以文字比對
+            boolean sameKey = fileKey == null || snapshot.getFileKey() == null
+                    || FileSnapshot.sameFileKey(fileKey, snapshot.getFileKey());
+            return sameKey && size == snapshot.getSize() && lastModified == snapshot.getLastModified();
+        }
+    }
+
+    private final Map<String, CachedHash> cache = new HashMap<>();
+
+    private final long budgetPerScan;
+
+    private final MessageDigest digest;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+    private long remainingBudget;
+
+    private long bytesHashed;
+
+    /**
+     * @param budgetPerScan maximum number of bytes read for hashing during one scan
+     */
+    public ContentHashVerifier(long budgetPerScan) {
+        if (budgetPerScan <= 0) {
+            throw new IllegalArgumentException("Hash budget must be positive");
+        }
+        this.budgetPerScan = budgetPerScan;
+        try {
+            this.digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * 開始新的一次掃描，重設讀取預算
+     */
+    public void beginScan() {
+        remainingBudget = budgetPerScan;
+    }
+
+    /**
+     * 檔案已自快照移除
+     */
+    public void untracked(String fullPath) {
+        cache.remove(fullPath);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 比對修改前後的內容
+     *
+     * @param path the modified file
+     * @param previous the snapshot of the last reported version
+     * @param current the snapshot just read
+     * @return whether the content really changed
+     */
+    public Verification verify(Path path, FileSnapshot previous, FileSnapshot current) {
+        String fullPath = path.toString();
+        CachedHash before = cache.get(fullPath);
+        byte[] previousHash = before != null && before.matches(previous) ? before.hash : null;
+
+        // 大小不同必定是內容改變，仍計算新雜湊作為下次比對的基準
+        byte[] currentHash = hash(path, current);
+        if (previousHash == null || currentHash == null) {
+            return current.getSize() != previous.getSize() ? Verification.CHANGED : Verification.UNKNOWN;
+        }
+        return Arrays.equals(previousHash, currentHash) ? Verification.SAME_CONTENT : Verification.CHANGED;
+    }
+
+    /**
+     * 目前為止讀取的位元組總數
+     */
+    public long getBytesHashed() {
+        return bytesHashed;
+    }
+
+    /**
+     * 計算並快取雜湊，超出預算或檔案已消失時回傳 null
+     */
+    private byte[] hash(Path path, FileSnapshot snapshot) {
+        String fullPath = path.toString();
+        CachedHash cached = cache.get(fullPath);
+        if (cached != null && cached.matches(snapshot)) {
+            return cached.hash;
+        }
+        if (snapshot.getSize() > remainingBudget) {
+            return null;
+        }
+
+        digest.reset();
+        long read = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer.clear();
+            int n;
+            while ((n = channel.read(buffer)) != -1) {
+                read += n;
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.log(Level.FINE, "計算檔案雜湊失敗: " + path, e);
+            return null;
+        } finally {
+            remainingBudget -= read;
+            bytesHashed += read;
+        }
+
+        // 讀取期間檔案大小改變，結果不可靠
+        if (read != snapshot.getSize()) {
+            return null;
+        }
+        byte[] hash = digest.digest();
+        cache.put(fullPath, new CachedHash(snapshot, hash));
+        return hash;
+    }
+}
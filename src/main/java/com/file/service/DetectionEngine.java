@@ -0,0 +1,73 @@
+package com.file.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Pluggable change detection strategy used by {@link FileWatchService}.
+ * The engine decides whether the next scan has to list the whole directory,
+ * only a set of changed paths, or can be skipped entirely.
+ */
+public interface DetectionEngine extends Closeable {
+
+    /**
+     * 處理每個目錄前的檢查點，掃描已取消或超過期限時拋出例外
+     */
+    interface Checkpoint {
+        void check() throws IOException;
+    }
+
+    /**
+     * 開始監控指定的目錄
+     *
+     * @param directory the directory to monitor
+     * @param onChange callback invoked when the engine has pending changes, may be called from any thread
+     * @throws IOException if the directory cannot be registered
+     */
+    void start(Path directory, Runnable onChange) throws IOException;
+
+    /**
+     * 註冊額外需要監控的目錄（遞迴監控時的子目錄）
+     *
+     * @param directory the directory to add
+     * @throws IOException if the directory cannot be registered
+     */
+    void register(Path directory) throws IOException;
+
+    /**
+     * 取得下一次掃描需要處理的範圍，呼叫後待處理的事件即被清空
+     */
+    ScanRequest nextScan();
+
+    /**
+     * 交回未完成的掃描範圍（目錄無法存取或掃描失敗時），下一次 {@link #nextScan()} 會再包含這些項目
+     *
+     * @param request the request, or the part of it that was not processed
+     */
+    void requeue(ScanRequest request);
+
+    /**
+     * 是否有已失效、等待重新註冊的監控
+     */
+    default boolean hasLostWatches() {
+        return false;
+    }
+
+    /**
+     * 重新註冊已失效的監控，只在監控目錄確認可存取後呼叫
+     *
+     * @param checkpoint checked before each directory, stops the recovery by throwing
+     * @throws IOException if the checkpoint stopped the recovery; the remaining directories are retried later
+     */
+    default void restoreWatches(Checkpoint checkpoint) throws IOException {
+    }
+
+    /**
+     * 是否由檔案系統事件驅動（否則為定時輪詢）
+     */
+    boolean isEventDriven();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,298 @@
+package com.file.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Walks a directory tree and lists only the directories that need it.
+ * For every known directory the last modification time, child count and sub directories
+ * are remembered. A directory is listed again when its modification time changes (an entry
+ * was added, removed or renamed), or when it has not been listed for a number of scans, so that
+ * in-place content edits, which do not touch the directory time, are still picked up.
+ * Unchanged directories only cost one attribute read per scan.
+ */
+public class DirectoryTreeScanner {
+
+    private static final Logger logger = Logger.getLogger(DirectoryTreeScanner.class.getName());
+
+    // 預設未變動的子目錄每 6 次掃描重新列舉一次（以 10 秒間隔約為 1 分鐘）
+    public static final int DEFAULT_REVISIT_EVERY = 6;
+
+    /**
+     * Receives the result of listing a directory
+     */
+    public interface DirectoryListener {
+
+        /**
+         * 在讀取任何屬性之前，依檔名判斷項目是否為需要追蹤的檔案
+         *
+         * @param entry the directory entry
+         * @return true if the entry is reported to {@link #directoryListed} without further checks
+         */
+        boolean isCandidateFile(Path entry);
+
+        /**
+         * 讀取目錄屬性之前呼叫，可拋出 {@link ScanCancelledException} 中止掃描；
+         * 已列舉的目錄已完整套用，其餘目錄留待下次掃描
+         *
+         * @param directory the directory about to be checked
+         */
+        default void beforeDirectory(Path directory) throws IOException {
+        }
+
+        /**
+         * 目錄已重新列舉
+         *
+         * @param directory the listed directory
+         * @param files the candidate files of the directory, only valid during the call
+         * @param directories receives the candidates that turned out to be directories (a folder whose name
+         *                    matches the filter); they are scanned as sub directories in recursive mode
+         */
+        void directoryListed(Path directory, List<Path> files, List<Path> directories) throws IOException;
+
+        /**
+         * 發現新的子目錄
+         */
+        void directoryDiscovered(Path directory);
+
+        /**
+         * 目錄（含其子目錄）已不存在
+         */
+        void directoryRemoved(Path directory);
+    }
+
+    /**
+     * 每個目錄的狀態
+     */
+    private static final class DirectoryState {
+        long lastModified;
+        int childCount = -1;
+        int scansSinceListed;
+        // 檔案系統不更新目錄時間（項目數變了但時間沒變），此目錄每次都需列舉
+        boolean timeUnreliable;
+        List<Path> subDirectories = new ArrayList<>();
+    }
+
+    private final Map<Path, DirectoryState> directories = new HashMap<>();
+
+    private final int revisitEvery;
+
+    // 列舉時重複使用的暫存清單，檔案清單只在 directoryListed 呼叫期間有效
+    private final List<Path> listedFiles = new ArrayList<>();
+    private final List<Path> listedSubDirectories = new ArrayList<>();
+    private final List<Path> candidateDirectories = new ArrayList<>();
+
+    // 累計列舉的項目數與讀取屬性次數（掃描統計用）
+    private long entriesListed;
+    private long statCalls;
+
+    public DirectoryTreeScanner() {
+        this(DEFAULT_REVISIT_EVERY);
+    }
+
+    /**
+     * @param revisitEvery number of scans after which an unchanged directory is listed again, 1 lists every scan
+     */
+    public DirectoryTreeScanner(int revisitEvery) {
+        if (revisitEvery < 1) {
+            throw new IllegalArgumentException("Revisit interval must be at least 1");
+        }
+        this.revisitEvery = revisitEvery;
+    }
+
+    /**
+     * 掃描目錄樹。起點目錄一定會重新列舉，其下的子目錄僅在有變動或到達重訪週期時列舉。
+     *
+     * @param start the directory to start from
+     * @param recursive whether sub directories are scanned as well
+     * @param forceSubtree list every directory below start regardless of its state
+     * @param listener receives listing results
+     */
+    public void scan(Path start, boolean recursive, boolean forceSubtree, DirectoryListener listener) throws IOException {
+        Deque<Path> pending = new ArrayDeque<>();
+        pending.push(start);
+
+        while (!pending.isEmpty()) {
+            Path dir = pending.pop();
+            listener.beforeDirectory(dir);
+            DirectoryState state = directories.get(dir);
+
+            BasicFileAttributes attributes;
+            try {
+                statCalls++;
+                attributes = Files.readAttributes(dir, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                if (dir.equals(start)) {
+                    throw e;
+                }
+                removeTree(dir, listener);
+                continue;
+            }
+            long lastModified = attributes.lastModifiedTime().toMillis();
+
+            boolean dirty = dir.equals(start) || forceSubtree || state == null
+                    || state.lastModified != lastModified
+                    || state.timeUnreliable
+                    || ++state.scansSinceListed >= revisitEvery;
+
+            if (dirty) {
+                if (state == null) {
+                    state = new DirectoryState();
+                    // 錯開首次重訪時間，避免所有目錄在同一次掃描重新列舉
+                    state.scansSinceListed = -Math.floorMod(dir.hashCode(), revisitEvery);
+                    directories.put(dir, state);
+                    listener.directoryDiscovered(dir);
+                } else {
+                    state.scansSinceListed = 0;
+                }
+                boolean timeChanged = state.lastModified != lastModified;
+                state.lastModified = lastModified;
+                try {
+                    listDirectory(dir, state, timeChanged, recursive, listener);
+                } catch (NoSuchFileException | NotDirectoryException e) {
+                    removeTree(dir, listener);
+                    continue;
+                }
+            }
+
+            if (recursive) {
+                for (Path subDirectory : state.subDirectories) {
+                    pending.push(subDirectory);
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否為已追蹤的目錄
+     */
+    public boolean isTrackedDirectory(Path directory) {
+        return directories.containsKey(directory);
+    }
+
+    private boolean isDirectory(Path entry) {
+        statCalls++;
+        return Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * 累計列舉的目錄項目數
+     */
+    public long getEntriesListed() {
+        return entriesListed;
+    }
+
+    /**
+     * 累計讀取目錄屬性及判斷子目錄的次數
+     */
+    public long getStatCalls() {
+        return statCalls;
+    }
+
+    /**
+     * 目前追蹤的目錄數量
+     */
+    public int getDirectoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * 移除目錄及其子目錄的狀態並通知監聽者
+     */
+    public void removeTree(Path directory, DirectoryListener listener) {
+        Iterator<Path> it = directories.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith(directory)) {
+                it.remove();
+            }
+        }
+        Path parent = directory.getParent();
+        DirectoryState parentState = parent == null ? null : directories.get(parent);
+        if (parentState != null) {
+            parentState.subDirectories.remove(directory);
+        }
+        listener.directoryRemoved(directory);
+    }
+
+    /**
+     * 清除所有目錄狀態
+     */
+    public void clear() {
+        directories.clear();
+    }
+
+    private void listDirectory(Path dir, DirectoryState state, boolean timeChanged, boolean recursive,
+                               DirectoryListener listener) throws IOException {
+        List<Path> files = listedFiles;
+        List<Path> subDirectories = listedSubDirectories;
+        files.clear();
+        subDirectories.clear();
+        int childCount = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                childCount++;
+                // 符合條件的檔名直接交給監聽者讀取屬性，其餘項目才需判斷是否為子目錄；
+                // 排除規則只作用於檔案，名稱被排除的子目錄仍會往下掃描
+                if (listener.isCandidateFile(entry)) {
+                    files.add(entry);
+                } else if (recursive && isDirectory(entry)) {
+                    subDirectories.add(entry);
+                }
+            }
+        }
+        entriesListed += childCount;
+
+        // 名稱符合篩選條件的子目錄由監聽者讀取屬性後交回，不需為每個候選檔案另外判斷
+        List<Path> directoriesFound = candidateDirectories;
+        directoriesFound.clear();
+        try {
+            listener.directoryListed(dir, files, directoriesFound);
+        } finally {
+            files.clear();
+        }
+        if (recursive) {
+            for (Path entry : directoriesFound) {
+                if (isDirectory(entry)) {
+                    subDirectories.add(entry);
+                }
+            }
+        }
+        directoriesFound.clear();
+
+        if (!timeChanged && !state.timeUnreliable && state.childCount >= 0 && state.childCount != childCount) {
+            logger.fine("目錄時間未更新但項目數已變動，改為每次列舉: " + dir);
+            state.timeUnreliable = true;
+        }
+
+        // 子目錄沒有變動時沿用上次的清單；否則上次列舉存在、這次已不存在的子目錄視為刪除
+        state.childCount = childCount;
+        if (!subDirectories.equals(state.subDirectories)) {
+            List<Path> previousSubDirectories = state.subDirectories;
+            state.subDirectories = new ArrayList<>(subDirectories);
+            Set<Path> current = new HashSet<>(subDirectories);
+            for (Path previous : previousSubDirectories) {
+                if (!current.contains(previous) && directories.containsKey(previous)) {
+                    removeTree(previous, listener);
+                }
+            }
+        }
+        subDirectories.clear();
+    }
+}
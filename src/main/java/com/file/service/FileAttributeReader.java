@@ -0,0 +1,43 @@
+package com.file.service;
+
+import com.file.object.FileSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+
+/**
+ * Reads all metadata needed for a {@link FileSnapshot} in one file system call.
+ * On Windows the DOS attribute view is used, which the JDK serves from the same
+ * GetFileAttributesEx round-trip and which also carries the archive flag.
+ */
+public final class FileAttributeReader {
+
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private FileAttributeReader() {
+    }
+
+    /**
+     * 一次讀取檔案的所有屬性
+     *
+     * @param path the file to read
+     * @return the snapshot of the file
+     * @throws java.nio.file.NoSuchFileException if the file no longer exists
+     */
+    public static FileSnapshot read(Path path) throws IOException {
+        return FileSnapshot.of(readAttributes(path));
+    }
+
+    /**
+     * 一次讀取檔案的原始屬性（含是否為目錄）
+     */
+    public static BasicFileAttributes readAttributes(Path path) throws IOException {
+        if (WINDOWS) {
+            return Files.readAttributes(path, DosFileAttributes.class);
+        }
+        return Files.readAttributes(path, BasicFileAttributes.class);
+    }
+}
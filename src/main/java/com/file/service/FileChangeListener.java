@@ -0,0 +1,17 @@
+package com.file.service;
+
+import com.file.object.FileChangeEvent;
+
+/**
+ * Receives file change events published by {@link ChangeEventBus}.
+ * Listeners run on their own dispatcher thread, a slow listener only delays itself.
+ */
+public interface FileChangeListener {
+
+    /**
+     * 處理一筆變更事件
+     *
+     * @param event the change
+     */
+    void onChange(FileChangeEvent event);
+}
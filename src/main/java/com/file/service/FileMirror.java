@@ -0,0 +1,444 @@
+package com.file.service;
+
+import com.file.object.ChangeType;
+import com.file.object.FileChangeEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps local copies of changed files, so consumers read them from local disk and every change
+ * crosses the network only once.
+ *
+ * <p>Subscribed to the {@link ChangeEventBus}, the mirror copies every created, modified or moved
+ * file (changes are reported after the writes settled) into a versioned cache directory,
+ * {@code <cache>/<share>/<path of the file>/<yyyyMMdd-HHmmss-SSS>_<name>}, named after the file's
+ * last modification time so that the newest version sorts last. Copies use
+ * {@link FileChannel#transferTo} in chunks on a small pool of low priority threads that share one
+ * bandwidth cap, so mirroring never takes the share's bandwidth from the scans. A file that
+ * changes while it is copied is discarded; its next change is mirrored instead.</p>
+ *
+ * <p>Only the newest versions of each file are kept, and when the cache grows past its size limit
+ * the least recently used versions are deleted. A moved file whose content is already cached is
+ * copied from the cache instead of the share.</p>
+ */
+public class FileMirror implements FileChangeListener, Closeable {
+
+    private static final Logger logger = Logger.getLogger(FileMirror.class.getName());
+
+    // 預設每個檔案保留的版本數
+    public static final int DEFAULT_VERSIONS = 5;
+
+    // 預設快取上限
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024 * 1024;
+
+    // 預設複製執行緒數
+    public static final int DEFAULT_THREADS = 2;
+
+    // 每次傳輸的大小，頻寬限制以此為單位
+    private static final long CHUNK_BYTES = 1024 * 1024;
+
+    // 複製中的暫存檔，完成後更名
+    private static final String TEMP_SUFFIX = ".mirror-tmp";
+
+    // 版本名稱依修改時間排序
+    private static final DateTimeFormatter VERSION_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final Path cacheDirectory;
+    private final int versions;
+    private final long maxBytes;
+    private final BandwidthLimiter limiter;
+    private final ExecutorService executor;
+
+    // 等待複製的檔案，同一檔案只排一次，執行時以最新的事件為準
+    private final ConcurrentHashMap<Path, FileChangeEvent> pending = new ConcurrentHashMap<>();
+
+    // 依最近使用排序的快取版本與大小（以 this 同步）
+    private final LinkedHashMap<Path, Long> recentlyUsed = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    private final AtomicLong mirroredBytes = new AtomicLong();
+
+    /**
+     * 以預設的版本數、大小上限與執行緒數建立，不限制頻寬
+     *
+     * @param cacheDirectory the local cache directory, created if missing
+     * @throws IOException if the cache directory cannot be created or read
+     */
+    public FileMirror(Path cacheDirectory) throws IOException {
+        this(cacheDirectory, DEFAULT_VERSIONS, DEFAULT_MAX_BYTES, DEFAULT_THREADS, 0);
+    }
+
+    /**
+     * @param cacheDirectory the local cache directory, created if missing; existing versions are kept
+     * @param versions how many versions of each file are kept
+     * @param maxBytes the size of the cache after which the least recently used versions are deleted
+     * @param threads the number of concurrent copies
+     * @param bytesPerSecond the combined copy rate of all threads, 0 for no limit
+     * @throws IOException if the cache directory cannot be created or read
+     */
+    public FileMirror(Path cacheDirectory, int versions, long maxBytes, int threads, long bytesPerSecond) throws IOException {
+        if (versions < 1 || maxBytes < 1 || threads < 1) {
+            throw new IllegalArgumentException("Versions, cache size and threads must be positive");
+        }
+        this.cacheDirectory = cacheDirectory;
+        this.versions = versions;
+        this.maxBytes = maxBytes;
+        this.limiter = new BandwidthLimiter(bytesPerSecond);
+        Files.createDirectories(cacheDirectory);
+        loadIndex();
+
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "file-mirror-" + THREAD_COUNTER.incrementAndGet());
+                        thread.setDaemon(true);
+                        // 鏡像不應與掃描搶 CPU
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+        logger.info("鏡像快取位置: " + cacheDirectory.toAbsolutePath() + "，保留 " + versions + " 個版本，上限 "
+                + maxBytes / (1024 * 1024) + " MB" + (bytesPerSecond > 0 ? "，頻寬 " + bytesPerSecond / 1024 + " KB/s" : ""));
+    }
+
+    /**
+     * 載入既有版本，依修改時間作為最初的使用順序，並清除中斷的暫存檔
+     */
+    private void loadIndex() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(cacheDirectory)) {
+            for (Path file : stream.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                try {
+                    return Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b));
+                } catch (IOException e) {
+                    return 0;
+                }
+            }
+        });
+        synchronized (this) {
+            for (Path file : files) {
+                long size = Files.size(file);
+                recentlyUsed.put(file, size);
+                cachedBytes += size;
+            }
+            evict(null);
+        }
+    }
+
+    @Override
+    public void onChange(FileChangeEvent event) {
+        if (event.getType() == ChangeType.DELETED) {
+            // 保留已鏡像的版本，由容量上限淘汰
+            return;
+        }
+        final Path path = event.getPath();
+        if (pending.put(path, event) == null) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mirror(pending.remove(path));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.remove(path);
+            }
+        }
+    }
+
+    private void mirror(FileChangeEvent event) {
+        Path source = event.getPath();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return;
+            }
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (size > maxBytes) {
+                logger.warning("檔案大於鏡像快取上限，不鏡像: " + source + " (" + size + " bytes)");
+                return;
+            }
+            Path versionDirectory = versionDirectoryOf(source);
+            Path target = versionDirectory.resolve(versionName(lastModified, source));
+            if (Files.exists(target)) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            Files.createDirectories(versionDirectory);
+            Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+            Path cached = event.getType() == ChangeType.MOVED && event.getPreviousPath() != null
+                    ? findVersion(event.getPreviousPath(), lastModified, size) : null;
+            try {
+                if (cached != null) {
+                    Files.copy(cached, temp, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    transfer(source, temp, size);
+                }
+                // 複製期間被修改時放棄，修改穩定後會再收到事件
+                BasicFileAttributes after = Files.readAttributes(source, BasicFileAttributes.class);
+                if (after.size() != size || after.lastModifiedTime().toMillis() != lastModified || Files.size(temp) != size) {
+                    logger.fine("檔案在鏡像期間被修改，略過此版本: " + source);
+                    return;
+                }
+                Files.setLastModifiedTime(temp, FileTime.fromMillis(lastModified));
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            added(target, size);
+            pruneVersions(versionDirectory);
+            logger.info("已鏡像: " + source + " -> " + target + " (" + size + " bytes, "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms" + (cached != null ? "，自快取複製" : "") + ")");
+        } catch (NoSuchFileException e) {
+            logger.fine("檔案已不存在，略過鏡像: " + source);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "鏡像檔案失敗: " + source, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 以 transferTo 分段複製，每段先取得頻寬額度
+     */
+    private void transfer(Path source, Path target, long size) throws IOException, InterruptedException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            while (position < size) {
+                long chunk = Math.min(CHUNK_BYTES, size - position);
+                limiter.acquire(chunk);
+                long transferred = in.transferTo(position, chunk, out);
+                if (transferred <= 0) {
+                    // 檔案變短，之後的檢查會放棄此次複製
+                    break;
+                }
+                position += transferred;
+                mirroredBytes.addAndGet(transferred);
+            }
+        }
+    }
+
+    /**
+     * 快取中與指定修改時間及大小相同的版本，沒有時回傳 null
+     */
+    private Path findVersion(Path source, long lastModified, long size) throws IOException {
+        Path version = versionDirectoryOf(source).resolve(versionName(lastModified, source));
+        return Files.isRegularFile(version) && Files.size(version) == size ? version : null;
+    }
+
+    /**
+     * 只保留最新的幾個版本
+     */
+    private void pruneVersions(Path versionDirectory) throws IOException {
+        List<Path> existing = listVersions(versionDirectory);
+        for (int i = 0; i < existing.size() - versions; i++) {
+            Files.deleteIfExists(existing.get(i));
+            removed(existing.get(i));
+        }
+    }
+
+    private synchronized void added(Path version, long size) {
+        Long previous = recentlyUsed.put(version, size);
+        cachedBytes += size - (previous == null ? 0 : previous);
+        evict(version);
+    }
+
+    private synchronized void removed(Path version) {
+        Long size = recentlyUsed.remove(version);
+        if (size != null) {
+            cachedBytes -= size;
+        }
+    }
+
+    /**
+     * 超過上限時自最久未使用的版本開始刪除（呼叫者持有鎖）
+     *
+     * @param keep the version that was just added and must stay, may be null
+     */
+    private void evict(Path keep) {
+        Iterator<Map.Entry<Path, Long>> iterator = recentlyUsed.entrySet().iterator();
+        while (cachedBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Path, Long> entry = iterator.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(entry.getKey());
+            } catch (IOException e) {
+                // 可能正被讀取，下次再試
+                logger.log(Level.FINE, "無法刪除鏡像版本: " + entry.getKey(), e);
+                continue;
+            }
+            cachedBytes -= entry.getValue();
+            iterator.remove();
+            deleteIfEmpty(entry.getKey().getParent());
+        }
+    }
+
+    private void deleteIfEmpty(Path directory) {
+        try {
+            Files.deleteIfExists(directory);
+        } catch (DirectoryNotEmptyException e) {
+            // 仍有其他版本
+        } catch (IOException e) {
+            logger.log(Level.FINE, "無法刪除鏡像目錄: " + directory, e);
+        }
+    }
+
+    /**
+     * 檔案各版本所在的目錄：快取目錄下依共用資料夾與原路徑建立
+     */
+    Path versionDirectoryOf(Path source) {
+        Path absolute = source.toAbsolutePath().normalize();
+        Path directory = cacheDirectory;
+        Path root = absolute.getRoot();
+        if (root != null) {
+            // \\pf03\共用\ 成為 pf03_共用，C:\ 成為 C
+            String name = root.toString().replaceAll("[\\\\/:]+", "_").replaceAll("^_+|_+$", "");
+            if (!name.isEmpty()) {
+                directory = directory.resolve(name);
+            }
+        }
+        for (Path part : absolute) {
+            directory = directory.resolve(part.toString());
+        }
+        return directory;
+    }
+
+    private static String versionName(long lastModified, Path source) {
+        return VERSION_FORMAT.format(Instant.ofEpochMilli(lastModified)) + "_" + source.getFileName();
+    }
+
+    private static List<Path> listVersions(Path versionDirectory) throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(versionDirectory)) {
+            for (Path file : stream) {
+                if (!file.getFileName().toString().endsWith(TEMP_SUFFIX) && Files.isRegularFile(file)) {
+                    result.add(file);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return result;
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * 檔案已鏡像的版本，由舊到新
+     *
+     * @param source the path of the file on the share
+     */
+    public List<Path> getVersions(Path source) throws IOException {
+        return listVersions(versionDirectoryOf(source));
+    }
+
+    /**
+     * 檔案最新的鏡像版本，並將其標記為最近使用；尚未鏡像時回傳 null
+     *
+     * @param source the path of the file on the share
+     */
+    public Path getLatest(Path source) throws IOException {
+        List<Path> existing = getVersions(source);
+        if (existing.isEmpty()) {
+            return null;
+        }
+        Path latest = existing.get(existing.size() - 1);
+        synchronized (this) {
+            recentlyUsed.get(latest);
+        }
+        return latest;
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * 快取中所有版本的總大小
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * 自共用資料夾複製的總位元組數
+     */
+    public long getMirroredBytes() {
+        return mirroredBytes.get();
+    }
+
+    /**
+     * 等待排定的複製完成（最多 30 秒）後停止
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.file.service;
+
+import com.file.object.MonitorDataObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Include and exclude rules compiled into one matcher that works on the raw file name.
+ * It is applied to directory entries before any attribute is read, so excluded files cost
+ * no I/O; sub directories are never excluded. A rule is either an extension ({@code *.xlsx} or {@code *.tar.gz}, kept in a hash table
+ * keyed by the case-folded last part and compared in place), a prefix
+ * ({@code 報表*}, kept in a trie), an exact name, a glob or a regular expression ({@code re:...}).
+ * Globs and regular expressions of one rule group are combined into a single pattern, so the
+ * cost of a match stays flat as rules are added. Extensions and globs are compared without case.
+ *
+ * <p>A name is included when it matches every include group that has rules: one of the monitored
+ * extensions, one of the monitored name prefixes and one of the additional include patterns.
+ * It is excluded when it matches any exclude rule.</p>
+ */
+public final class FileNameFilter {
+
+    // 多條規則以分號分隔
+    private static final String RULE_SEPARATOR = ";";
+
+    private static final String REGEX_PREFIX = "re:";
+
+    /**
+     * 一組規則，符合其中任一條即算符合
+     */
+    static final class RuleGroup {
+        // 副檔名含開頭的點並轉為小寫，例如 ".tar.gz"
+        private final List<String> extensions = new ArrayList<>();
+        private final PrefixTrie prefixes = new PrefixTrie();
+        private final Set<String> names = new HashSet<>();
+        private final List<String> regexes = new ArrayList<>();
+        private boolean matchAll;
+        private Pattern pattern;
+        // 開放定址表：以最後一段副檔名不分大小寫的雜湊定位，再比對整段後綴
+        private String[] extensionSlots;
+        private int[] extensionHashes;
+
+        /**
+         * @param literalAsPrefix whether a rule without wildcards is a prefix (monitored file name) or an exact name
+         */
+        void add(String rule, boolean literalAsPrefix) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                return;
+            }
+            if (rule.startsWith(REGEX_PREFIX)) {
+                String regex = rule.substring(REGEX_PREFIX.length());
+                try {
+                    Pattern.compile(regex);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Invalid filter pattern: " + rule, e);
+                }
+                regexes.add(regex);
+            } else if (rule.equals("*") || rule.equals("*.*")) {
+                matchAll = true;
+            } else if (rule.startsWith("*.") && !hasWildcard(rule.substring(2))) {
+                // 以整段後綴比對，多段副檔名（*.tar.gz）也能符合
+                String extension = rule.substring(1).toLowerCase(Locale.ROOT);
+                if (!extensions.contains(extension)) {
+                    extensions.add(extension);
+                }
+            } else if (rule.endsWith("*") && !hasWildcard(rule.substring(0, rule.length() - 1))) {
+                prefixes.add(rule.substring(0, rule.length() - 1));
+            } else if (!hasWildcard(rule)) {
+                if (literalAsPrefix) {
+                    prefixes.add(rule);
+                } else {
+                    names.add(rule);
+                }
+            } else {
+                regexes.add(globToRegex(rule));
+            }
+        }
+
+        void compile() {
+            if (!extensions.isEmpty()) {
+                int capacity = Integer.highestOneBit(extensions.size() * 2 - 1) << 1;
+                extensionSlots = new String[capacity];
+                extensionHashes = new int[capacity];
+                for (String extension : extensions) {
+                    int hash = foldedHash(extension, extension.lastIndexOf('.') + 1, extension.length());
+                    int slot = hash & (capacity - 1);
+                    while (extensionSlots[slot] != null) {
+                        slot = (slot + 1) & (capacity - 1);
+                    }
+                    extensionSlots[slot] = extension;
+                    extensionHashes[slot] = hash;
+                }
+            }
+            if (regexes.isEmpty()) {
+                return;
+            }
+            StringBuilder combined = new StringBuilder();
+            for (String regex : regexes) {
+                if (combined.length() > 0) {
+                    combined.append('|');
+                }
+                combined.append("(?:").append(regex).append(')');
+            }
+            pattern = Pattern.compile(combined.toString());
+        }
+
+        boolean isEmpty() {
+            return !matchAll && extensions.isEmpty() && prefixes.isEmpty() && names.isEmpty() && pattern == null;
+        }
+
+        boolean matches(String name) {
+            if (matchAll) {
+                return true;
+            }
+            if (extensionSlots != null && hasExtension(name)) {
+                return true;
+            }
+            if (!prefixes.isEmpty() && prefixes.matchesPrefixOf(name)) {
+                return true;
+            }
+            if (!names.isEmpty() && names.contains(name)) {
+                return true;
+            }
+            return pattern != null && pattern.matcher(name).matches();
+        }
+
+        /**
+         * 直接比對名稱結尾，不為每個名稱建立子字串
+         */
+        private boolean hasExtension(String name) {
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                return false;
+            }
+            int hash = foldedHash(name, dot + 1, name.length());
+            int mask = extensionSlots.length - 1;
+            for (int slot = hash & mask; extensionSlots[slot] != null; slot = (slot + 1) & mask) {
+                String extension = extensionSlots[slot];
+                int offset = name.length() - extension.length();
+                if (extensionHashes[slot] == hash && offset >= 0
+                        && name.regionMatches(true, offset, extension, 0, extension.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 與 regionMatches(true, ...) 相同方式轉換大小寫後的雜湊
+         */
+        private static int foldedHash(String text, int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(text.charAt(i)));
+            }
+            return hash;
+        }
+    }
+
+    private final List<RuleGroup> includeGroups;
+    private final RuleGroup excludes;
+
+    // 編譯來源，設定物件被替換時重新編譯
+    private final String sourceExtension;
+    private final String sourceFileName;
+    private final List<String> sourceIncludes;
+    private final List<String> sourceExcludes;
+
+    private FileNameFilter(MonitorDataObject dto) {
+        this.sourceExtension = dto.getFileExtension();
+        this.sourceFileName = dto.getMonitorFileName();
+        this.sourceIncludes = dto.getIncludePatterns();
+        this.sourceExcludes = dto.getExcludePatterns();
+
+        this.includeGroups = new ArrayList<>();
+        addGroup(split(sourceExtension), false);
+        addGroup(split(sourceFileName), true);
+        addGroup(sourceIncludes, false);
+
+        this.excludes = new RuleGroup();
+        for (String rule : sourceExcludes) {
+            excludes.add(rule, false);
+        }
+        excludes.compile();
+    }
+
+    /**
+     * 依監控設定編譯篩選條件
+     *
+     * @param dto the monitoring configuration
+     * @return the compiled filter
+     * @throws IllegalArgumentException if a regular expression is invalid
+     */
+    public static FileNameFilter compile(MonitorDataObject dto) {
+        return new FileNameFilter(dto);
+    }
+
+    /**
+     * 是否仍與設定一致（設定值被替換後需重新編譯）
+     */
+    public boolean isCompiledFrom(MonitorDataObject dto) {
+        return sourceExtension == dto.getFileExtension()
+                && sourceFileName == dto.getMonitorFileName()
+                && sourceIncludes == dto.getIncludePatterns()
+                && sourceExcludes == dto.getExcludePatterns();
+    }
+
+    /**
+     * 檔名是否符合監控條件
+     */
+    public boolean matches(String name) {
+        // 先比對成本低的包含規則，大多數項目在這裡就被排除
+        for (int i = 0; i < includeGroups.size(); i++) {
+            if (!includeGroups.get(i).matches(name)) {
+                return false;
+            }
+        }
+        return !isExcluded(name);
+    }
+
+    /**
+     * 檔名是否被排除規則排除（只用於檔案，子目錄不受排除規則影響）
+     */
+    public boolean isExcluded(String name) {
+        return !excludes.isEmpty() && excludes.matches(name);
+    }
+
+    /**
+     * 新設定的篩選條件是否只會排除更多檔案（不會納入原本未監控的檔案）。
+     * 只依規則本身判斷：每組包含規則都是原規則的子集（或延長原有的檔名開頭），且排除規則只增不減；
+     * 無法確定時回傳 false。
+     *
+     * @param from the configuration in use
+     * @param to the new configuration
+     * @return true if every file matched by {@code to} was also matched by {@code from}
+     */
+    public static boolean isNarrowing(MonitorDataObject from, MonitorDataObject to) {
+        return covers(split(from.getFileExtension()), split(to.getFileExtension()), false)
+                && covers(split(from.getMonitorFileName()), split(to.getMonitorFileName()), true)
+                && covers(from.getIncludePatterns(), to.getIncludePatterns(), false)
+                && trimmed(to.getExcludePatterns()).containsAll(trimmed(from.getExcludePatterns()));
+    }
+
+    /**
+     * 新規則組符合的名稱是否都符合原規則組
+     */
+    private static boolean covers(List<String> previous, List<String> next, boolean literalAsPrefix) {
+        Set<String> previousRules = trimmed(previous);
+        if (previousRules.isEmpty() || previousRules.contains("*") || previousRules.contains("*.*")) {
+            return true;
+        }
+        Set<String> nextRules = trimmed(next);
+        if (nextRules.isEmpty()) {
+            return false;
+        }
+        for (String rule : nextRules) {
+            if (!previousRules.contains(rule) && !(literalAsPrefix && extendsPrefix(previousRules, rule))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 規則是否為原有某個檔名開頭再加長（例如「報表」改為「報表2024」）
+     */
+    private static boolean extendsPrefix(Set<String> previousRules, String rule) {
+        String literal = rule.endsWith("*") ? rule.substring(0, rule.length() - 1) : rule;
+        if (hasWildcard(literal) || literal.startsWith(REGEX_PREFIX)) {
+            return false;
+        }
+        for (String previous : previousRules) {
+            String prefix = previous.endsWith("*") ? previous.substring(0, previous.length() - 1) : previous;
+            if (!hasWildcard(prefix) && !prefix.startsWith(REGEX_PREFIX) && literal.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> trimmed(List<String> rules) {
+        Set<String> result = new HashSet<>();
+        for (String rule : rules) {
+            if (!rule.trim().isEmpty()) {
+                result.add(rule.trim());
+            }
+        }
+        return result;
+    }
+
+    private void addGroup(List<String> rules, boolean literalAsPrefix) {
+        RuleGroup group = new RuleGroup();
+        for (String rule : rules) {
+            group.add(rule, literalAsPrefix);
+        }
+        group.compile();
+        if (!group.isEmpty()) {
+            includeGroups.add(group);
+        }
+    }
+
+    private static List<String> split(String rules) {
+        List<String> result = new ArrayList<>();
+        for (String rule : rules.split(RULE_SEPARATOR)) {
+            if (!rule.trim().isEmpty()) {
+                result.add(rule);
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasWildcard(String rule) {
+        for (int i = 0; i < rule.length(); i++) {
+            char c = rule.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 將 glob 轉為正規表示式（支援 * ? [...] {a,b}），與副檔名規則一樣不分大小寫
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder("(?iu)");
+        boolean inGroup = false;
+        boolean inClass = false;
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+                regex.append(c == '!' && glob.charAt(i - 1) == '[' ? '^' : c);
+                continue;
+            }
+            String token;
+            switch (c) {
+                case '*':
+                    token = ".*";
+                    break;
+                case '?':
+                    token = ".";
+                    break;
+                case '[':
+                    inClass = true;
+                    token = "[";
+                    break;
+                case '{':
+                    inGroup = true;
+                    token = "(?:";
+                    break;
+                case '}':
+                    token = inGroup ? ")" : null;
+                    inGroup = false;
+                    break;
+                case ',':
+                    token = inGroup ? "|" : null;
+                    break;
+                default:
+                    token = null;
+            }
+            if (token == null) {
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+            regex.append(token);
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+}
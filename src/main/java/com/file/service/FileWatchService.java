@@ -1,16 +1,21 @@
 package com.file.service;
 
+import com.file.object.ChangeType;
+import com.file.object.DetectionMode;
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
 import com.file.object.MonitorDataObject;
-import javax.swing.*;
-import java.awt.*;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.FileTime;
-import java.text.SimpleDateFormat;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -21,15 +26,81 @@ public class FileWatchService {
 
     private static final Logger logger = Logger.getLogger(FileWatchService.class.getName());
 
-    // 檔案快照儲存結構 (key為檔案路徑，value為上次修改時間)
-    private static final Map<String, FileTime> fileTimeMap = new HashMap<>();
+    // 掛載的網路檔案系統類型（Linux/macOS），事件可能遺失
+    private static final Set<String> NETWORK_FILE_SYSTEMS = new HashSet<>(Arrays.asList(
+            "cifs", "smb", "smb2", "smb3", "smbfs", "nfs", "nfs4", "afpfs", "webdav"));
 
-    // 日期時間格式化
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    // 檔案快照儲存結構（目錄、檔名與屬性以基本型別陣列保存，可依目錄走訪及依檔案識別查詢），每個監控目標各自獨立
+    private SnapshotTable snapshots = new SnapshotTable();
 
-    private MonitorDataObject dto;
+    // 讀取屬性用的陣列，每次列舉重複使用
+    private BasicFileAttributes[] attributeBuffer;
 
-    private TrayIcon trayIcon;
+    // 本次掃描發現的變更，掃描結束時配對移動後一次發布
+    private final List<FileChangeEvent> scanEvents = new ArrayList<>();
+
+    // 使用中的設定，只在掃描之間整個替換，不會被修改
+    private volatile MonitorDataObject dto;
+
+    // 等待套用的新設定，由下一次掃描開始前取用
+    private final AtomicReference<MonitorDataObject> pendingConfig = new AtomicReference<>();
+
+    // 篩選條件放寬後需重新列舉整個目錄樹，新納入的檔案直接作為基準
+    private boolean relistPending;
+
+    // 變更事件匯流排（未設定時不發布事件）
+    private volatile ChangeEventBus eventBus;
+
+    // 變化偵測引擎（WatchService 或輪詢）
+    private volatile DetectionEngine engine = new PollingDetectionEngine();
+
+    // 本次掃描尚未處理的範圍，掃描中止時交回偵測引擎（僅掃描執行緒存取）
+    private ScanRequest unfinished = ScanRequest.none();
+
+    // 引擎有待處理事件時的回呼
+    private volatile Runnable changeTrigger;
+
+    // 目錄樹狀態，只重新列舉有變動的子目錄
+    private final DirectoryTreeScanner treeScanner = new DirectoryTreeScanner();
+
+    // 快照持久化（未設定狀態目錄時為 null）
+    private SnapshotStore snapshotStore;
+
+    // 寫入中檔案的穩定判斷（停用時為 null）
+    private WriteSettleTracker settleTracker;
+
+    // 內容雜湊比對（停用時為 null）
+    private ContentHashVerifier hashVerifier;
+
+    // 活頁簿內部變更摘要（停用時為 null）
+    private XlsxChangeAnalyzer workbookAnalyzer;
+
+    // 並行讀取檔案屬性（可由排程器換成同一主機共用的實例）
+    private volatile AttributeFetcher attributeFetcher;
+    private boolean ownsAttributeFetcher;
+
+    // 共用資料夾可達性探測（未設定時直接檢查目錄）
+    private volatile ShareProbe shareProbe;
+
+    // 掃描期限與取消要求（掃描執行緒以外也會設定）
+    private volatile long deadlineNanos;
+    private volatile boolean deadlineEnabled;
+    private volatile boolean cancelRequested;
+
+    // 最近一次掃描是否順利完成
+    private volatile boolean lastScanSuccessful = true;
+
+    // 掃描統計
+    private final ScanMetrics metrics;
+
+    // 本服務直接讀取檔案屬性的累計次數（目錄列舉與寫入穩定判斷另計）
+    private long statCalls;
+
+    // 最近一次掃描發現的變化數（新增、修改、刪除）
+    private volatile int lastScanChangeCount;
+
+    // 檔名篩選條件（設定變更時重新編譯）
+    private FileNameFilter nameFilter;
 
     /**
      * Constructor
@@ -37,7 +108,23 @@ public class FileWatchService {
      * @param dto the data object containing monitoring configuration
      */
     public FileWatchService(MonitorDataObject dto) {
-        this.dto = dto;
+        this.dto = new MonitorDataObject(dto);
+        this.settleTracker = createSettleTracker();
+        this.hashVerifier = createHashVerifier();
+        this.workbookAnalyzer = createWorkbookAnalyzer();
+        this.attributeFetcher = new AttributeFetcher(dto.getAttributeFetchConcurrency(), "local");
+        this.ownsAttributeFetcher = true;
+        this.metrics = new ScanMetrics(dto.getDirectoryMonitorPath());
+        this.metrics.setQueueDepthSource(this::getEventQueueDepth);
+        this.metrics.setPendingFilesSource(this::getPendingFileCount);
+    }
+
+    /**
+     * 套用等待中的設定後，檢查目前設定的目錄
+     */
+    public void checkForChanges() throws IOException {
+        applyPendingConfig();
+        checkForChanges(dto.getDirectoryMonitorPath());
     }
 
     /**
@@ -45,153 +132,923 @@ public class FileWatchService {
      */
     public void checkForChanges(String directoryMonitorPath) throws IOException {
 
+        // 事件驅動模式下若沒有待處理的事件且沒有寫入中的檔案，完全不需要存取網路磁碟
+        ScanRequest request = engine.nextScan();
+        if (request.isNone() && !relistPending && !engine.hasLostWatches()
+                && (settleTracker == null || !settleTracker.hasPending())) {
+            lastScanChangeCount = 0;
+            lastScanSuccessful = true;
+            metrics.recordSkippedScan();
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        long startEntries = treeScanner.getEntriesListed();
+        long startStats = totalStatCalls();
+        boolean success = false;
+        cancelRequested = false;
+        int timeoutSeconds = dto.getScanTimeoutSeconds();
+        deadlineEnabled = timeoutSeconds > 0;
+        deadlineNanos = startNanos + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        lastScanSuccessful = false;
+
         Path directory = Paths.get(directoryMonitorPath);
 
-        if (!Files.exists(directory) || !Files.isDirectory(directory)) {
+        if (!isReachable(directory)) {
+            // 事件保留到目錄恢復後處理
+            engine.requeue(request);
             logger.warning("警告: 指定的目錄不存在或不可存取: " + directoryMonitorPath);
+            metrics.recordScan(System.nanoTime() - startNanos, 0, totalStatCalls() - startStats, false);
             return;
         }
 
-        // 當前檔案集合
-        Set<String> currentFiles = new HashSet<>();
+        lastScanChangeCount = 0;
+        unfinished = request;
+        try {
+            if (settleTracker != null) {
+                settleTracker.beginScan();
+            }
+            if (hashVerifier != null) {
+                hashVerifier.beginScan();
+            }
+            // 確認可存取後才重新註冊失效的監控，受掃描期限限制
+            engine.restoreWatches(this::checkDeadline);
+            if (relistPending) {
+                treeScanner.scan(directory, dto.isRecursive(), true, new SnapshotUpdater(true, true));
+                relistPending = false;
+            } else {
+                applyScanRequest(directory, request);
+            }
+            commitSettledFiles();
+            success = true;
+            lastScanSuccessful = true;
+        } finally {
+            if (!success) {
+                // 失敗的掃描不能清掉事件，否則要等到下一次完整比對才會發現；已處理的部分不再重做
+                engine.requeue(unfinished);
+            }
+            publishScanEvents();
+            flushSnapshotStore();
+            metrics.recordScan(System.nanoTime() - startNanos, treeScanner.getEntriesListed() - startEntries,
+                    totalStatCalls() - startStats, success);
+        }
+    }
 
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, dto.getFileExtension())) {
-            for (Path path : stream) {
-                String fileName = path.getFileName().toString();
-                if (fileName.startsWith(dto.getMonitorFileName())) {
-                    String fullPath = path.toString();
-                    currentFiles.add(fullPath);
+    /**
+     * 要求改用新設定。設定會先複製，由掃描執行緒在下一次掃描開始前整個替換，
+     * 不會與進行中的掃描互相干擾；呼叫端之後再修改傳入的物件不會有影響。
+     * 已加入排程器的服務請透過 {@link com.file.watch.MonitorScheduler#reconfigure}，主機相關的資源才會一致。
+     *
+     * @param config the new configuration
+     */
+    public void reconfigure(MonitorDataObject config) {
+        pendingConfig.set(new MonitorDataObject(config));
+        // 盡快安排掃描以套用設定
+        fireChangeTrigger();
+    }
 
-                    FileTime lastModified = Files.getLastModifiedTime(path);
+    /**
+     * 套用等待中的設定：路徑變更時重新建立快照；篩選條件或遞迴變更時在記憶體中移除不再符合的檔案，
+     * 條件放寬時下次掃描重新列舉，其餘設定直接生效
+     */
+    private void applyPendingConfig() throws IOException {
+        MonitorDataObject next = pendingConfig.getAndSet(null);
+        if (next == null) {
+            return;
+        }
+        MonitorDataObject previous = dto;
+        dto = next;
 
-                    // 檢查是否為新檔案
-                    if (!fileTimeMap.containsKey(fullPath)) {
-                        String message = "發現新檔案: " + fileName + "\n" +
-                                "建立時間: " + DATE_FORMAT.format(new Date(lastModified.toMillis())) + "\n" +
-                                "檔案大小: " + formatFileSize(Files.size(path));
+        if (!previous.getDirectoryMonitorPath().equals(next.getDirectoryMonitorPath())) {
+            logger.info("監控路徑已變更，重新建立快照: " + previous.getDirectoryMonitorPath() + " -> "
+                    + next.getDirectoryMonitorPath());
+            initializeFileSnapshot(next.getDirectoryMonitorPath());
+            return;
+        }
 
-                        logger.info(getCurrentTime() + " - 發現新檔案: " + fileName);
-                        logger.info("  建立時間: " + DATE_FORMAT.format(new Date(lastModified.toMillis())));
-                        logger.info("  檔案大小: " + formatFileSize(Files.size(path)));
+        Path directory = Paths.get(next.getDirectoryMonitorPath());
+        if (previous.getDetectionMode() != next.getDetectionMode()) {
+            startEngine(directory);
+        }
+        if (previous.getSettleQuietSeconds() != next.getSettleQuietSeconds()) {
+            // 等待中的檔案尚未寫入快照，下次掃描會再被發現
+            settleTracker = createSettleTracker();
+        }
+        if (previous.isContentVerification() != next.isContentVerification()
+                || previous.getHashBudgetMegabytes() != next.getHashBudgetMegabytes()) {
+            hashVerifier = createHashVerifier();
+        }
+        if (previous.isWorkbookAnalysis() != next.isWorkbookAnalysis()) {
+            workbookAnalyzer = createWorkbookAnalyzer();
+        }
 
-                        // 顯示Windows警示視窗
-                        showWindowsAlert("檔案監控 - 新檔案", message);
+        boolean filterChanged = !previous.getFileExtension().equals(next.getFileExtension())
+                || !previous.getMonitorFileName().equals(next.getMonitorFileName())
+                || !previous.getIncludePatterns().equals(next.getIncludePatterns())
+                || !previous.getExcludePatterns().equals(next.getExcludePatterns())
+                || previous.isRecursive() != next.isRecursive();
+        if (filterChanged) {
+            int removed = refilter(directory, next.isRecursive());
+            boolean narrowed = (previous.isRecursive() || !next.isRecursive()) && FileNameFilter.isNarrowing(previous, next);
+            relistPending = !narrowed;
+            logger.info("篩選條件已變更，移除 " + removed + " 個不再符合的檔案" + (narrowed ? "" : "，下次掃描重新列舉")
+                    + ": " + directory);
+        }
+        if (filterChanged || !Objects.equals(previous.getStateDirectory(), next.getStateDirectory())) {
+            // 快照檔的設定指紋已不同，改寫為目前的快照
+            openSnapshotStore(directory);
+            if (snapshotStore != null) {
+                try {
+                    snapshotStore.writeFull(snapshots);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "寫入快照檔失敗: " + snapshotStore.getFile(), e);
+                }
+            }
+        }
+    }
 
-                        fileTimeMap.put(fullPath, lastModified);
-                    }
-                    // 檢查檔案是否被修改
-                    else if (!lastModified.equals(fileTimeMap.get(fullPath))) {
-                        FileTime previousTime = fileTimeMap.get(fullPath);
+    /**
+     * 自快照移除不符合目前篩選條件或已不在監控範圍內的檔案，不發布事件
+     *
+     * @return the number of files removed
+     */
+    private int refilter(Path directory, boolean recursive) {
+        List<Path> excluded = new ArrayList<>();
+        snapshots.forEach((fullPath, snapshot) -> {
+            Path path = Paths.get(fullPath);
+            if (!isWithin(directory, path, recursive) || !matchesFilter(path.getFileName())) {
+                excluded.add(path);
+            }
+        });
+        for (Path path : excluded) {
+            int slot = snapshots.find(path);
+            if (slot < 0) {
+                continue;
+            }
+            if (settleTracker != null) {
+                settleTracker.forget(path.toString());
+            }
+            if (workbookAnalyzer != null) {
+                workbookAnalyzer.forget(path);
+            }
+            untrack(slot, path);
+        }
+        return excluded.size();
+    }
+
+    /**
+     * 目錄是否存在；設定探測時以探測的逾時為上限，不會被無回應的主機卡住
+     */
+    private boolean isReachable(Path directory) {
+        ShareProbe probe = shareProbe;
+        // 探測與本機檢查都只讀取一次目錄屬性
+        statCalls++;
+        if (probe != null) {
+            return probe.isReachable(directory);
+        }
+        return Files.isDirectory(directory);
+    }
+
+    /**
+     * 要求進行中的掃描在下一個目錄前停止
+     */
+    public void cancelScan() {
+        cancelRequested = true;
+    }
+
+    /**
+     * 已取消或超過期限時中止掃描
+     */
+    private void checkDeadline() throws ScanCancelledException {
+        if (cancelRequested) {
+            throw new ScanCancelledException("掃描已取消: " + dto.getDirectoryMonitorPath());
+        }
+        if (deadlineEnabled && System.nanoTime() - deadlineNanos > 0) {
+            throw new ScanCancelledException("掃描超過期限 " + dto.getScanTimeoutSeconds() + " 秒: "
+                    + dto.getDirectoryMonitorPath());
+        }
+    }
 
-                        String message = "檔案已修改: " + fileName + "\n" +
-                                "上次修改時間: " + DATE_FORMAT.format(new Date(previousTime.toMillis())) + "\n" +
-                                "目前修改時間: " + DATE_FORMAT.format(new Date(lastModified.toMillis())) + "\n" +
-                                "檔案大小: " + formatFileSize(Files.size(path));
+    /**
+     * 目錄列舉、本服務與寫入穩定判斷讀取屬性的累計次數
+     */
+    private long totalStatCalls() {
+        WriteSettleTracker tracker = settleTracker;
+        return treeScanner.getStatCalls() + statCalls + (tracker == null ? 0 : tracker.getStatCalls());
+    }
 
-                        logger.info(getCurrentTime() + " - 檔案已修改: " + fileName);
-                        logger.info("  上次修改時間: " + DATE_FORMAT.format(new Date(previousTime.toMillis())));
-                        logger.info("  目前修改時間: " + DATE_FORMAT.format(new Date(lastModified.toMillis())));
-                        logger.info("  檔案大小: " + formatFileSize(Files.size(path)));
+    /**
+     * 依偵測引擎的要求進行完整或局部掃描
+     */
+    private void applyScanRequest(Path directory, ScanRequest request) throws IOException {
+        boolean recursive = dto.isRecursive();
+        SnapshotUpdater updater = new SnapshotUpdater(true);
 
-                        // 顯示Windows警示視窗
-                        showWindowsAlert("檔案監控 - 檔案已修改", message);
+        if (request.isFull()) {
+            treeScanner.scan(directory, recursive, false, updater);
+            return;
+        }
 
-                        fileTimeMap.put(fullPath, lastModified);
+        // 遺失事件的目錄重新列舉，其餘僅檢查有事件的路徑；每完成一項即自剩餘範圍移除
+        Set<Path> remainingDirectories = new LinkedHashSet<>(request.getDirectories());
+        Set<Path> remainingPaths = new LinkedHashSet<>(request.getPaths());
+        try {
+            for (Path dir : request.getDirectories()) {
+                if (dir.equals(directory)) {
+                    treeScanner.scan(directory, recursive, false, updater);
+                } else if (recursive && dir.startsWith(directory)) {
+                    scanSubtree(dir, false, updater);
+                }
+                remainingDirectories.remove(dir);
+            }
+            for (Path path : request.getPaths()) {
+                checkDeadline();
+                if (isWithin(directory, path, recursive)) {
+                    if (treeScanner.isTrackedDirectory(path) || (recursive && Files.isDirectory(path))) {
+                        scanSubtree(path, true, updater);
+                    } else if (matchesFilter(path.getFileName())) {
+                        checkPath(path);
                     }
                 }
+                remainingPaths.remove(path);
             }
+        } finally {
+            unfinished = ScanRequest.targeted(remainingPaths, remainingDirectories);
         }
+    }
 
-        // 檢查是否有檔案被刪除
-        Set<String> deletedFiles = new HashSet<>(fileTimeMap.keySet());
-        deletedFiles.removeAll(currentFiles);
+    /**
+     * 重新列舉子目錄，目錄已不存在時視為整個子目錄被刪除
+     */
+    private void scanSubtree(Path dir, boolean forceSubtree, SnapshotUpdater updater) throws IOException {
+        try {
+            treeScanner.scan(dir, true, forceSubtree, updater);
+        } catch (NoSuchFileException e) {
+            treeScanner.removeTree(dir, updater);
+        }
+    }
 
-        for (String deletedFile : deletedFiles) {
-            Path path = Paths.get(deletedFile);
-            String fileName = path.getFileName().toString();
+    /**
+     * 判斷路徑是否在監控範圍內
+     */
+    private static boolean isWithin(Path directory, Path path, boolean recursive) {
+        if (recursive) {
+            return path.startsWith(directory) && !path.equals(directory);
+        }
+        return directory.equals(path.getParent());
+    }
 
-            String message = "檔案已刪除: " + fileName;
+    /**
+     * 重新檢查單一檔案（由檔案系統事件觸發）
+     */
+    private void checkPath(Path path) throws IOException {
+        FileSnapshot current;
+        try {
+            statCalls++;
+            current = FileAttributeReader.read(path);
+        } catch (NoSuchFileException e) {
+            int slot = snapshots.find(path);
+            if (slot >= 0) {
+                reportDeleted(slot);
+            }
+            return;
+        }
+        checkExistingFile(path, current);
+    }
 
-            logger.info(getCurrentTime() + " - 檔案已刪除: " + fileName);
+    /**
+     * 比對現存檔案與快照，有變動時先等待寫入完成（未啟用時直接回報）
+     */
+    private void checkExistingFile(Path path, FileSnapshot current) {
+        FileSnapshot previous = snapshots.get(path);
+        boolean changed = previous == null || current.isModifiedSince(previous);
 
-            // 顯示Windows警示視窗
-            showWindowsAlert("檔案監控 - 檔案已刪除", message);
+        if (settleTracker == null || (previous == null && isMoveCandidate(current))) {
+            // 移動或更名不會改寫內容，不需等待寫入完成
+            if (changed) {
+                commitChange(path, current);
+            }
+        } else if (changed || settleTracker.isPending(path.toString())) {
+            settleTracker.observe(path, current, System.currentTimeMillis());
+        }
+    }
 
-            fileTimeMap.remove(deletedFile);
+    /**
+     * 回報已穩定的檔案
+     */
+    private void commitSettledFiles() throws IOException {
+        if (settleTracker == null || !settleTracker.hasPending()) {
+            return;
+        }
+        for (WriteSettleTracker.SettledFile settled : settleTracker.collectSettled(System.currentTimeMillis())) {
+            commitChange(settled.getPath(), settled.getSnapshot());
         }
     }
 
+    /**
+     * 與快照比對後記錄新檔案或已修改的檔案，寫入後又恢復原狀時不回報
+     */
+    private void commitChange(Path path, FileSnapshot current) {
+        FileSnapshot previous = snapshots.get(path);
+        long now = System.currentTimeMillis();
+
+        // 檢查是否為新檔案
+        if (previous == null) {
+            scanEvents.add(FileChangeEvent.created(path, current, now));
+            rememberWorkbook(path);
+            track(path, current);
+        }
+        // 檢查檔案是否被修改（修改時間或大小改變）
+        else if (current.isModifiedSince(previous)) {
+            // 內容雜湊相同表示只有屬性被同步工具改動，更新快照但不回報
+            if (hashVerifier != null
+                    && hashVerifier.verify(path, previous, current) == ContentHashVerifier.Verification.SAME_CONTENT) {
+                logger.fine("內容未變更，略過修改時間變動: " + path.getFileName());
+                track(path, current);
+                return;
+            }
+
+            // 活頁簿只讀取 ZIP 中央目錄，列出變動的工作表與內嵌物件
+            String detail = null;
+            if (workbookAnalyzer != null && XlsxChangeAnalyzer.isWorkbook(path)) {
+                detail = workbookAnalyzer.describeChanges(path);
+            }
+            scanEvents.add(FileChangeEvent.modified(path, previous, current, detail, now));
+            track(path, current);
+        }
+    }
+
+    /**
+     * 記錄檔案已刪除並自快照移除
+     */
+    private void reportDeleted(int slot) {
+        Path path = snapshots.pathAt(slot);
+        if (settleTracker != null) {
+            settleTracker.forget(path.toString());
+        }
+        if (workbookAnalyzer != null) {
+            workbookAnalyzer.forget(path);
+        }
+        scanEvents.add(FileChangeEvent.deleted(path, snapshots.snapshotAt(slot), System.currentTimeMillis()));
+        untrack(slot, path);
+    }
+
+    /**
+     * 新檔案與追蹤中或本次掃描剛刪除的檔案識別相同時，視為移動
+     */
+    private boolean isMoveCandidate(FileSnapshot current) {
+        if (snapshots.containsIdentity(current)) {
+            return true;
+        }
+        Object identity = current.getIdentity();
+        Object storedKey = current.getStoredFileKey();
+        for (FileChangeEvent event : scanEvents) {
+            if (event.getType() == ChangeType.DELETED && event.getSnapshot() != null) {
+                Object deletedIdentity = event.getSnapshot().getIdentity();
+                if (identity.equals(deletedIdentity) || (storedKey != null && storedKey.equals(deletedIdentity))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 將同一次掃描中識別相同的刪除與新增合併為移動，然後發布給監聽者
+     */
+    private void publishScanEvents() {
+        if (scanEvents.isEmpty()) {
+            return;
+        }
+        pairMoves();
+        lastScanChangeCount += scanEvents.size();
+        for (int i = 0; i < scanEvents.size(); i++) {
+            metrics.recordEvent(scanEvents.get(i).getType());
+        }
+
+        ChangeEventBus bus = eventBus;
+        if (bus != null) {
+            bus.publishAll(scanEvents);
+        }
+        scanEvents.clear();
+    }
+
+    private void pairMoves() {
+        Map<Object, Integer> deleted = null;
+        for (int i = 0; i < scanEvents.size(); i++) {
+            FileChangeEvent event = scanEvents.get(i);
+            if (event.getType() == ChangeType.DELETED && event.getSnapshot() != null) {
+                if (deleted == null) {
+                    deleted = new HashMap<>();
+                }
+                deleted.put(event.getSnapshot().getIdentity(), i);
+            }
+        }
+        if (deleted == null) {
+            return;
+        }
+
+        boolean paired = false;
+        for (int i = 0; i < scanEvents.size(); i++) {
+            FileChangeEvent event = scanEvents.get(i);
+            if (event == null || event.getType() != ChangeType.CREATED) {
+                continue;
+            }
+            Integer index = deleted.remove(event.getSnapshot().getIdentity());
+            if (index == null && event.getSnapshot().getFileKey() != null) {
+                // 刪除的檔案從快照檔載入後尚未重新掃描，只有檔案鍵的文字
+                index = deleted.remove(event.getSnapshot().getStoredFileKey());
+            }
+            if (index != null) {
+                Path from = scanEvents.get(index).getPath();
+                scanEvents.set(i, FileChangeEvent.moved(from, event.getPath(), event.getSnapshot(), event.getDetectedAt()));
+                scanEvents.set(index, null);
+                paired = true;
+            }
+        }
+        if (paired) {
+            scanEvents.removeIf(Objects::isNull);
+        }
+    }
+
+    /**
+     * 記錄檔案至快照與目錄索引
+     */
+    private void track(Path path, FileSnapshot snapshot) {
+        snapshots.put(path, snapshot);
+        if (snapshotStore != null) {
+            snapshotStore.recordPut(path.toString(), snapshot);
+        }
+    }
+
+    /**
+     * 自快照與目錄索引移除檔案
+     */
+    private void untrack(int slot, Path path) {
+        snapshots.removeAt(slot);
+        if (snapshotStore != null) {
+            snapshotStore.recordRemove(path.toString());
+        }
+        if (hashVerifier != null) {
+            hashVerifier.untracked(path.toString());
+        }
+    }
+
+    /**
+     * 判斷檔名是否符合監控條件（副檔名、檔名開頭、包含與排除規則），不需存取檔案系統
+     */
+    private boolean matchesFilter(Path fileName) {
+        return currentFilter().matches(fileName.toString());
+    }
+
+    private FileNameFilter currentFilter() {
+        FileNameFilter filter = nameFilter;
+        if (filter == null || !filter.isCompiledFrom(dto)) {
+            filter = FileNameFilter.compile(dto);
+            nameFilter = filter;
+        }
+        return filter;
+    }
+
     /**
      * 初始化檔案快照，記錄所有符合條件的檔案及其修改時間
      */
     public void initializeFileSnapshot(String dirPath) throws IOException {
-        fileTimeMap.clear();
+        snapshots = new SnapshotTable();
+        scanEvents.clear();
+        treeScanner.clear();
+        settleTracker = createSettleTracker();
+        hashVerifier = createHashVerifier();
+        workbookAnalyzer = createWorkbookAnalyzer();
+
+        relistPending = false;
 
         Path directory = Paths.get(dirPath);
+        metrics.setDirectory(dirPath);
+        openSnapshotStore(directory);
+        Map<String, FileSnapshot> stored = snapshotStore == null ? null : snapshotStore.load();
+
         if (Files.exists(directory) && Files.isDirectory(directory)) {
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, dto.getFileExtension())) {
-                for (Path path : stream) {
-                    String fileName = path.getFileName().toString();
-                    if (fileName.startsWith(dto.getMonitorFileName())) {
-                        FileTime lastModified = Files.getLastModifiedTime(path);
-                        fileTimeMap.put(path.toString(), lastModified);
-
-                        logger.info("初始化: 找到檔案 " + fileName +
-                                ", 最後修改時間: " + DATE_FORMAT.format(new Date(lastModified.toMillis())));
+            long startNanos = System.nanoTime();
+            long entriesBefore = treeScanner.getEntriesListed();
+            // 先註冊事件再列舉，避免遺漏兩者之間發生的變化
+            startEngine(directory);
+
+            if (stored != null) {
+                // 以上次保存的快照比對，回報程式關閉期間發生的變化
+                logger.info("已載入快照 " + stored.size() + " 筆，比對離線期間的變化: " + snapshotStore.getFile());
+                for (Map.Entry<String, FileSnapshot> entry : stored.entrySet()) {
+                    snapshots.put(Paths.get(entry.getKey()), entry.getValue());
+                }
+                stored = null;
+                try {
+                    treeScanner.scan(directory, dto.isRecursive(), true, new SnapshotUpdater(true));
+                } finally {
+                    publishScanEvents();
+                    flushSnapshotStore();
+                }
+            } else {
+                // 重建期間不逐筆記錄變動，完成後一次寫入完整快照
+                SnapshotStore store = snapshotStore;
+                snapshotStore = null;
+                try {
+                    treeScanner.scan(directory, dto.isRecursive(), true, new SnapshotUpdater(false));
+                } finally {
+                    snapshotStore = store;
+                }
+                if (snapshotStore != null) {
+                    try {
+                        snapshotStore.writeFull(snapshots);
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "寫入快照檔失敗: " + snapshotStore.getFile(), e);
                     }
                 }
             }
+            // 大型共用資料夾逐筆記錄會灌爆日誌，只記錄彙總數字
+            logger.info("初始化: 共追蹤 " + snapshots.size() + " 個檔案（" + ChangeMessageFormatter.formatFileSize(snapshots.totalBytes())
+                    + "）、" + treeScanner.getDirectoryCount() + " 個目錄，列舉 " + (treeScanner.getEntriesListed() - entriesBefore)
+                    + " 個項目，耗時 " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
         } else {
             logger.warning("指定的目錄不存在或不可存取: " + dirPath);
+            replaceEngine(new PollingDetectionEngine());
         }
     }
 
+    private ContentHashVerifier createHashVerifier() {
+        if (!dto.isContentVerification()) {
+            return null;
+        }
+        return new ContentHashVerifier(dto.getHashBudgetMegabytes() * 1024L * 1024L);
+    }
+
+    private XlsxChangeAnalyzer createWorkbookAnalyzer() {
+        return dto.isWorkbookAnalysis() ? new XlsxChangeAnalyzer() : null;
+    }
+
     /**
-     * 獲取當前時間的格式化字串
+     * 記錄新活頁簿的中央目錄，作為下次修改時的比較基準；既有檔案不在重建時讀取
      */
-    private static String getCurrentTime() {
-        return DATE_FORMAT.format(new Date());
+    private void rememberWorkbook(Path path) {
+        if (workbookAnalyzer != null && XlsxChangeAnalyzer.isWorkbook(path)) {
+            workbookAnalyzer.remember(path);
+        }
+    }
+
+    private WriteSettleTracker createSettleTracker() {
+        int quietSeconds = dto.getSettleQuietSeconds();
+        return quietSeconds > 0 ? new WriteSettleTracker(quietSeconds * 1000L) : null;
     }
 
     /**
-     * 格式化檔案大小
+     * 依設定開啟快照檔，檔名由監控路徑決定，設定指紋包含篩選條件與是否遞迴
      */
-    private static String formatFileSize(long size) {
-        if (size < 1024) {
-            return size + " B";
-        } else if (size < 1024 * 1024) {
-            return String.format("%.2f KB", size / 1024.0);
-        } else if (size < 1024 * 1024 * 1024) {
-            return String.format("%.2f MB", size / (1024.0 * 1024));
-        } else {
-            return String.format("%.2f GB", size / (1024.0 * 1024 * 1024));
+    private void openSnapshotStore(Path directory) {
+        if (snapshotStore != null) {
+            snapshotStore.close();
+            snapshotStore = null;
         }
+        if (dto.getStateDirectory() == null) {
+            return;
+        }
+        String root = directory.toAbsolutePath().normalize().toString();
+        String fileName = "snapshot-" + UUID.nameUUIDFromBytes(root.getBytes(StandardCharsets.UTF_8)) + ".dat";
+        String fingerprint = root + "\n" + dto.getFileExtension() + "\n" + dto.getMonitorFileName() + "\n" + dto.isRecursive()
+                + "\n" + dto.getIncludePatterns() + "\n" + dto.getExcludePatterns();
+        snapshotStore = new SnapshotStore(Paths.get(dto.getStateDirectory()).resolve(fileName), fingerprint);
     }
 
     /**
-     * Set the tray icon for notifications
-     * 
-     * @param trayIcon the tray icon to use for notifications
+     * 將本次掃描的變動寫入快照檔，失敗時只記錄警告，不影響監控
      */
-    public void setTrayIcon(TrayIcon trayIcon) {
-        this.trayIcon = trayIcon;
+    private void flushSnapshotStore() {
+        if (snapshotStore == null) {
+            return;
+        }
+        try {
+            snapshotStore.flush(snapshots);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "寫入快照檔失敗: " + snapshotStore.getFile(), e);
+        }
     }
 
     /**
-     * 顯示Windows警示視窗（同時支援對話框和系統托盤通知）
+     * 將目錄列舉結果套用到快照，reportChanges 為 false 時只記錄不通知（初始化）
      */
-    public void showWindowsAlert(final String title, final String message) {
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                // 顯示系統托盤通知（如果可用）
-                if (trayIcon != null) {
-                    trayIcon.displayMessage(title, message, TrayIcon.MessageType.WARNING);
+    private class SnapshotUpdater implements DirectoryTreeScanner.DirectoryListener {
+
+        private final boolean reportChanges;
+
+        // 未追蹤的檔案直接記錄為基準而不回報為新檔案（篩選條件放寬後重新列舉時）
+        private final boolean adoptUntracked;
+
+        SnapshotUpdater(boolean reportChanges) {
+            this(reportChanges, false);
+        }
+
+        SnapshotUpdater(boolean reportChanges, boolean adoptUntracked) {
+            this.reportChanges = reportChanges;
+            this.adoptUntracked = adoptUntracked;
+        }
+
+        @Override
+        public void directoryListed(Path directory, List<Path> files, List<Path> directories) throws IOException {
+
+            // 本輪列舉看到的檔案會被標記，未標記者即為已刪除，不需另建目前檔案的集合
+            snapshots.nextEpoch();
+
+            // 並行讀取屬性，結果依列舉順序排列
+            BasicFileAttributes[] fetched = attributeFetcher.fetch(files, attributeBuffer);
+            attributeBuffer = fetched;
+            statCalls += files.size();
+
+            int directoryId = snapshots.directoryId(directory);
+            for (int i = 0; i < files.size(); i++) {
+                BasicFileAttributes attributes = fetched[i];
+                fetched[i] = null;
+                if (attributes == null) {
+                    continue;
+                }
+                Path path = files.get(i);
+                if (attributes.isDirectory()) {
+                    directories.add(path);
+                    continue;
                 }
 
-                // 同時顯示彈出對話框（始終顯示，確保用戶看到通知）
-                JOptionPane.showMessageDialog(null, message, title, JOptionPane.WARNING_MESSAGE);
+                if (reportChanges) {
+                    // 屬性未變動時直接比對快照欄位，不建立快照物件
+                    int slot = directoryId >= 0 ? snapshots.find(directoryId, path) : -1;
+                    if (slot < 0 && adoptUntracked) {
+                        track(path, FileSnapshot.of(attributes));
+                        continue;
+                    }
+                    if (slot >= 0) {
+                        snapshots.mark(slot);
+                        if (snapshots.isUnchanged(slot, attributes.size(), attributes.lastModifiedTime().toMillis())
+                                && (settleTracker == null || !settleTracker.isPending(path.toString()))) {
+                            if (snapshots.needsFileKey(slot)) {
+                                // 從快照檔載入的檔案第一次掃描時補上檔案鍵
+                                snapshots.refreshFileKey(slot, attributes.fileKey());
+                            }
+                            continue;
+                        }
+                    }
+                    checkExistingFile(path, FileSnapshot.of(attributes));
+                } else {
+                    track(path, FileSnapshot.of(attributes));
+                }
             }
-        });
+
+            // 檢查是否有檔案被刪除（新檔案可能剛建立目錄編號，重新取得）
+            directoryId = snapshots.directoryId(directory);
+            if (directoryId < 0) {
+                return;
+            }
+            int slot = snapshots.firstInDirectory(directoryId);
+            while (slot >= 0) {
+                // 移除會改寫串列，先取得下一個
+                int next = snapshots.nextInDirectory(slot);
+                if (snapshots.isStale(slot)) {
+                    removeTracked(slot);
+                }
+                slot = next;
+            }
+        }
+
+        @Override
+        public void beforeDirectory(Path directory) throws IOException {
+            checkDeadline();
+        }
+
+        @Override
+        public boolean isCandidateFile(Path entry) {
+            return matchesFilter(entry.getFileName());
+        }
+
+        @Override
+        public void directoryDiscovered(Path directory) {
+            try {
+                engine.register(directory);
+            } catch (IOException e) {
+                logger.log(Level.FINE, "無法註冊子目錄事件監控: " + directory, e);
+            }
+        }
+
+        @Override
+        public void directoryRemoved(Path directory) {
+            for (int directoryId : snapshots.directoriesUnder(directory)) {
+                int slot = snapshots.firstInDirectory(directoryId);
+                while (slot >= 0) {
+                    int next = snapshots.nextInDirectory(slot);
+                    removeTracked(slot);
+                    slot = next;
+                }
+            }
+        }
+
+        private void removeTracked(int slot) {
+            if (reportChanges) {
+                reportDeleted(slot);
+            } else {
+                untrack(slot, snapshots.pathAt(slot));
+            }
+        }
+    }
+
+    /**
+     * 依設定建立偵測引擎。AUTO 在 WatchService 無法使用時退回輪詢，且網路磁碟每次排程仍完整比對；
+     * WATCH 信任事件，只做定期的完整比對，無法註冊時不退回輪詢
+     */
+    private void startEngine(Path directory) throws IOException {
+        DetectionMode mode = dto.getDetectionMode();
+        if (mode != DetectionMode.POLL) {
+            // 網路磁碟可能默默遺失事件，事件只用來提早觸發掃描
+            boolean reconcileEveryScan = mode == DetectionMode.AUTO
+                    && isNetworkPath(dto.getDirectoryMonitorPath(), directory);
+            DetectionEngine watchEngine = new WatchServiceDetectionEngine(
+                    reconcileEveryScan ? 1 : WatchServiceDetectionEngine.DEFAULT_FULL_RESCAN_EVERY);
+            try {
+                watchEngine.start(directory, this::fireChangeTrigger);
+                replaceEngine(watchEngine);
+                logger.info((reconcileEveryScan ? "使用 WatchService 事件監控（網路磁碟，每次完整比對）: "
+                        : "使用 WatchService 事件監控: ") + directory);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                if (mode == DetectionMode.WATCH) {
+                    throw new IOException("無法使用 WatchService 監控: " + directory, e);
+                }
+                logger.log(Level.WARNING, "無法使用 WatchService，改用輪詢模式: " + directory, e);
+            }
+        }
+        replaceEngine(new PollingDetectionEngine());
+        logger.info("使用輪詢模式監控: " + directory);
+    }
+
+    /**
+     * UNC 路徑（\\host\share 或 //host/share）或掛載的網路檔案系統
+     */
+    static boolean isNetworkPath(String configuredPath, Path directory) {
+        if (configuredPath.startsWith("\\\\") || configuredPath.startsWith("//")) {
+            return true;
+        }
+        try {
+            return NETWORK_FILE_SYSTEMS.contains(Files.getFileStore(directory).type().toLowerCase(Locale.ROOT));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 以指定的偵測引擎取代目前的引擎（測試用）
+     */
+    void setDetectionEngine(DetectionEngine newEngine) {
+        replaceEngine(newEngine);
+    }
+
+    private void replaceEngine(DetectionEngine newEngine) {
+        DetectionEngine previous = engine;
+        engine = newEngine;
+        previous.close();
+    }
+
+    private void fireChangeTrigger() {
+        Runnable trigger = changeTrigger;
+        if (trigger != null) {
+            trigger.run();
+        }
+    }
+
+    /**
+     * Set the callback invoked when the detection engine reports pending changes
+     *
+     * @param changeTrigger the callback, usually scheduling an immediate {@link #checkForChanges(String)}
+     */
+    public void setChangeTrigger(Runnable changeTrigger) {
+        this.changeTrigger = changeTrigger;
+    }
+
+    /**
+     * 釋放偵測引擎與快照檔
+     */
+    public void close() {
+        replaceEngine(new PollingDetectionEngine());
+        if (ownsAttributeFetcher) {
+            attributeFetcher.close();
+        }
+        if (snapshotStore != null) {
+            flushSnapshotStore();
+            snapshotStore.close();
+            snapshotStore = null;
+        }
+    }
+
+    /**
+     * Get the number of changes reported by the most recent {@link #checkForChanges(String)}
+     *
+     * @return the number of new, modified and deleted files seen by the last scan
+     */
+    public int getLastScanChangeCount() {
+        return lastScanChangeCount;
+    }
+
+    /**
+     * Whether the most recent {@link #checkForChanges(String)} completed
+     *
+     * @return false if the directory was unreachable or the scan failed or was cancelled
+     */
+    public boolean isLastScanSuccessful() {
+        return lastScanSuccessful;
+    }
+
+    /**
+     * Whether files are still waiting for their writes to settle
+     *
+     * @return true if the next scan has pending files to re-check
+     */
+    public boolean hasPendingChanges() {
+        WriteSettleTracker tracker = settleTracker;
+        return tracker != null && tracker.hasPending();
+    }
+
+    /**
+     * Get the scan metrics of this target
+     *
+     * @return the metrics, also registered as a JMX MBean by the scheduler
+     */
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 事件匯流排中尚未送達的事件數（取各訂閱者的最大值）
+     */
+    private int getEventQueueDepth() {
+        ChangeEventBus bus = eventBus;
+        if (bus == null) {
+            return 0;
+        }
+        int depth = 0;
+        for (ChangeEventBus.Subscription subscription : bus.getSubscriptions()) {
+            depth = Math.max(depth, subscription.getQueueDepth());
+        }
+        return depth;
+    }
+
+    private int getPendingFileCount() {
+        WriteSettleTracker tracker = settleTracker;
+        return tracker == null ? 0 : tracker.getPendingCount();
+    }
+
+    /**
+     * Get the monitoring configuration in use; it must not be modified, use {@link #reconfigure(MonitorDataObject)}
+     *
+     * @return the data object containing monitoring configuration
+     */
+    public MonitorDataObject getMonitorDataObject() {
+        return dto;
+    }
+
+    /**
+     * Whether changes are delivered by file system events instead of periodic polling
+     *
+     * @return true when the WatchService engine is active
+     */
+    public boolean isEventDriven() {
+        return engine.isEventDriven();
+    }
+
+    /**
+     * Share an attribute fetcher with the other targets on the same share host
+     *
+     * @param attributeFetcher the fetcher whose concurrency limit applies to the whole host
+     */
+    public void setAttributeFetcher(AttributeFetcher attributeFetcher) {
+        if (attributeFetcher == null) {
+            throw new IllegalArgumentException("Attribute fetcher cannot be null");
+        }
+        AttributeFetcher previous = this.attributeFetcher;
+        boolean ownedPrevious = ownsAttributeFetcher;
+        this.attributeFetcher = attributeFetcher;
+        this.ownsAttributeFetcher = false;
+        if (ownedPrevious && previous != attributeFetcher) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Share a reachability probe with the other targets on the same share host
+     *
+     * @param shareProbe the probe used instead of checking the directory on the scan thread, or null
+     */
+    public void setShareProbe(ShareProbe shareProbe) {
+        this.shareProbe = shareProbe;
+    }
+
+    /**
+     * Set the bus that change events are published to, usually shared by all targets
+     *
+     * @param eventBus the bus, or null to only update the snapshot
+     */
+    public void setEventBus(ChangeEventBus eventBus) {
+        this.eventBus = eventBus;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,291 @@
+package com.file.service;
+
+import com.file.object.ChangeType;
+import com.file.object.FileChangeEvent;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Notification stage between change detection and display.
+ * Scan threads only record events here and never wait for the UI. Events are collected for a
+ * debounce window, grouped by change type and folder, and shown as one summary dialog. While a
+ * dialog is still open further events keep accumulating and are shown once it is closed, and
+ * tray balloons are rate limited, so a burst of hundreds of files produces a handful of
+ * notifications that still account for every event.
+ */
+public class NotificationDispatcher implements FileChangeListener, Closeable {
+
+    private static final Logger logger = Logger.getLogger(NotificationDispatcher.class.getName());
+
+    // 預設合併視窗（毫秒）
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 2000;
+
+    // 預設托盤通知最短間隔（毫秒）
+    public static final long DEFAULT_BALLOON_INTERVAL_MILLIS = 5000;
+
+    // 每個群組在摘要中列出的檔名數量
+    private static final int MAX_SAMPLES = 5;
+
+    // 摘要中列出的群組（變更類型與資料夾）數量，其餘只列總數
+    private static final int MAX_GROUPS = 10;
+
+    /**
+     * Displays notifications, implemented by the UI layer
+     */
+    public interface NotificationSink {
+
+        /**
+         * 顯示對話框，關閉後需呼叫 onClosed
+         */
+        void showDialog(String title, String message, Runnable onClosed);
+
+        /**
+         * 顯示系統托盤通知
+         */
+        void showBalloon(String title, String message);
+    }
+
+    /**
+     * 依變更類型與資料夾分組
+     */
+    private static final class GroupKey {
+        final ChangeType type;
+        final Path folder;
+
+        GroupKey(ChangeType type, Path folder) {
+            this.type = type;
+            this.folder = folder;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey other = (GroupKey) o;
+            return type == other.type && Objects.equals(folder, other.folder);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, folder);
+        }
+    }
+
+    /**
+     * 同一群組的事件，只保留數量與少量檔名
+     */
+    private static final class Group {
+        int count;
+        String firstTitle;
+        String firstMessage;
+        final List<String> samples = new ArrayList<>();
+    }
+
+    private final NotificationSink sink;
+
+    private final long debounceMillis;
+
+    private final long balloonIntervalMillis;
+
+    private final ScheduledExecutorService executor;
+
+    private final Map<GroupKey, Group> pending = new LinkedHashMap<>();
+
+    private boolean flushScheduled;
+
+    private boolean dialogOpen;
+
+    private long lastBalloonAt;
+
+    private long publishedCount;
+
+    public NotificationDispatcher(NotificationSink sink) {
+        this(sink, DEFAULT_DEBOUNCE_MILLIS, DEFAULT_BALLOON_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param sink displays the notifications
+     * @param debounceMillis how long events are collected before a summary is shown
+     * @param balloonIntervalMillis minimum time between two tray balloons
+     */
+    public NotificationDispatcher(NotificationSink sink, long debounceMillis, long balloonIntervalMillis) {
+        if (debounceMillis < 0 || balloonIntervalMillis < 0) {
+            throw new IllegalArgumentException("Notification intervals cannot be negative");
+        }
+        this.sink = sink;
+        this.debounceMillis = debounceMillis;
+        this.balloonIntervalMillis = balloonIntervalMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "notification-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 記錄一筆變更事件（不會阻塞呼叫者）
+     *
+     * @param type the kind of change
+     * @param file the changed file
+     * @param title the title used when the event is shown alone
+     * @param message the message used when the event is shown alone
+     */
+    public void publish(ChangeType type, Path file, String title, String message) {
+        synchronized (this) {
+            Group group = pending.computeIfAbsent(new GroupKey(type, file.getParent()), k -> new Group());
+            if (group.count == 0) {
+                group.firstTitle = title;
+                group.firstMessage = message;
+            }
+            group.count++;
+            if (group.samples.size() < MAX_SAMPLES) {
+                group.samples.add(String.valueOf(file.getFileName()));
+            }
+            publishedCount++;
+
+            if (flushScheduled || dialogOpen) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        schedule(debounceMillis);
+    }
+
+    /**
+     * 由事件匯流排送達的變更
+     */
+    @Override
+    public void onChange(FileChangeEvent event) {
+        publish(event.getType(), event.getPath(), ChangeMessageFormatter.title(event), ChangeMessageFormatter.message(event));
+    }
+
+    /**
+     * 已收到的事件總數
+     */
+    public synchronized long getPublishedCount() {
+        return publishedCount;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void schedule(long delayMillis) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        Map<GroupKey, Group> groups;
+        boolean showBalloon;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty() || dialogOpen) {
+                return;
+            }
+            groups = new LinkedHashMap<>(pending);
+            pending.clear();
+            dialogOpen = true;
+
+            long now = System.currentTimeMillis();
+            showBalloon = now - lastBalloonAt >= balloonIntervalMillis;
+            if (showBalloon) {
+                lastBalloonAt = now;
+            }
+        }
+
+        String title = summaryTitle(groups);
+        String message = summaryMessage(groups);
+        try {
+            if (showBalloon) {
+                sink.showBalloon(title, message);
+            }
+            sink.showDialog(title, message, this::dialogClosed);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "顯示通知時發生錯誤", e);
+            dialogClosed();
+        }
+    }
+
+    /**
+     * 對話框關閉後，顯示期間累積的事件
+     */
+    private void dialogClosed() {
+        synchronized (this) {
+            dialogOpen = false;
+            if (pending.isEmpty() || flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        schedule(0);
+    }
+
+    private static String summaryTitle(Map<GroupKey, Group> groups) {
+        if (groups.size() == 1) {
+            Map.Entry<GroupKey, Group> only = groups.entrySet().iterator().next();
+            if (only.getValue().count == 1) {
+                return only.getValue().firstTitle;
+            }
+            return "檔案監控 - " + only.getKey().type.getLabel() + " (" + only.getValue().count + " 個檔案)";
+        }
+        int total = 0;
+        for (Group group : groups.values()) {
+            total += group.count;
+        }
+        return "檔案監控 - 共 " + total + " 項變更";
+    }
+
+    private static String summaryMessage(Map<GroupKey, Group> groups) {
+        StringBuilder message = new StringBuilder();
+        int shown = 0;
+        Set<Path> hiddenFolders = new HashSet<>();
+        int hiddenFiles = 0;
+        for (Map.Entry<GroupKey, Group> entry : groups.entrySet()) {
+            Group group = entry.getValue();
+            if (shown == MAX_GROUPS) {
+                hiddenFolders.add(entry.getKey().folder);
+                hiddenFiles += group.count;
+                continue;
+            }
+            shown++;
+            if (message.length() > 0) {
+                message.append("\n\n");
+            }
+            if (group.count == 1) {
+                message.append(group.firstMessage);
+                continue;
+            }
+            message.append(entry.getKey().type.getLabel()).append(": ").append(group.count).append(" 個檔案\n");
+            message.append("資料夾: ").append(entry.getKey().folder);
+            for (String sample : group.samples) {
+                message.append("\n  ").append(sample);
+            }
+            if (group.count > group.samples.size()) {
+                message.append("\n  ...另有 ").append(group.count - group.samples.size()).append(" 個檔案");
+            }
+        }
+        if (hiddenFiles > 0) {
+            message.append("\n\n...另有 ").append(hiddenFolders.size()).append(" 個資料夾，共 ")
+                    .append(hiddenFiles).append(" 個檔案變更");
+        }
+        return message.toString();
+    }
+}
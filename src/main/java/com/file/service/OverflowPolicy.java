@@ -0,0 +1,22 @@
+package com.file.service;
+
+/**
+ * What happens when a listener's queue is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 等待監聽者處理，發布者（掃描執行緒）會被延遲，確保每筆事件都送達
+     */
+    BLOCK,
+
+    /**
+     * 捨棄最舊的事件並計數
+     */
+    DROP_OLDEST,
+
+    /**
+     * 同一路徑尚未處理的事件合併為一筆，佇列只保存不同的路徑
+     */
+    MERGE_PER_PATH
+}
@@ -0,0 +1,39 @@
+package com.file.service;
+
+import java.nio.file.Path;
+
+/**
+ * Detection engine that always requests a full rescan.
+ * This is the original poll-and-diff behaviour and works on every file system,
+ * including network shares that do not deliver change events.
+ */
+public class PollingDetectionEngine implements DetectionEngine {
+
+    @Override
+    public void start(Path directory, Runnable onChange) {
+        // 輪詢模式不需要註冊任何資源
+    }
+
+    @Override
+    public void register(Path directory) {
+    }
+
+    @Override
+    public ScanRequest nextScan() {
+        return ScanRequest.full();
+    }
+
+    @Override
+    public void requeue(ScanRequest request) {
+        // 每次都是完整掃描，不需保留
+    }
+
+    @Override
+    public boolean isEventDriven() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+}
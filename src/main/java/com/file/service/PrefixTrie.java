@@ -0,0 +1,81 @@
+package com.file.service;
+
+import java.util.Arrays;
+
+/**
+ * Character trie answering whether any of its prefixes starts a given name.
+ * Children are kept in sorted arrays and found by binary search, so a lookup walks at most
+ * the length of the longest prefix without allocating, however many prefixes are added.
+ */
+final class PrefixTrie {
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        boolean terminal;
+
+        Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node addChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            Node node = new Node();
+            newKeys[insertAt] = key;
+            newChildren[insertAt] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+
+    private final Node root = new Node();
+
+    private int size;
+
+    void add(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.addChild(prefix.charAt(i));
+        }
+        if (!node.terminal) {
+            node.terminal = true;
+            size++;
+        }
+    }
+
+    /**
+     * 名稱是否以任一前綴開頭
+     */
+    boolean matchesPrefixOf(CharSequence name) {
+        Node node = root;
+        if (node.terminal) {
+            return true;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            node = node.child(name.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.file.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a scan stops early because its deadline passed or it was cancelled.
+ * Directories listed before the scan stopped are fully applied, the rest are picked up by the next scan:
+ * a full scan is repeated, a targeted scan hands the paths it did not reach back to the detection engine.
+ */
+public class ScanCancelledException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ScanCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,359 @@
+package com.file.service;
+
+import com.file.object.ChangeType;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntSupplier;
+
+/**
+ * Scan metrics of one monitored directory.
+ * Recording only updates atomic counters and a fixed-bucket duration histogram, so it does not
+ * allocate on the scan path. The figures are read through JMX ({@link ScanMetricsMBean}), the
+ * periodic summary line of the scheduler and optionally the tray tooltip.
+ */
+public class ScanMetrics implements ScanMetricsMBean {
+
+    // 掃描耗時區間上限（毫秒），最後一個區間收集超過上限的掃描
+    private static final long[] BUCKET_LIMITS_MILLIS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1_000, 2_000, 5_000, 10_000, 30_000, 60_000, Long.MAX_VALUE
+    };
+
+    private static final long[] BUCKET_LIMITS_NANOS = new long[BUCKET_LIMITS_MILLIS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_LIMITS_MILLIS.length; i++) {
+            long millis = BUCKET_LIMITS_MILLIS[i];
+            BUCKET_LIMITS_NANOS[i] = millis == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    private static final IntSupplier ZERO = () -> 0;
+
+    private volatile String directory;
+
+    private final AtomicLongArray durationHistogram = new AtomicLongArray(BUCKET_LIMITS_NANOS.length);
+    private final AtomicLongArray eventsByType = new AtomicLongArray(ChangeType.values().length);
+
+    private final AtomicLong scans = new AtomicLong();
+    private final AtomicLong failedScans = new AtomicLong();
+    private final AtomicLong skippedScans = new AtomicLong();
+    private final AtomicLong overrunScans = new AtomicLong();
+    private final AtomicLong overlappingRequests = new AtomicLong();
+    private final AtomicLong circuitOpenSkips = new AtomicLong();
+    private final AtomicLong entriesListed = new AtomicLong();
+    private final AtomicLong statCalls = new AtomicLong();
+    private final AtomicLong lastDurationNanos = new AtomicLong();
+    private final AtomicLong maxDurationNanos = new AtomicLong();
+    private final AtomicLong lastLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private final AtomicLong lastSuccessMillis = new AtomicLong();
+
+    private volatile IntSupplier queueDepth = ZERO;
+    private volatile IntSupplier pendingFiles = ZERO;
+
+    public ScanMetrics(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 記錄一次完成的掃描
+     *
+     * @param durationNanos how long the scan took
+     * @param entries the number of directory entries listed
+     * @param stats the number of attribute reads
+     * @param success false if the scan ended with an error
+     */
+    public void recordScan(long durationNanos, long entries, long stats, boolean success) {
+        scans.incrementAndGet();
+        if (!success) {
+            failedScans.incrementAndGet();
+        } else {
+            lastSuccessMillis.set(System.currentTimeMillis());
+        }
+        entriesListed.addAndGet(entries);
+        statCalls.addAndGet(stats);
+        lastDurationNanos.set(durationNanos);
+        updateMax(maxDurationNanos, durationNanos);
+
+        int bucket = 0;
+        while (durationNanos > BUCKET_LIMITS_NANOS[bucket]) {
+            bucket++;
+        }
+        durationHistogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * 事件驅動模式下沒有待處理事件而略過的掃描
+     */
+    public void recordSkippedScan() {
+        skippedScans.incrementAndGet();
+        lastSuccessMillis.set(System.currentTimeMillis());
+    }
+
+    /**
+     * 掃描超過期限仍未完成
+     */
+    public void recordOverrun() {
+        overrunScans.incrementAndGet();
+    }
+
+    /**
+     * 逾時掃描執行期間收到而被略過的掃描要求
+     */
+    public void recordOverlappingRequests(int count) {
+        overlappingRequests.addAndGet(count);
+    }
+
+    /**
+     * 共用資料夾斷路中，以探測取代而略過的掃描
+     */
+    public void recordCircuitOpenSkip() {
+        circuitOpenSkips.incrementAndGet();
+    }
+
+    public void recordEvent(ChangeType type) {
+        eventsByType.incrementAndGet(type.ordinal());
+    }
+
+    /**
+     * 記錄掃描開始時間與預定時間的差距
+     */
+    public void recordSchedulerLag(long lagNanos) {
+        long lag = Math.max(0, lagNanos);
+        lastLagNanos.set(lag);
+        updateMax(maxLagNanos, lag);
+    }
+
+    void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    void setQueueDepthSource(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    void setPendingFilesSource(IntSupplier pendingFiles) {
+        this.pendingFiles = pendingFiles;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public long getScanCount() {
+        return scans.get();
+    }
+
+    @Override
+    public long getFailedScanCount() {
+        return failedScans.get();
+    }
+
+    @Override
+    public long getSkippedScanCount() {
+        return skippedScans.get();
+    }
+
+    @Override
+    public long getOverrunScanCount() {
+        return overrunScans.get();
+    }
+
+    @Override
+    public long getOverlappingRequestCount() {
+        return overlappingRequests.get();
+    }
+
+    @Override
+    public long getCircuitOpenSkipCount() {
+        return circuitOpenSkips.get();
+    }
+
+    @Override
+    public double getLastScanDurationMillis() {
+        return toMillis(lastDurationNanos.get());
+    }
+
+    @Override
+    public double getScanDurationP50Millis() {
+        return percentileMillis(0.50);
+    }
+
+    @Override
+    public double getScanDurationP95Millis() {
+        return percentileMillis(0.95);
+    }
+
+    @Override
+    public double getMaxScanDurationMillis() {
+        return toMillis(maxDurationNanos.get());
+    }
+
+    @Override
+    public long[] getScanDurationHistogram() {
+        long[] counts = new long[durationHistogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = durationHistogram.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public long[] getScanDurationBucketsMillis() {
+        return BUCKET_LIMITS_MILLIS.clone();
+    }
+
+    @Override
+    public long getEntriesListed() {
+        return entriesListed.get();
+    }
+
+    @Override
+    public long getStatCalls() {
+        return statCalls.get();
+    }
+
+    @Override
+    public long getCreatedEvents() {
+        return eventsByType.get(ChangeType.CREATED.ordinal());
+    }
+
+    @Override
+    public long getModifiedEvents() {
+        return eventsByType.get(ChangeType.MODIFIED.ordinal());
+    }
+
+    @Override
+    public long getDeletedEvents() {
+        return eventsByType.get(ChangeType.DELETED.ordinal());
+    }
+
+    @Override
+    public long getMovedEvents() {
+        return eventsByType.get(ChangeType.MOVED.ordinal());
+    }
+
+    @Override
+    public double getLastSchedulerLagMillis() {
+        return toMillis(lastLagNanos.get());
+    }
+
+    @Override
+    public double getMaxSchedulerLagMillis() {
+        return toMillis(maxLagNanos.get());
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public int getPendingFiles() {
+        return pendingFiles.getAsInt();
+    }
+
+    @Override
+    public long getLastSuccessTimeMillis() {
+        return lastSuccessMillis.get();
+    }
+
+    @Override
+    public String getLastSuccessTime() {
+        long millis = lastSuccessMillis.get();
+        return millis == 0 ? "-" : new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(millis));
+    }
+
+    /**
+     * 單行摘要，供定期寫入日誌
+     */
+    @Override
+    public String getSummary() {
+        return String.format("掃描統計 %s: 掃描 %d 次（失敗 %d，略過 %d，逾時 %d，斷路略過 %d），耗時 p50 %.0f ms / p95 %.0f ms / 最長 %.0f ms，"
+                        + "列舉 %d 項，讀取屬性 %d 次，事件 新增 %d / 修改 %d / 刪除 %d / 移動 %d，"
+                        + "排程延遲 %.0f ms（最大 %.0f ms），佇列 %d，等待寫入完成 %d，最後成功 %s",
+                directory, getScanCount(), getFailedScanCount(), getSkippedScanCount(),
+                getOverrunScanCount(), getCircuitOpenSkipCount(),
+                getScanDurationP50Millis(), getScanDurationP95Millis(), getMaxScanDurationMillis(),
+                getEntriesListed(), getStatCalls(),
+                getCreatedEvents(), getModifiedEvents(), getDeletedEvents(), getMovedEvents(),
+                getLastSchedulerLagMillis(), getMaxSchedulerLagMillis(), getQueueDepth(), getPendingFiles(),
+                getLastSuccessTime());
+    }
+
+    /**
+     * 托盤提示文字（Windows 最多顯示約 127 個字元）
+     */
+    public String getTooltip() {
+        long events = getCreatedEvents() + getModifiedEvents() + getDeletedEvents() + getMovedEvents();
+        String time = getLastSuccessTime();
+        return String.format("最後掃描 %s（%.0f ms）\n事件 %d，失敗 %d",
+                time.length() > 11 ? time.substring(11) : time, getLastScanDurationMillis(), events, getFailedScanCount());
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < durationHistogram.length(); i++) {
+            durationHistogram.set(i, 0);
+        }
+        for (int i = 0; i < eventsByType.length(); i++) {
+            eventsByType.set(i, 0);
+        }
+        scans.set(0);
+        failedScans.set(0);
+        skippedScans.set(0);
+        overrunScans.set(0);
+        overlappingRequests.set(0);
+        circuitOpenSkips.set(0);
+        entriesListed.set(0);
+        statCalls.set(0);
+        lastDurationNanos.set(0);
+        maxDurationNanos.set(0);
+        lastLagNanos.set(0);
+        maxLagNanos.set(0);
+    }
+
+    /**
+     * 由分佈估計百分位數（取所在區間的上限，超過最後上限時取最長耗時）
+     */
+    private double percentileMillis(double percentile) {
+        long total = 0;
+        for (int i = 0; i < durationHistogram.length(); i++) {
+            total += durationHistogram.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < durationHistogram.length(); i++) {
+            seen += durationHistogram.get(i);
+            if (seen >= rank) {
+                if (BUCKET_LIMITS_MILLIS[i] == Long.MAX_VALUE) {
+                    return getMaxScanDurationMillis();
+                }
+                return Math.min(BUCKET_LIMITS_MILLIS[i], getMaxScanDurationMillis());
+            }
+        }
+        return getMaxScanDurationMillis();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,76 @@
+package com.file.service;
+
+/**
+ * JMX view of the scan metrics of one monitored directory.
+ */
+public interface ScanMetricsMBean {
+
+    String getDirectory();
+
+    long getScanCount();
+
+    long getFailedScanCount();
+
+    long getSkippedScanCount();
+
+    /**
+     * 超過掃描期限的次數
+     */
+    long getOverrunScanCount();
+
+    /**
+     * 前一次掃描逾時仍在執行而略過的掃描要求數
+     */
+    long getOverlappingRequestCount();
+
+    /**
+     * 共用資料夾無回應（斷路中）而未掃描的次數
+     */
+    long getCircuitOpenSkipCount();
+
+    double getLastScanDurationMillis();
+
+    double getScanDurationP50Millis();
+
+    double getScanDurationP95Millis();
+
+    double getMaxScanDurationMillis();
+
+    /**
+     * 掃描耗時分佈，各區間上限見 {@link #getScanDurationBucketsMillis()}
+     */
+    long[] getScanDurationHistogram();
+
+    long[] getScanDurationBucketsMillis();
+
+    long getEntriesListed();
+
+    long getStatCalls();
+
+    long getCreatedEvents();
+
+    long getModifiedEvents();
+
+    long getDeletedEvents();
+
+    long getMovedEvents();
+
+    double getLastSchedulerLagMillis();
+
+    double getMaxSchedulerLagMillis();
+
+    int getQueueDepth();
+
+    int getPendingFiles();
+
+    long getLastSuccessTimeMillis();
+
+    String getLastSuccessTime();
+
+    String getSummary();
+
+    /**
+     * 重設所有統計
+     */
+    void reset();
+}
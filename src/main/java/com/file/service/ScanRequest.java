@@ -0,0 +1,75 @@
+package com.file.service;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Describes what the next scan of a monitored directory has to look at.
+ * A request is either a full rescan, a targeted rescan of changed paths and
+ * directories that lost events, or nothing at all.
+ */
+public final class ScanRequest {
+
+    private static final ScanRequest NONE = new ScanRequest(false, Collections.<Path>emptySet(), Collections.<Path>emptySet());
+    private static final ScanRequest FULL = new ScanRequest(true, Collections.<Path>emptySet(), Collections.<Path>emptySet());
+
+    private final boolean full;
+    private final Set<Path> paths;
+    private final Set<Path> directories;
+
+    private ScanRequest(boolean full, Set<Path> paths, Set<Path> directories) {
+        this.full = full;
+        this.paths = paths;
+        this.directories = directories;
+    }
+
+    /**
+     * 不需要掃描
+     */
+    public static ScanRequest none() {
+        return NONE;
+    }
+
+    /**
+     * 需要完整列舉並比對快照
+     */
+    public static ScanRequest full() {
+        return FULL;
+    }
+
+    /**
+     * 僅重新檢查指定的路徑，以及遺失事件的目錄
+     *
+     * @param paths the changed entries reported by the detection engine
+     * @param directories the directories whose events were lost and must be listed again
+     */
+    public static ScanRequest targeted(Set<Path> paths, Set<Path> directories) {
+        if (paths.isEmpty() && directories.isEmpty()) {
+            return NONE;
+        }
+        return new ScanRequest(false, Collections.unmodifiableSet(paths), Collections.unmodifiableSet(directories));
+    }
+
+    public boolean isNone() {
+        return !full && paths.isEmpty() && directories.isEmpty();
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * 有事件的檔案路徑
+     */
+    public Set<Path> getPaths() {
+        return paths;
+    }
+
+    /**
+     * 發生 OVERFLOW 或監控失效而需要重新列舉的目錄
+     */
+    public Set<Path> getDirectories() {
+        return directories;
+    }
+}
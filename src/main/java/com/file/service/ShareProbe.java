@@ -0,0 +1,99 @@
+package com.file.service;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Checks whether a directory on a share host responds, without letting the caller block for long.
+ * An unreachable SMB host can keep {@link Files#isDirectory} waiting for tens of seconds, so the
+ * check runs on the probe's own thread and the caller gives up after the timeout. At most one
+ * check per host is in flight: while it hangs, further callers wait for that same check instead of
+ * tying up more threads on the dead share.
+ */
+public class ShareProbe implements Closeable {
+
+    // 預設探測逾時
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private final long timeoutNanos;
+
+    private final ExecutorService executor;
+
+    // 進行中的探測與其目錄
+    private Future<Boolean> pending;
+    private Path pendingDirectory;
+
+    /**
+     * @param timeoutMillis how long a caller waits for an answer before the share counts as unreachable
+     * @param name the share host, used to name the probe thread
+     */
+    public ShareProbe(long timeoutMillis, String name) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Probe timeout must be positive");
+        }
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "share-probe-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 目錄是否存在且在逾時內回應
+     */
+    public boolean isReachable(final Path directory) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            Future<Boolean> future;
+            boolean own;
+            synchronized (this) {
+                if (executor.isShutdown()) {
+                    return false;
+                }
+                if (pending == null || pending.isDone()) {
+                    pending = executor.submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return Files.isDirectory(directory);
+                        }
+                    });
+                    pendingDirectory = directory;
+                }
+                future = pending;
+                own = directory.equals(pendingDirectory);
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                Boolean result = future.get(remaining, TimeUnit.NANOSECONDS);
+                if (own) {
+                    return result;
+                }
+                // 同一主機其他目錄的探測已返回，接著探測本目錄
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,359 @@
+package com.file.service;
+
+import com.file.object.FileSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the file snapshot of one monitored directory so that a restart does not have
+ * to walk the whole share again.
+ *
+ * <p>The file starts with a header (magic, format version, configuration fingerprint and
+ * a CRC32 of the header) followed by an append-only sequence of PUT/REMOVE records, each
+ * protected by its own CRC32. A PUT keeps the text of the file system key, so moves can still be
+ * paired against reloaded entries. After every scan only the changed entries are appended; once
+ * the log grows well beyond the number of live entries it is compacted into a fresh image.
+ * Loading memory-maps the file and stops at the first damaged record, so a torn write at the
+ * end only loses the last batch. A bad header or another format version makes {@link #load()}
+ * return null and the caller rebuilds the snapshot from the file system.</p>
+ */
+public class SnapshotStore implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(SnapshotStore.class.getName());
+
+    /**
+     * The live entries written when the file is compacted
+     */
+    public interface LiveEntries {
+
+        int size();
+
+        /**
+         * 依序交出每個檔案的完整路徑與快照
+         */
+        void forEach(BiConsumer<String, FileSnapshot> action);
+    }
+
+    // 檔案識別碼 "FWSS"
+    static final int MAGIC = 0x46575353;
+
+    // 格式版本，欄位變動時需遞增
+    static final int VERSION = 2;
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+
+    // 記錄數超過存活筆數兩倍（且至少此數量）時重寫整個檔案
+    private static final int MIN_COMPACT_RECORDS = 1024;
+
+    private final Path file;
+    private final String fingerprint;
+
+    // 尚未寫入檔案的變動
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+    private int recordCount;
+
+    /**
+     * @param file the snapshot file
+     * @param fingerprint identifies the monitoring configuration (path, filters, recursion), a stored
+     *                    snapshot with another fingerprint is ignored
+     */
+    public SnapshotStore(Path file, String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 載入快照，檔案不存在、損毀或版本不符時回傳 null
+     *
+     * @return the stored entries keyed by full path, or null when the snapshot has to be rebuilt
+     */
+    public Map<String, FileSnapshot> load() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = readChannel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                logger.warning("快照檔過大，將重新建立: " + file);
+                return null;
+            }
+            // 讀入堆積記憶體而不映射：Windows 上仍被映射的檔案無法在重寫時被取代
+            ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+            while (buffer.hasRemaining()) {
+                if (readChannel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+
+            if (!readHeader(buffer)) {
+                logger.warning("快照檔版本或設定不符，將重新建立: " + file);
+                return null;
+            }
+
+            Map<String, FileSnapshot> entries = new HashMap<>();
+            boolean clean = true;
+            int records = 0;
+            while (buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt();
+                if (length <= 0 || buffer.remaining() < length + Integer.BYTES) {
+                    logger.warning("快照檔結尾不完整，已忽略最後的變動: " + file);
+                    clean = false;
+                    break;
+                }
+                byte[] body = new byte[length];
+                buffer.get(body);
+                int storedCrc = buffer.getInt();
+                if (checksum(body, 0, length) != storedCrc) {
+                    logger.warning("快照檔記錄校驗失敗，已忽略之後的變動: " + file);
+                    clean = false;
+                    break;
+                }
+                applyRecord(body, entries);
+                records++;
+            }
+            recordCount = records;
+
+            // 結尾損毀時不可直接附加，下次寫入會重寫整個檔案
+            if (clean) {
+                openChannel();
+            }
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "讀取快照檔失敗，將重新建立: " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 記錄新增或修改的檔案
+     */
+    public void recordPut(String path, FileSnapshot snapshot) {
+        try {
+            recordBuffer.reset();
+            recordOut.writeByte(RECORD_PUT);
+            recordOut.writeUTF(path);
+            recordOut.writeLong(snapshot.getSize());
+            recordOut.writeLong(snapshot.getLastModified());
+            recordOut.writeLong(snapshot.getCreationTime());
+            recordOut.writeBoolean(snapshot.isArchive());
+            Object fileKey = snapshot.getFileKey();
+            recordOut.writeUTF(fileKey == null ? "" : fileKey.toString());
+            appendPendingRecord();
+        } catch (IOException e) {
+            // 寫入記憶體緩衝區不會發生
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 記錄已刪除的檔案
+     */
+    public void recordRemove(String path) {
+        try {
+            recordBuffer.reset();
+            recordOut.writeByte(RECORD_REMOVE);
+            recordOut.writeUTF(path);
+            appendPendingRecord();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 將本次掃描的變動附加到檔案，記錄過多時改為重寫整個快照
+     *
+     * @param live the current snapshot, used when the file is compacted
+     */
+    public void flush(Map<String, FileSnapshot> live) throws IOException {
+        flush(entriesOf(live));
+    }
+
+    /**
+     * 將本次掃描的變動附加到檔案，記錄過多時改為重寫整個快照
+     *
+     * @param live the current snapshot, used when the file is compacted
+     */
+    public void flush(LiveEntries live) throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        if (channel == null || recordCount > Math.max(MIN_COMPACT_RECORDS, live.size() * 2)) {
+            writeFull(live);
+            return;
+        }
+        channel.write(ByteBuffer.wrap(pending.toByteArray()));
+        channel.force(false);
+        pending.reset();
+    }
+
+    /**
+     * 以目前的快照重寫整個檔案（先寫入暫存檔再取代）
+     */
+    public void writeFull(Map<String, FileSnapshot> live) throws IOException {
+        writeFull(entriesOf(live));
+    }
+
+    /**
+     * 以目前的快照重寫整個檔案（先寫入暫存檔再取代）
+     */
+    public void writeFull(LiveEntries live) throws IOException {
+        pending.reset();
+        closeChannel();
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(header()));
+            IOException[] failure = new IOException[1];
+            live.forEach((path, snapshot) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                recordPut(path, snapshot);
+                if (pending.size() >= 64 * 1024) {
+                    try {
+                        out.write(ByteBuffer.wrap(pending.toByteArray()));
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                    pending.reset();
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            out.write(ByteBuffer.wrap(pending.toByteArray()));
+            pending.reset();
+            out.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        recordCount = live.size();
+        openChannel();
+    }
+
+    private static LiveEntries entriesOf(final Map<String, FileSnapshot> map) {
+        return new LiveEntries() {
+            @Override
+            public int size() {
+                return map.size();
+            }
+
+            @Override
+            public void forEach(BiConsumer<String, FileSnapshot> action) {
+                map.forEach(action);
+            }
+        };
+    }
+
+    private void openChannel() throws IOException {
+        closeChannel();
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void close() {
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "關閉快照檔時發生錯誤", e);
+            }
+            channel = null;
+        }
+    }
+
+    private void appendPendingRecord() throws IOException {
+        byte[] body = recordBuffer.toByteArray();
+        pendingOut.writeInt(body.length);
+        pendingOut.write(body);
+        pendingOut.writeInt(checksum(body, 0, body.length));
+        recordCount++;
+    }
+
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(fingerprint);
+        byte[] body = bytes.toByteArray();
+        out.writeInt(checksum(body, 0, body.length));
+        return bytes.toByteArray();
+    }
+
+    private boolean readHeader(ByteBuffer buffer) {
+        byte[] expected;
+        try {
+            expected = header();
+        } catch (IOException e) {
+            return false;
+        }
+        if (buffer.remaining() < expected.length) {
+            return false;
+        }
+        byte[] actual = new byte[expected.length];
+        buffer.get(actual);
+        return Arrays.equals(expected, actual);
+    }
+
+    private static void applyRecord(byte[] body, Map<String, FileSnapshot> entries) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        String path = in.readUTF();
+        if (type == RECORD_PUT) {
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            long creationTime = in.readLong();
+            boolean archive = in.readBoolean();
+            Object fileKey = FileSnapshot.storedFileKey(in.readUTF());
+            entries.put(path, new FileSnapshot(size, lastModified, creationTime, fileKey, archive));
+        } else if (type == RECORD_REMOVE) {
+            entries.remove(path);
+        } else {
+            throw new IOException("Unknown snapshot record type: " + type);
+        }
+    }
+
+    private int checksum(byte[] bytes, int offset, int length) {
+        crc.reset();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
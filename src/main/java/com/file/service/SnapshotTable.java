@@ -0,0 +1,643 @@
+package com.file.service;
+
+import com.file.object.FileSnapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Compact in-memory snapshot of the tracked files of one monitored directory.
+ *
+ * <p>Instead of one map entry with a full path string and a snapshot object per file, files are
+ * stored in slots of parallel primitive arrays. Parent directories are interned once in a
+ * directory table, file names are UTF-8 bytes in a shared arena, and size, modification time and
+ * creation time are {@code long[]} columns. Files are found through an open addressing table
+ * keyed by directory id and name; a second table keyed by file identity answers whether a new
+ * file is a moved one. The files of a directory are chained through their slots, so listing the
+ * tracked files of a directory needs no extra set.</p>
+ *
+ * <p>A tracked file costs roughly 80 bytes plus its name, against several hundred bytes for a
+ * {@code HashMap<String, FileSnapshot>} entry. Not thread-safe; only used from the scan thread.</p>
+ */
+final class SnapshotTable implements SnapshotStore.LiveEntries {
+
+    private static final int INITIAL_SLOTS = 256;
+
+    private static final byte FLAG_USED = 1;
+    private static final byte FLAG_ARCHIVE = 2;
+
+    // ---- 目錄表 ----
+    private final Map<Path, Integer> directoryIds = new HashMap<>();
+    private Path[] directories = new Path[16];
+    // 目錄字串長度（含分隔字元），檔名自此位置開始
+    private int[] nameStarts = new int[16];
+    private int[] directoryHeads = new int[16];
+    private int[] directoryFileCounts = new int[16];
+    private int directoryCount;
+    private int[] freeDirectoryIds = new int[16];
+    private int freeDirectoryCount;
+
+    // ---- 檔案欄位（以 slot 為索引） ----
+    private int[] directoryOf = new int[INITIAL_SLOTS];
+    private int[] nameOffsets = new int[INITIAL_SLOTS];
+    private int[] nameLengths = new int[INITIAL_SLOTS];
+    private int[] nameHashes = new int[INITIAL_SLOTS];
+    private long[] sizes = new long[INITIAL_SLOTS];
+    private long[] lastModifiedTimes = new long[INITIAL_SLOTS];
+    private long[] creationTimes = new long[INITIAL_SLOTS];
+    private Object[] fileKeys = new Object[INITIAL_SLOTS];
+    private byte[] flags = new byte[INITIAL_SLOTS];
+    // 最後一次在列舉中看到此檔案的輪次，與目前輪次不同者即為已刪除
+    private int[] epochs = new int[INITIAL_SLOTS];
+    // 同一目錄的檔案串列；空閒 slot 以 nextInDirectory 串成清單
+    private int[] nextInDirectory = new int[INITIAL_SLOTS];
+    private int[] previousInDirectory = new int[INITIAL_SLOTS];
+    private int slotLimit;
+    private int freeSlotHead = -1;
+    private int size;
+    private int epoch;
+
+    // ---- 檔名位元組區 ----
+    private byte[] arena = new byte[16 * 1024];
+    private int arenaUsed;
+    private int arenaGarbage;
+
+    // ---- 開放定址表（存放 slot + 1，0 為空） ----
+    private int[] pathTable = new int[INITIAL_SLOTS * 2];
+    private int[] identityTable = new int[INITIAL_SLOTS * 2];
+
+    // 查詢時編碼檔名用的暫存區
+    private byte[] scratch = new byte[256];
+
+    /**
+     * 追蹤中的檔案數
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // ---- 查詢 ----
+
+    /**
+     * 目錄的編號，沒有追蹤中的檔案時回傳 -1
+     */
+    int directoryId(Path directory) {
+        Integer id = directoryIds.get(directory);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * 依完整路徑尋找檔案
+     *
+     * @return the slot of the file, or -1 if it is not tracked
+     */
+    int find(Path path) {
+        Path parent = path.getParent();
+        if (parent == null) {
+            return -1;
+        }
+        int directoryId = directoryId(parent);
+        return directoryId < 0 ? -1 : find(directoryId, path);
+    }
+
+    /**
+     * 在已知目錄中尋找檔案，不配置任何物件
+     *
+     * @param directoryId the id of the file's parent directory
+     * @param path the file, its string form has to start with the directory
+     * @return the slot of the file, or -1 if it is not tracked
+     */
+    int find(int directoryId, Path path) {
+        String fullPath = path.toString();
+        int length = encodeName(fullPath, nameStarts[directoryId]);
+        int hash = nameHash(scratch, 0, length);
+        int mask = pathTable.length - 1;
+        for (int i = mix(directoryId, hash) & mask; ; i = (i + 1) & mask) {
+            int entry = pathTable[i];
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if (nameHashes[slot] == hash && directoryOf[slot] == directoryId && nameEquals(slot, length)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * 依完整路徑字串取得快照，未追蹤時回傳 null
+     */
+    FileSnapshot get(String fullPath) {
+        int slot = find(Paths.get(fullPath));
+        return slot < 0 ? null : snapshotAt(slot);
+    }
+
+    FileSnapshot get(Path path) {
+        int slot = find(path);
+        return slot < 0 ? null : snapshotAt(slot);
+    }
+
+    FileSnapshot snapshotAt(int slot) {
+        return new FileSnapshot(sizes[slot], lastModifiedTimes[slot], creationTimes[slot], fileKeys[slot],
+                (flags[slot] & FLAG_ARCHIVE) != 0);
+    }
+
+    /**
+     * 屬性是否與快照相同（判斷方式同 {@link FileSnapshot#isModifiedSince(FileSnapshot)}），不需建立快照物件
+     */
+    boolean isUnchanged(int slot, long size, long lastModified) {
+        return sizes[slot] == size && lastModifiedTimes[slot] == lastModified;
+    }
+
+    long sizeAt(int slot) {
+        return sizes[slot];
+    }
+
+    long lastModifiedAt(int slot) {
+        return lastModifiedTimes[slot];
+    }
+
+    Path pathAt(int slot) {
+        return directories[directoryOf[slot]].resolve(nameAt(slot));
+    }
+
+    String nameAt(int slot) {
+        return new String(arena, nameOffsets[slot], nameLengths[slot], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 目錄中第一個檔案，沒有時回傳 -1，之後以 {@link #nextInDirectory(int)} 走訪
+     */
+    int firstInDirectory(int directoryId) {
+        return directoryHeads[directoryId];
+    }
+
+    int nextInDirectory(int slot) {
+        return nextInDirectory[slot];
+    }
+
+    /**
+     * 指定目錄本身及其下所有有追蹤檔案的目錄編號
+     */
+    List<Integer> directoriesUnder(Path directory) {
+        List<Integer> ids = new ArrayList<>();
+        for (Map.Entry<Path, Integer> entry : directoryIds.entrySet()) {
+            if (entry.getKey().startsWith(directory)) {
+                ids.add(entry.getValue());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 是否有識別相同（檔案鍵或大小與時間）的檔案
+     */
+    boolean containsIdentity(FileSnapshot snapshot) {
+        if (containsIdentity(snapshot.getFileKey(), snapshot)) {
+            return true;
+        }
+        // 載入後尚未重新掃描的檔案只有快照檔中的檔案鍵
+        Object storedKey = snapshot.getStoredFileKey();
+        return storedKey != snapshot.getFileKey() && containsIdentity(storedKey, snapshot);
+    }
+
+    private boolean containsIdentity(Object fileKey, FileSnapshot snapshot) {
+        int mask = identityTable.length - 1;
+        for (int i = identityHash(fileKey, snapshot.getSize(), snapshot.getLastModified(),
+                snapshot.getCreationTime()) & mask; ; i = (i + 1) & mask) {
+            int entry = identityTable[i];
+            if (entry == 0) {
+                return false;
+            }
+            int slot = entry - 1;
+            if (fileKey != null ? fileKey.equals(fileKeys[slot])
+                    : fileKeys[slot] == null && sizes[slot] == snapshot.getSize()
+                    && lastModifiedTimes[slot] == snapshot.getLastModified()
+                    && creationTimes[slot] == snapshot.getCreationTime()) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 所有檔案大小的總和
+     */
+    long totalBytes() {
+        long total = 0;
+        for (int slot = 0; slot < slotLimit; slot++) {
+            if ((flags[slot] & FLAG_USED) != 0) {
+                total += sizes[slot];
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, FileSnapshot> action) {
+        for (int slot = 0; slot < slotLimit; slot++) {
+            if ((flags[slot] & FLAG_USED) != 0) {
+                action.accept(pathAt(slot).toString(), snapshotAt(slot));
+            }
+        }
+    }
+
+    /**
+     * 估計佔用的記憶體（陣列與目錄表），供統計與測試比較
+     */
+    long estimateBytes() {
+        long perSlot = 4L * 7 + 8L * 3 + 4 + 1;
+        long bytes = perSlot * directoryOf.length + arena.length + 4L * (pathTable.length + identityTable.length);
+        return bytes + directoryCount * 120L;
+    }
+
+    // ---- 列舉輪次 ----
+
+    /**
+     * 開始新的列舉輪次，之後 {@link #put(Path, FileSnapshot)} 與 {@link #mark(int)} 會將檔案標記為本輪已看到
+     */
+    int nextEpoch() {
+        return ++epoch;
+    }
+
+    /**
+     * 標記檔案在本輪列舉中仍存在
+     */
+    void mark(int slot) {
+        epochs[slot] = epoch;
+    }
+
+    /**
+     * 檔案在本輪列舉中是否未出現
+     */
+    boolean isStale(int slot) {
+        return epochs[slot] != epoch;
+    }
+
+    // ---- 修改 ----
+
+    /**
+     * 新增或更新檔案
+     *
+     * @return the slot of the file
+     */
+    int put(Path path, FileSnapshot snapshot) {
+        Path parent = path.getParent();
+        int directoryId = internDirectory(parent);
+        int slot = find(directoryId, path);
+        if (slot >= 0) {
+            update(slot, snapshot);
+            epochs[slot] = epoch;
+            return slot;
+        }
+
+        int length = encodeName(path.toString(), nameStarts[directoryId]);
+        slot = allocateSlot();
+        directoryOf[slot] = directoryId;
+        nameOffsets[slot] = appendName(length);
+        nameLengths[slot] = length;
+        nameHashes[slot] = nameHash(scratch, 0, length);
+        flags[slot] = FLAG_USED;
+        epochs[slot] = epoch;
+        setAttributes(slot, snapshot);
+
+        // 串入目錄
+        int head = directoryHeads[directoryId];
+        nextInDirectory[slot] = head;
+        previousInDirectory[slot] = -1;
+        if (head >= 0) {
+            previousInDirectory[head] = slot;
+        }
+        directoryHeads[directoryId] = slot;
+        directoryFileCounts[directoryId]++;
+
+        size++;
+        if (size * 2 > pathTable.length) {
+            pathTable = rehash(pathTable, false);
+            identityTable = rehash(identityTable, true);
+        }
+        insert(pathTable, slot, pathHash(slot));
+        insert(identityTable, slot, identityHash(slot));
+        return slot;
+    }
+
+    /**
+     * 檔案鍵是否需要由檔案系統重新讀取（沒有或從快照檔還原）
+     */
+    boolean needsFileKey(int slot) {
+        Object fileKey = fileKeys[slot];
+        return fileKey == null || FileSnapshot.isStoredFileKey(fileKey);
+    }
+
+    /**
+     * 以檔案系統的檔案鍵取代從快照檔還原的檔案鍵，之後的移動不需再以文字比對
+     */
+    void refreshFileKey(int slot, Object fileKey) {
+        if (fileKey == null || !needsFileKey(slot)) {
+            return;
+        }
+        delete(identityTable, slot, identityHash(slot));
+        fileKeys[slot] = fileKey;
+        insert(identityTable, slot, identityHash(slot));
+    }
+
+    /**
+     * 更新既有檔案的屬性
+     */
+    void update(int slot, FileSnapshot snapshot) {
+        delete(identityTable, slot, identityHash(slot));
+        setAttributes(slot, snapshot);
+        insert(identityTable, slot, identityHash(slot));
+    }
+
+    /**
+     * 移除檔案，回傳是否有追蹤
+     */
+    boolean remove(Path path) {
+        int slot = find(path);
+        if (slot < 0) {
+            return false;
+        }
+        removeAt(slot);
+        return true;
+    }
+
+    void removeAt(int slot) {
+        delete(pathTable, slot, pathHash(slot));
+        delete(identityTable, slot, identityHash(slot));
+
+        int directoryId = directoryOf[slot];
+        int next = nextInDirectory[slot];
+        int previous = previousInDirectory[slot];
+        if (previous >= 0) {
+            nextInDirectory[previous] = next;
+        } else {
+            directoryHeads[directoryId] = next;
+        }
+        if (next >= 0) {
+            previousInDirectory[next] = previous;
+        }
+        if (--directoryFileCounts[directoryId] == 0) {
+            releaseDirectory(directoryId);
+        }
+
+        arenaGarbage += nameLengths[slot];
+        fileKeys[slot] = null;
+        flags[slot] = 0;
+        nextInDirectory[slot] = freeSlotHead;
+        freeSlotHead = slot;
+        size--;
+
+        if (arenaGarbage > 64 * 1024 && arenaGarbage > arenaUsed / 2) {
+            compactArena();
+        }
+    }
+
+    private void setAttributes(int slot, FileSnapshot snapshot) {
+        sizes[slot] = snapshot.getSize();
+        lastModifiedTimes[slot] = snapshot.getLastModified();
+        creationTimes[slot] = snapshot.getCreationTime();
+        fileKeys[slot] = snapshot.getFileKey();
+        flags[slot] = (byte) (FLAG_USED | (snapshot.isArchive() ? FLAG_ARCHIVE : 0));
+    }
+
+    // ---- 目錄表 ----
+
+    private int internDirectory(Path directory) {
+        Integer existing = directoryIds.get(directory);
+        if (existing != null) {
+            return existing;
+        }
+        int id;
+        if (freeDirectoryCount > 0) {
+            id = freeDirectoryIds[--freeDirectoryCount];
+        } else {
+            id = directoryCount++;
+            if (id == directories.length) {
+                int capacity = directories.length * 2;
+                directories = Arrays.copyOf(directories, capacity);
+                nameStarts = Arrays.copyOf(nameStarts, capacity);
+                directoryHeads = Arrays.copyOf(directoryHeads, capacity);
+                directoryFileCounts = Arrays.copyOf(directoryFileCounts, capacity);
+            }
+        }
+        String text = directory.toString();
+        boolean endsWithSeparator = text.endsWith("/") || text.endsWith("\\");
+        directories[id] = directory;
+        nameStarts[id] = text.length() + (endsWithSeparator ? 0 : 1);
+        directoryHeads[id] = -1;
+        directoryFileCounts[id] = 0;
+        directoryIds.put(directory, id);
+        return id;
+    }
+
+    private void releaseDirectory(int directoryId) {
+        directoryIds.remove(directories[directoryId]);
+        directories[directoryId] = null;
+        directoryHeads[directoryId] = -1;
+        if (freeDirectoryCount == freeDirectoryIds.length) {
+            freeDirectoryIds = Arrays.copyOf(freeDirectoryIds, freeDirectoryIds.length * 2);
+        }
+        freeDirectoryIds[freeDirectoryCount++] = directoryId;
+    }
+
+    // ---- slot 與位元組區 ----
+
+    private int allocateSlot() {
+        if (freeSlotHead >= 0) {
+            int slot = freeSlotHead;
+            freeSlotHead = nextInDirectory[slot];
+            return slot;
+        }
+        if (slotLimit == directoryOf.length) {
+            growSlots(directoryOf.length + (directoryOf.length >> 1));
+        }
+        return slotLimit++;
+    }
+
+    private void growSlots(int capacity) {
+        directoryOf = Arrays.copyOf(directoryOf, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        nameHashes = Arrays.copyOf(nameHashes, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        lastModifiedTimes = Arrays.copyOf(lastModifiedTimes, capacity);
+        creationTimes = Arrays.copyOf(creationTimes, capacity);
+        fileKeys = Arrays.copyOf(fileKeys, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        epochs = Arrays.copyOf(epochs, capacity);
+        nextInDirectory = Arrays.copyOf(nextInDirectory, capacity);
+        previousInDirectory = Arrays.copyOf(previousInDirectory, capacity);
+    }
+
+    private int appendName(int length) {
+        if (arenaUsed + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arenaUsed + length, arena.length + (arena.length >> 1)));
+        }
+        System.arraycopy(scratch, 0, arena, arenaUsed, length);
+        int offset = arenaUsed;
+        arenaUsed += length;
+        return offset;
+    }
+
+    /**
+     * 移除的檔名累積過多時，只複製仍在使用的檔名
+     */
+    private void compactArena() {
+        byte[] compacted = new byte[Math.max(16 * 1024, (arenaUsed - arenaGarbage) * 3 / 2)];
+        int used = 0;
+        for (int slot = 0; slot < slotLimit; slot++) {
+            if ((flags[slot] & FLAG_USED) != 0) {
+                System.arraycopy(arena, nameOffsets[slot], compacted, used, nameLengths[slot]);
+                nameOffsets[slot] = used;
+                used += nameLengths[slot];
+            }
+        }
+        arena = compacted;
+        arenaUsed = used;
+        arenaGarbage = 0;
+    }
+
+    /**
+     * 將完整路徑中 start 之後的檔名以 UTF-8 編碼到 scratch，回傳位元組數
+     */
+    private int encodeName(String fullPath, int start) {
+        int maxLength = (fullPath.length() - start) * 3;
+        if (scratch.length < maxLength) {
+            scratch = new byte[Math.max(maxLength, scratch.length * 2)];
+        }
+        byte[] out = scratch;
+        int length = 0;
+        for (int i = start; i < fullPath.length(); i++) {
+            char c = fullPath.charAt(i);
+            if (c < 0x80) {
+                out[length++] = (byte) c;
+            } else if (c < 0x800) {
+                out[length++] = (byte) (0xC0 | (c >> 6));
+                out[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < fullPath.length()
+                    && Character.isLowSurrogate(fullPath.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, fullPath.charAt(++i));
+                out[length++] = (byte) (0xF0 | (codePoint >> 18));
+                out[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 不成對的代理字元與 String 解碼結果一致，以 '?' 表示
+                out[length++] = (byte) '?';
+            } else {
+                out[length++] = (byte) (0xE0 | (c >> 12));
+                out[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return length;
+    }
+
+    private boolean nameEquals(int slot, int length) {
+        if (nameLengths[slot] != length) {
+            return false;
+        }
+        int offset = nameOffsets[slot];
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + i] != scratch[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---- 雜湊表 ----
+
+    private int pathHash(int slot) {
+        return mix(directoryOf[slot], nameHashes[slot]);
+    }
+
+    private int identityHash(int slot) {
+        return identityHash(fileKeys[slot], sizes[slot], lastModifiedTimes[slot], creationTimes[slot]);
+    }
+
+    private static int identityHash(Object fileKey, long size, long lastModified, long creationTime) {
+        if (fileKey != null) {
+            return mix(fileKey.hashCode(), 0x5bd1e995);
+        }
+        long h = size * 0x9E3779B97F4A7C15L + lastModified;
+        h = h * 0x9E3779B97F4A7C15L + creationTime;
+        return mix((int) (h ^ (h >>> 32)), 0);
+    }
+
+    private static int nameHash(byte[] bytes, int offset, int length) {
+        // FNV-1a
+        int h = 0x811C9DC5;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i];
+            h *= 0x01000193;
+        }
+        return h;
+    }
+
+    private static int mix(int a, int b) {
+        int h = a * 0x9E3779B9 + b;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static void insert(int[] table, int slot, int hash) {
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    /**
+     * 自線性探測表移除 slot，後方同一串的項目往前移，不需要墓碑
+     */
+    private void delete(int[] table, int slot, int hash) {
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != slot + 1) {
+            if (table[i] == 0) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        boolean identity = table == identityTable;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            int entry = table[j];
+            if (entry == 0) {
+                break;
+            }
+            int home = (identity ? identityHash(entry - 1) : pathHash(entry - 1)) & mask;
+            // home 落在 (i, j] 之間的項目不需移動
+            boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stays) {
+                table[i] = entry;
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+
+    private int[] rehash(int[] table, boolean identity) {
+        int[] grown = new int[table.length * 2];
+        for (int entry : table) {
+            if (entry != 0) {
+                insert(grown, entry - 1, identity ? identityHash(entry - 1) : pathHash(entry - 1));
+            }
+        }
+        return grown;
+    }
+}
@@ -0,0 +1,215 @@
+package com.file.service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Event driven detection engine backed by {@link java.nio.file.WatchService}.
+ * Changed entries are collected on a background thread and handed to the next scan as a
+ * targeted request. When the file system reports OVERFLOW, or a watch key becomes invalid,
+ * only the affected directory is listed again. A periodic full reconcile protects against
+ * network shares that silently drop events.
+ */
+public class WatchServiceDetectionEngine implements DetectionEngine {
+
+    private static final Logger logger = Logger.getLogger(WatchServiceDetectionEngine.class.getName());
+
+    // 預設每 30 次排程做一次完整比對（以 10 秒間隔約為 5 分鐘）
+    public static final int DEFAULT_FULL_RESCAN_EVERY = 30;
+
+    private final int fullRescanEvery;
+
+    // 有事件的檔案路徑
+    private final Set<Path> dirtyPaths = ConcurrentHashMap.newKeySet();
+
+    // 遺失事件、需要重新列舉的目錄
+    private final Set<Path> overflowDirectories = ConcurrentHashMap.newKeySet();
+
+    // 監控已失效、等待重新註冊的目錄
+    private final Set<Path> invalidDirectories = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger scansSinceFull = new AtomicInteger();
+
+    // 未完成的完整掃描，下一次再做
+    private volatile boolean fullRequested;
+
+    private volatile WatchService watchService;
+
+    private volatile Runnable onChange;
+
+    private Thread eventThread;
+
+    public WatchServiceDetectionEngine() {
+        this(DEFAULT_FULL_RESCAN_EVERY);
+    }
+
+    /**
+     * @param fullRescanEvery number of scans between two full reconcile scans, 0 disables the safety net
+     */
+    public WatchServiceDetectionEngine(int fullRescanEvery) {
+        if (fullRescanEvery < 0) {
+            throw new IllegalArgumentException("Full rescan interval cannot be negative");
+        }
+        this.fullRescanEvery = fullRescanEvery;
+    }
+
+    @Override
+    public void start(Path directory, Runnable onChange) throws IOException {
+        this.onChange = onChange;
+        this.watchService = directory.getFileSystem().newWatchService();
+        try {
+            register(directory);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        eventThread = new Thread(this::processEvents, "file-watch-events");
+        eventThread.setDaemon(true);
+        eventThread.start();
+    }
+
+    @Override
+    public void register(Path directory) throws IOException {
+        WatchService ws = watchService;
+        if (ws == null) {
+            return;
+        }
+        directory.register(ws,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    @Override
+    public ScanRequest nextScan() {
+        boolean due = fullRescanEvery > 0 && scansSinceFull.incrementAndGet() >= fullRescanEvery;
+        if (due || fullRequested) {
+            fullRequested = false;
+            scansSinceFull.set(0);
+            dirtyPaths.clear();
+            overflowDirectories.clear();
+            return ScanRequest.full();
+        }
+        return ScanRequest.targeted(drain(dirtyPaths), drain(overflowDirectories));
+    }
+
+    @Override
+    public void requeue(ScanRequest request) {
+        if (request.isFull()) {
+            fullRequested = true;
+            return;
+        }
+        dirtyPaths.addAll(request.getPaths());
+        overflowDirectories.addAll(request.getDirectories());
+    }
+
+    @Override
+    public boolean hasLostWatches() {
+        return !invalidDirectories.isEmpty();
+    }
+
+    /**
+     * 網路磁碟恢復後重新註冊先前失效的目錄
+     */
+    @Override
+    public void restoreWatches(Checkpoint checkpoint) throws IOException {
+        for (Path dir : invalidDirectories) {
+            checkpoint.check();
+            if (!Files.isDirectory(dir)) {
+                // 上層目錄仍在表示此目錄已被刪除，不需再等待
+                Path parent = dir.getParent();
+                if (parent != null && Files.isDirectory(parent)) {
+                    invalidDirectories.remove(dir);
+                }
+                continue;
+            }
+            try {
+                register(dir);
+                invalidDirectories.remove(dir);
+                overflowDirectories.add(dir);
+                logger.info("已重新註冊目錄監控: " + dir);
+            } catch (IOException e) {
+                logger.log(Level.FINE, "重新註冊目錄監控失敗: " + dir, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEventDriven() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        WatchService ws = watchService;
+        watchService = null;
+        if (ws != null) {
+            try {
+                ws.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "關閉 WatchService 時發生錯誤", e);
+            }
+        }
+    }
+
+    private void processEvents() {
+        while (true) {
+            WatchService ws = watchService;
+            if (ws == null) {
+                return;
+            }
+
+            WatchKey key;
+            try {
+                key = ws.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    logger.fine("事件溢位，將重新列舉目錄: " + dir);
+                    overflowDirectories.add(dir);
+                } else {
+                    dirtyPaths.add(dir.resolve((Path) event.context()));
+                }
+            }
+
+            if (!key.reset()) {
+                // 目錄已刪除或網路中斷，交由掃描重新比對
+                logger.warning("目錄監控已失效: " + dir);
+                overflowDirectories.add(dir);
+                invalidDirectories.add(dir);
+            }
+
+            Runnable callback = onChange;
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+
+    private static Set<Path> drain(Set<Path> source) {
+        Set<Path> drained = new HashSet<>();
+        for (Path path : source) {
+            if (source.remove(path)) {
+                drained.add(path);
+            }
+        }
+        return drained;
+    }
+}
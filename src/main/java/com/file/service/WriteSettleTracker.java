@@ -0,0 +1,157 @@
+package com.file.service;
+
+import com.file.object.FileSnapshot;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds changed files back until they stop changing.
+ * A new or modified file stays pending until its size and modification time have been stable
+ * for the quiet period. Only then is it handed back to be reported, so a large save produces
+ * one event instead of several. Pending files are only stat'ed, never opened, so the monitor
+ * cannot get in the way of the program that is writing them.
+ */
+public class WriteSettleTracker {
+
+    /**
+     * 已穩定、可回報的檔案
+     */
+    public static final class SettledFile {
+        private final Path path;
+        private final FileSnapshot snapshot;
+
+        SettledFile(Path path, FileSnapshot snapshot) {
+            this.path = path;
+            this.snapshot = snapshot;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public FileSnapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+
+    /**
+     * 等待穩定中的檔案
+     */
+    private static final class PendingFile {
+        final Path path;
+        FileSnapshot lastSeen;
+        long stableSinceMillis;
+        long lastObservedScan;
+
+        PendingFile(Path path) {
+            this.path = path;
+        }
+    }
+
+    private final Map<String, PendingFile> pending = new HashMap<>();
+
+    private final long quietMillis;
+
+    private long scanNumber;
+
+    // 累計重新讀取屬性的次數（掃描統計用）
+    private long statCalls;
+
+    /**
+     * @param quietMillis how long size and modification time have to stay unchanged
+     */
+    public WriteSettleTracker(long quietMillis) {
+        if (quietMillis < 0) {
+            throw new IllegalArgumentException("Quiet period cannot be negative");
+        }
+        this.quietMillis = quietMillis;
+    }
+
+    /**
+     * 開始新的一次掃描
+     */
+    public void beginScan() {
+        scanNumber++;
+    }
+
+    /**
+     * 記錄檔案目前的狀態，大小或修改時間改變時重新計算穩定時間
+     */
+    public void observe(Path path, FileSnapshot current, long nowMillis) {
+        PendingFile file = pending.computeIfAbsent(path.toString(), k -> new PendingFile(path));
+        if (file.lastSeen == null || current.isModifiedSince(file.lastSeen)) {
+            file.lastSeen = current;
+            file.stableSinceMillis = nowMillis;
+        }
+        file.lastObservedScan = scanNumber;
+    }
+
+    public boolean isPending(String fullPath) {
+        return pending.containsKey(fullPath);
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 累計重新讀取屬性的次數
+     */
+    public long getStatCalls() {
+        return statCalls;
+    }
+
+    /**
+     * 放棄等待中的檔案（例如已被刪除）
+     */
+    public void forget(String fullPath) {
+        pending.remove(fullPath);
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+    /**
+     * 檢查所有等待中的檔案，本次掃描尚未看過的檔案重新讀取屬性
+     *
+     * @param nowMillis the current time
+     * @return the files that have settled and are no longer pending
+     */
+    public List<SettledFile> collectSettled(long nowMillis) throws IOException {
+        List<SettledFile> settled = new ArrayList<>();
+        Iterator<PendingFile> it = pending.values().iterator();
+        while (it.hasNext()) {
+            PendingFile file = it.next();
+            if (file.lastObservedScan != scanNumber) {
+                FileSnapshot current;
+                try {
+                    statCalls++;
+                    current = FileAttributeReader.read(file.path);
+                } catch (NoSuchFileException e) {
+                    // 寫入中的檔案已消失（暫存檔或被刪除），刪除由快照比對處理
+                    it.remove();
+                    continue;
+                }
+                observe(file.path, current, nowMillis);
+            }
+
+            if (nowMillis - file.stableSinceMillis >= quietMillis) {
+                settled.add(new SettledFile(file.path, file.lastSeen));
+                it.remove();
+            }
+        }
+        return settled;
+    }
+}
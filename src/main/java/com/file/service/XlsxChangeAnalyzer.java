@@ -0,0 +1,358 @@
+package com.file.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Describes what changed inside an Office Open XML workbook (.xlsx/.xlsm).
+ * Only the ZIP central directory at the end of the file is read, with positioned
+ * {@link FileChannel} reads, and the CRC32 and sizes of every part are compared with the
+ * directory seen for the previous version. This tells which worksheets, shared strings or
+ * embedded objects changed for a few KB of I/O instead of downloading the whole workbook.
+ * Directories are kept as parallel arrays in a bounded least recently used cache, so a
+ * share with many workbooks does not grow the heap without limit.
+ */
+public class XlsxChangeAnalyzer {
+
+    private static final Logger logger = Logger.getLogger(XlsxChangeAnalyzer.class.getName());
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int EOCD_MIN_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    // 先讀取結尾的小區塊，找不到目錄結尾記錄時再擴大到註解上限
+    private static final int INITIAL_TAIL_SIZE = 4096;
+
+    // 不處理異常巨大的中央目錄
+    private static final long MAX_CENTRAL_DIRECTORY_SIZE = 16L * 1024 * 1024;
+
+    // 最多保留的活頁簿目錄數，超過時捨棄最久未使用的
+    static final int MAX_WORKBOOKS = 1024;
+
+    /**
+     * 中央目錄，依目錄順序以平行陣列保存項目名稱、CRC32 與大小
+     */
+    static final class Directory {
+        private final String[] names;
+        private final int[] crcs;
+        private final long[] sizes;
+
+        Directory(String[] names, int[] crcs, long[] sizes) {
+            this.names = names;
+            this.crcs = crcs;
+            this.sizes = sizes;
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        String nameAt(int index) {
+            return names[index];
+        }
+
+        boolean contains(String name) {
+            for (String entry : names) {
+                if (entry.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 名稱對應索引，只在比較兩個版本時暫時建立
+         */
+        Map<String, Integer> index() {
+            Map<String, Integer> index = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                index.put(names[i], i);
+            }
+            return index;
+        }
+
+        boolean sameContent(int index, Directory other, int otherIndex) {
+            return crcs[index] == other.crcs[otherIndex] && sizes[index] == other.sizes[otherIndex];
+        }
+    }
+
+    // 各檔案上次讀取的中央目錄，依存取順序淘汰
+    private final Map<String, Directory> directories = new LinkedHashMap<String, Directory>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Directory> eldest) {
+            return size() > MAX_WORKBOOKS;
+        }
+    };
+
+    /**
+     * 是否為可分析的活頁簿
+     */
+    public static boolean isWorkbook(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".xlsx") || name.endsWith(".xlsm");
+    }
+
+    /**
+     * 記錄新活頁簿目前的內容，既有檔案則在第一次修改時才開始記錄
+     */
+    public void remember(Path path) {
+        Directory directory = readQuietly(path);
+        if (directory != null) {
+            directories.put(path.toString(), directory);
+        }
+    }
+
+    /**
+     * 讀取新版本並與上次的版本比較
+     *
+     * @param path the modified workbook
+     * @return a summary of the changed parts, or null if nothing can be said
+     */
+    public String describeChanges(Path path) {
+        Directory current = readQuietly(path);
+        if (current == null) {
+            return null;
+        }
+        Directory previous = directories.put(path.toString(), current);
+        if (previous == null) {
+            return null;
+        }
+        return summarize(previous, current);
+    }
+
+    /**
+     * 檔案已刪除，不再保留其目錄
+     */
+    public void forget(Path path) {
+        directories.remove(path.toString());
+    }
+
+    public void clear() {
+        directories.clear();
+    }
+
+    /**
+     * 比較兩個版本的中央目錄
+     */
+    static String summarize(Directory previous, Directory current) {
+        List<String> changed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+
+        Map<String, Integer> previousIndex = previous.index();
+        for (int i = 0; i < current.size(); i++) {
+            String name = current.nameAt(i);
+            Integer before = previousIndex.remove(name);
+            if (before == null) {
+                addPart(added, name);
+            } else if (!current.sameContent(i, previous, before)) {
+                addPart(changed, name);
+            }
+        }
+        // 剩下的項目只存在於舊版本，依目錄順序列出
+        for (int i = 0; i < previous.size(); i++) {
+            if (previousIndex.containsKey(previous.nameAt(i))) {
+                addPart(removed, previous.nameAt(i));
+            }
+        }
+
+        StringBuilder summary = new StringBuilder();
+        appendLine(summary, "變更內容", changed);
+        appendLine(summary, "新增", added);
+        appendLine(summary, "移除", removed);
+        return summary.length() == 0 ? "活頁簿內容未變更" : summary.toString();
+    }
+
+    /**
+     * 將 ZIP 項目名稱轉為使用者看得懂的描述，同類項目只列一次
+     */
+    static String describePart(String name) {
+        if (name.startsWith("xl/worksheets/") && name.endsWith(".xml") && name.indexOf('/', 14) < 0) {
+            return "工作表 " + name.substring(14, name.length() - 4);
+        }
+        if (name.equals("xl/sharedStrings.xml")) {
+            return "共用字串";
+        }
+        if (name.startsWith("xl/embeddings/")) {
+            return "內嵌物件";
+        }
+        if (name.startsWith("xl/media/")) {
+            return "圖片";
+        }
+        if (name.startsWith("xl/charts/")) {
+            return "圖表";
+        }
+        if (name.startsWith("xl/drawings/")) {
+            return "繪圖";
+        }
+        if (name.equals("xl/styles.xml")) {
+            return "樣式";
+        }
+        if (name.equals("xl/workbook.xml")) {
+            return "活頁簿結構";
+        }
+        if (name.startsWith("xl/pivotTables/") || name.startsWith("xl/pivotCache/")) {
+            return "樞紐分析表";
+        }
+        if (name.equals("xl/vbaProject.bin")) {
+            return "巨集";
+        }
+        if (name.startsWith("docProps/")) {
+            return "文件屬性";
+        }
+        return null;
+    }
+
+    private static void addPart(List<String> parts, String name) {
+        String description = describePart(name);
+        if (description != null && !parts.contains(description)) {
+            parts.add(description);
+        }
+    }
+
+    private static void appendLine(StringBuilder summary, String label, List<String> parts) {
+        if (parts.isEmpty()) {
+            return;
+        }
+        if (summary.length() > 0) {
+            summary.append('\n');
+        }
+        summary.append(label).append(": ").append(String.join("、", parts));
+    }
+
+    private Directory readQuietly(Path path) {
+        try {
+            return readCentralDirectory(path);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "無法讀取活頁簿目錄: " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * 只讀取 ZIP 結尾的中央目錄
+     *
+     * @param path the workbook
+     * @return the entries in directory order
+     * @throws IOException if the file cannot be read or is not a ZIP archive
+     */
+    static Directory readCentralDirectory(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < EOCD_MIN_SIZE) {
+                throw new IOException("Not a ZIP archive: " + path);
+            }
+
+            int tailSize = (int) Math.min(fileSize, INITIAL_TAIL_SIZE);
+            ByteBuffer tail = readAt(channel, fileSize - tailSize, tailSize);
+            int eocd = findEndOfCentralDirectory(tail);
+            if (eocd < 0 && tailSize < fileSize) {
+                tailSize = (int) Math.min(fileSize, EOCD_MIN_SIZE + MAX_COMMENT_SIZE);
+                tail = readAt(channel, fileSize - tailSize, tailSize);
+                eocd = findEndOfCentralDirectory(tail);
+            }
+            if (eocd < 0) {
+                throw new IOException("End of central directory not found: " + path);
+            }
+
+            long entryCount = tail.getShort(eocd + 10) & 0xFFFFL;
+            long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+            long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+
+            // ZIP64：由定位記錄找到 ZIP64 目錄結尾
+            if (directoryOffset == 0xFFFFFFFFL || directorySize == 0xFFFFFFFFL || entryCount == 0xFFFFL) {
+                long eocdPosition = fileSize - tailSize + eocd;
+                ByteBuffer locator = readAt(channel, eocdPosition - 20, 20);
+                if (locator.getInt(0) != ZIP64_LOCATOR_SIGNATURE) {
+                    throw new IOException("ZIP64 locator not found: " + path);
+                }
+                ByteBuffer zip64 = readAt(channel, locator.getLong(8), 56);
+                if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                    throw new IOException("ZIP64 end of central directory not found: " + path);
+                }
+                entryCount = zip64.getLong(32);
+                directorySize = zip64.getLong(40);
+                directoryOffset = zip64.getLong(48);
+            }
+
+            if (directorySize > MAX_CENTRAL_DIRECTORY_SIZE || directoryOffset + directorySize > fileSize) {
+                throw new IOException("Invalid central directory: " + path);
+            }
+            return parseEntries(readAt(channel, directoryOffset, (int) directorySize), entryCount);
+        }
+    }
+
+    private static Directory parseEntries(ByteBuffer directory, long entryCount) throws IOException {
+        // 每個項目至少佔 46 位元組，項目數不可能超過目錄大小所能容納的
+        if (entryCount > directory.limit() / 46) {
+            throw new IOException("Corrupt central directory entry count " + entryCount);
+        }
+        int count = (int) entryCount;
+        String[] names = new String[count];
+        int[] crcs = new int[count];
+        long[] sizes = new long[count];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + 46 > directory.limit() || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Corrupt central directory entry " + i);
+            }
+            int crc = directory.getInt(position + 16);
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            if (position + 46 + nameLength > directory.limit()) {
+                throw new IOException("Corrupt central directory entry " + i);
+            }
+
+            byte[] name = new byte[nameLength];
+            directory.position(position + 46);
+            directory.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+            crcs[i] = crc;
+            sizes[i] = size;
+
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return new Directory(names, crcs, sizes);
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer tail) {
+        for (int i = tail.limit() - EOCD_MIN_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
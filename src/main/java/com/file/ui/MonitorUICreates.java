@@ -1,9 +1,10 @@
 package com.file.ui;
 
 import com.file.object.MonitorDataObject;
+import com.file.service.FileNameFilter;
 import com.file.service.FileWatchService;
 import com.file.watch.MonitorScheduler;
-import com.file.watch.NetworkDirectoryMonitor;
+import com.file.watch.WatchTarget;
 
 import javax.swing.*;
 import java.awt.*;
@@ -12,7 +13,6 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
 import java.net.URL;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,6 +30,10 @@ public class MonitorUICreates {
 
     private FileWatchService watchService;
 
+    private TrayIcon trayIcon;
+
+    // 托盤提示文字更新間隔（毫秒）
+    private static final int TOOLTIP_REFRESH_MILLIS = 10_000;
 
     public MonitorUICreates(MonitorDataObject dto, MonitorScheduler scheduler, FileWatchService watchService) {
         this.dto = dto;
@@ -48,7 +52,7 @@ public class MonitorUICreates {
 
         try {
             SystemTray tray = SystemTray.getSystemTray();
-            URL iconURL = NetworkDirectoryMonitor.class.getClassLoader().getResource("icon.png");
+            URL iconURL = MonitorUICreates.class.getClassLoader().getResource("icon.png");
             image = Toolkit.getDefaultToolkit().getImage(iconURL);
             logger.info("已成功載入自定義圖示: " + iconURL);
         }catch (Exception e) {
@@ -98,10 +102,29 @@ public class MonitorUICreates {
 
         SystemTray tray = SystemTray.getSystemTray();
         tray.add(trayIcon);
+        this.trayIcon = trayIcon;
+
+        // 在提示文字顯示最近一次掃描的統計
+        if (dto.isTrayMetrics()) {
+            Timer tooltipTimer = new Timer(TOOLTIP_REFRESH_MILLIS, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    trayIcon.setToolTip("檔案監控服務\n" + watchService.getMetrics().getTooltip());
+                }
+            });
+            tooltipTimer.start();
+        }
 
 
     }
 
+    /**
+     * 取得已建立的系統托盤圖示，尚未建立時為 null
+     */
+    public TrayIcon getTrayIcon() {
+        return trayIcon;
+    }
+
     private JPopupMenu createPopupMenu() {
 
         final JPopupMenu trayPopup = new JPopupMenu();
@@ -157,15 +180,17 @@ public class MonitorUICreates {
         JTextField folderPathTextField = new JTextField(dto.getDirectoryMonitorPath(),20);
         JTextField fileExtensionTextField = new JTextField(dto.getFileExtension(),10);
         JTextField fileNameTextField = new JTextField(dto.getMonitorFileName(),20);
+        JCheckBox recursiveCheckBox = new JCheckBox("", dto.isRecursive());
 
         // 創建標籤
         JLabel folderPathLabel = new JLabel("監控資料夾位置:");
         JLabel fileExtensionLabel = new JLabel("監控副檔名:");
         JLabel fileNameLabel = new JLabel("監控檔案名稱:");
+        JLabel recursiveLabel = new JLabel("包含子資料夾:");
 
         // 創建面板並設置佈局
         JPanel myPanel = new JPanel();
-        myPanel.setLayout(new GridLayout(3, 2, 5, 10)); // 3行2列，水平間距5，垂直間距10
+        myPanel.setLayout(new GridLayout(4, 2, 5, 10)); // 4行2列，水平間距5，垂直間距10
 
         // 添加組件到面板
         myPanel.add(folderPathLabel);
@@ -174,6 +199,8 @@ public class MonitorUICreates {
         myPanel.add(fileExtensionTextField);
         myPanel.add(fileNameLabel);
         myPanel.add(fileNameTextField);
+        myPanel.add(recursiveLabel);
+        myPanel.add(recursiveCheckBox);
 
         // 添加菜單項
         JMenuItem displayItem = new JMenuItem("監控設定");
@@ -181,7 +208,12 @@ public class MonitorUICreates {
             @Override
             public void actionPerformed(ActionEvent e) {
 
-                String beforeChangePath = dto.getDirectoryMonitorPath();
+                // 以使用中的設定顯示
+                MonitorDataObject current = watchService.getMonitorDataObject();
+                folderPathTextField.setText(current.getDirectoryMonitorPath());
+                fileExtensionTextField.setText(current.getFileExtension());
+                fileNameTextField.setText(current.getMonitorFileName());
+                recursiveCheckBox.setSelected(current.isRecursive());
 
                 int result = JOptionPane.showConfirmDialog(null, myPanel, "監控設定",
                         JOptionPane.OK_CANCEL_OPTION,
@@ -189,21 +221,30 @@ public class MonitorUICreates {
 
                 if (result == JOptionPane.OK_OPTION) {
 
-                    // 獲取用戶輸入的值
-                    dto.setDirectoryMonitorPath(folderPathTextField.getText());
-                    dto.setFileExtension(fileExtensionTextField.getText());
-                    dto.setMonitorFileName(fileNameTextField.getText());
-
-                    logger.info("Path Is Change \n" +
-                            "Before Change - " + beforeChangePath + "\n" +
-                            "After Change - " + dto.getDirectoryMonitorPath());
+                    // 在複本上套用用戶輸入的值，使用中的設定不會被修改
+                    MonitorDataObject updated = new MonitorDataObject(current);
+                    try {
+                        updated.setDirectoryMonitorPath(folderPathTextField.getText().trim());
+                        updated.setFileExtension(fileExtensionTextField.getText().trim());
+                        updated.setMonitorFileName(fileNameTextField.getText().trim());
+                        updated.setRecursive(recursiveCheckBox.isSelected());
+                        FileNameFilter.compile(updated);
+                    } catch (IllegalArgumentException ex) {
+                        JOptionPane.showMessageDialog(null, ex.getMessage(), "監控設定", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
 
+                    // 由掃描執行緒在兩次掃描之間套用，不在 EDT 上重新掃描；不能移到其他主機
                     try {
-                        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
-                    } catch (IOException ex) {
-                        throw new RuntimeException(ex);
+                        scheduler.reconfigure(targetOf(watchService), updated);
+                    } catch (IllegalArgumentException | IllegalStateException ex) {
+                        JOptionPane.showMessageDialog(null, ex.getMessage(), "監控設定", JOptionPane.ERROR_MESSAGE);
+                        return;
                     }
 
+                    logger.info("監控設定已變更，將於下次掃描前套用\n" +
+                            "變更前 - " + current.getDirectoryMonitorPath() + "\n" +
+                            "變更後 - " + updated.getDirectoryMonitorPath());
                 }
             }
         });
@@ -211,6 +252,18 @@ public class MonitorUICreates {
         return displayItem;
     }
 
+    /**
+     * 找出服務對應的監控目標
+     */
+    private WatchTarget targetOf(FileWatchService service) {
+        for (WatchTarget target : scheduler.getTargets()) {
+            if (target.getWatchService() == service) {
+                return target;
+            }
+        }
+        throw new IllegalStateException("監控目標已移除");
+    }
+
 
 
 
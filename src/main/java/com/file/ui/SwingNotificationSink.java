@@ -0,0 +1,51 @@
+package com.file.ui;
+
+import com.file.service.NotificationDispatcher;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * 以Windows警示視窗與系統托盤通知顯示變更摘要
+ */
+public class SwingNotificationSink implements NotificationDispatcher.NotificationSink {
+
+    private volatile TrayIcon trayIcon;
+
+    /**
+     * Set the tray icon used for balloon notifications
+     *
+     * @param trayIcon the tray icon, or null to show dialogs only
+     */
+    public void setTrayIcon(TrayIcon trayIcon) {
+        this.trayIcon = trayIcon;
+    }
+
+    @Override
+    public void showDialog(final String title, final String message, final Runnable onClosed) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    JOptionPane.showMessageDialog(null, message, title, JOptionPane.WARNING_MESSAGE);
+                } finally {
+                    onClosed.run();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void showBalloon(final String title, final String message) {
+        final TrayIcon icon = trayIcon;
+        if (icon == null) {
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                icon.displayMessage(title, message, TrayIcon.MessageType.WARNING);
+            }
+        });
+    }
+}
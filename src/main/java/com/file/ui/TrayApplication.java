@@ -0,0 +1,105 @@
+package com.file.ui;
+
+import com.file.logging.MonitorLogging;
+import com.file.object.MonitorDataObject;
+import com.file.service.FileWatchService;
+import com.file.service.NotificationDispatcher;
+import com.file.service.OverflowPolicy;
+import com.file.watch.MonitorDaemon;
+
+import javax.swing.*;
+import java.awt.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Desktop mode: the monitor with a system tray icon, notification dialogs and the settings menu.
+ * This is the only entry point that loads AWT and Swing; it is reached from
+ * {@link com.file.watch.NetworkDirectoryMonitor} only when the daemon mode is not requested.
+ */
+public final class TrayApplication {
+
+    private static final Logger logger = Logger.getLogger(TrayApplication.class.getName());
+
+    private TrayApplication() {
+    }
+
+    /**
+     * 以預設設定或命令列指定的目錄啟動托盤程式（阻塞直到程式結束）
+     *
+     * @param targets the monitored directories, the tray menu edits the first one
+     * @param logsDirectory the directory of the monitor log
+     */
+    public static void start(List<MonitorDataObject> targets, Path logsDirectory) throws AWTException {
+        // 設置日誌記錄器
+        // 檔案格式: logs/monitor_yyyy-MM-dd.log，跨日或超過大小時換檔，每行一筆 JSON 記錄
+        // 寫檔由背景執行緒批次進行，掃描執行緒不會等待磁碟
+        MonitorLogging.install(logsDirectory);
+        logger.info("檔案監控服務啟動於: " + new Date() + "，日誌目錄: " + logsDirectory.toAbsolutePath());
+
+        if (targets.isEmpty()) {
+            targets = Collections.singletonList(defaultTarget());
+        }
+        MonitorDaemon monitor = new MonitorDaemon(targets);
+        // 結束時停止掃描並寫入變更紀錄緩衝中的記錄
+        Runtime.getRuntime().addShutdownHook(new Thread(monitor::close, "monitor-shutdown"));
+
+        if (GraphicsEnvironment.isHeadless() || !SystemTray.isSupported()) {
+            // 沒有桌面環境時不顯示通知，只記錄日誌與變更紀錄
+            logger.warning("系統不支援托盤圖示，改以無視窗模式執行（可使用 --daemon 避免載入視窗元件）");
+            monitor.initializeSnapshots();
+            monitor.getScheduler().startScheduled();
+            return;
+        }
+
+        FileWatchService watchService = monitor.getServices().get(0);
+
+        // 通知只需要每個檔案的最新狀態；合併視窗取自第一個監控目標的設定
+        SwingNotificationSink notificationSink = new SwingNotificationSink();
+        NotificationDispatcher notificationDispatcher = new NotificationDispatcher(notificationSink,
+                watchService.getMonitorDataObject().getNotificationDebounceMillis(),
+                NotificationDispatcher.DEFAULT_BALLOON_INTERVAL_MILLIS);
+        monitor.getEventBus().subscribe(notificationDispatcher, OverflowPolicy.MERGE_PER_PATH);
+
+        MonitorUICreates uiCreater = new MonitorUICreates(watchService.getMonitorDataObject(), monitor.getScheduler(), watchService);
+
+        // 設置系統托盤圖示
+        uiCreater.setupTrayIcon();
+        notificationSink.setTrayIcon(uiCreater.getTrayIcon());
+
+        // 設置Windows風格的UI
+        try {
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        } catch (Exception e) {
+            logger.warning("無法設置Windows風格UI: " + e.getMessage());
+        }
+
+        // 初始化檔案快照
+        monitor.initializeSnapshots();
+
+        // 創建並配置排程執行器
+        logger.info("監控任務已啟動...");
+        monitor.getScheduler().startScheduled();
+    }
+
+    /**
+     * 未指定目錄時的預設監控設定
+     */
+    private static MonitorDataObject defaultTarget() {
+        MonitorDataObject dto = new MonitorDataObject();
+        dto.setDirectoryMonitorPath("\\\\pf03\\核心系統盤點共用資料夾");
+        dto.setMonitorFileName("差異分析訪談時間表");
+        dto.setFileExtension("*.xlsx");
+        dto.setStateDirectory("state");
+        dto.setTrayMetrics(true);
+        return dto;
+    }
+
+    public static void main(String[] args) throws Exception {
+        start(Collections.<MonitorDataObject>emptyList(), Paths.get("logs"));
+    }
+}
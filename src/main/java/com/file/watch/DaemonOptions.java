@@ -0,0 +1,344 @@
+package com.file.watch;
+
+import com.file.object.DetectionMode;
+import com.file.object.MonitorDataObject;
+import com.file.service.FileMirror;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Command line options of the monitor.
+ * Every {@code --config} file describes one monitored directory as a properties file; the target
+ * options ({@code --path}, {@code --extension}, ...) describe one more directory inline. Property
+ * keys are the option names without the leading dashes, for example:
+ * <pre>
+ * path=\\\\pf03\\核心系統盤點共用資料夾
+ * extension=*.xlsx
+ * name=差異分析訪談時間表
+ * recursive=true
+ * exclude=~$*;*.tmp
+ * </pre>
+ */
+public final class DaemonOptions {
+
+    // 代表標準輸出的事件輸出位置
+    public static final String STDOUT = "-";
+
+    private static final String USAGE = "用法: [--daemon] [--config 設定檔]... [--path 目錄 --extension *.xlsx --name 檔名開頭"
+            + " --recursive --interval 秒 --state 目錄 --include 規則 --exclude 規則 --detection AUTO|WATCH|POLL]"
+            + " [--events 檔案|-] [--logs 目錄] [--coordination 共用目錄 --instance 名稱 --lease 秒]"
+            + " [--push 連接埠 --push-bind 位址] [--mirror 目錄 --mirror-versions 數量 --mirror-max-mb MB --mirror-kbps KB]";
+
+    private boolean daemon;
+
+    private final List<MonitorDataObject> targets = new ArrayList<>();
+
+    private String eventsOutput = STDOUT;
+
+    private Path logsDirectory = Paths.get("logs");
+
+    private Path coordinationDirectory;
+
+    private String instanceId;
+
+    private long leaseMillis = ShardCoordinator.DEFAULT_LEASE_MILLIS;
+
+    // 事件串流的連接埠，-1 表示不啟用
+    private int pushPort = -1;
+
+    private String pushBindAddress;
+
+    private Path mirrorDirectory;
+
+    private int mirrorVersions = FileMirror.DEFAULT_VERSIONS;
+
+    private long mirrorMaxBytes = FileMirror.DEFAULT_MAX_BYTES;
+
+    // 鏡像頻寬上限（每秒位元組），0 表示不限制
+    private long mirrorBytesPerSecond;
+
+    private DaemonOptions() {
+    }
+
+    /**
+     * 解析命令列參數
+     *
+     * @param args the command line arguments
+     * @return the parsed options
+     * @throws IllegalArgumentException if an option is unknown, misses its value or has an invalid value
+     * @throws IOException if a configuration file cannot be read
+     */
+    public static DaemonOptions parse(String[] args) throws IOException {
+        DaemonOptions options = new DaemonOptions();
+        Properties inline = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--daemon":
+                case "--headless":
+                    options.daemon = true;
+                    break;
+                case "--recursive":
+                    inline.setProperty("recursive", "true");
+                    break;
+                case "--config":
+                    options.targets.add(toConfig(load(Paths.get(valueOf(args, ++i, arg)))));
+                    break;
+                case "--events":
+                    options.eventsOutput = valueOf(args, ++i, arg);
+                    break;
+                case "--logs":
+                    options.logsDirectory = Paths.get(valueOf(args, ++i, arg));
+                    break;
+                case "--coordination":
+                    options.coordinationDirectory = Paths.get(valueOf(args, ++i, arg));
+                    break;
+                case "--instance":
+                    options.instanceId = valueOf(args, ++i, arg);
+                    break;
+                case "--lease":
+                    options.leaseMillis = parseInt("lease", valueOf(args, ++i, arg)) * 1000L;
+                    break;
+                case "--push":
+                    options.pushPort = parseInt("push", valueOf(args, ++i, arg));
+                    break;
+                case "--push-bind":
+                    options.pushBindAddress = valueOf(args, ++i, arg);
+                    break;
+                case "--mirror":
+                    options.mirrorDirectory = Paths.get(valueOf(args, ++i, arg));
+                    break;
+                case "--mirror-versions":
+                    options.mirrorVersions = parseInt("mirror-versions", valueOf(args, ++i, arg));
+                    break;
+                case "--mirror-max-mb":
+                    options.mirrorMaxBytes = parseInt("mirror-max-mb", valueOf(args, ++i, arg)) * 1024L * 1024;
+                    break;
+                case "--mirror-kbps":
+                    options.mirrorBytesPerSecond = parseInt("mirror-kbps", valueOf(args, ++i, arg)) * 1024L;
+                    break;
+                default:
+                    if (!arg.startsWith("--")) {
+                        throw new IllegalArgumentException("未知的參數: " + arg + "\n" + USAGE);
+                    }
+                    inline.setProperty(arg.substring(2), valueOf(args, ++i, arg));
+            }
+        }
+        if (!inline.isEmpty()) {
+            options.targets.add(toConfig(inline));
+        }
+        return options;
+    }
+
+    /**
+     * 是否以無視窗模式執行（只檢查旗標，不解析其餘參數）
+     */
+    public static boolean isDaemonRequested(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--daemon") || arg.equals("--headless")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 依屬性建立監控設定，未指定的項目使用預設值
+     *
+     * @param properties the target properties, keys as the option names without dashes
+     * @return the configuration
+     * @throws IllegalArgumentException if the path is missing or a value is invalid
+     */
+    public static MonitorDataObject toConfig(Properties properties) {
+        MonitorDataObject dto = new MonitorDataObject();
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            switch (key) {
+                case "path":
+                    dto.setDirectoryMonitorPath(value);
+                    break;
+                case "extension":
+                    dto.setFileExtension(value);
+                    break;
+                case "name":
+                    dto.setMonitorFileName(value);
+                    break;
+                case "recursive":
+                    dto.setRecursive(Boolean.parseBoolean(value));
+                    break;
+                case "state":
+                    dto.setStateDirectory(value);
+                    break;
+                case "interval":
+                    dto.setMonitorIntervalSeconds(parseInt(key, value));
+                    break;
+                case "minInterval":
+                    dto.setMinIntervalSeconds(parseInt(key, value));
+                    break;
+                case "maxInterval":
+                    dto.setMaxIntervalSeconds(parseInt(key, value));
+                    break;
+                case "settle":
+                    dto.setSettleQuietSeconds(parseInt(key, value));
+                    break;
+                case "timeout":
+                    dto.setScanTimeoutSeconds(parseInt(key, value));
+                    break;
+                case "notificationDebounce":
+                    dto.setNotificationDebounceMillis(parseInt(key, value));
+                    break;
+                case "concurrency":
+                    dto.setAttributeFetchConcurrency(parseInt(key, value));
+                    break;
+                case "detection":
+                    dto.setDetectionMode(DetectionMode.valueOf(value.toUpperCase(Locale.ROOT)));
+                    break;
+                case "contentVerification":
+                    dto.setContentVerification(Boolean.parseBoolean(value));
+                    break;
+                case "workbookAnalysis":
+                    dto.setWorkbookAnalysis(Boolean.parseBoolean(value));
+                    break;
+                case "include":
+                    dto.setIncludePatterns(splitRules(value));
+                    break;
+                case "exclude":
+                    dto.setExcludePatterns(splitRules(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的設定項目: " + key + "\n" + USAGE);
+            }
+        }
+        if (dto.getDirectoryMonitorPath() == null) {
+            throw new IllegalArgumentException("未指定監控目錄 (path)\n" + USAGE);
+        }
+        if (dto.getFileExtension() == null) {
+            dto.setFileExtension("*");
+        }
+        if (dto.getMonitorFileName() == null) {
+            dto.setMonitorFileName("*");
+        }
+        return dto;
+    }
+
+    private static Properties load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private static String valueOf(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("參數 " + option + " 缺少值\n" + USAGE);
+        }
+        return args[index];
+    }
+
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("設定項目 " + key + " 必須是整數: " + value, e);
+        }
+    }
+
+    private static List<String> splitRules(String value) {
+        return value.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(value.split(";"));
+    }
+
+    /**
+     * 是否以無視窗模式執行
+     */
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    /**
+     * 命令列與設定檔指定的監控目錄，依出現順序
+     */
+    public List<MonitorDataObject> getTargets() {
+        return Collections.unmodifiableList(targets);
+    }
+
+    /**
+     * 事件輸出位置，{@link #STDOUT} 表示標準輸出
+     */
+    public String getEventsOutput() {
+        return eventsOutput;
+    }
+
+    public Path getLogsDirectory() {
+        return logsDirectory;
+    }
+
+    /**
+     * 分散監控的協調目錄，未指定時為 null（監控所有目錄）
+     */
+    public Path getCoordinationDirectory() {
+        return coordinationDirectory;
+    }
+
+    /**
+     * 分散監控時本執行個體的名稱，未指定時為主機名稱加程序編號
+     */
+    public String getInstanceId() {
+        if (instanceId != null) {
+            return instanceId;
+        }
+        // 格式為 pid@hostname
+        String runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+        int at = runtimeName.indexOf('@');
+        return at < 0 ? runtimeName : runtimeName.substring(at + 1) + "-" + runtimeName.substring(0, at);
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * 事件串流的監聽位址，未指定 {@code --push} 時為 null；未指定 {@code --push-bind} 時只接受本機連線
+     */
+    public InetSocketAddress getPushAddress() {
+        if (pushPort < 0) {
+            return null;
+        }
+        return pushBindAddress == null
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), pushPort)
+                : new InetSocketAddress(pushBindAddress, pushPort);
+    }
+
+    /**
+     * 鏡像快取目錄，未指定時為 null（不鏡像）
+     */
+    public Path getMirrorDirectory() {
+        return mirrorDirectory;
+    }
+
+    public int getMirrorVersions() {
+        return mirrorVersions;
+    }
+
+    public long getMirrorMaxBytes() {
+        return mirrorMaxBytes;
+    }
+
+    public long getMirrorBytesPerSecond() {
+        return mirrorBytesPerSecond;
+    }
+}
@@ -0,0 +1,284 @@
+package com.file.watch;
+
+import com.file.logging.EventStreamServer;
+import com.file.logging.JsonEventWriter;
+import com.file.logging.MonitorLogging;
+import com.file.object.MonitorDataObject;
+import com.file.service.ChangeEventBus;
+import com.file.service.ChangeJournal;
+import com.file.service.ChangeLogListener;
+import com.file.service.FileMirror;
+import com.file.service.FileWatchService;
+import com.file.service.OverflowPolicy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Monitors the configured directories without any user interface.
+ * Changes go to the monitor log, the change journal and, in daemon mode, to standard output or a
+ * file as JSON lines. Neither this class nor anything it uses loads AWT or Swing, so it runs on
+ * servers without a display and starts without initializing a toolkit. The tray application is
+ * built on the same wiring and adds notifications and the tray menu on top.
+ *
+ * <p>With a coordination directory the targets are split between all instances using it, see
+ * {@link ShardCoordinator}; each instance then scans only the directories it holds the lease for.</p>
+ */
+public class MonitorDaemon implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(MonitorDaemon.class.getName());
+
+    private final ChangeEventBus eventBus;
+
+    private final ChangeJournal changeJournal;
+
+    private final MonitorScheduler scheduler;
+
+    private final List<FileWatchService> services = new ArrayList<>();
+
+    private JsonEventWriter eventWriter;
+
+    private EventStreamServer eventStream;
+
+    private FileMirror fileMirror;
+
+    // 分散監控（未設定協調目錄時為 null）
+    private final ShardCoordinator shardCoordinator;
+
+    /**
+     * 建立事件匯流排、變更紀錄與排程器，尚未開始掃描
+     *
+     * @param targets the monitored directories; the change journal is kept in the state directory of the first
+     *                target that has one
+     */
+    public MonitorDaemon(List<MonitorDataObject> targets) {
+        this(targets, null, null, 0);
+    }
+
+    /**
+     * 建立事件匯流排、變更紀錄與排程器；指定協調目錄時由各執行個體分擔監控目錄
+     *
+     * @param targets the monitored directories, the same list on every instance when sharded
+     * @param coordinationDirectory the directory shared by all instances, or null to monitor every target here
+     * @param instanceId the unique name of this instance when sharded
+     * @param leaseMillis the lease time when sharded, see {@link ShardCoordinator}
+     */
+    public MonitorDaemon(List<MonitorDataObject> targets, Path coordinationDirectory, String instanceId, long leaseMillis) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("At least one target is required");
+        }
+
+        // 日誌需要完整記錄每筆變更
+        eventBus = new ChangeEventBus();
+        eventBus.subscribe(new ChangeLogListener(), OverflowPolicy.BLOCK);
+
+        // 變更紀錄保存所有事件，供之後依路徑與時間查詢
+        String stateDirectory = null;
+        for (MonitorDataObject dto : targets) {
+            if (dto.getStateDirectory() != null) {
+                stateDirectory = dto.getStateDirectory();
+                break;
+            }
+        }
+        changeJournal = stateDirectory == null ? null : openChangeJournal(Paths.get(stateDirectory, "journal"));
+        if (changeJournal != null) {
+            eventBus.subscribe(changeJournal, OverflowPolicy.BLOCK);
+        }
+
+        scheduler = new MonitorScheduler();
+        if (coordinationDirectory != null) {
+            shardCoordinator = new ShardCoordinator(coordinationDirectory, instanceId, leaseMillis, targets, scheduler,
+                    this::createService);
+            return;
+        }
+        shardCoordinator = null;
+        for (MonitorDataObject dto : targets) {
+            FileWatchService watchService = createService(dto);
+            scheduler.addTarget(dto, watchService);
+            services.add(watchService);
+        }
+    }
+
+    private FileWatchService createService(MonitorDataObject dto) {
+        FileWatchService watchService = new FileWatchService(dto);
+        watchService.setEventBus(eventBus);
+        return watchService;
+    }
+
+    private static ChangeJournal openChangeJournal(Path directory) {
+        try {
+            ChangeJournal journal = new ChangeJournal(directory);
+            logger.info("變更紀錄位置: " + directory.toAbsolutePath() + "，下一筆序號 " + journal.getNextSequence());
+            return journal;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "無法開啟變更紀錄，將不保存變更歷史: " + directory, e);
+            return null;
+        }
+    }
+
+    /**
+     * 將變更事件以 JSON 逐行輸出
+     *
+     * @param output {@link DaemonOptions#STDOUT} for standard output, otherwise the file to append to
+     * @throws IOException if the file cannot be opened
+     */
+    public void writeEventsTo(String output) throws IOException {
+        eventWriter = DaemonOptions.STDOUT.equals(output) ? new JsonEventWriter(System.out) : new JsonEventWriter(Paths.get(output));
+        eventBus.subscribe(eventWriter, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * 以 Server-Sent Events 提供變更事件；有變更紀錄時序號與紀錄相同，重新連線可從紀錄補送
+     *
+     * @param address the address to listen on, see {@link DaemonOptions#getPushAddress()}
+     * @throws IOException if the address cannot be bound
+     */
+    public void serveEvents(InetSocketAddress address) throws IOException {
+        eventStream = new EventStreamServer(address, changeJournal);
+        if (changeJournal == null) {
+            // 只放入各客戶端佇列，不會延遲發布者
+            eventBus.subscribe(eventStream, OverflowPolicy.BLOCK);
+        }
+    }
+
+    /**
+     * 將變更的檔案複製到本機的版本快取，之後的讀取不必再經過網路
+     *
+     * @param directory the cache directory
+     * @param versions how many versions of each file are kept
+     * @param maxBytes the cache size after which the least recently used versions are deleted
+     * @param bytesPerSecond the copy bandwidth limit, 0 for no limit
+     * @throws IOException if the cache directory cannot be created or read
+     */
+    public void mirrorTo(Path directory, int versions, long maxBytes, long bytesPerSecond) throws IOException {
+        fileMirror = new FileMirror(directory, versions, maxBytes, FileMirror.DEFAULT_THREADS, bytesPerSecond);
+        // 同一檔案尚未複製的多次修改合併為一次
+        eventBus.subscribe(fileMirror, OverflowPolicy.MERGE_PER_PATH);
+    }
+
+    /**
+     * 建立各目錄的初始快照（失敗的目錄在排程掃描時重試）
+     */
+    public void initializeSnapshots() {
+        for (FileWatchService watchService : services) {
+            String directory = watchService.getMonitorDataObject().getDirectoryMonitorPath();
+            try {
+                watchService.initializeFileSnapshot(directory);
+                logger.info("初始檔案快照建立完成: " + directory);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "建立初始檔案快照時發生錯誤: " + directory, e);
+                logger.info("程式將嘗試繼續執行...");
+            }
+        }
+    }
+
+    /**
+     * 建立初始快照並開始排程掃描（不阻塞呼叫者）；分散監控時由協調器在取得租約後才建立快照
+     *
+     * @throws IOException if the coordination directory cannot be created
+     */
+    public void start() throws IOException {
+        initializeSnapshots();
+        scheduler.start();
+        if (shardCoordinator != null) {
+            shardCoordinator.start();
+        }
+    }
+
+    public ChangeEventBus getEventBus() {
+        return eventBus;
+    }
+
+    public MonitorScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * 各監控目錄的服務，依設定順序（分散監控時為空，服務隨租約建立與關閉）
+     */
+    public List<FileWatchService> getServices() {
+        return Collections.unmodifiableList(services);
+    }
+
+    /**
+     * 分散監控的協調器，未設定協調目錄時為 null
+     */
+    public ShardCoordinator getShardCoordinator() {
+        return shardCoordinator;
+    }
+
+    /**
+     * 交出分散監控的目錄、停止掃描並關閉事件輸出
+     */
+    @Override
+    public void close() {
+        if (shardCoordinator != null) {
+            shardCoordinator.close();
+        }
+        scheduler.shutdownMonitor();
+        eventBus.close();
+        if (eventStream != null) {
+            eventStream.close();
+        }
+        if (fileMirror != null) {
+            fileMirror.close();
+        }
+        if (changeJournal != null) {
+            changeJournal.close();
+        }
+        if (eventWriter != null) {
+            eventWriter.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        DaemonOptions options;
+        try {
+            options = DaemonOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (options.getTargets().isEmpty()) {
+            System.err.println("未指定監控目錄，請使用 --config 或 --path");
+            System.exit(2);
+            return;
+        }
+
+        MonitorLogging.install(options.getLogsDirectory());
+        logger.info("檔案監控服務以無視窗模式啟動，監控 " + options.getTargets().size() + " 個目錄，日誌目錄: "
+                + options.getLogsDirectory().toAbsolutePath());
+
+        final MonitorDaemon daemon = new MonitorDaemon(options.getTargets(), options.getCoordinationDirectory(),
+                options.getInstanceId(), options.getLeaseMillis());
+        daemon.writeEventsTo(options.getEventsOutput());
+        if (options.getPushAddress() != null) {
+            daemon.serveEvents(options.getPushAddress());
+        }
+        if (options.getMirrorDirectory() != null) {
+            daemon.mirrorTo(options.getMirrorDirectory(), options.getMirrorVersions(), options.getMirrorMaxBytes(),
+                    options.getMirrorBytesPerSecond());
+        }
+
+        // 結束時先交出分散監控的目錄，再停止掃描
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "monitor-shutdown"));
+        daemon.start();
+
+        // 保持主線程活著
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            logger.info("主線程被中斷");
+            daemon.close();
+        }
+    }
+}
@@ -1,58 +1,312 @@
 package com.file.watch;
 
 import com.file.object.MonitorDataObject;
+import com.file.service.AttributeFetcher;
 import com.file.service.FileWatchService;
+import com.file.service.ScanCancelledException;
+import com.file.service.ScanMetrics;
+import com.file.service.ShareProbe;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Schedules the scans of any number of {@link WatchTarget}s.
+ * A single timer thread decides when a target is due, the scans themselves run on a shared,
+ * fixed-size pool. Each target has at most one scan queued or running, so busy targets cannot
+ * crowd out quiet ones, and the number of concurrent scans against the same share host is capped.
+ *
+ * <p>Intervals are adaptive: after a scan that saw changes the target is rescanned at its minimum
+ * interval, every quiet scan doubles the interval up to the target's maximum. The timer keeps a
+ * single wakeup armed for the earliest due target and, when it fires, also dispatches every target
+ * due within the coalescing window, so many targets with similar deadlines share one wakeup.</p>
+ *
+ * <p>Every scan has a deadline. A watchdog on the timer cancels a scan that runs past it, reports
+ * the overrun and drops the requests that arrived meanwhile instead of running them back-to-back.
+ * Failed and timed out scans feed a {@link ShareCircuitBreaker} per host: once it opens, targets
+ * on that host only run a {@link ShareProbe} with backoff until the share answers again, so no
+ * scan thread waits on a dead share.</p>
+ */
 public class MonitorScheduler {
 
     private static final Logger logger = Logger.getLogger(MonitorScheduler.class.getName());
 
-    // 排程執行器
-    private static ScheduledExecutorService scheduler;
+    // 預設掃描執行緒數
+    public static final int DEFAULT_SCAN_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    // 預設同一主機同時掃描的上限
+    public static final int DEFAULT_MAX_SCANS_PER_HOST = 4;
+
+    // 預設喚醒合併範圍（毫秒）：到期時間在此範圍內的目標於同一次喚醒一起觸發
+    public static final long DEFAULT_COALESCE_WINDOW_MILLIS = 1000;
+
+    // 預設掃描統計摘要寫入日誌的間隔（秒）
+    public static final int DEFAULT_METRICS_SUMMARY_SECONDS = 300;
+
+    private final List<WatchTarget> targets = new CopyOnWriteArrayList<>();
+
+    private final int scanThreads;
+
+    private final int maxScansPerHost;
+
+    private final long coalesceWindowNanos;
+
+    // 依到期時間排序的目標（執行中或排隊中的目標不在佇列內）
+    private final PriorityQueue<WatchTarget> dueQueue =
+            new PriorityQueue<>(Comparator.comparingLong(WatchTarget::getNextDueNanos));
+
+    // 目前設定的喚醒及其時間
+    private ScheduledFuture<?> wakeup;
+    private long wakeupAtNanos;
+
+    // 各主機執行中的掃描數與等待中的目標
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final Map<String, Deque<WatchTarget>> waitingPerHost = new HashMap<>();
+
+    // 同一主機的目標共用屬性讀取器，並行讀取上限以主機為單位
+    private final Map<String, AttributeFetcher> fetchersPerHost = new HashMap<>();
+
+    // 同一主機共用斷路器與可達性探測
+    private final Map<String, ShareCircuitBreaker> breakersPerHost = new HashMap<>();
+    private final Map<String, ShareProbe> probesPerHost = new HashMap<>();
+
+    // 已註冊的 JMX 名稱
+    private final Map<WatchTarget, ObjectName> metricsNames = new HashMap<>();
 
-    // 監視間隔時間（秒）
-    private static final int MONITOR_INTERVAL_SECONDS = 10;
+    private int metricsSummarySeconds = DEFAULT_METRICS_SUMMARY_SECONDS;
 
-    private MonitorDataObject dto;
+    // 排程計時器（只負責觸發，不執行掃描）
+    private ScheduledExecutorService timer;
 
-    private FileWatchService watchService;
+    // 共用的掃描執行緒池
+    private ExecutorService scanPool;
 
-    public MonitorScheduler(MonitorDataObject dto, FileWatchService watchService) {
-        this.dto = dto;
-        this.watchService = watchService;
+    public MonitorScheduler() {
+        this(DEFAULT_SCAN_THREADS, DEFAULT_MAX_SCANS_PER_HOST);
     }
 
-    public void startScheduled() {
+    /**
+     * @param scanThreads size of the shared scan pool
+     * @param maxScansPerHost maximum number of concurrent scans against the same share host
+     */
+    public MonitorScheduler(int scanThreads, int maxScansPerHost) {
+        this(scanThreads, maxScansPerHost, DEFAULT_COALESCE_WINDOW_MILLIS);
+    }
 
-        logger.info("開始監控網路資料夾: " + dto.getDirectoryMonitorPath());
-        logger.info("監控條件: 副檔名為 " + dto.getFileExtension() + " 且檔名以「"+ dto.getMonitorFileName()+ "」開頭");
-        logger.info("監控頻率: 每 " + MONITOR_INTERVAL_SECONDS + " 秒檢查一次");
-        logger.info("===========================================");
+    /**
+     * @param scanThreads size of the shared scan pool
+     * @param maxScansPerHost maximum number of concurrent scans against the same share host
+     * @param coalesceWindowMillis targets due within this window of a wakeup are dispatched together
+     */
+    public MonitorScheduler(int scanThreads, int maxScansPerHost, long coalesceWindowMillis) {
+        if (scanThreads < 1 || maxScansPerHost < 1) {
+            throw new IllegalArgumentException("Scan threads and scans per host must be at least 1");
+        }
+        if (coalesceWindowMillis < 0) {
+            throw new IllegalArgumentException("Coalesce window cannot be negative");
+        }
+        this.scanThreads = scanThreads;
+        this.maxScansPerHost = maxScansPerHost;
+        this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis);
+    }
 
+    /**
+     * 加入監控目標，排程啟動後加入的目標會立即開始排程
+     *
+     * @param dto the monitoring configuration of the target
+     * @param watchService the service holding the target's snapshot
+     * @return the registered target
+     */
+    public WatchTarget addTarget(MonitorDataObject dto, FileWatchService watchService) {
+        final WatchTarget target = new WatchTarget(dto, watchService);
+        targets.add(target);
 
-        scheduler = Executors.newScheduledThreadPool(1);
+        synchronized (fetchersPerHost) {
+            AttributeFetcher fetcher = fetchersPerHost.get(target.getHost());
+            if (fetcher == null) {
+                fetcher = new AttributeFetcher(dto.getAttributeFetchConcurrency(), target.getHost());
+                fetchersPerHost.put(target.getHost(), fetcher);
+            }
+            watchService.setAttributeFetcher(fetcher);
+
+            ShareProbe probe = probesPerHost.get(target.getHost());
+            if (probe == null) {
+                probe = new ShareProbe(ShareProbe.DEFAULT_TIMEOUT_MILLIS, target.getHost());
+                probesPerHost.put(target.getHost(), probe);
+                breakersPerHost.put(target.getHost(), new ShareCircuitBreaker(target.getHost()));
+            }
+            watchService.setShareProbe(probe);
+        }
+        registerMetrics(target, dto.getDirectoryMonitorPath());
 
-        // 創建監控任務
-        Runnable monitorTask = new Runnable() {
+        // 檔案系統事件觸發時立即排入一次掃描，尚未執行前的後續事件合併處理
+        watchService.setChangeTrigger(new Runnable() {
             @Override
             public void run() {
-                try {
-                    watchService.checkForChanges(dto.getDirectoryMonitorPath());
-                } catch (Exception e) {
-                    logger.log(Level.WARNING, "監控過程發生錯誤", e);
-                }
+                requestScan(target);
             }
-        };
+        });
+
+        synchronized (this) {
+            if (timer != null) {
+                scheduleTarget(target);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * 移除監控目標並釋放其資源；掃描進行中時先要求取消，服務在掃描結束後關閉（快照於關閉時寫入）
+     */
+    public void removeTarget(WatchTarget target) {
+        if (targets.remove(target)) {
+            synchronized (dueQueue) {
+                dueQueue.remove(target);
+            }
+            target.getWatchService().setChangeTrigger(null);
+            unregisterMetrics(target);
+            if (target.markRemoved()) {
+                closeRemoved(target);
+            } else {
+                target.getWatchService().cancelScan();
+            }
+        }
+    }
+
+    /**
+     * 變更監控目標的設定，由掃描執行緒在下一次掃描前套用。屬性讀取並行上限、共用資料夾探測與斷路器
+     * 都綁定在加入時的主機，因此不接受移到其他主機的路徑；同一主機內變更路徑時改用新路徑註冊掃描統計
+     *
+     * @param target the registered target
+     * @param updated the new configuration
+     * @throws IllegalArgumentException if the new path is on another host than the target
+     */
+    public void reconfigure(WatchTarget target, MonitorDataObject updated) {
+        String host = WatchTarget.hostOf(updated.getDirectoryMonitorPath());
+        if (!host.equals(target.getHost())) {
+            throw new IllegalArgumentException("無法將監控資料夾移到其他主機 (" + target.getHost() + " -> " + host
+                    + ")，請移除後重新加入監控目標");
+        }
+        String previousPath = target.getMonitorDataObject().getDirectoryMonitorPath();
+        target.getWatchService().reconfigure(updated);
+        if (!previousPath.equals(updated.getDirectoryMonitorPath()) && targets.contains(target)) {
+            unregisterMetrics(target);
+            registerMetrics(target, updated.getDirectoryMonitorPath());
+        }
+    }
+
+    private void closeRemoved(WatchTarget target) {
+        target.getWatchService().close();
+        Runnable listener = target.getCloseListener();
+        if (listener != null) {
+            listener.run();
+        }
+    }
 
-        // 排程任務 - 先延遲1秒後開始，然後每MONITOR_INTERVAL_SECONDS秒執行一次
-        scheduler.scheduleAtFixedRate(monitorTask, 1, MONITOR_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    /**
+     * Set how often the scan metrics of every target are written to the log
+     *
+     * @param metricsSummarySeconds the interval in seconds, 0 disables the summary; applies from the next start
+     */
+    public void setMetricsSummaryIntervalSeconds(int metricsSummarySeconds) {
+        if (metricsSummarySeconds < 0) {
+            throw new IllegalArgumentException("Metrics summary interval cannot be negative");
+        }
+        this.metricsSummarySeconds = metricsSummarySeconds;
+    }
 
+    /**
+     * 以 JMX 公開目標的掃描統計，註冊失敗只影響監看
+     */
+    private void registerMetrics(WatchTarget target, String directory) {
+        ScanMetrics metrics = target.getWatchService().getMetrics();
+        try {
+            ObjectName name = new ObjectName("com.file.watch:type=ScanMetrics,name=" + ObjectName.quote(directory));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+            synchronized (metricsNames) {
+                metricsNames.put(target, name);
+            }
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "無法註冊掃描統計 MBean: " + directory, e);
+        }
+    }
+
+    private void unregisterMetrics(WatchTarget target) {
+        ObjectName name;
+        synchronized (metricsNames) {
+            name = metricsNames.remove(target);
+        }
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.log(Level.FINE, "無法取消註冊掃描統計 MBean: " + name, e);
+        }
+    }
+
+    /**
+     * 將每個目標的掃描統計各寫成一行日誌
+     */
+    private void logMetricsSummary() {
+        for (WatchTarget target : targets) {
+            logger.info(target.getWatchService().getMetrics().getSummary());
+        }
+    }
+
+    /**
+     * 取得主機的斷路器
+     */
+    ShareCircuitBreaker getCircuitBreaker(String host) {
+        synchronized (fetchersPerHost) {
+            return breakersPerHost.get(host);
+        }
+    }
+
+    private ShareProbe getProbe(String host) {
+        synchronized (fetchersPerHost) {
+            return probesPerHost.get(host);
+        }
+    }
+
+    public List<WatchTarget> getTargets() {
+        return new ArrayList<>(targets);
+    }
+
+    public void startScheduled() {
+
+        start();
 
         // 註冊關閉鉤子，確保優雅關閉
         Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -74,23 +328,389 @@ public class MonitorScheduler {
 
     }
 
+    /**
+     * 啟動計時器與掃描執行緒池（不阻塞呼叫者）
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+
+        timer = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("monitor-timer"));
+        scanPool = new ThreadPoolExecutor(scanThreads, scanThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), namedThreadFactory("monitor-scan"));
+
+        logger.info("掃描執行緒數: " + scanThreads + "，每台主機同時掃描上限: " + maxScansPerHost);
+        if (metricsSummarySeconds > 0) {
+            timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    logMetricsSummary();
+                }
+            }, metricsSummarySeconds, metricsSummarySeconds, TimeUnit.SECONDS);
+        }
+        for (WatchTarget target : targets) {
+            scheduleTarget(target);
+        }
+    }
+
+    private void scheduleTarget(final WatchTarget target) {
+        MonitorDataObject dto = target.getMonitorDataObject();
+
+        logger.info("開始監控網路資料夾: " + dto.getDirectoryMonitorPath());
+        logger.info("監控條件: 副檔名為 " + dto.getFileExtension() + " 且檔名以「"+ dto.getMonitorFileName()+ "」開頭" +
+                (dto.isRecursive() ? "（包含子資料夾）" : ""));
+        if (!dto.getExcludePatterns().isEmpty()) {
+            logger.info("排除檔名: " + String.join("、", dto.getExcludePatterns()));
+        }
+        logger.info("監控頻率: 每 " + dto.getMonitorIntervalSeconds() + " 秒檢查一次" +
+                "（依變化頻率在 " + dto.getMinIntervalSeconds() + " 到 " + dto.getMaxIntervalSeconds() + " 秒之間調整）" +
+                (target.getWatchService().isEventDriven() ? "（檔案系統事件即時觸發）" : ""));
+        logger.info("===========================================");
+
+        // 先延遲1秒後開始第一次掃描
+        scheduleAt(target, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * 將目標放入排程佇列，必要時提前喚醒計時器
+     */
+    private void scheduleAt(WatchTarget target, long delayNanos) {
+        synchronized (dueQueue) {
+            if (!targets.contains(target)) {
+                return;
+            }
+            dueQueue.remove(target);
+            target.setNextDueNanos(System.nanoTime() + delayNanos);
+            dueQueue.add(target);
+            if (wakeup == null || target.getNextDueNanos() - wakeupAtNanos < 0) {
+                rearm();
+            }
+        }
+    }
+
+    /**
+     * 依佇列中最早到期的目標重新設定唯一的喚醒（呼叫者需持有 dueQueue 鎖）
+     */
+    private void rearm() {
+        if (wakeup != null) {
+            wakeup.cancel(false);
+            wakeup = null;
+        }
+        WatchTarget head = dueQueue.peek();
+        ScheduledExecutorService timerService = timer;
+        if (head == null || timerService == null || timerService.isShutdown()) {
+            return;
+        }
+        wakeupAtNanos = head.getNextDueNanos();
+        long delay = Math.max(0, wakeupAtNanos - System.nanoTime());
+        wakeup = timerService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onWakeup();
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 計時器喚醒：觸發所有已到期及即將在合併範圍內到期的目標
+     */
+    private void onWakeup() {
+        List<WatchTarget> due = new ArrayList<>();
+        List<Long> dueTimes = new ArrayList<>();
+        synchronized (dueQueue) {
+            wakeup = null;
+            long horizon = System.nanoTime() + coalesceWindowNanos;
+            while (!dueQueue.isEmpty() && dueQueue.peek().getNextDueNanos() - horizon <= 0) {
+                WatchTarget target = dueQueue.poll();
+                due.add(target);
+                dueTimes.add(target.getNextDueNanos());
+            }
+            rearm();
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < due.size(); i++) {
+            // 合併範圍內提前觸發的目標以現在作為預定時間
+            long dueNanos = dueTimes.get(i);
+            requestScan(due.get(i), dueNanos - now < 0 ? dueNanos : now);
+        }
+    }
+
+    /**
+     * 要求掃描目標；同一目標已排隊時合併，執行中時於結束後再執行一次
+     */
+    void requestScan(WatchTarget target) {
+        requestScan(target, System.nanoTime());
+    }
+
+    private void requestScan(WatchTarget target, long dueNanos) {
+        if (target.requestScan(dueNanos)) {
+            // 事件提前觸發時移除原本的排程，掃描結束後再依結果重新排程
+            synchronized (dueQueue) {
+                dueQueue.remove(target);
+            }
+            dispatch(target);
+        }
+    }
+
+    /**
+     * 依主機的同時掃描上限將目標送入執行緒池或排入等待
+     */
+    private void dispatch(WatchTarget target) {
+        String host = target.getHost();
+        synchronized (runningPerHost) {
+            int running = runningPerHost.getOrDefault(host, 0);
+            if (running >= maxScansPerHost) {
+                waitingPerHost.computeIfAbsent(host, k -> new ArrayDeque<>()).addLast(target);
+                return;
+            }
+            runningPerHost.put(host, running + 1);
+        }
+        submit(target);
+    }
+
+    private void submit(final WatchTarget target) {
+        ExecutorService pool = scanPool;
+        if (pool != null && !pool.isShutdown()) {
+            try {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runScan(target);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                // 檢查後執行緒池才關閉
+            }
+        }
+        // 未啟動或已關閉：不會執行，交還已佔用的主機名額
+        target.scanFinished();
+        releaseHost(target.getHost());
+    }
+
+    private void runScan(WatchTarget target) {
+        long startNanos = System.nanoTime();
+        long lagNanos = target.scanStarted(startNanos);
+        FileWatchService service = target.getWatchService();
+        service.getMetrics().recordSchedulerLag(lagNanos);
+        ShareCircuitBreaker breaker = getCircuitBreaker(target.getHost());
+        ScheduledFuture<?> watchdog = null;
+        boolean scanned = false;
+        try {
+            if (targets.contains(target) && admit(target, breaker)) {
+                watchdog = armWatchdog(target, breaker);
+                scanned = true;
+                service.checkForChanges();
+            }
+        } catch (ScanCancelledException e) {
+            logger.warning(e.getMessage());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "監控過程發生錯誤: " + target.getMonitorDataObject().getDirectoryMonitorPath(), e);
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            // 掃描期間被移除時取消不代表共用資料夾異常，不計入斷路器
+            boolean removedDuringScan = target.takeCloseAfterScan();
+            if (scanned && !removedDuringScan) {
+                recordOutcome(target, breaker, startNanos);
+            }
+            boolean again = target.scanFinished();
+            releaseHost(target.getHost());
+            if (removedDuringScan) {
+                // 掃描期間已被移除
+                closeRemoved(target);
+            } else if (again) {
+                dispatch(target);
+            } else if (scanned) {
+                rescheduleAfterScan(target);
+            } else {
+                // 斷路中未掃描：等到下一次探測時間，間隔不因此調整
+                long untilProbe = breaker == null ? 0 : breaker.nanosUntilProbe(System.nanoTime());
+                scheduleAt(target, Math.max(untilProbe, TimeUnit.MILLISECONDS.toNanos(target.getIntervalMillis())));
+            }
+        }
+    }
+
+    /**
+     * 斷路中只有到了探測時間且探測成功才放行掃描
+     */
+    private boolean admit(WatchTarget target, ShareCircuitBreaker breaker) {
+        if (breaker == null || breaker.allowScan()) {
+            return true;
+        }
+        long now = System.nanoTime();
+        ScanMetrics metrics = target.getWatchService().getMetrics();
+        ShareProbe probe = getProbe(target.getHost());
+        if (probe != null && breaker.tryStartProbe(now)) {
+            Path directory = Paths.get(target.getMonitorDataObject().getDirectoryMonitorPath());
+            if (probe.isReachable(directory)) {
+                breaker.probeSucceeded();
+                logger.info("共用資料夾已回應，嘗試恢復掃描: " + target.getHost());
+                return true;
+            }
+            breaker.probeFailed(now);
+            logger.fine("共用資料夾仍無回應: " + target.getHost() + "，" + breaker.getBackoffMillis() + " ms 後再探測");
+        }
+        metrics.recordCircuitOpenSkip();
+        return false;
+    }
+
+    /**
+     * 在掃描期限到達時檢查掃描是否仍在執行，逾時則要求取消並計入斷路器
+     */
+    private ScheduledFuture<?> armWatchdog(final WatchTarget target, final ShareCircuitBreaker breaker) {
+        final int timeoutSeconds = target.getMonitorDataObject().getScanTimeoutSeconds();
+        ScheduledExecutorService timerService = timer;
+        if (timeoutSeconds <= 0 || timerService == null || timerService.isShutdown()) {
+            return null;
+        }
+        final long scanId = target.getScanId();
+        return timerService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!target.markOverrun(scanId)) {
+                    return;
+                }
+                FileWatchService service = target.getWatchService();
+                service.cancelScan();
+                service.getMetrics().recordOverrun();
+                logger.warning("掃描超過期限 " + timeoutSeconds + " 秒仍未完成，已要求取消: "
+                        + target.getMonitorDataObject().getDirectoryMonitorPath());
+                if (breaker != null && breaker.recordFailure(System.nanoTime())) {
+                    logCircuitOpened(breaker);
+                }
+            }
+        }, timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 依掃描結果更新斷路器，逾時的掃描回報實際耗時與略過的要求數
+     */
+    private void recordOutcome(WatchTarget target, ShareCircuitBreaker breaker, long startNanos) {
+        FileWatchService service = target.getWatchService();
+        if (target.isOverrun()) {
+            int skipped = target.getOverlappingRequests();
+            service.getMetrics().recordOverlappingRequests(skipped);
+            logger.warning("逾時的掃描已結束，實際耗時 " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+                    + " ms，期間略過 " + skipped + " 次掃描要求: " + target.getMonitorDataObject().getDirectoryMonitorPath());
+            // 逾時已在期限到達時計入斷路器
+            return;
+        }
+        if (breaker == null) {
+            return;
+        }
+        if (service.isLastScanSuccessful()) {
+            if (breaker.recordSuccess()) {
+                logger.info("共用資料夾已恢復，恢復正常掃描: " + target.getHost());
+            }
+        } else if (breaker.recordFailure(System.nanoTime())) {
+            logCircuitOpened(breaker);
+        }
+    }
+
+    private void logCircuitOpened(ShareCircuitBreaker breaker) {
+        logger.warning("共用資料夾連續 " + breaker.getConsecutiveFailures() + " 次無回應或逾時，暫停掃描: "
+                + breaker.getHost() + "，改為每 " + breaker.getBackoffMillis() + " ms 起探測一次直到恢復");
+    }
+
+    /**
+     * 依本次掃描是否有變化調整間隔並排入下一次掃描
+     */
+    private void rescheduleAfterScan(WatchTarget target) {
+        long previous = target.getIntervalMillis();
+        FileWatchService service = target.getWatchService();
+        // 仍有寫入中的檔案時也視為有變化，盡快再檢查
+        long interval = target.updateInterval(service.getLastScanChangeCount() > 0 || service.hasPendingChanges());
+        if (interval != previous && logger.isLoggable(Level.FINE)) {
+            logger.fine("調整掃描間隔: " + target.getMonitorDataObject().getDirectoryMonitorPath()
+                    + " " + previous + " ms -> " + interval + " ms");
+        }
+        scheduleAt(target, TimeUnit.MILLISECONDS.toNanos(interval));
+    }
+
+    /**
+     * 目前佔用主機名額的掃描數
+     */
+    int getRunningScans(String host) {
+        synchronized (runningPerHost) {
+            return runningPerHost.getOrDefault(host, 0);
+        }
+    }
+
+    /**
+     * 釋放主機名額，若有等待中的目標則接著執行
+     */
+    private void releaseHost(String host) {
+        WatchTarget next;
+        synchronized (runningPerHost) {
+            Deque<WatchTarget> waiting = waitingPerHost.get(host);
+            next = waiting == null ? null : waiting.pollFirst();
+            if (next == null) {
+                runningPerHost.put(host, runningPerHost.get(host) - 1);
+                return;
+            }
+        }
+        // 名額直接轉給下一個等待中的目標
+        submit(next);
+    }
+
     /**
      * 關閉監控程式
      */
     public void shutdownMonitor() {
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdown();
+        ScheduledExecutorService timerToStop;
+        ExecutorService poolToStop;
+        synchronized (this) {
+            timerToStop = timer;
+            poolToStop = scanPool;
+        }
+        if (timerToStop != null) {
+            timerToStop.shutdownNow();
+        }
+        synchronized (dueQueue) {
+            dueQueue.clear();
+            wakeup = null;
+        }
+        if (poolToStop != null && !poolToStop.isShutdown()) {
+            poolToStop.shutdown();
             try {
                 // 等待最多30秒讓任務完成
-                if (!scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
+                if (!poolToStop.awaitTermination(30, TimeUnit.SECONDS)) {
+                    poolToStop.shutdownNow();
                 }
             } catch (InterruptedException e) {
-                scheduler.shutdownNow();
+                poolToStop.shutdownNow();
             }
         }
+        for (WatchTarget target : targets) {
+            target.getWatchService().close();
+            unregisterMetrics(target);
+        }
+        synchronized (fetchersPerHost) {
+            for (AttributeFetcher fetcher : fetchersPerHost.values()) {
+                fetcher.close();
+            }
+            fetchersPerHost.clear();
+            for (ShareProbe probe : probesPerHost.values()) {
+                probe.close();
+            }
+            probesPerHost.clear();
+            breakersPerHost.clear();
+        }
     }
 
-
+    private static ThreadFactory namedThreadFactory(final String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
 
 }
@@ -0,0 +1,560 @@
+package com.file.watch;
+
+import com.file.object.MonitorDataObject;
+import com.file.service.FileWatchService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Splits a list of monitored directories between several monitor instances that share a
+ * coordination directory, without any external service.
+ *
+ * <p>Every instance writes a heartbeat file to {@code members/} and takes the live members from
+ * the heartbeats of its peers; a heartbeat may be one heartbeat period late before its member
+ * leaves, so a single slow write does not reshuffle the ring. The directories are assigned over a
+ * {@link ConsistentHashRing} of the live members; an instance scans a directory only while it
+ * holds its lease in {@code leases/}, which it renews with every heartbeat.</p>
+ *
+ * <p>A lease is a generation file {@code <id>.<generation>.lease} and the highest generation is
+ * the current lease. A free or expired lease is taken by creating the next generation with
+ * {@code CREATE_NEW}, so of several instances racing for it exactly one succeeds; only the owner
+ * rewrites its own generation, and an owner whose lease expired has to take a new generation like
+ * everyone else. A released lease is marked expired rather than deleted, so generation numbers are
+ * never reused. When an instance stops, its heartbeat and leases expire and the remaining instances
+ * take its directories over on their next heartbeat, within about {@code leaseMillis * 5 / 3} plus
+ * the time to load its snapshot.</p>
+ *
+ * <p>Snapshots are kept in {@code state/} of the coordination directory, so the new owner starts
+ * from the last snapshot written by the previous one and reports what changed in between. A
+ * directory that moves to another instance because of a rebalance is released only after its
+ * snapshot was written. Leases are plain files, so the clocks of the instances must agree to well
+ * within the lease time; an instance that finds its lease taken over stops scanning the directory.</p>
+ */
+public class ShardCoordinator implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ShardCoordinator.class.getName());
+
+    // 預設租約時間
+    public static final long DEFAULT_LEASE_MILLIS = 30_000;
+
+    private static final String MEMBER_SUFFIX = ".member";
+
+    private static final String LEASE_SUFFIX = ".lease";
+
+    /**
+     * 單一監控目錄的分派狀態
+     */
+    private enum ShardState {
+        IDLE,
+        // 已取得租約，正在載入快照
+        STARTING,
+        OWNED,
+        // 已自排程器移除，等待快照寫入後釋放租約
+        RELEASING
+    }
+
+    private static final class Shard {
+        final MonitorDataObject dto;
+        final String key;
+        // 租約檔名的目錄識別
+        final String leaseName;
+        ShardState state = ShardState.IDLE;
+        WatchTarget target;
+        // 本執行個體持有的租約世代，0 表示沒有
+        long generation;
+
+        Shard(MonitorDataObject dto, String key, String leaseName) {
+            this.dto = dto;
+            this.key = key;
+            this.leaseName = leaseName;
+        }
+    }
+
+    /**
+     * 租約或心跳檔的內容：擁有者與到期時間
+     */
+    private static final class Record {
+        final String owner;
+        final long expiresAt;
+
+        Record(String owner, long expiresAt) {
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Path directory;
+    private final Path membersDirectory;
+    private final Path leasesDirectory;
+    private final String instanceId;
+    private final long leaseMillis;
+    private final MonitorScheduler scheduler;
+    private final Function<MonitorDataObject, FileWatchService> serviceFactory;
+    private final List<Shard> shards = new ArrayList<>();
+
+    private ScheduledExecutorService heartbeat;
+    private ExecutorService loader;
+    private boolean closed;
+
+    // 最近一次心跳看到的成員
+    private volatile Set<String> liveMembers = Collections.emptySet();
+
+    /**
+     * @param directory the coordination directory shared by all instances
+     * @param instanceId the unique name of this instance
+     * @param leaseMillis how long a heartbeat or lease stays valid without renewal
+     * @param targets all monitored directories, the same list on every instance
+     * @param scheduler the scheduler the owned directories are added to
+     * @param serviceFactory creates the service of a directory this instance takes over
+     */
+    public ShardCoordinator(Path directory, String instanceId, long leaseMillis, List<MonitorDataObject> targets,
+                            MonitorScheduler scheduler, Function<MonitorDataObject, FileWatchService> serviceFactory) {
+        if (leaseMillis < 300) {
+            throw new IllegalArgumentException("Lease must be at least 300 ms");
+        }
+        this.directory = directory;
+        this.membersDirectory = directory.resolve("members");
+        this.leasesDirectory = directory.resolve("leases");
+        this.instanceId = toFileName(instanceId);
+        this.leaseMillis = leaseMillis;
+        this.scheduler = scheduler;
+        this.serviceFactory = serviceFactory;
+
+        String stateDirectory = directory.resolve("state").toString();
+        for (MonitorDataObject target : targets) {
+            // 快照放在共用目錄，接手的執行個體從上一個擁有者的快照繼續
+            MonitorDataObject dto = new MonitorDataObject(target);
+            dto.setStateDirectory(stateDirectory);
+            String key = Paths.get(dto.getDirectoryMonitorPath()).toAbsolutePath().normalize().toString();
+            shards.add(new Shard(dto, key, leaseNameOf(key)));
+        }
+    }
+
+    /**
+     * 開始心跳，並立即分派一次
+     *
+     * @throws IOException if the coordination directory cannot be created
+     */
+    public synchronized void start() throws IOException {
+        if (heartbeat != null) {
+            return;
+        }
+        Files.createDirectories(membersDirectory);
+        Files.createDirectories(leasesDirectory);
+        heartbeat = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("shard-heartbeat"));
+        loader = Executors.newSingleThreadExecutor(daemonThreadFactory("shard-loader"));
+        logger.info("分散監控: 執行個體 " + instanceId + "，協調目錄 " + directory.toAbsolutePath()
+                + "，租約 " + leaseMillis + " ms，共 " + shards.size() + " 個目錄");
+        heartbeat.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "分散監控心跳失敗", e);
+                }
+            }
+        }, 0, leaseMillis / 3, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 寫入心跳、依目前成員重新分派並更新租約
+     */
+    synchronized void tick() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            writeRecord(membersDirectory.resolve(instanceId + MEMBER_SUFFIX), now + leaseMillis);
+        } catch (IOException e) {
+            // 無法寫入心跳時其他執行個體會接手，不再延長租約
+            logger.log(Level.WARNING, "無法寫入心跳: " + membersDirectory, e);
+            return;
+        }
+        Set<String> members = readLiveMembers(now);
+        if (!members.equals(liveMembers)) {
+            logger.info("分散監控成員: " + members);
+            liveMembers = members;
+        }
+        ConsistentHashRing ring = new ConsistentHashRing(members);
+
+        Map<String, Long> generations;
+        try {
+            generations = readLeaseGenerations();
+        } catch (IOException e) {
+            // 看不到租約時不延長，其他執行個體可在到期後接手
+            logger.log(Level.WARNING, "無法讀取租約目錄: " + leasesDirectory, e);
+            return;
+        }
+
+        for (Shard shard : shards) {
+            boolean wanted = instanceId.equals(ring.ownerOf(shard.key));
+            long current = generations.getOrDefault(shard.leaseName, 0L);
+            Record lease = current == 0 ? null : readLease(leaseFile(shard, current));
+            boolean expired = lease == null || lease.expiresAt <= now;
+
+            switch (shard.state) {
+                case IDLE:
+                    // 重新啟動的同名執行個體可直接以下一個世代取回自己的租約
+                    if (wanted && (expired || instanceId.equals(lease.owner)) && tryAcquire(shard, current, now)) {
+                        load(shard);
+                    }
+                    break;
+                case STARTING:
+                case OWNED:
+                case RELEASING:
+                    if (shard.generation == 0) {
+                        // 已失去租約，等待自排程器移除
+                        break;
+                    }
+                    if (current != shard.generation || (expired && !tryAcquire(shard, current, now))) {
+                        // 已有較新的世代，或租約逾期後被其他執行個體搶先取得
+                        logger.warning("租約已由其他執行個體取得，停止監控: " + shard.key);
+                        shard.generation = 0;
+                        release(shard);
+                    } else {
+                        if (!expired) {
+                            renew(shard, now);
+                        }
+                        if (!wanted && shard.state != ShardState.RELEASING) {
+                            logger.info("重新分派，交出監控目錄: " + shard.key);
+                            release(shard);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 建立下一個世代的租約檔；同時搶同一世代時只有一個執行個體能建立成功
+     */
+    private boolean tryAcquire(Shard shard, long current, long now) {
+        Path file = leaseFile(shard, current + 1);
+        try {
+            Files.write(file, recordBytes(now + leaseMillis), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "無法寫入租約: " + file, e);
+            return false;
+        }
+        shard.generation = current + 1;
+        if (current > 0) {
+            try {
+                Files.deleteIfExists(leaseFile(shard, current));
+            } catch (IOException e) {
+                logger.log(Level.FINE, "無法刪除舊租約: " + shard.leaseName, e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 延長自己的世代；只有擁有者會寫入這個檔案，可以直接取代
+     */
+    private void renew(Shard shard, long now) {
+        Path file = leaseFile(shard, shard.generation);
+        try {
+            writeRecord(file, now + leaseMillis);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "無法更新租約: " + file, e);
+        }
+    }
+
+    /**
+     * 在背景載入快照後加入排程器，掃描執行緒與心跳都不會被大型目錄卡住
+     */
+    private void load(final Shard shard) {
+        shard.state = ShardState.STARTING;
+        logger.info("取得監控目錄: " + shard.key);
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                FileWatchService service = serviceFactory.apply(shard.dto);
+                try {
+                    service.initializeFileSnapshot(shard.dto.getDirectoryMonitorPath());
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "建立初始檔案快照時發生錯誤: " + shard.key, e);
+                }
+                synchronized (ShardCoordinator.this) {
+                    if (shard.state == ShardState.STARTING && !closed) {
+                        shard.target = scheduler.addTarget(shard.dto, service);
+                        shard.state = ShardState.OWNED;
+                        return;
+                    }
+                }
+                // 載入期間已交出
+                service.close();
+                released(shard);
+            }
+        });
+    }
+
+    /**
+     * 自排程器移除，服務關閉（快照已寫入）後才刪除租約
+     */
+    private void release(final Shard shard) {
+        if (shard.state == ShardState.STARTING) {
+            // 載入完成後由載入工作關閉
+            shard.state = ShardState.IDLE;
+            return;
+        }
+        if (shard.state != ShardState.OWNED) {
+            return;
+        }
+        shard.state = ShardState.RELEASING;
+        WatchTarget target = shard.target;
+        target.setCloseListener(new Runnable() {
+            @Override
+            public void run() {
+                released(shard);
+            }
+        });
+        scheduler.removeTarget(target);
+    }
+
+    private synchronized void released(Shard shard) {
+        if (shard.generation != 0) {
+            // 標記為已到期而不刪除，世代編號不會被重複使用
+            Path file = leaseFile(shard, shard.generation);
+            try {
+                writeRecord(file, 0);
+            } catch (IOException e) {
+                logger.log(Level.FINE, "無法交出租約: " + file, e);
+            }
+            shard.generation = 0;
+        }
+        if (shard.state == ShardState.RELEASING) {
+            shard.state = ShardState.IDLE;
+        }
+        shard.target = null;
+    }
+
+    private Set<String> readLiveMembers(long now) {
+        // 心跳可晚一個週期，單次延遲不會讓成員離開而重新分派
+        long deadline = now - leaseMillis / 3;
+        Set<String> members = new TreeSet<>();
+        members.add(instanceId);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(membersDirectory, "*" + MEMBER_SUFFIX)) {
+            for (Path file : stream) {
+                Record record = readRecord(file);
+                if (record != null && record.expiresAt > deadline) {
+                    members.add(record.owner);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "無法讀取成員目錄: " + membersDirectory, e);
+        }
+        return members;
+    }
+
+    /**
+     * 每個目錄目前的租約世代，並刪除已被較新世代取代的租約檔
+     */
+    private Map<String, Long> readLeaseGenerations() throws IOException {
+        Map<String, Long> generations = new HashMap<>();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(leasesDirectory, "*" + LEASE_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                long generation = generationOf(name);
+                if (generation > 0) {
+                    generations.merge(name.substring(0, name.indexOf('.')), generation, Math::max);
+                    files.add(file);
+                }
+            }
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (generationOf(name) < generations.get(name.substring(0, name.indexOf('.')))) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "無法刪除舊租約: " + file, e);
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * 租約檔名 {@code <id>.<generation>.lease} 中的世代，不是租約檔時回傳 0
+     */
+    private static long generationOf(String name) {
+        int first = name.indexOf('.');
+        int last = name.length() - LEASE_SUFFIX.length();
+        if (first <= 0 || first >= last) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(first + 1, last));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private Path leaseFile(Shard shard, long generation) {
+        return leasesDirectory.resolve(shard.leaseName + "." + generation + LEASE_SUFFIX);
+    }
+
+    static String leaseNameOf(String key) {
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * 讀取租約；剛建立尚未寫入內容或寫入中斷的檔案以修改時間推算到期時間
+     */
+    private Record readLease(Path file) {
+        Record record = readRecord(file);
+        if (record != null) {
+            return record;
+        }
+        try {
+            return new Record("", Files.getLastModifiedTime(file).toMillis() + leaseMillis);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] recordBytes(long expiresAt) {
+        return (instanceId + "\n" + expiresAt + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 以暫存檔加上更名寫入，讀取者不會看到寫到一半的內容
+     */
+    private void writeRecord(Path file, long expiresAt) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + "." + instanceId + ".tmp");
+        Files.write(temp, recordBytes(expiresAt));
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Record readRecord(Path file) {
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.size() < 2) {
+                return null;
+            }
+            return new Record(lines.get(0).trim(), Long.parseLong(lines.get(1).trim()));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.FINE, "無法讀取租約檔: " + file, e);
+            return null;
+        }
+    }
+
+    private static String toFileName(String instanceId) {
+        String name = instanceId.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Instance id cannot be empty");
+        }
+        return name;
+    }
+
+    /**
+     * 本執行個體目前負責（載入中或掃描中）的目錄
+     */
+    public synchronized List<String> getOwnedTargets() {
+        List<String> owned = new ArrayList<>();
+        for (Shard shard : shards) {
+            if (shard.state == ShardState.STARTING || shard.state == ShardState.OWNED) {
+                owned.add(shard.key);
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * 最近一次心跳看到的存活成員（含本執行個體）
+     */
+    public Set<String> getLiveMembers() {
+        return liveMembers;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * 停止心跳並交出所有目錄，其他執行個體在下次心跳即可接手
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService heartbeatToStop;
+        ExecutorService loaderToStop;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            heartbeatToStop = heartbeat;
+            loaderToStop = loader;
+            for (Shard shard : shards) {
+                boolean loading = shard.state == ShardState.STARTING;
+                release(shard);
+                if (loading) {
+                    // 載入工作可能不再執行，直接交出租約
+                    released(shard);
+                }
+            }
+        }
+        if (heartbeatToStop != null) {
+            heartbeatToStop.shutdownNow();
+        }
+        if (loaderToStop != null) {
+            loaderToStop.shutdownNow();
+        }
+        try {
+            Files.deleteIfExists(membersDirectory.resolve(instanceId + MEMBER_SUFFIX));
+        } catch (IOException e) {
+            logger.log(Level.FINE, "無法刪除心跳檔", e);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
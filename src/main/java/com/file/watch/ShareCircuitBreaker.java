@@ -0,0 +1,156 @@
+package com.file.watch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for one share host.
+ * After a number of consecutive failed or timed out scans the circuit opens: scans of every
+ * target on the host are skipped and only a cheap reachability probe runs, with a backoff that
+ * doubles after every failed probe. A successful probe half-opens the circuit so the next scan
+ * is tried; its success closes the circuit, its failure opens it again.
+ */
+public class ShareCircuitBreaker {
+
+    /**
+     * 斷路器狀態
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        // 探測成功，下一次掃描決定是否恢復
+        HALF_OPEN
+    }
+
+    // 預設連續失敗幾次後斷路
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    // 預設探測間隔的下限與上限
+    public static final long DEFAULT_MIN_BACKOFF_MILLIS = 5000;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final String host;
+    private final int failureThreshold;
+    private final long minBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long backoffNanos;
+    private long nextProbeNanos;
+    private boolean probing;
+
+    public ShareCircuitBreaker(String host) {
+        this(host, DEFAULT_FAILURE_THRESHOLD, DEFAULT_MIN_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param host the share host, used in log messages
+     * @param failureThreshold consecutive failures after which the circuit opens
+     * @param minBackoffMillis the first probe delay after the circuit opens
+     * @param maxBackoffMillis the longest probe delay
+     */
+    public ShareCircuitBreaker(String host, int failureThreshold, long minBackoffMillis, long maxBackoffMillis) {
+        if (failureThreshold < 1 || minBackoffMillis <= 0 || maxBackoffMillis < minBackoffMillis) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings");
+        }
+        this.host = host;
+        this.failureThreshold = failureThreshold;
+        this.minBackoffNanos = TimeUnit.MILLISECONDS.toNanos(minBackoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 是否可以直接掃描（斷路中只能先探測）
+     */
+    public synchronized boolean allowScan() {
+        return state != State.OPEN;
+    }
+
+    /**
+     * 探測時間已到且沒有其他目標正在探測時取得探測權，呼叫者需回報 {@link #probeSucceeded()} 或 {@link #probeFailed(long)}
+     */
+    public synchronized boolean tryStartProbe(long nowNanos) {
+        if (state != State.OPEN || probing || nowNanos - nextProbeNanos < 0) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    public synchronized void probeSucceeded() {
+        probing = false;
+        if (state == State.OPEN) {
+            state = State.HALF_OPEN;
+        }
+    }
+
+    /**
+     * 探測失敗，延長下一次探測的間隔
+     */
+    public synchronized void probeFailed(long nowNanos) {
+        probing = false;
+        backoffNanos = Math.min(maxBackoffNanos, backoffNanos * 2);
+        nextProbeNanos = nowNanos + backoffNanos;
+    }
+
+    /**
+     * 掃描成功
+     *
+     * @return true if the circuit was not closed before, i.e. the share just recovered
+     */
+    public synchronized boolean recordSuccess() {
+        consecutiveFailures = 0;
+        if (state == State.CLOSED) {
+            return false;
+        }
+        state = State.CLOSED;
+        backoffNanos = 0;
+        return true;
+    }
+
+    /**
+     * 掃描失敗或逾時
+     *
+     * @return true if this failure opened the circuit
+     */
+    public synchronized boolean recordFailure(long nowNanos) {
+        consecutiveFailures++;
+        if (state == State.OPEN) {
+            return false;
+        }
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            boolean reopened = state == State.HALF_OPEN;
+            state = State.OPEN;
+            backoffNanos = reopened ? Math.min(maxBackoffNanos, Math.max(minBackoffNanos, backoffNanos * 2)) : minBackoffNanos;
+            nextProbeNanos = nowNanos + backoffNanos;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 距離下一次探測的時間，未斷路時為 0
+     */
+    public synchronized long nanosUntilProbe(long nowNanos) {
+        return state == State.OPEN ? Math.max(0, nextProbeNanos - nowNanos) : 0;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * 目前的探測間隔（毫秒）
+     */
+    public synchronized long getBackoffMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(backoffNanos);
+    }
+}
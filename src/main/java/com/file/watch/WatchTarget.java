@@ -0,0 +1,253 @@
+package com.file.watch;
+
+import com.file.object.MonitorDataObject;
+import com.file.service.FileWatchService;
+
+import java.util.Locale;
+
+/**
+ * One monitored directory registered with {@link MonitorScheduler}.
+ * Each target owns its own {@link FileWatchService} and therefore its own snapshot state.
+ * The scheduler guarantees that at most one scan of a target runs at any time; requests that
+ * arrive while a scan has overrun its deadline are counted and dropped instead of being replayed.
+ */
+public class WatchTarget {
+
+    /**
+     * 掃描狀態
+     */
+    enum ScanState {
+        IDLE,
+        QUEUED,
+        RUNNING,
+        // 執行中又收到掃描要求，結束後立即再排入一次
+        RUNNING_REQUEUE
+    }
+
+    private final FileWatchService watchService;
+
+    private final String host;
+
+    private ScanState state = ScanState.IDLE;
+
+    // 下次到期時間（System.nanoTime），僅在排程佇列中有意義
+    private long nextDueNanos;
+
+    // 目前的掃描間隔（毫秒），依變化頻率自動調整
+    private long intervalMillis;
+
+    // 本次掃描預定開始的時間（System.nanoTime），用於計算排程延遲
+    private long requestedAtNanos;
+
+    // 掃描編號，讓逾時檢查只作用在當次掃描
+    private long scanId;
+
+    // 本次掃描已超過期限，期間收到的要求不再排入
+    private boolean overrun;
+    private int overlappingRequests;
+
+    // 已自排程器移除；掃描中被移除時，服務在掃描結束後才關閉
+    private boolean removed;
+    private boolean closeAfterScan;
+
+    // 移除後服務關閉（快照已寫入）時的回呼
+    private volatile Runnable closeListener;
+
+    public WatchTarget(MonitorDataObject dto, FileWatchService watchService) {
+        this.watchService = watchService;
+        this.host = hostOf(dto.getDirectoryMonitorPath());
+        this.intervalMillis = clampInterval(dto.getMonitorIntervalSeconds() * 1000L);
+    }
+
+    /**
+     * 目前使用中的設定（設定變更後即為新設定）；主機以註冊時的路徑為準
+     */
+    public MonitorDataObject getMonitorDataObject() {
+        return watchService.getMonitorDataObject();
+    }
+
+    public FileWatchService getWatchService() {
+        return watchService;
+    }
+
+    /**
+     * 目標所在的主機，本機路徑為 "local"
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 取得 UNC 路徑（\\host\share 或 //host/share）的主機名稱，其餘路徑視為本機
+     */
+    public static String hostOf(String path) {
+        if (path.startsWith("\\\\") || path.startsWith("//")) {
+            String rest = path.substring(2);
+            int end = 0;
+            while (end < rest.length() && rest.charAt(end) != '\\' && rest.charAt(end) != '/') {
+                end++;
+            }
+            if (end > 0) {
+                return rest.substring(0, end).toLowerCase(Locale.ROOT);
+            }
+        }
+        return "local";
+    }
+
+    /**
+     * 要求掃描，回傳 true 表示呼叫者需將此目標排入執行
+     *
+     * @param dueNanos when the scan should have started, in {@link System#nanoTime()} terms
+     */
+    synchronized boolean requestScan(long dueNanos) {
+        switch (state) {
+            case IDLE:
+                state = ScanState.QUEUED;
+                requestedAtNanos = dueNanos;
+                return true;
+            case RUNNING:
+                if (overrun) {
+                    // 逾時中的掃描結束後不立即補掃，避免積壓的要求接連執行
+                    overlappingRequests++;
+                    return false;
+                }
+                state = ScanState.RUNNING_REQUEUE;
+                requestedAtNanos = dueNanos;
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 掃描開始
+     *
+     * @return the scheduler lag, how long after its due time the scan started, in nanoseconds
+     */
+    synchronized long scanStarted(long nowNanos) {
+        state = ScanState.RUNNING;
+        scanId++;
+        overrun = false;
+        overlappingRequests = 0;
+        return nowNanos - requestedAtNanos;
+    }
+
+    /**
+     * 目前（或最近一次）掃描的編號
+     */
+    synchronized long getScanId() {
+        return scanId;
+    }
+
+    /**
+     * 標記掃描已超過期限，已排定的補掃改為略過
+     *
+     * @return true if the given scan is still running and was not marked before
+     */
+    synchronized boolean markOverrun(long id) {
+        if (id != scanId || overrun || (state != ScanState.RUNNING && state != ScanState.RUNNING_REQUEUE)) {
+            return false;
+        }
+        overrun = true;
+        if (state == ScanState.RUNNING_REQUEUE) {
+            state = ScanState.RUNNING;
+            overlappingRequests++;
+        }
+        return true;
+    }
+
+    /**
+     * 本次掃描是否超過期限
+     */
+    synchronized boolean isOverrun() {
+        return overrun;
+    }
+
+    /**
+     * 逾時期間略過的掃描要求數
+     */
+    synchronized int getOverlappingRequests() {
+        return overlappingRequests;
+    }
+
+    /**
+     * 設定移除後服務關閉時的回呼，在關閉服務的執行緒上執行
+     */
+    void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    Runnable getCloseListener() {
+        return closeListener;
+    }
+
+    /**
+     * 標記已移除
+     *
+     * @return true if no scan is running and the service can be closed now, false if the running scan closes it
+     */
+    synchronized boolean markRemoved() {
+        boolean running = state == ScanState.RUNNING || state == ScanState.RUNNING_REQUEUE;
+        removed = true;
+        closeAfterScan = running;
+        return !running;
+    }
+
+    /**
+     * 掃描結束時是否需要關閉服務（掃描期間被移除），只回傳一次 true
+     */
+    synchronized boolean takeCloseAfterScan() {
+        boolean close = closeAfterScan;
+        closeAfterScan = false;
+        return close;
+    }
+
+    /**
+     * 掃描結束，回傳 true 表示執行期間有新的要求，需再排入一次
+     */
+    synchronized boolean scanFinished() {
+        if (removed) {
+            state = ScanState.IDLE;
+            return false;
+        }
+        if (state == ScanState.RUNNING_REQUEUE) {
+            state = ScanState.QUEUED;
+            return true;
+        }
+        state = ScanState.IDLE;
+        return false;
+    }
+
+    /**
+     * 依本次掃描結果調整間隔：有變化時縮到最短，沒有變化時加倍直到上限
+     *
+     * @param changesSeen whether the last scan reported any change
+     * @return the interval until the next scan in milliseconds
+     */
+    synchronized long updateInterval(boolean changesSeen) {
+        intervalMillis = clampInterval(changesSeen ? 0 : intervalMillis * 2);
+        return intervalMillis;
+    }
+
+    /**
+     * 目前的掃描間隔（毫秒）
+     */
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    private long clampInterval(long millis) {
+        MonitorDataObject dto = getMonitorDataObject();
+        long min = dto.getMinIntervalSeconds() * 1000L;
+        long max = Math.max(min, dto.getMaxIntervalSeconds() * 1000L);
+        return Math.min(max, Math.max(min, millis));
+    }
+
+    long getNextDueNanos() {
+        return nextDueNanos;
+    }
+
+    void setNextDueNanos(long nextDueNanos) {
+        this.nextDueNanos = nextDueNanos;
+    }
+}
@@ -0,0 +1,84 @@
+package com.file.logging;
+
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
+import com.file.service.ChangeLogListener;
+import com.file.service.FileWatchService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the asynchronous rolling JSON log
+ */
+public class AsyncLogHandlerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecordsAreWrittenAsJsonLinesAndRolledBySize() throws Exception {
+        RollingLogWriter writer = new RollingLogWriter(tempDir, "monitor", 1024, 0);
+        AsyncLogHandler handler = new AsyncLogHandler(writer, new JsonLineFormatter(), 1000);
+        for (int i = 0; i < 100; i++) {
+            LogRecord record = new LogRecord(Level.INFO, "第 " + i + " 筆 \"測試\"");
+            record.setLoggerName("com.file.test");
+            handler.publish(record);
+        }
+        handler.close();
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(tempDir)) {
+            files = stream.sorted().collect(Collectors.toList());
+        }
+        assertTrue(files.size() > 1, "Log should roll over once the size limit is reached");
+        int lines = 0;
+        for (Path file : files) {
+            assertTrue(Files.size(file) <= 1024, "No file should exceed the size limit");
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                assertTrue(line.startsWith("{\"time\":") && line.endsWith("}"));
+                assertTrue(line.contains("\\\"測試\\\""), "Quotes should be escaped");
+                lines++;
+            }
+        }
+        assertEquals(100, lines);
+        assertEquals(0, handler.getDroppedCount());
+        System.out.println("[DEBUG_LOG] Log files: " + files);
+    }
+
+    @Test
+    void testChangeEventIsLoggedAsOneRecord() throws Exception {
+        RollingLogWriter writer = new RollingLogWriter(tempDir, "monitor", 1024 * 1024, 0);
+        AsyncLogHandler handler = new AsyncLogHandler(writer, new JsonLineFormatter());
+        Logger logger = Logger.getLogger(FileWatchService.class.getName());
+        logger.addHandler(handler);
+        try {
+            FileSnapshot previous = new FileSnapshot(10, 1_000L, 1_000L, null, false);
+            FileSnapshot current = new FileSnapshot(20, 2_000L, 1_000L, null, false);
+            new ChangeLogListener().onChange(FileChangeEvent.modified(tempDir.resolve("報表.xlsx"), previous, current,
+                    "變更內容: 工作表 sheet1", System.currentTimeMillis()));
+        } finally {
+            logger.removeHandler(handler);
+            handler.close();
+        }
+
+        List<String> lines = Files.readAllLines(writer.getCurrentFile(), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size(), "One event should produce one record");
+        String line = lines.get(0);
+        assertTrue(line.contains("\"event\":{\"type\":\"MODIFIED\""));
+        assertTrue(line.contains("\"size\":20"));
+        assertTrue(line.contains("\"detail\":\"變更內容: 工作表 sheet1\""));
+        System.out.println("[DEBUG_LOG] " + line);
+    }
+}
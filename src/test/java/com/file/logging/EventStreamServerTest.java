@@ -0,0 +1,128 @@
+package com.file.logging;
+
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
+import com.file.service.ChangeJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for EventStreamServer
+ */
+public class EventStreamServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    @Test
+    void testClientsReceiveLiveEventsAndResumeFromJournal() throws Exception {
+        ChangeJournal journal = new ChangeJournal(tempDir.resolve("journal"), ChangeJournal.DEFAULT_SEGMENT_BYTES, 0, false);
+        // 記憶體只保留 2 筆，較舊的事件須由變更紀錄補送
+        EventStreamServer server = new EventStreamServer(LOOPBACK, journal, 16, 2, 4);
+        try {
+            for (int i = 1; i <= 5; i++) {
+                journal.append(event("報表" + i + ".xlsx"));
+            }
+
+            try (Socket live = connect(server, "/events", null);
+                 Socket resumed = connect(server, "/events", "2")) {
+                BufferedReader resumedReader = reader(resumed);
+                assertEquals(Arrays.asList(3L, 4L, 5L), readIds(resumedReader, 3), "Missed events should be replayed in order");
+
+                waitForClients(server, 2);
+                journal.append(event("報表6.xlsx"));
+                assertEquals(Arrays.asList(6L), readIds(reader(live), 1), "Live client should only get new events");
+                assertEquals(Arrays.asList(6L), readIds(resumedReader, 1));
+            }
+
+            try (Socket all = connect(server, "/events?from=1", null)) {
+                assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), readIds(reader(all), 6));
+            }
+        } finally {
+            server.close();
+            journal.close();
+        }
+    }
+
+    @Test
+    void testSlowClientIsDisconnected() throws Exception {
+        EventStreamServer server = new EventStreamServer(LOOPBACK, null, 4, 0, 4);
+        try (Socket slow = connect(server, "/events", null)) {
+            waitForClients(server, 1);
+
+            // 客戶端不讀取，送出緩衝填滿後佇列隨即溢出
+            StringBuilder longName = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                longName.append("差異分析訪談時間表");
+            }
+            for (int i = 0; i < 20_000 && server.getClientCount() > 0; i++) {
+                server.onChange(event(longName + "-" + i + ".xlsx"));
+            }
+            System.out.println("[DEBUG_LOG] Clients after flood: " + server.getClientCount());
+            assertEquals(0, server.getClientCount(), "Client that stops reading should be disconnected");
+
+            // 其他客戶端不受影響
+            try (Socket next = connect(server, "/events", null)) {
+                waitForClients(server, 1);
+                server.onChange(event("報表.xlsx"));
+                assertEquals(1, readIds(reader(next), 1).size());
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    private static FileChangeEvent event(String name) {
+        return FileChangeEvent.created(Paths.get("/share", name), new FileSnapshot(10, 1000, 1000, null, false), 2000);
+    }
+
+    private static Socket connect(EventStreamServer server, String target, String lastEventId) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(10_000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + target + " HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n"
+                + (lastEventId != null ? "Last-Event-ID: " + lastEventId + "\r\n" : "") + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return socket;
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static List<Long> readIds(BufferedReader reader, int count) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        String line;
+        while (ids.size() < count && (line = reader.readLine()) != null) {
+            if (line.startsWith("id: ")) {
+                ids.add(Long.parseLong(line.substring(4)));
+            }
+        }
+        return ids;
+    }
+
+    private static void waitForClients(EventStreamServer server, int count) throws InterruptedException {
+        for (int i = 0; i < 200 && server.getClientCount() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, server.getClientCount());
+    }
+}
@@ -0,0 +1,48 @@
+package com.file.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for AttributeFetcher
+ */
+public class AttributeFetcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testResultsKeepListingOrder() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Path file = tempDir.resolve("差異分析訪談時間表_" + i + ".xlsx");
+            // 每個檔案大小不同，用來確認結果對應到正確的位置
+            Files.write(file, new byte[i]);
+            files.add(file);
+        }
+        files.add(100, tempDir.resolve("missing.xlsx"));
+
+        try (AttributeFetcher fetcher = new AttributeFetcher(8, "local")) {
+            BasicFileAttributes[] attributes = fetcher.fetch(files);
+            assertEquals(files.size(), attributes.length);
+            assertNull(attributes[100], "Missing file should have no attributes");
+            for (int i = 0; i < files.size(); i++) {
+                if (i == 100) {
+                    continue;
+                }
+                int expectedSize = i < 100 ? i : i - 1;
+                assertEquals(expectedSize, attributes[i].size(), "Attributes should stay in listing order");
+            }
+            System.out.println("[DEBUG_LOG] Virtual threads: " + fetcher.isUsingVirtualThreads());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.file.service;
+
+import com.file.object.ChangeType;
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ChangeEventBus
+ */
+public class ChangeEventBusTest {
+
+    private final ChangeEventBus eventBus = new ChangeEventBus();
+
+    @AfterEach
+    void tearDown() {
+        eventBus.close();
+    }
+
+    @Test
+    void testSlowListenerDropsOldestWithoutBlockingPublisher() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<FileChangeEvent> received = new CopyOnWriteArrayList<>();
+        ChangeEventBus.Subscription subscription = eventBus.subscribe(event -> {
+            awaitQuietly(release);
+            received.add(event);
+        }, OverflowPolicy.DROP_OLDEST, 4);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            eventBus.publish(created("share/file_" + i + ".xlsx"));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 1000, "Publisher should not wait for the listener");
+        assertTrue(subscription.getQueueDepth() <= subscription.getCapacity());
+        assertTrue(subscription.getDroppedCount() >= 100 - 4 - 1, "Overflowing events should be counted");
+
+        release.countDown();
+        subscription.close();
+        assertTrue(subscription.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(100, received.size() + subscription.getDroppedCount(), "Every event is delivered or counted");
+        assertEquals(Paths.get("share/file_99.xlsx"), received.get(received.size() - 1).getPath(), "Newest event is kept");
+        System.out.println("[DEBUG_LOG] Delivered " + received.size() + ", dropped " + subscription.getDroppedCount());
+    }
+
+    @Test
+    void testMergePerPathKeepsOneEventPerFile() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<FileChangeEvent> received = new CopyOnWriteArrayList<>();
+        ChangeEventBus.Subscription subscription = eventBus.subscribe(event -> {
+            awaitQuietly(release);
+            received.add(event);
+        }, OverflowPolicy.MERGE_PER_PATH, 16);
+
+        // 第一筆事件佔住監聽者，其餘在佇列中合併
+        eventBus.publish(created("share/busy.xlsx"));
+        Thread.sleep(100);
+
+        Path a = Paths.get("share/a.xlsx");
+        eventBus.publish(created("share/a.xlsx"));
+        eventBus.publish(FileChangeEvent.modified(a, snapshot(1), snapshot(2), null, 0));
+        eventBus.publish(FileChangeEvent.modified(a, snapshot(2), snapshot(3), null, 0));
+        eventBus.publish(created("share/b.xlsx"));
+        eventBus.publish(FileChangeEvent.deleted(Paths.get("share/b.xlsx"), snapshot(1), 0));
+        assertEquals(3, subscription.getMergedCount());
+
+        release.countDown();
+        subscription.close();
+        assertTrue(subscription.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(2, received.size(), "Created-then-deleted file should cancel out");
+        assertEquals(ChangeType.CREATED, received.get(1).getType());
+        assertEquals(3, received.get(1).getSnapshot().getSize(), "Merged event carries the latest attributes");
+        System.out.println("[DEBUG_LOG] Merged events: " + received);
+    }
+
+    private static FileChangeEvent created(String path) {
+        return FileChangeEvent.created(Paths.get(path), snapshot(1), 0);
+    }
+
+    private static FileSnapshot snapshot(long size) {
+        return new FileSnapshot(size, size * 1000, 0, null, false);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
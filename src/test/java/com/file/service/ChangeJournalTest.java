@@ -0,0 +1,80 @@
+package com.file.service;
+
+import com.file.object.ChangeType;
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ChangeJournal
+ */
+public class ChangeJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testQueryAndReplayAcrossSegments() throws Exception {
+        Path share = tempDir.resolve("share");
+        long start = System.currentTimeMillis() - 10_000;
+        ChangeJournal journal = new ChangeJournal(tempDir.resolve("journal"), 16 * 1024, 0, false);
+        for (int i = 0; i < 2000; i++) {
+            Path dir = share.resolve(i % 2 == 0 ? "a" : "b");
+            FileSnapshot snapshot = new FileSnapshot(i, start + i, start, null, false);
+            journal.append(FileChangeEvent.created(dir.resolve("file" + i + ".xlsx"), snapshot, start + i));
+        }
+        journal.close();
+
+        // 重新開啟後序號接續，查詢結果與寫入一致
+        journal = new ChangeJournal(tempDir.resolve("journal"), 16 * 1024, 0, false);
+        assertEquals(2001, journal.getNextSequence());
+
+        List<ChangeJournal.Entry> range = journal.query(share.resolve("a"), start + 100, start + 199);
+        assertEquals(50, range.size(), "Only events under the path and inside the range should match");
+        assertEquals(share.resolve("a").resolve("file100.xlsx"), range.get(0).getEvent().getPath());
+        assertEquals(101, range.get(0).getSequence());
+
+        List<ChangeJournal.Entry> replayed = journal.replay(1500, 100);
+        assertEquals(100, replayed.size());
+        assertEquals(1500, replayed.get(0).getSequence());
+        assertEquals(1599, replayed.get(99).getSequence());
+        assertEquals(ChangeType.CREATED, replayed.get(0).getEvent().getType());
+        assertEquals(1499, replayed.get(0).getEvent().getSnapshot().getSize());
+
+        journal.append(FileChangeEvent.deleted(share.resolve("a").resolve("file0.xlsx"), null, start + 5000));
+        assertEquals(1, journal.replay(2001, 10).size(), "Appended events should be visible without reopening");
+        journal.close();
+        System.out.println("[DEBUG_LOG] Queried " + range.size() + " events, replayed " + replayed.size());
+    }
+
+    @Test
+    void testCompactionMergesRepeatedModifications() throws Exception {
+        Path file = tempDir.resolve("report.xlsx");
+        long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+        ChangeJournal journal = new ChangeJournal(tempDir.resolve("journal"), 1024, 0, false);
+        FileSnapshot previous = new FileSnapshot(1, old, old, null, false);
+        for (int i = 1; i <= 20; i++) {
+            FileSnapshot current = new FileSnapshot(i + 1, old + i, old, null, false);
+            journal.append(FileChangeEvent.modified(file, previous, current, null, old + i));
+            previous = current;
+        }
+        // 新的事件讓舊的區段封存
+        journal.append(FileChangeEvent.created(tempDir.resolve("new.xlsx"), null, System.currentTimeMillis()));
+        journal.compact();
+
+        List<ChangeJournal.Entry> entries = journal.query(file, 0, Long.MAX_VALUE);
+        assertTrue(entries.size() < 20, "Repeated modifications should be merged");
+        assertEquals(20, entries.get(entries.size() - 1).getSequence(), "The last modification should be kept");
+        assertEquals(1, entries.get(0).getEvent().getPreviousSnapshot().getSize(),
+                "The merged event should keep the state before the first modification");
+        journal.close();
+        System.out.println("[DEBUG_LOG] Compacted entries: " + entries.size());
+    }
+}
@@ -0,0 +1,117 @@
+package com.file.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for DirectoryTreeScanner
+ */
+public class DirectoryTreeScannerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path projectA;
+    private Path projectB;
+    private RecordingListener listener;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        projectA = Files.createDirectories(tempDir.resolve("projectA"));
+        projectB = Files.createDirectories(tempDir.resolve("projectB").resolve("nested"));
+        Files.createFile(projectA.resolve("差異分析訪談時間表_a.xlsx"));
+        Files.createFile(projectB.resolve("差異分析訪談時間表_b.xlsx"));
+        listener = new RecordingListener();
+    }
+
+    @Test
+    void testUnchangedSubtreesAreNotListed() throws IOException {
+        DirectoryTreeScanner scanner = new DirectoryTreeScanner(100);
+        scanner.scan(tempDir, true, true, listener);
+        assertEquals(4, scanner.getDirectoryCount(), "Root and three sub directories should be tracked");
+
+        listener.listed.clear();
+        scanner.scan(tempDir, true, false, listener);
+        assertEquals(List.of(tempDir), listener.listed, "Only the root should be listed when nothing changed");
+        System.out.println("[DEBUG_LOG] Listed directories on idle scan: " + listener.listed);
+    }
+
+    @Test
+    void testChangedDirectoryIsListed() throws IOException {
+        DirectoryTreeScanner scanner = new DirectoryTreeScanner(100);
+        scanner.scan(tempDir, true, true, listener);
+
+        Files.createFile(projectA.resolve("差異分析訪談時間表_new.xlsx"));
+        // 部分檔案系統的時間精度較低，手動推進目錄時間
+        Files.setLastModifiedTime(projectA, FileTime.fromMillis(Files.getLastModifiedTime(projectA).toMillis() + 5000));
+
+        listener.listed.clear();
+        scanner.scan(tempDir, true, false, listener);
+        assertTrue(listener.listed.contains(projectA), "Changed directory should be listed");
+        assertFalse(listener.listed.contains(projectB), "Unchanged directory should not be listed");
+    }
+
+    @Test
+    void testRemovedDirectoryIsReported() throws IOException {
+        DirectoryTreeScanner scanner = new DirectoryTreeScanner(100);
+        scanner.scan(tempDir, true, true, listener);
+
+        Files.delete(projectA.resolve("差異分析訪談時間表_a.xlsx"));
+        Files.delete(projectA);
+
+        scanner.scan(tempDir, true, false, listener);
+        assertEquals(List.of(projectA), listener.removed, "Deleted directory should be reported");
+        assertFalse(scanner.isTrackedDirectory(projectA), "Deleted directory should no longer be tracked");
+    }
+
+    @Test
+    void testSubDirectoryWithCandidateNameIsScanned() throws IOException {
+        Path matching = Files.createDirectories(tempDir.resolve("報表.xlsx"));
+        DirectoryTreeScanner scanner = new DirectoryTreeScanner(100);
+        scanner.scan(tempDir, true, true, listener);
+
+        System.out.println("[DEBUG_LOG] Listed directories: " + listener.listed);
+        assertTrue(listener.listed.contains(matching), "Directory with a matching name should be listed");
+        assertTrue(scanner.isTrackedDirectory(matching));
+    }
+
+    private static class RecordingListener implements DirectoryTreeScanner.DirectoryListener {
+
+        final List<Path> listed = new ArrayList<>();
+        final List<Path> removed = new ArrayList<>();
+
+        @Override
+        public boolean isCandidateFile(Path entry) {
+            return entry.getFileName().toString().endsWith(".xlsx");
+        }
+
+        @Override
+        public void directoryListed(Path directory, List<Path> files, List<Path> directories) {
+            listed.add(directory);
+            for (Path file : files) {
+                if (Files.isDirectory(file)) {
+                    directories.add(file);
+                }
+            }
+        }
+
+        @Override
+        public void directoryDiscovered(Path directory) {
+        }
+
+        @Override
+        public void directoryRemoved(Path directory) {
+            removed.add(directory);
+        }
+    }
+}
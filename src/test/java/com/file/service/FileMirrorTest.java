@@ -0,0 +1,121 @@
+package com.file.service;
+
+import com.file.object.FileChangeEvent;
+import com.file.object.FileSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for FileMirror
+ */
+public class FileMirrorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testVersionsAreKeptAndMovesCopyFromCache() throws Exception {
+        Path share = Files.createDirectories(tempDir.resolve("share"));
+        Path file = share.resolve("差異分析訪談時間表.xlsx");
+        FileMirror mirror = new FileMirror(tempDir.resolve("cache"), 2, 1024 * 1024, 1, 0);
+        try {
+            for (int i = 1; i <= 3; i++) {
+                write(file, "版本" + i, i * 60_000L);
+                mirror.onChange(FileChangeEvent.modified(file, null, snapshot(file), null, System.currentTimeMillis()));
+                waitForLatest(mirror, file, "版本" + i);
+            }
+            waitForVersions(mirror, file, 2);
+            List<Path> versions = mirror.getVersions(file);
+            System.out.println("[DEBUG_LOG] Mirrored versions: " + versions);
+            assertEquals(2, versions.size(), "Only the newest versions should be kept");
+            assertEquals("版本3", new String(Files.readAllBytes(mirror.getLatest(file)), StandardCharsets.UTF_8));
+            assertTrue(versions.get(0).getFileName().toString().endsWith("_差異分析訪談時間表.xlsx"));
+
+            long copied = mirror.getMirroredBytes();
+            Path moved = share.resolve("archive.xlsx");
+            Files.move(file, moved);
+            mirror.onChange(FileChangeEvent.moved(file, moved, snapshot(moved), System.currentTimeMillis()));
+            waitForVersions(mirror, moved, 1);
+            assertEquals(copied, mirror.getMirroredBytes(), "Moved content should be copied from the cache, not the share");
+        } finally {
+            mirror.close();
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedVersionsAreEvicted() throws Exception {
+        Path share = Files.createDirectories(tempDir.resolve("share"));
+        Path cache = tempDir.resolve("cache");
+        char[] content = new char[100];
+        Arrays.fill(content, 'x');
+        FileMirror mirror = new FileMirror(cache, 5, 250, 1, 0);
+        try {
+            Path[] files = new Path[3];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = share.resolve("file" + i + ".xlsx");
+                write(files[i], new String(content), 60_000L);
+                if (i == 2) {
+                    // 讀取過的版本保留，淘汰最久未使用的 file1
+                    assertNotNull(mirror.getLatest(files[0]));
+                }
+                mirror.onChange(FileChangeEvent.created(files[i], snapshot(files[i]), System.currentTimeMillis()));
+                waitForVersions(mirror, files[i], 1);
+            }
+            assertEquals(200, mirror.getCachedBytes());
+            assertNotNull(mirror.getLatest(files[0]));
+            assertNull(mirror.getLatest(files[1]), "Least recently used version should be evicted");
+        } finally {
+            mirror.close();
+        }
+
+        // 重新開啟時載入既有版本
+        FileMirror reopened = new FileMirror(cache, 5, 250, 1, 0);
+        assertEquals(200, reopened.getCachedBytes());
+        reopened.close();
+    }
+
+    @Test
+    void testBandwidthLimiterSpacesReservations() {
+        BandwidthLimiter limiter = new BandwidthLimiter(1000);
+        assertEquals(0, limiter.reserve(500, 0), "First reservation should not wait");
+        assertEquals(500_000_000L, limiter.reserve(500, 0), "Second reservation should wait for the first");
+        assertEquals(0, limiter.reserve(500, 5_000_000_000L), "Idle time should not accumulate credit");
+        assertEquals(500_000_000L, limiter.reserve(500, 5_000_000_000L));
+    }
+
+    private static void write(Path file, String content, long lastModified) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    }
+
+    private static FileSnapshot snapshot(Path file) throws Exception {
+        return new FileSnapshot(Files.size(file), Files.getLastModifiedTime(file).toMillis(), 0, null, false);
+    }
+
+    private static void waitForLatest(FileMirror mirror, Path file, String content) throws Exception {
+        for (int i = 0; i < 500; i++) {
+            Path latest = mirror.getLatest(file);
+            if (latest != null && content.equals(new String(Files.readAllBytes(latest), StandardCharsets.UTF_8))) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Version not mirrored: " + content);
+    }
+
+    private static void waitForVersions(FileMirror mirror, Path file, int count) throws Exception {
+        for (int i = 0; i < 500 && mirror.getVersions(file).size() != count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, mirror.getVersions(file).size(), "Versions of " + file);
+    }
+}
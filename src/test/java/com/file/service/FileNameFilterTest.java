@@ -0,0 +1,97 @@
+package com.file.service;
+
+import com.file.object.MonitorDataObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for FileNameFilter
+ */
+public class FileNameFilterTest {
+
+    @Test
+    void testDefaultRulesMatchLegacyFilter() {
+        MonitorDataObject dto = new MonitorDataObject("share", "*.xlsx", "差異分析訪談時間表");
+        FileNameFilter filter = FileNameFilter.compile(dto);
+
+        assertTrue(filter.matches("差異分析訪談時間表_v2.xlsx"));
+        assertTrue(filter.matches("差異分析訪談時間表.XLSX"), "Extensions are compared without case");
+        assertFalse(filter.matches("差異分析訪談時間表_v2.docx"));
+        assertFalse(filter.matches("其他文件.xlsx"));
+        assertFalse(filter.matches("~$差異分析訪談時間表_v2.xlsx"), "Office lock files are excluded");
+        assertTrue(filter.isExcluded("~$報表.xlsx"));
+        assertTrue(filter.isExcluded("Report.TMP"), "Exclude extensions are compared without case");
+        assertTrue(filter.isCompiledFrom(dto));
+
+        dto.setFileExtension("*.xlsm");
+        assertFalse(filter.isCompiledFrom(dto), "Changed settings require a new filter");
+    }
+
+    @Test
+    void testMultipleRulesAndPatterns() {
+        MonitorDataObject dto = new MonitorDataObject("share", "*.xlsx;*.xlsm;*.csv", "報表;差異分析*");
+        dto.setIncludePatterns(Arrays.asList("*_20[0-9][0-9]*", "re:.*_final\\..*"));
+        dto.setExcludePatterns(Arrays.asList("~$*", "*.tmp", "*{備份,backup}*"));
+        FileNameFilter filter = FileNameFilter.compile(dto);
+
+        assertTrue(filter.matches("報表_2024.xlsx"));
+        assertTrue(filter.matches("差異分析_final.csv"));
+        assertFalse(filter.matches("報表_draft.xlsx"), "Include patterns have to match as well");
+        assertFalse(filter.matches("月報表_2024.xlsx"), "Name has to start with a prefix");
+        assertFalse(filter.matches("報表_2024_備份.xlsx"));
+        assertFalse(filter.matches("報表_2024_BACKUP.xlsx"), "Globs are compared without case like extensions");
+        assertFalse(filter.matches("報表_2024.pdf"));
+
+        dto.setIncludePatterns(Collections.singletonList("re:[invalid"));
+        assertThrows(IllegalArgumentException.class, () -> FileNameFilter.compile(dto));
+    }
+
+    @Test
+    void testMultiDotExtensions() {
+        MonitorDataObject dto = new MonitorDataObject("share", "*.tar.gz;*.xlsx", "*");
+        FileNameFilter filter = FileNameFilter.compile(dto);
+
+        assertTrue(filter.matches("備份_2024.tar.gz"));
+        assertTrue(filter.matches("備份_2024.TAR.GZ"), "Extensions are compared without case");
+        assertTrue(filter.matches("報表.xlsx"));
+        assertFalse(filter.matches("備份_2024.gz"), "Only the last part of the extension is present");
+        assertFalse(filter.matches("備份_2024tar.gz"));
+        assertFalse(filter.matches("備份_2024"));
+
+        // 最後一段相同的副檔名共用雜湊位置
+        dto.setFileExtension("*.tar.gz;*.gz");
+        filter = FileNameFilter.compile(dto);
+        assertTrue(filter.matches("備份_2024.gz"));
+        assertTrue(filter.matches("備份_2024.tar.gz"));
+    }
+
+    @Test
+    void testNarrowingIsDetectedFromRules() {
+        MonitorDataObject current = new MonitorDataObject("share", "*.xlsx;*.xlsm", "報表");
+
+        MonitorDataObject fewerExtensions = new MonitorDataObject(current);
+        fewerExtensions.setFileExtension("*.xlsx");
+        assertTrue(FileNameFilter.isNarrowing(current, fewerExtensions));
+
+        MonitorDataObject longerPrefix = new MonitorDataObject(current);
+        longerPrefix.setMonitorFileName("報表2024");
+        assertTrue(FileNameFilter.isNarrowing(current, longerPrefix));
+
+        MonitorDataObject moreExcludes = new MonitorDataObject(current);
+        moreExcludes.setExcludePatterns(Arrays.asList("~$*", "*.tmp", "*備份*"));
+        moreExcludes.setIncludePatterns(Collections.singletonList("*_final*"));
+        assertTrue(FileNameFilter.isNarrowing(current, moreExcludes));
+
+        MonitorDataObject otherExtension = new MonitorDataObject(current);
+        otherExtension.setFileExtension("*.csv");
+        assertFalse(FileNameFilter.isNarrowing(current, otherExtension));
+
+        MonitorDataObject fewerExcludes = new MonitorDataObject(current);
+        fewerExcludes.setExcludePatterns(Collections.singletonList("~$*"));
+        assertFalse(FileNameFilter.isNarrowing(current, fewerExcludes));
+    }
+}
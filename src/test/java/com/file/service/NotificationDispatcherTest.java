@@ -0,0 +1,116 @@
+package com.file.service;
+
+import com.file.object.ChangeType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for NotificationDispatcher
+ */
+public class NotificationDispatcherTest {
+
+    private NotificationDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.close();
+    }
+
+    @Test
+    void testBurstIsShownAsOneSummary() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(1);
+        dispatcher = new NotificationDispatcher(sink, 200, 0);
+
+        Path folder = Paths.get("share", "project");
+        for (int i = 0; i < 300; i++) {
+            dispatcher.publish(ChangeType.CREATED, folder.resolve("差異分析訪談時間表_" + i + ".xlsx"), "檔案監控 - 新檔案", "msg");
+        }
+
+        assertTrue(sink.dialogs.await(5, TimeUnit.SECONDS), "Summary dialog should be shown");
+        Thread.sleep(300);
+        assertEquals(1, sink.titles.size(), "300 events should produce a single dialog");
+        assertTrue(sink.titles.get(0).contains("300"), "Summary should account for every event");
+        System.out.println("[DEBUG_LOG] Summary title: " + sink.titles.get(0));
+    }
+
+    @Test
+    void testSummaryListsLimitedNumberOfFolders() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(1);
+        dispatcher = new NotificationDispatcher(sink, 200, 0);
+
+        for (int i = 0; i < 25; i++) {
+            Path folder = Paths.get("share", "folder" + i);
+            dispatcher.publish(ChangeType.MODIFIED, folder.resolve("a.xlsx"), "檔案監控 - 檔案已修改", "a" + i);
+            dispatcher.publish(ChangeType.MODIFIED, folder.resolve("b.xlsx"), "檔案監控 - 檔案已修改", "b" + i);
+        }
+
+        assertTrue(sink.dialogs.await(5, TimeUnit.SECONDS), "Summary dialog should be shown");
+        String message = sink.messages.get(0);
+        System.out.println("[DEBUG_LOG] Summary message: " + message);
+        assertTrue(message.contains("folder9"));
+        assertFalse(message.contains("folder10"), "Folders beyond the limit should not be listed");
+        assertTrue(message.endsWith("...另有 15 個資料夾，共 30 個檔案變更"));
+    }
+
+    @Test
+    void testEventsDuringOpenDialogAreShownAfterClose() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(2);
+        sink.keepOpen = true;
+        dispatcher = new NotificationDispatcher(sink, 50, 0);
+
+        dispatcher.publish(ChangeType.MODIFIED, Paths.get("share", "a.xlsx"), "檔案監控 - 檔案已修改", "a");
+        Thread.sleep(300);
+        dispatcher.publish(ChangeType.DELETED, Paths.get("share", "b.xlsx"), "檔案監控 - 檔案已刪除", "b");
+        dispatcher.publish(ChangeType.DELETED, Paths.get("share", "c.xlsx"), "檔案監控 - 檔案已刪除", "c");
+        Thread.sleep(300);
+        assertEquals(1, sink.titles.size(), "No second dialog while the first one is open");
+
+        sink.closeDialog();
+        assertTrue(sink.dialogs.await(5, TimeUnit.SECONDS), "Pending events should be shown after close");
+        assertTrue(sink.titles.get(1).contains("2"), "Second dialog should summarize both deletions");
+        assertEquals(3, dispatcher.getPublishedCount());
+    }
+
+    private static class RecordingSink implements NotificationDispatcher.NotificationSink {
+
+        final List<String> titles = new ArrayList<>();
+        final List<String> messages = new ArrayList<>();
+        final CountDownLatch dialogs;
+        volatile boolean keepOpen;
+        private Runnable pendingClose;
+
+        RecordingSink(int expectedDialogs) {
+            dialogs = new CountDownLatch(expectedDialogs);
+        }
+
+        @Override
+        public synchronized void showDialog(String title, String message, Runnable onClosed) {
+            titles.add(title);
+            messages.add(message);
+            dialogs.countDown();
+            if (keepOpen) {
+                pendingClose = onClosed;
+            } else {
+                onClosed.run();
+            }
+        }
+
+        synchronized void closeDialog() {
+            keepOpen = false;
+            pendingClose.run();
+        }
+
+        @Override
+        public void showBalloon(String title, String message) {
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.file.service;
+
+import com.file.object.FileSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Test class for SnapshotStore
+ */
+public class SnapshotStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testIncrementalChangesSurviveReload() throws IOException {
+        Path file = tempDir.resolve("snapshot.dat");
+        Map<String, FileSnapshot> live = new HashMap<>();
+        live.put("a.xlsx", new FileSnapshot(10, 1000, 900, null, false));
+        live.put("b.xlsx", new FileSnapshot(20, 2000, 1900, null, false));
+
+        SnapshotStore store = new SnapshotStore(file, "fingerprint");
+        store.writeFull(live);
+
+        // 模擬一次掃描的變動
+        FileSnapshot modified = new FileSnapshot(30, 3000, 900, null, true);
+        live.put("a.xlsx", modified);
+        store.recordPut("a.xlsx", modified);
+        live.remove("b.xlsx");
+        store.recordRemove("b.xlsx");
+        store.flush(live);
+        store.close();
+
+        Map<String, FileSnapshot> loaded = new SnapshotStore(file, "fingerprint").load();
+        assertEquals(live, loaded, "Reloaded snapshot should match the live snapshot");
+        System.out.println("[DEBUG_LOG] Reloaded snapshot: " + loaded);
+    }
+
+    @Test
+    void testFileKeySurvivesReload() throws IOException {
+        Path tracked = Files.createFile(tempDir.resolve("差異分析訪談時間表.xlsx"));
+        FileSnapshot snapshot = FileSnapshot.of(Files.readAttributes(tracked, BasicFileAttributes.class));
+        assumeTrue(snapshot.getFileKey() != null, "File system does not provide file keys");
+
+        Path file = tempDir.resolve("snapshot.dat");
+        Map<String, FileSnapshot> live = new HashMap<>();
+        live.put(tracked.toString(), snapshot);
+        SnapshotStore store = new SnapshotStore(file, "fingerprint");
+        store.writeFull(live);
+        store.close();
+
+        FileSnapshot loaded = new SnapshotStore(file, "fingerprint").load().get(tracked.toString());
+        System.out.println("[DEBUG_LOG] File key " + snapshot.getFileKey() + " reloaded as " + loaded.getFileKey());
+        assertNotNull(loaded.getFileKey(), "File key should be persisted");
+        assertTrue(FileSnapshot.sameFileKey(snapshot.getFileKey(), loaded.getFileKey()));
+        assertEquals(snapshot.getStoredFileKey(), loaded.getIdentity(), "Moves should pair against the reloaded entry");
+
+        // 其他檔案的檔案鍵不相同
+        Path other = Files.createFile(tempDir.resolve("其他.xlsx"));
+        Object otherKey = Files.readAttributes(other, BasicFileAttributes.class).fileKey();
+        assertFalse(FileSnapshot.sameFileKey(otherKey, loaded.getFileKey()));
+    }
+
+    @Test
+    void testOtherFingerprintIsRejected() throws IOException {
+        Path file = tempDir.resolve("snapshot.dat");
+        new SnapshotStore(file, "fingerprint").writeFull(new HashMap<>());
+
+        assertNull(new SnapshotStore(file, "other").load(), "Snapshot of another configuration should be rebuilt");
+    }
+
+    @Test
+    void testCorruptFileIsRejected() throws IOException {
+        Path file = tempDir.resolve("snapshot.dat");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertNull(new SnapshotStore(file, "fingerprint").load(), "Corrupt snapshot should be rebuilt");
+    }
+
+    @Test
+    void testTornTailKeepsCommittedRecords() throws IOException {
+        Path file = tempDir.resolve("snapshot.dat");
+        Map<String, FileSnapshot> live = new HashMap<>();
+        live.put("a.xlsx", new FileSnapshot(10, 1000, 900, null, false));
+        SnapshotStore store = new SnapshotStore(file, "fingerprint");
+        store.writeFull(live);
+        store.close();
+
+        // 寫入到一半中斷的記錄
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        Map<String, FileSnapshot> loaded = new SnapshotStore(file, "fingerprint").load();
+        assertEquals(live, loaded, "Records before the torn write should be kept");
+    }
+}
@@ -0,0 +1,98 @@
+package com.file.service;
+
+import com.file.object.FileSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for SnapshotTable
+ */
+public class SnapshotTableTest {
+
+    @Test
+    void testPutFindAndRemove() {
+        SnapshotTable table = new SnapshotTable();
+        Path dir = Paths.get("share", "專案");
+        Map<String, FileSnapshot> expected = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            Path file = dir.resolve("差異分析訪談時間表_" + i + ".xlsx");
+            FileSnapshot snapshot = new FileSnapshot(i, 1_000L + i, 500L, "key-" + i, false);
+            table.put(file, snapshot);
+            expected.put(file.toString(), snapshot);
+        }
+        assertEquals(2000, table.size());
+        for (Map.Entry<String, FileSnapshot> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), table.get(entry.getKey()));
+        }
+        assertTrue(table.containsIdentity(new FileSnapshot(7, 1_007L, 500L, "key-7", false)));
+
+        // 刪除一半後其餘仍可找到
+        for (int i = 0; i < 2000; i += 2) {
+            assertTrue(table.remove(dir.resolve("差異分析訪談時間表_" + i + ".xlsx")));
+        }
+        assertEquals(1000, table.size());
+        assertNull(table.get(dir.resolve("差異分析訪談時間表_0.xlsx")));
+        assertEquals(expected.get(dir.resolve("差異分析訪談時間表_1.xlsx").toString()),
+                table.get(dir.resolve("差異分析訪談時間表_1.xlsx")));
+        assertFalse(table.containsIdentity(new FileSnapshot(8, 1_008L, 500L, "key-8", false)));
+
+        Map<String, FileSnapshot> remaining = new HashMap<>();
+        table.forEach(remaining::put);
+        assertEquals(1000, remaining.size());
+        System.out.println("[DEBUG_LOG] Estimated bytes per file: " + table.estimateBytes() / table.size());
+    }
+
+    @Test
+    void testDirectoryChain() {
+        SnapshotTable table = new SnapshotTable();
+        Path root = Paths.get("share");
+        Path sub = root.resolve("sub");
+        table.put(root.resolve("a.xlsx"), new FileSnapshot(1, 1L, 1L, null, false));
+        table.put(sub.resolve("b.xlsx"), new FileSnapshot(2, 2L, 2L, null, false));
+        table.put(sub.resolve("c.xlsx"), new FileSnapshot(3, 3L, 3L, null, false));
+
+        List<Path> inSub = new ArrayList<>();
+        int directoryId = table.directoryId(sub);
+        for (int slot = table.firstInDirectory(directoryId); slot >= 0; slot = table.nextInDirectory(slot)) {
+            inSub.add(table.pathAt(slot));
+        }
+        assertEquals(2, inSub.size());
+        assertTrue(inSub.contains(sub.resolve("b.xlsx")));
+        assertEquals(2, table.directoriesUnder(root).size());
+        assertEquals(6, table.totalBytes());
+
+        // 目錄清空後即釋放
+        table.remove(sub.resolve("b.xlsx"));
+        table.remove(sub.resolve("c.xlsx"));
+        assertTrue(table.directoryId(sub) < 0);
+        assertEquals(1, table.directoriesUnder(root).size());
+    }
+
+    @Test
+    void testEntriesNotMarkedInEpochAreStale() {
+        SnapshotTable table = new SnapshotTable();
+        Path dir = Paths.get("share");
+        int kept = table.put(dir.resolve("kept.xlsx"), new FileSnapshot(1, 1L, 1L, null, false));
+        int gone = table.put(dir.resolve("gone.xlsx"), new FileSnapshot(2, 2L, 2L, null, false));
+
+        // 下一輪只看到其中一個檔案
+        table.nextEpoch();
+        table.mark(table.find(table.directoryId(dir), dir.resolve("kept.xlsx")));
+        assertFalse(table.isStale(kept));
+        assertTrue(table.isStale(gone));
+        assertTrue(table.isUnchanged(kept, 1, 1L));
+        assertFalse(table.isUnchanged(kept, 1, 5L));
+
+        // 本輪新增的檔案視為已看到
+        int added = table.put(dir.resolve("added.xlsx"), new FileSnapshot(3, 3L, 3L, null, false));
+        assertFalse(table.isStale(added));
+    }
+}
@@ -0,0 +1,101 @@
+package com.file.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for WatchServiceDetectionEngine
+ */
+public class WatchServiceDetectionEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private WatchServiceDetectionEngine engine;
+    private CountDownLatch changed;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        changed = new CountDownLatch(1);
+        // 關閉定期完整比對，確保只會收到事件觸發的掃描
+        engine = new WatchServiceDetectionEngine(0);
+        engine.start(tempDir, changed::countDown);
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void testIdleEngineRequestsNoScan() {
+        assertTrue(engine.nextScan().isNone(), "Idle engine should not request a scan");
+    }
+
+    @Test
+    void testCreatedFileProducesTargetedScan() throws Exception {
+        Path newFile = tempDir.resolve("差異分析訪談時間表_new.xlsx");
+        Files.createFile(newFile);
+
+        assertTrue(changed.await(10, TimeUnit.SECONDS), "Engine should report the new file");
+
+        ScanRequest request = engine.nextScan();
+        assertFalse(request.isFull(), "Event should not require a full rescan");
+        assertTrue(request.getPaths().contains(newFile), "Targeted scan should include the new file");
+        assertTrue(engine.nextScan().isNone(), "Events should be drained after nextScan");
+        System.out.println("[DEBUG_LOG] Targeted scan paths: " + request.getPaths());
+    }
+
+    @Test
+    void testRequeuedRequestIsReturnedByNextScan() throws Exception {
+        Path newFile = tempDir.resolve("差異分析訪談時間表_new.xlsx");
+        Files.createFile(newFile);
+        assertTrue(changed.await(10, TimeUnit.SECONDS), "Engine should report the new file");
+
+        // 目錄無法存取時掃描交回事件，不能遺失
+        ScanRequest request = engine.nextScan();
+        engine.requeue(request);
+        assertTrue(engine.nextScan().getPaths().contains(newFile), "Requeued paths should be scanned again");
+
+        engine.requeue(ScanRequest.full());
+        assertTrue(engine.nextScan().isFull(), "Requeued full scan should be repeated");
+        assertTrue(engine.nextScan().isNone());
+    }
+
+    @Test
+    void testLostWatchIsRestoredOnlyThroughCheckpoint() throws Exception {
+        Path subDirectory = Files.createDirectory(tempDir.resolve("sub"));
+        engine.register(subDirectory);
+        Files.delete(subDirectory);
+
+        // 等待監控失效
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!engine.hasLostWatches() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(engine.hasLostWatches(), "Deleted directory should invalidate its watch");
+
+        // 取得掃描範圍時不存取檔案系統，失效的監控仍在等待
+        engine.nextScan();
+        assertTrue(engine.hasLostWatches());
+
+        // 超過期限時停止，留待下一次掃描
+        assertThrows(ScanCancelledException.class, () -> engine.restoreWatches(() -> {
+            throw new ScanCancelledException("deadline");
+        }));
+        assertTrue(engine.hasLostWatches());
+
+        engine.restoreWatches(() -> { });
+        assertFalse(engine.hasLostWatches(), "Deleted directory should no longer be waited for");
+    }
+}
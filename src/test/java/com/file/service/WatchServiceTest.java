@@ -1,5 +1,8 @@
 package com.file.service;
 
+import com.file.object.ChangeType;
+import com.file.object.DetectionMode;
+import com.file.object.FileChangeEvent;
 import com.file.object.MonitorDataObject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,6 +12,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -86,4 +96,313 @@ public class WatchServiceTest {
 
         System.out.println("[DEBUG_LOG] File changes test completed successfully");
     }
+
+    @Test
+    void testChangeIsReportedOnceAfterSettle() throws Exception {
+        dto.setSettleQuietSeconds(1);
+        dto.setDetectionMode(DetectionMode.POLL);
+        watchService = new FileWatchService(dto);
+
+        List<String> titles = new CopyOnWriteArrayList<>();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(new NotificationDispatcher.NotificationSink() {
+            @Override
+            public void showDialog(String title, String message, Runnable onClosed) {
+                titles.add(title);
+                onClosed.run();
+            }
+
+            @Override
+            public void showBalloon(String title, String message) {
+            }
+        }, 0, 0);
+        ChangeEventBus eventBus = new ChangeEventBus();
+        eventBus.subscribe(dispatcher, OverflowPolicy.BLOCK);
+        watchService.setEventBus(eventBus);
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+
+        // 模擬分多次寫入的大檔案
+        Path newFile = tempDir.resolve("差異分析訪談時間表_large.xlsx");
+        Files.writeString(newFile, "part 1");
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+        Files.writeString(newFile, "part 2", StandardOpenOption.APPEND);
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+        assertTrue(watchService.hasPendingChanges(), "File should wait for its writes to settle");
+
+        Thread.sleep(1100);
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+        assertFalse(watchService.hasPendingChanges(), "File should be committed after the quiet period");
+        assertEquals(1, watchService.getLastScanChangeCount(), "Settled file should be reported once");
+
+        Thread.sleep(200);
+        assertEquals(1, titles.size(), "Only one notification should be shown");
+        assertEquals("檔案監控 - 新檔案", titles.get(0));
+        eventBus.close();
+        dispatcher.close();
+        System.out.println("[DEBUG_LOG] Settled notifications: " + titles);
+    }
+
+    @Test
+    void testRenameIsReportedAsMove() throws Exception {
+        dto.setDetectionMode(DetectionMode.POLL);
+        watchService = new FileWatchService(dto);
+
+        List<FileChangeEvent> events = new CopyOnWriteArrayList<>();
+        ChangeEventBus eventBus = new ChangeEventBus();
+        ChangeEventBus.Subscription subscription = eventBus.subscribe(events::add, OverflowPolicy.BLOCK);
+        watchService.setEventBus(eventBus);
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+
+        Path renamed = tempDir.resolve("差異分析訪談時間表_renamed.xlsx");
+        Files.move(testFile, renamed);
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+        assertEquals(1, watchService.getLastScanChangeCount(), "Rename should be reported as a single change");
+
+        subscription.close();
+        assertTrue(subscription.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(1, events.size());
+        assertEquals(ChangeType.MOVED, events.get(0).getType());
+        assertEquals(testFile, events.get(0).getPreviousPath());
+        assertEquals(renamed, events.get(0).getPath());
+        System.out.println("[DEBUG_LOG] Move event: " + events.get(0));
+    }
+
+    @Test
+    void testRenamesAfterRestartAreReportedAsMoves() throws Exception {
+        dto.setDetectionMode(DetectionMode.POLL);
+        dto.setStateDirectory(tempDir.resolve("state").toString());
+        Path untouched = Files.createFile(tempDir.resolve("差異分析訪談時間表_other.xlsx"));
+        watchService = new FileWatchService(dto);
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+        watchService.close();
+
+        // 程式停止期間更名
+        Path renamed = tempDir.resolve("差異分析訪談時間表_renamed.xlsx");
+        Files.move(testFile, renamed);
+
+        List<FileChangeEvent> events = new CopyOnWriteArrayList<>();
+        ChangeEventBus eventBus = new ChangeEventBus();
+        ChangeEventBus.Subscription subscription = eventBus.subscribe(events::add, OverflowPolicy.BLOCK);
+        watchService = new FileWatchService(dto);
+        watchService.setEventBus(eventBus);
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+
+        // 載入後的掃描補上未變動檔案的檔案鍵，之後的更名仍是移動
+        Path renamedAgain = tempDir.resolve("差異分析訪談時間表_final.xlsx");
+        Files.move(untouched, renamedAgain);
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+        watchService.close();
+
+        subscription.close();
+        assertTrue(subscription.awaitTermination(1, TimeUnit.SECONDS));
+        System.out.println("[DEBUG_LOG] Events after restart: " + events);
+        assertEquals(2, events.size());
+        assertEquals(ChangeType.MOVED, events.get(0).getType(), "Rename while stopped should be a move");
+        assertEquals(renamed, events.get(0).getPath());
+        assertEquals(ChangeType.MOVED, events.get(1).getType(), "Rename after the first scan should be a move");
+        assertEquals(untouched, events.get(1).getPreviousPath());
+        assertEquals(renamedAgain, events.get(1).getPath());
+    }
+
+    @Test
+    void testFilesInSubDirectoryMatchingTheFilterAreReported() throws Exception {
+        dto.setDetectionMode(DetectionMode.POLL);
+        dto.setRecursive(true);
+        dto.setFileExtension("*");
+        dto.setMonitorFileName("*");
+        dto.setSettleQuietSeconds(0);
+        Path sub = Files.createDirectories(tempDir.resolve("sub"));
+        watchService = new FileWatchService(dto);
+
+        List<FileChangeEvent> events = new CopyOnWriteArrayList<>();
+        ChangeEventBus eventBus = new ChangeEventBus();
+        ChangeEventBus.Subscription subscription = eventBus.subscribe(events::add, OverflowPolicy.BLOCK);
+        watchService.setEventBus(eventBus);
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+
+        Path created = Files.createFile(sub.resolve("報表.xlsx"));
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+        watchService.close();
+
+        subscription.close();
+        assertTrue(subscription.awaitTermination(1, TimeUnit.SECONDS));
+        System.out.println("[DEBUG_LOG] Events under matching sub directory: " + events);
+        assertEquals(1, events.size());
+        assertEquals(ChangeType.CREATED, events.get(0).getType());
+        assertEquals(created, events.get(0).getPath());
+    }
+
+    @Test
+    void testExcludeRulesDoNotApplyToSubDirectories() throws Exception {
+        dto.setDetectionMode(DetectionMode.POLL);
+        dto.setRecursive(true);
+        dto.setFileExtension("*");
+        dto.setMonitorFileName("*");
+        dto.setSettleQuietSeconds(0);
+        // 預設排除規則 *.tmp 與 ~$* 只作用於檔案
+        Path sub = Files.createDirectories(tempDir.resolve("匯出.tmp"));
+        watchService = new FileWatchService(dto);
+
+        List<FileChangeEvent> events = new CopyOnWriteArrayList<>();
+        ChangeEventBus eventBus = new ChangeEventBus();
+        ChangeEventBus.Subscription subscription = eventBus.subscribe(events::add, OverflowPolicy.BLOCK);
+        watchService.setEventBus(eventBus);
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+
+        Path created = Files.createFile(sub.resolve("報表.xlsx"));
+        Files.createFile(sub.resolve("~$報表.xlsx"));
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+        watchService.close();
+
+        subscription.close();
+        assertTrue(subscription.awaitTermination(1, TimeUnit.SECONDS));
+        System.out.println("[DEBUG_LOG] Events under excluded-looking sub directory: " + events);
+        assertEquals(1, events.size(), "Only the file under the directory should be reported, not the lock file");
+        assertEquals(created, events.get(0).getPath());
+    }
+
+    @Test
+    void testScanMetricsAreRecorded() throws IOException {
+        dto.setSettleQuietSeconds(0);
+        dto.setDetectionMode(DetectionMode.POLL);
+        watchService = new FileWatchService(dto);
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+
+        Files.createFile(tempDir.resolve("差異分析訪談時間表_metrics.xlsx"));
+        Files.createFile(tempDir.resolve("other.txt"));
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+
+        ScanMetrics metrics = watchService.getMetrics();
+        assertEquals(1, metrics.getScanCount());
+        assertEquals(0, metrics.getFailedScanCount());
+        assertEquals(3, metrics.getEntriesListed(), "Every directory entry should be counted");
+        assertTrue(metrics.getStatCalls() >= 2, "Only candidate files and the directory should be stat'ed");
+        assertEquals(1, metrics.getCreatedEvents());
+        assertEquals(1, Arrays.stream(metrics.getScanDurationHistogram()).sum());
+        assertTrue(metrics.getLastSuccessTimeMillis() > 0);
+        System.out.println("[DEBUG_LOG] " + metrics.getSummary());
+    }
+
+    @Test
+    void testTouchOnlyChangeIsSuppressedWithContentVerification() throws IOException {
+        dto.setSettleQuietSeconds(0);
+        dto.setContentVerification(true);
+        dto.setDetectionMode(DetectionMode.POLL);
+        watchService = new FileWatchService(dto);
+
+        Files.writeString(testFile, "Original content");
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+
+        // 未變動的檔案不預先讀取，第一次修改時才記錄基準雜湊
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+
+        Files.writeString(testFile, "Changed content!");
+        Files.setLastModifiedTime(testFile, FileTime.fromMillis(Files.getLastModifiedTime(testFile).toMillis() + 60_000));
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+        assertEquals(1, watchService.getLastScanChangeCount(), "Real content change should be reported");
+
+        // 同步工具只改動修改時間
+        Files.setLastModifiedTime(testFile, FileTime.fromMillis(Files.getLastModifiedTime(testFile).toMillis() + 120_000));
+        watchService.checkForChanges(dto.getDirectoryMonitorPath());
+        assertEquals(0, watchService.getLastScanChangeCount(), "Touch-only change should be suppressed");
+        System.out.println("[DEBUG_LOG] Content verification test completed successfully");
+    }
+
+    @Test
+    void testUncPathIsTreatedAsNetworkShare() {
+        assertTrue(FileWatchService.isNetworkPath("\\\\nas\\share", tempDir));
+        assertTrue(FileWatchService.isNetworkPath("//nas/share", tempDir));
+        assertFalse(FileWatchService.isNetworkPath(tempDir.toString(), tempDir), "Local directory should not be a network share");
+    }
+
+    @Test
+    void testReconfigureRefiltersSnapshotInMemory() throws Exception {
+        dto.setSettleQuietSeconds(0);
+        dto.setDetectionMode(DetectionMode.POLL);
+        Path other = tempDir.resolve("差異分析訪談時間表_b.xlsx");
+        Files.createFile(other);
+        watchService = new FileWatchService(dto);
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+
+        // 縮小範圍：不再追蹤的檔案被刪除時不回報
+        MonitorDataObject narrowed = new MonitorDataObject(dto);
+        narrowed.setMonitorFileName("差異分析訪談時間表_b");
+        watchService.reconfigure(narrowed);
+        narrowed.setMonitorFileName("changed after reconfigure");
+        watchService.checkForChanges();
+        assertEquals(0, watchService.getLastScanChangeCount());
+        assertEquals("差異分析訪談時間表_b", watchService.getMonitorDataObject().getMonitorFileName());
+        Files.delete(testFile);
+        watchService.checkForChanges();
+        assertEquals(0, watchService.getLastScanChangeCount(), "Excluded file should no longer be tracked");
+
+        // 放寬範圍：新納入的檔案作為基準，不回報為新檔案
+        Path third = tempDir.resolve("差異分析訪談時間表_c.xlsx");
+        Files.createFile(third);
+        watchService.reconfigure(dto);
+        watchService.checkForChanges();
+        assertEquals(0, watchService.getLastScanChangeCount(), "Newly included files should be taken as the baseline");
+        Files.delete(third);
+        watchService.checkForChanges();
+        assertEquals(1, watchService.getLastScanChangeCount(), "Newly included files should be tracked");
+        System.out.println("[DEBUG_LOG] Reconfiguration test completed successfully");
+    }
+
+    @Test
+    void testCancelledTargetedScanRequeuesUnprocessedPaths() throws Exception {
+        dto.setDetectionMode(DetectionMode.POLL);
+        dto.setRecursive(true);
+        dto.setSettleQuietSeconds(0);
+        Path listed = Files.createDirectories(tempDir.resolve("listed"));
+        watchService = new FileWatchService(dto);
+        watchService.initializeFileSnapshot(dto.getDirectoryMonitorPath());
+
+        // 列舉 listed 時發現新的子目錄即要求取消，目錄本身已列舉完成，之後的路徑尚未處理
+        Files.createDirectories(listed.resolve("new"));
+        final Path changed = Files.createFile(tempDir.resolve("差異分析訪談時間表_changed.xlsx"));
+        final List<ScanRequest> requeued = new CopyOnWriteArrayList<>();
+        watchService.setDetectionEngine(new DetectionEngine() {
+            private boolean served;
+
+            @Override
+            public void start(Path directory, Runnable onChange) {
+            }
+
+            @Override
+            public void register(Path directory) {
+                watchService.cancelScan();
+            }
+
+            @Override
+            public ScanRequest nextScan() {
+                if (served) {
+                    return ScanRequest.none();
+                }
+                served = true;
+                return ScanRequest.targeted(new LinkedHashSet<>(Arrays.asList(changed)),
+                        new LinkedHashSet<>(Arrays.asList(listed)));
+            }
+
+            @Override
+            public void requeue(ScanRequest request) {
+                requeued.add(request);
+            }
+
+            @Override
+            public boolean isEventDriven() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        assertThrows(ScanCancelledException.class, () -> watchService.checkForChanges(dto.getDirectoryMonitorPath()));
+        assertFalse(watchService.isLastScanSuccessful());
+        assertEquals(1, requeued.size(), "Cancelled scan should hand its remainder back");
+        ScanRequest remainder = requeued.get(0);
+        System.out.println("[DEBUG_LOG] Requeued: " + remainder.getDirectories() + " " + remainder.getPaths());
+        assertTrue(remainder.getDirectories().isEmpty(), "Directory listed before the cancellation should not be repeated");
+        assertEquals(new HashSet<>(Arrays.asList(changed)), remainder.getPaths(), "Unchecked path should be requeued");
+    }
 }
@@ -0,0 +1,114 @@
+package com.file.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for XlsxChangeAnalyzer
+ */
+public class XlsxChangeAnalyzerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testChangedWorksheetsAreReported() throws IOException {
+        Path workbook = tempDir.resolve("report.xlsx");
+        Map<String, String> parts = new LinkedHashMap<>();
+        parts.put("[Content_Types].xml", "<Types/>");
+        parts.put("xl/workbook.xml", "<workbook/>");
+        parts.put("xl/worksheets/sheet1.xml", "<sheetData>1</sheetData>");
+        parts.put("xl/worksheets/sheet2.xml", "<sheetData>2</sheetData>");
+        parts.put("xl/sharedStrings.xml", "<sst>a</sst>");
+        writeZip(workbook, parts, null);
+
+        XlsxChangeAnalyzer analyzer = new XlsxChangeAnalyzer();
+        analyzer.remember(workbook);
+
+        parts.put("xl/worksheets/sheet2.xml", "<sheetData>22</sheetData>");
+        parts.put("xl/sharedStrings.xml", "<sst>b</sst>");
+        parts.put("xl/embeddings/oleObject1.bin", "ole");
+        writeZip(workbook, parts, null);
+
+        String summary = analyzer.describeChanges(workbook);
+        System.out.println("[DEBUG_LOG] " + summary);
+        assertEquals("變更內容: 工作表 sheet2、共用字串\n新增: 內嵌物件", summary);
+
+        // 沒有再變動時只說明內容相同
+        assertEquals("活頁簿內容未變更", analyzer.describeChanges(workbook));
+    }
+
+    @Test
+    void testCentralDirectoryIsFoundBehindArchiveComment() throws IOException {
+        Path workbook = tempDir.resolve("commented.xlsx");
+        Map<String, String> parts = new LinkedHashMap<>();
+        parts.put("xl/worksheets/sheet1.xml", "<sheetData/>");
+
+        // 超過初次讀取範圍的註解，必須擴大讀取範圍才能找到目錄結尾
+        StringBuilder comment = new StringBuilder();
+        for (int i = 0; i < 6000; i++) {
+            comment.append('x');
+        }
+        writeZip(workbook, parts, comment.toString());
+
+        XlsxChangeAnalyzer.Directory entries = XlsxChangeAnalyzer.readCentralDirectory(workbook);
+        assertEquals(1, entries.size());
+        assertTrue(entries.contains("xl/worksheets/sheet1.xml"));
+    }
+
+    @Test
+    void testCacheEvictsLeastRecentlyUsedWorkbook() throws IOException {
+        Map<String, String> parts = new LinkedHashMap<>();
+        parts.put("xl/worksheets/sheet1.xml", "<sheetData/>");
+        Path first = tempDir.resolve("first.xlsx");
+        writeZip(first, parts, null);
+
+        XlsxChangeAnalyzer analyzer = new XlsxChangeAnalyzer();
+        analyzer.remember(first);
+        for (int i = 0; i < XlsxChangeAnalyzer.MAX_WORKBOOKS; i++) {
+            Path other = tempDir.resolve("other" + i + ".xlsx");
+            writeZip(other, parts, null);
+            analyzer.remember(other);
+        }
+
+        // 最早記錄的活頁簿已被淘汰，第一次修改只重新記錄
+        assertNull(analyzer.describeChanges(first));
+        assertEquals("活頁簿內容未變更", analyzer.describeChanges(first));
+    }
+
+    @Test
+    void testNonZipFileIsIgnored() throws IOException {
+        Path workbook = tempDir.resolve("broken.xlsx");
+        Files.write(workbook, "not a workbook".getBytes(StandardCharsets.UTF_8));
+
+        XlsxChangeAnalyzer analyzer = new XlsxChangeAnalyzer();
+        analyzer.remember(workbook);
+        assertNull(analyzer.describeChanges(workbook));
+    }
+
+    private static void writeZip(Path file, Map<String, String> parts, String comment) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, String> part : parts.entrySet()) {
+                zip.putNextEntry(new ZipEntry(part.getKey()));
+                zip.write(part.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            if (comment != null) {
+                zip.setComment(comment);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.file.watch;
+
+import com.file.object.DetectionMode;
+import com.file.object.MonitorDataObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for DaemonOptions
+ */
+public class DaemonOptionsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testConfigFilesAndInlineTarget() throws IOException {
+        Path config = tempDir.resolve("share.properties");
+        Files.write(config, Arrays.asList(
+                "path=\\\\\\\\pf03\\\\共用資料夾",
+                "extension=*.xlsx;*.xlsm",
+                "name=差異分析訪談時間表",
+                "recursive=true",
+                "exclude=~$*;*.bak",
+                "detection=poll"), StandardCharsets.UTF_8);
+
+        DaemonOptions options = DaemonOptions.parse(new String[]{
+                "--daemon", "--config", config.toString(),
+                "--path", tempDir.toString(), "--extension", "*.csv", "--interval", "30",
+                "--events", "events.jsonl"});
+
+        assertTrue(options.isDaemon());
+        assertEquals("events.jsonl", options.getEventsOutput());
+        List<MonitorDataObject> targets = options.getTargets();
+        assertEquals(2, targets.size());
+
+        MonitorDataObject share = targets.get(0);
+        assertEquals("\\\\pf03\\共用資料夾", share.getDirectoryMonitorPath());
+        assertEquals("差異分析訪談時間表", share.getMonitorFileName());
+        assertTrue(share.isRecursive());
+        assertEquals(Arrays.asList("~$*", "*.bak"), share.getExcludePatterns());
+        assertEquals(DetectionMode.POLL, share.getDetectionMode());
+
+        MonitorDataObject inline = targets.get(1);
+        assertEquals(tempDir.toString(), inline.getDirectoryMonitorPath());
+        assertEquals(30, inline.getMonitorIntervalSeconds());
+        assertEquals("*", inline.getMonitorFileName(), "Missing name should match every file");
+        System.out.println("[DEBUG_LOG] Parsed targets: " + targets.size());
+    }
+
+    @Test
+    void testInvalidArgumentsAreRejected() {
+        assertTrue(DaemonOptions.isDaemonRequested(new String[]{"--path", "x", "--headless"}));
+        assertFalse(DaemonOptions.isDaemonRequested(new String[0]));
+        assertThrows(IllegalArgumentException.class, () -> DaemonOptions.parse(new String[]{"--path"}));
+        assertThrows(IllegalArgumentException.class, () -> DaemonOptions.parse(new String[]{"--extension", "*.xlsx"}));
+        assertThrows(IllegalArgumentException.class, () -> DaemonOptions.parse(new String[]{"--path", "x", "--interval", "ten"}));
+        assertThrows(IllegalArgumentException.class, () -> DaemonOptions.parse(new String[]{"--path", "x", "--colour", "red"}));
+    }
+}
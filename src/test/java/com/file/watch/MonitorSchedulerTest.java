@@ -0,0 +1,198 @@
+package com.file.watch;
+
+import com.file.object.MonitorDataObject;
+import com.file.service.FileWatchService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for MonitorScheduler
+ */
+public class MonitorSchedulerTest {
+
+    private MonitorScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdownMonitor();
+        }
+    }
+
+    @Test
+    void testHostOf() {
+        assertEquals("pf03", WatchTarget.hostOf("\\\\PF03\\核心系統盤點共用資料夾"));
+        assertEquals("nas", WatchTarget.hostOf("//nas/share"));
+        assertEquals("local", WatchTarget.hostOf("/tmp/share"));
+    }
+
+    @Test
+    void testPathChangeToAnotherHostIsRejected() {
+        scheduler = new MonitorScheduler();
+        MonitorDataObject dto = new MonitorDataObject("\\\\pf03\\share", "*.xlsx", "差異分析訪談時間表");
+        FileWatchService service = new FileWatchService(dto);
+        WatchTarget target = scheduler.addTarget(dto, service);
+
+        MonitorDataObject otherHost = new MonitorDataObject(dto);
+        otherHost.setDirectoryMonitorPath("\\\\nas\\share");
+        assertThrows(IllegalArgumentException.class, () -> scheduler.reconfigure(target, otherHost));
+
+        // 同一主機的其他資料夾可以變更
+        MonitorDataObject sameHost = new MonitorDataObject(dto);
+        sameHost.setDirectoryMonitorPath("\\\\PF03\\other");
+        scheduler.reconfigure(target, sameHost);
+        assertEquals("pf03", target.getHost());
+    }
+
+    @Test
+    void testIntervalTightensOnChangesAndBacksOffWhenQuiet() {
+        MonitorDataObject dto = new MonitorDataObject("/tmp/share", "*.xlsx", "差異分析訪談時間表");
+        dto.setMonitorIntervalSeconds(10);
+        dto.setMinIntervalSeconds(2);
+        dto.setMaxIntervalSeconds(30);
+        WatchTarget target = new WatchTarget(dto, new FileWatchService(dto));
+
+        assertEquals(10_000, target.getIntervalMillis(), "Target should start at its configured interval");
+        assertEquals(2_000, target.updateInterval(true), "Changes should tighten the interval to the minimum");
+        assertEquals(4_000, target.updateInterval(false));
+        assertEquals(8_000, target.updateInterval(false));
+        assertEquals(16_000, target.updateInterval(false));
+        assertEquals(30_000, target.updateInterval(false), "Backoff should stop at the maximum");
+        assertEquals(30_000, target.updateInterval(false));
+    }
+
+    @Test
+    void testCircuitBreakerOpensAfterFailuresAndRecoversThroughProbe() {
+        ShareCircuitBreaker breaker = new ShareCircuitBreaker("pf03", 3, 1000, 4000);
+        long now = 0;
+        assertFalse(breaker.recordFailure(now));
+        assertFalse(breaker.recordFailure(now));
+        assertTrue(breaker.recordFailure(now), "Third consecutive failure should open the circuit");
+        assertFalse(breaker.allowScan());
+
+        assertFalse(breaker.tryStartProbe(now + 500_000_000L), "Probe should wait for the backoff");
+        assertTrue(breaker.tryStartProbe(now + 1_000_000_000L));
+        breaker.probeFailed(now + 1_000_000_000L);
+        assertEquals(2000, breaker.getBackoffMillis(), "Failed probe should double the backoff");
+
+        assertTrue(breaker.tryStartProbe(now + 3_000_000_000L));
+        breaker.probeSucceeded();
+        assertEquals(ShareCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowScan());
+        assertTrue(breaker.recordSuccess(), "Successful scan should close the circuit");
+        assertEquals(ShareCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void testRequestsDuringOverrunAreDropped() {
+        MonitorDataObject dto = new MonitorDataObject("/tmp/share", "*.xlsx", "差異分析訪談時間表");
+        WatchTarget target = new WatchTarget(dto, new FileWatchService(dto));
+
+        assertTrue(target.requestScan(0));
+        target.scanStarted(0);
+        assertFalse(target.requestScan(0), "Request during a scan should be merged");
+        assertTrue(target.markOverrun(target.getScanId()));
+        assertFalse(target.requestScan(0));
+        assertEquals(2, target.getOverlappingRequests());
+        assertFalse(target.scanFinished(), "Overrun scan should not be followed by a back-to-back rescan");
+        assertTrue(target.requestScan(0), "Target should accept requests again after the overrun");
+    }
+
+    @Test
+    void testConcurrentScansPerHostAreCapped() throws InterruptedException {
+        scheduler = new MonitorScheduler(4, 2);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(6);
+
+        for (int i = 0; i < 6; i++) {
+            MonitorDataObject dto = new MonitorDataObject("\\\\pf03\\share" + i, "*.xlsx", "差異分析訪談時間表");
+            dto.setMonitorIntervalSeconds(3600);
+            scheduler.addTarget(dto, new FileWatchService(dto) {
+                @Override
+                public void checkForChanges(String directoryMonitorPath) {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    finished.countDown();
+                }
+            });
+        }
+        scheduler.start();
+
+        for (WatchTarget target : scheduler.getTargets()) {
+            scheduler.requestScan(target);
+        }
+
+        assertTrue(finished.await(10, TimeUnit.SECONDS), "All targets should be scanned");
+        assertEquals(2, maxRunning.get(), "At most two scans should run against the same host");
+        System.out.println("[DEBUG_LOG] Max concurrent scans on pf03: " + maxRunning.get());
+    }
+
+    @Test
+    void testHostSlotsAreReleasedWhenThePoolIsNotRunning() {
+        scheduler = new MonitorScheduler(2, 1);
+
+        WatchTarget first = null;
+        for (int i = 0; i < 3; i++) {
+            MonitorDataObject dto = new MonitorDataObject("\\\\pf03\\share" + i, "*.xlsx", "差異分析訪談時間表");
+            dto.setMonitorIntervalSeconds(3600);
+            WatchTarget target = scheduler.addTarget(dto, new FileWatchService(dto));
+            if (first == null) {
+                first = target;
+            }
+            // 執行緒池尚未啟動，要求無法送出
+            scheduler.requestScan(target);
+        }
+
+        System.out.println("[DEBUG_LOG] Running scans on pf03: " + scheduler.getRunningScans("pf03"));
+        assertEquals(0, scheduler.getRunningScans("pf03"), "Slots of scans that were never submitted should be released");
+        assertTrue(first.requestScan(System.nanoTime()), "Target should be idle again");
+    }
+
+    @Test
+    void testRequestsDuringScanAreCoalesced() throws InterruptedException {
+        scheduler = new MonitorScheduler(2, 2);
+
+        AtomicInteger scans = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        MonitorDataObject dto = new MonitorDataObject("/tmp/share", "*.xlsx", "差異分析訪談時間表");
+        dto.setMonitorIntervalSeconds(3600);
+        WatchTarget target = scheduler.addTarget(dto, new FileWatchService(dto) {
+            @Override
+            public void checkForChanges(String directoryMonitorPath) {
+                scans.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        scheduler.start();
+
+        scheduler.requestScan(target);
+        assertTrue(started.await(5, TimeUnit.SECONDS), "First scan should start");
+        for (int i = 0; i < 10; i++) {
+            scheduler.requestScan(target);
+        }
+        release.countDown();
+
+        Thread.sleep(300);
+        assertEquals(2, scans.get(), "Requests during a running scan should collapse into one follow-up scan");
+    }
+}
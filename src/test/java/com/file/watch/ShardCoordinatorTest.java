@@ -0,0 +1,166 @@
+package com.file.watch;
+
+import com.file.object.MonitorDataObject;
+import com.file.service.FileWatchService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ShardCoordinator and ConsistentHashRing
+ */
+public class ShardCoordinatorTest {
+
+    // 心跳每秒一次，測試機負載高時也不會因一次延遲而逾期
+    private static final long LEASE_MILLIS = 3000;
+
+    @Test
+    void testRingSpreadsKeysAndMovesFewOnMemberChange() {
+        ConsistentHashRing three = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+        ConsistentHashRing two = new ConsistentHashRing(Arrays.asList("a", "b"));
+
+        Map<String, Integer> counts = new HashMap<>();
+        int moved = 0;
+        for (int i = 0; i < 3000; i++) {
+            String key = "/share/dir" + i;
+            String owner = three.ownerOf(key);
+            counts.merge(owner, 1, Integer::sum);
+            // 移除 c 後，只有原本屬於 c 的鍵會換手
+            if (!owner.equals("c") && !owner.equals(two.ownerOf(key))) {
+                moved++;
+            }
+        }
+        System.out.println("[DEBUG_LOG] Ring distribution: " + counts);
+        for (String member : Arrays.asList("a", "b", "c")) {
+            assertTrue(counts.get(member) > 600, "Keys should spread over all members: " + counts);
+        }
+        assertEquals(0, moved, "Removing a member should only move its own keys");
+        assertNull(new ConsistentHashRing(new ArrayList<String>()).ownerOf("/share"));
+    }
+
+    @Test
+    void testInstancesSplitTargetsAndTakeOverOnClose(@TempDir Path tempDir) throws Exception {
+        List<MonitorDataObject> targets = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Path dir = Files.createDirectories(tempDir.resolve("share" + i));
+            MonitorDataObject dto = new MonitorDataObject(dir.toString(), "*", "*");
+            dto.setSettleQuietSeconds(0);
+            targets.add(dto);
+        }
+        Path coordination = tempDir.resolve("coordination");
+
+        MonitorScheduler schedulerA = new MonitorScheduler();
+        MonitorScheduler schedulerB = new MonitorScheduler();
+        final ShardCoordinator a = new ShardCoordinator(coordination, "a", LEASE_MILLIS, targets, schedulerA, FileWatchService::new);
+        final ShardCoordinator b = new ShardCoordinator(coordination, "b", LEASE_MILLIS, targets, schedulerB, FileWatchService::new);
+        try {
+            a.start();
+            b.start();
+
+            assertTrue(waitFor(new BooleanSupplier() {
+                @Override
+                public boolean getAsBoolean() {
+                    Set<String> owned = new HashSet<>(a.getOwnedTargets());
+                    owned.addAll(b.getOwnedTargets());
+                    return owned.size() == 6 && a.getOwnedTargets().size() + b.getOwnedTargets().size() == 6
+                            && !a.getOwnedTargets().isEmpty() && !b.getOwnedTargets().isEmpty();
+                }
+            }), "Targets should be split between both instances: a=" + a.getOwnedTargets() + " b=" + b.getOwnedTargets());
+            System.out.println("[DEBUG_LOG] a=" + a.getOwnedTargets().size() + " b=" + b.getOwnedTargets().size());
+            final Set<String> both = new HashSet<>(Arrays.asList("a", "b"));
+            assertTrue(waitFor(new BooleanSupplier() {
+                @Override
+                public boolean getAsBoolean() {
+                    return both.equals(a.getLiveMembers()) && both.equals(b.getLiveMembers());
+                }
+            }), "Both instances should see each other: a=" + a.getLiveMembers() + " b=" + b.getLiveMembers());
+
+            a.close();
+            assertTrue(waitFor(new BooleanSupplier() {
+                @Override
+                public boolean getAsBoolean() {
+                    return b.getOwnedTargets().size() == 6 && schedulerB.getTargets().size() == 6;
+                }
+            }), "Remaining instance should take every target over: " + b.getOwnedTargets());
+            assertTrue(schedulerA.getTargets().isEmpty(), "Closed instance should stop scanning");
+        } finally {
+            a.close();
+            b.close();
+            schedulerA.shutdownMonitor();
+            schedulerB.shutdownMonitor();
+        }
+    }
+
+    @Test
+    void testExpiredLeaseIsTakenOverByNextGeneration(@TempDir Path tempDir) throws Exception {
+        Path dir = Files.createDirectories(tempDir.resolve("share"));
+        MonitorDataObject dto = new MonitorDataObject(dir.toString(), "*", "*");
+        String key = dir.toAbsolutePath().normalize().toString();
+        Path coordination = tempDir.resolve("coordination");
+        Path leases = Files.createDirectories(coordination.resolve("leases"));
+
+        // 已停止的執行個體留下的過期租約
+        String leaseName = ShardCoordinator.leaseNameOf(key);
+        Path stale = leases.resolve(leaseName + ".1.lease");
+        Files.write(stale, ("c\n" + (System.currentTimeMillis() - 1000) + "\n").getBytes(StandardCharsets.UTF_8));
+
+        MonitorScheduler scheduler = new MonitorScheduler();
+        final ShardCoordinator a = new ShardCoordinator(coordination, "a", 60_000, Collections.singletonList(dto),
+                scheduler, FileWatchService::new);
+        try {
+            a.start();
+            assertTrue(waitFor(new BooleanSupplier() {
+                @Override
+                public boolean getAsBoolean() {
+                    return a.getOwnedTargets().contains(key);
+                }
+            }), "Expired lease should be taken over");
+            Path taken = leases.resolve(leaseName + ".2.lease");
+            assertEquals("a", Files.readAllLines(taken, StandardCharsets.UTF_8).get(0), "Next generation should be owned by a");
+            assertFalse(Files.exists(stale), "Superseded generation should be removed");
+
+            // 其他執行個體建立了更新的世代：停止監控且不改寫對方的租約
+            Path newer = leases.resolve(leaseName + ".3.lease");
+            byte[] other = ("c\n" + (System.currentTimeMillis() + 60_000) + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.write(newer, other);
+            a.tick();
+            assertTrue(waitFor(new BooleanSupplier() {
+                @Override
+                public boolean getAsBoolean() {
+                    return a.getOwnedTargets().isEmpty() && scheduler.getTargets().isEmpty();
+                }
+            }), "Instance should stop scanning a directory it lost: " + a.getOwnedTargets());
+            a.tick();
+            System.out.println("[DEBUG_LOG] Lease after losing it: " + new String(Files.readAllBytes(newer), StandardCharsets.UTF_8).trim());
+            assertArrayEquals(other, Files.readAllBytes(newer), "Lease of the new owner should be left alone");
+        } finally {
+            a.close();
+            scheduler.shutdownMonitor();
+        }
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return condition.getAsBoolean();
+    }
+}